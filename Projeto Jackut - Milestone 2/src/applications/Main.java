@@ -4,6 +4,9 @@ import easyaccept.EasyAccept;
 import facade.JackutFacade;
 import services.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Scanner;
 
 /**
@@ -26,7 +29,8 @@ public class Main {
         System.out.println("=== MENU EASYACCEPT JACKUT ===");
         System.out.println("1 - Executar testes do EasyAccept");
         System.out.println("2 - Executar teste especfico do EasyAccept");
-        System.out.println("3 - Sair");
+        System.out.println("3 - Executar testes do EasyAccept em paralelo");
+        System.out.println("4 - Sair");
         System.out.print("Escolha uma opo: ");
 
         opcao = sc.nextInt();
@@ -46,6 +50,9 @@ public class Main {
                 executarTestesEasyAccept();
                 break;
             case 3:
+                executarTestesEmParalelo();
+                break;
+            case 4:
                 System.out.println("Saindo...");
                 System.exit(0);
                 break;
@@ -85,6 +92,21 @@ public class Main {
         }
     }
 
+    /**
+     * Executa todos os testes do EasyAccept em paralelo, uma user story por thread,
+     * cada uma com seus dados em um diretrio temporrio prprio.
+     */
+    private static void executarTestesEmParalelo() {
+        try {
+            File dados = Files.createTempDirectory("jackut-scripts").toFile();
+            new ParallelScriptRunner(new File("src/scripts"), dados).executar();
+        } catch (IOException e) {
+            System.out.println("No foi possvel criar o diretrio de dados.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Executa um teste especfico do EasyAccept baseado na seleo do usurio.
      *
@@ -0,0 +1,149 @@
+package applications;
+
+import easyaccept.QuitSignalException;
+import easyaccept.script.Script;
+import facade.JackutFacade;
+import util.VariablesImpl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Executa os scripts do EasyAccept em paralelo, no mesmo processo.
+ *
+ * <p>Os scripts de cada user story formam uma cadeia ({@code usN_1}, {@code usN_2}, ...): o
+ * segundo verifica o que o primeiro deixou persistido. Cada cadeia roda em uma thread prpria,
+ * com um diretrio de dados prprio, e cada script da cadeia usa uma {@link JackutFacade} nova
+ * nesse diretrio, como se o sistema tivesse sido reiniciado.</p>
+ *
+ * <p>O {@link Script} do EasyAccept guarda a sua tabela de comandos num campo esttico,
+ * recriado a cada script; por isso a montagem e a execuo dos scripts passam por
+ * {@link #TRAVA_EASYACCEPT}, uma de cada vez. O resultado de cada script vem da contagem de
+ * erros do prprio EasyAccept e  impresso numa nica linha, com as mensagens de erro.</p>
+ *
+ * <p>Uso: {@code ParallelScriptRunner [diretorioScripts] [diretorioDados]}. Por padro,
+ * {@code src/scripts} e um diretrio temporrio.</p>
+ */
+public class ParallelScriptRunner {
+
+    private static final Object TRAVA_EASYACCEPT = new Object();
+
+    private final File diretorioScripts;
+    private final File diretorioDados;
+
+    /**
+     * @param diretorioScripts Diretrio com os scripts {@code usN_M.txt}
+     * @param diretorioDados Diretrio onde cada cadeia cria o seu subdiretrio de dados
+     */
+    public ParallelScriptRunner(File diretorioScripts, File diretorioDados) {
+        this.diretorioScripts = diretorioScripts;
+        this.diretorioDados = diretorioDados;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File scripts = new File(args.length > 0 ? args[0] : "src/scripts");
+        File dados = args.length > 1 ? new File(args[1]) : Files.createTempDirectory("jackut-scripts").toFile();
+        boolean sucesso = new ParallelScriptRunner(scripts, dados).executar();
+        System.exit(sucesso ? 0 : 1);
+    }
+
+    /**
+     * Executa todas as cadeias e imprime o resultado de cada script e o tempo total.
+     * @return true se todos os scripts passaram
+     */
+    public boolean executar() throws InterruptedException {
+        Map<String, List<File>> cadeias = agruparCadeias();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, cadeias.size()));
+        long inicio = System.nanoTime();
+        boolean sucesso = true;
+        try {
+            List<Future<Boolean>> resultados = new ArrayList<>();
+            for (Map.Entry<String, List<File>> cadeia : cadeias.entrySet()) {
+                resultados.add(executor.submit(() -> executarCadeia(cadeia.getKey(), cadeia.getValue())));
+            }
+            for (Future<Boolean> resultado : resultados) {
+                try {
+                    sucesso &= resultado.get();
+                } catch (ExecutionException e) {
+                    imprimir("Falha ao executar scripts: " + e.getCause());
+                    sucesso = false;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long duracao = (System.nanoTime() - inicio) / 1_000_000;
+        imprimir((sucesso ? "Todos os scripts passaram" : "H scripts com falhas")
+                + " (" + cadeias.size() + " cadeias em paralelo, " + duracao + " ms)");
+        return sucesso;
+    }
+
+    /**
+     * Roda os scripts de uma cadeia em sequncia, no diretrio de dados da cadeia.
+     */
+    private boolean executarCadeia(String nome, List<File> scripts) {
+        File dados = new File(diretorioDados, nome);
+        boolean sucesso = true;
+        for (File script : scripts) {
+            long inicio = System.nanoTime();
+            boolean passou;
+            String erros;
+            try {
+                JackutFacade facade = new JackutFacade(dados);
+                synchronized (TRAVA_EASYACCEPT) {
+                    Script execucao = new Script(script.getPath(), facade, new VariablesImpl());
+                    try {
+                        try {
+                            passou = execucao.executeAndCheck();
+                        } catch (QuitSignalException e) {
+                            passou = execucao.numberOfErrors() == 0; // o script terminou com "quit"
+                        }
+                        erros = execucao.allErrorMessages();
+                    } finally {
+                        execucao.close();
+                    }
+                }
+            } catch (Exception e) {
+                passou = false;
+                erros = "Erro ao executar " + script.getName() + ": " + e;
+            }
+            long duracao = (System.nanoTime() - inicio) / 1_000_000;
+            imprimir(script.getName() + ": " + (passou ? "OK" : "FALHOU") + " (" + duracao + " ms)"
+                    + (passou ? "" : System.lineSeparator() + erros));
+            sucesso &= passou;
+        }
+        return sucesso;
+    }
+
+    /**
+     * @return Scripts agrupados por user story ("us1" -> us1_1.txt, us1_2.txt), em ordem
+     */
+    private Map<String, List<File>> agruparCadeias() {
+        File[] arquivos = diretorioScripts.listFiles((dir, nome) -> nome.matches("us\\d+_\\d+\\.txt"));
+        if (arquivos == null || arquivos.length == 0) {
+            throw new RuntimeException("Nenhum script encontrado em " + diretorioScripts + ".");
+        }
+        Arrays.sort(arquivos, Comparator.comparingInt((File f) -> numero(f, 0)).thenComparingInt(f -> numero(f, 1)));
+        Map<String, List<File>> cadeias = new LinkedHashMap<>();
+        for (File arquivo : arquivos) {
+            cadeias.computeIfAbsent("us" + numero(arquivo, 0), k -> new ArrayList<>()).add(arquivo);
+        }
+        return cadeias;
+    }
+
+    private static int numero(File script, int parte) {
+        return Integer.parseInt(script.getName().substring(2, script.getName().length() - 4).split("_")[parte]);
+    }
+
+    /**
+     * Imprime uma mensagem inteira, sem intercalar com a de outras cadeias.
+     */
+    private static void imprimir(String mensagem) {
+        synchronized (System.out) {
+            System.out.println(mensagem);
+        }
+    }
+}
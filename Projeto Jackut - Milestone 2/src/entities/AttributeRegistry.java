@@ -0,0 +1,114 @@
+package entities;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registro global dos nomes de atributos de perfil.
+ * Cada nome normalizado (minsculo) recebe um nmero de slot pequeno e fixo,
+ * compartilhado por todos os perfis do sistema. Assim cada {@link Profile}
+ * guarda apenas um vetor slot -> valor, sem repetir as chaves.
+ *
+ * <p>Grafias alternativas de um mesmo atributo (ex.: "estadoCivil") tambm so
+ * memorizadas, de modo que consultas repetidas no precisam chamar
+ * {@code toLowerCase()} nem alocar novas strings.</p>
+ *
+ * <p>Como os nomes vm dos usurios, o registro  limitado: s os primeiros
+ * {@link #MAXIMO_SLOTS} atributos recebem slot, e s {@link #MAXIMO_GRAFIAS} grafias
+ * alternativas so memorizadas. Atributos sem slot ficam no mapa esparso de cada
+ * {@link Profile} que os usa.</p>
+ */
+public final class AttributeRegistry {
+
+    public static final int MAXIMO_SLOTS = 32;
+    public static final int MAXIMO_GRAFIAS = 256;
+
+    // nome (normalizado ou grafia j vista) -> slot
+    private static final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private static final AtomicInteger grafias = new AtomicInteger();
+
+    // slot -> nome normalizado (copiado a cada novo registro)
+    private static volatile String[] nomes = new String[0];
+
+    private AttributeRegistry() {
+    }
+
+    /**
+     * Obtm o slot de um atributo, registrando-o se ainda no existir.
+     * @param nome Nome do atributo, em qualquer grafia
+     * @return Slot do atributo, ou -1 se o registro j estiver cheio
+     */
+    public static int slot(String nome) {
+        Integer slot = slots.get(nome);
+        if (slot != null) {
+            return slot;
+        }
+        return registrar(nome);
+    }
+
+    /**
+     * Obtm o slot de um atributo sem registr-lo.
+     * @param nome Nome do atributo, em qualquer grafia
+     * @return Slot do atributo ou -1 se nenhum perfil usa esse atributo
+     */
+    public static int slotExistente(String nome) {
+        Integer slot = slots.get(nome);
+        if (slot != null) {
+            return slot;
+        }
+        String normalizado = nome.toLowerCase();
+        slot = slots.get(normalizado);
+        if (slot == null) {
+            return -1;
+        }
+        memorizarGrafia(nome, slot); // prximas consultas com essa grafia no alocam
+        return slot;
+    }
+
+    /**
+     * Retorna o nome normalizado de um atributo.
+     * @param nome Nome do atributo, em qualquer grafia
+     * @return Nome em minsculas
+     */
+    public static String normalizar(String nome) {
+        int slot = slotExistente(nome);
+        return slot < 0 ? nome.toLowerCase() : nomes[slot];
+    }
+
+    /**
+     * @param slot Slot de um atributo registrado
+     * @return Nome normalizado do atributo
+     */
+    public static String nome(int slot) {
+        return nomes[slot];
+    }
+
+    private static synchronized int registrar(String nome) {
+        Integer slot = slots.get(nome);
+        if (slot != null) {
+            return slot;
+        }
+        String normalizado = nome.toLowerCase();
+        slot = slots.get(normalizado);
+        if (slot == null) {
+            if (nomes.length == MAXIMO_SLOTS) {
+                return -1;
+            }
+            String[] novos = Arrays.copyOf(nomes, nomes.length + 1);
+            slot = nomes.length;
+            novos[slot] = normalizado;
+            nomes = novos;
+            slots.put(normalizado, slot);
+        }
+        memorizarGrafia(nome, slot);
+        return slot;
+    }
+
+    private static void memorizarGrafia(String nome, int slot) {
+        if (grafias.get() < MAXIMO_GRAFIAS && slots.putIfAbsent(nome, slot) == null) {
+            grafias.incrementAndGet();
+        }
+    }
+}
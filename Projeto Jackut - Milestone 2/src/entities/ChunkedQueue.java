@@ -0,0 +1,170 @@
+package entities;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Fila em blocos: uma lista encadeada de arrays de tamanho fixo, usada nas filas de mensagens
+ * de comunidade de {@link User}. Cada elemento custa uma referncia dentro de um array, em vez
+ * de um n por elemento como na {@link LinkedList}, e elementos vizinhos ficam prximos na
+ * memria, o que favorece a leitura em lote pelo {@link #iterator()}.
+ *
+ * <p>Insero no fim e remoo do incio so O(1). O bloco esvaziado pelo incio  guardado
+ * e reutilizado no fim, ento uma fila que enche e esvazia no aloca blocos novos; quando a
+ * fila fica vazia, o bloco atual  mantido e reaproveitado desde o comeo.</p>
+ *
+ * <p>Na serializao do Java s a quantidade e os elementos so gravados. A fila no 
+ * thread-safe, assim como as demais colees de {@link User}.</p>
+ */
+public class ChunkedQueue<E> extends AbstractQueue<E> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Elementos por bloco
+    private static final int TAMANHO_BLOCO = 32;
+
+    /**
+     * Bloco da lista: um array de elementos e o prximo bloco.
+     */
+    private static final class Bloco {
+        final Object[] itens = new Object[TAMANHO_BLOCO];
+        Bloco proximo;
+    }
+
+    // Primeiro bloco (lido a partir de inicio) e ltimo (recebe novos elementos em fim)
+    private transient Bloco primeiro;
+    private transient Bloco ultimo;
+    private transient int inicio;
+    private transient int fim;
+    private transient int tamanho;
+
+    // Bloco esvaziado guardado para o prximo que for preciso
+    private transient Bloco reserva;
+
+    /**
+     * Cria uma fila vazia. Nenhum bloco  alocado at o primeiro elemento.
+     */
+    public ChunkedQueue() {
+    }
+
+    /**
+     * Cria uma fila com os elementos de outra coleo, na mesma ordem.
+     * @param elementos Elementos a serem copiados
+     */
+    public ChunkedQueue(Collection<? extends E> elementos) {
+        addAll(elementos);
+    }
+
+    @Override
+    public boolean offer(E elemento) {
+        Objects.requireNonNull(elemento);
+        if (ultimo == null) {
+            primeiro = ultimo = novoBloco();
+            inicio = fim = 0;
+        } else if (fim == TAMANHO_BLOCO) {
+            ultimo.proximo = novoBloco();
+            ultimo = ultimo.proximo;
+            fim = 0;
+        }
+        ultimo.itens[fim++] = elemento;
+        tamanho++;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        if (tamanho == 0) {
+            return null;
+        }
+        E elemento = (E) primeiro.itens[inicio];
+        primeiro.itens[inicio++] = null;
+        tamanho--;
+        if (tamanho == 0) {
+            inicio = fim = 0; // recomea no mesmo bloco
+        } else if (inicio == TAMANHO_BLOCO) {
+            Bloco esvaziado = primeiro;
+            primeiro = primeiro.proximo;
+            esvaziado.proximo = null;
+            reserva = esvaziado;
+            inicio = 0;
+        }
+        return elemento;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return tamanho == 0 ? null : (E) primeiro.itens[inicio];
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public void clear() {
+        primeiro = ultimo = reserva = null;
+        inicio = fim = tamanho = 0;
+    }
+
+    /**
+     * Iterador somente leitura, na ordem de chegada; percorrer os {@code k} primeiros custa O(k).
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private Bloco bloco = primeiro;
+            private int posicao = inicio;
+            private int restantes = tamanho;
+
+            @Override
+            public boolean hasNext() {
+                return restantes > 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (restantes == 0) {
+                    throw new NoSuchElementException();
+                }
+                if (posicao == TAMANHO_BLOCO) {
+                    bloco = bloco.proximo;
+                    posicao = 0;
+                }
+                restantes--;
+                return (E) bloco.itens[posicao++];
+            }
+        };
+    }
+
+    private Bloco novoBloco() {
+        Bloco bloco = reserva;
+        if (bloco == null) {
+            return new Bloco();
+        }
+        reserva = null;
+        return bloco;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(tamanho);
+        for (E elemento : this) {
+            out.writeObject(elemento);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int quantidade = in.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            offer((E) in.readObject());
+        }
+    }
+}
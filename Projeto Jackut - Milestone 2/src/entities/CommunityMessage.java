@@ -21,6 +21,16 @@ public class CommunityMessage implements Serializable {
         this.data = new Date();
     }
 
+    /**
+     * Reconstri uma mensagem com a data original (usado ao ler o arquivo de mensagens).
+     */
+    public CommunityMessage(String comunidade, String remetente, String conteudo, Date data) {
+        this.comunidade = comunidade;
+        this.remetente = remetente;
+        this.conteudo = conteudo;
+        this.data = data;
+    }
+
     public Date getData() {
         return data;
     }
@@ -33,6 +43,10 @@ public class CommunityMessage implements Serializable {
         return comunidade;
     }
 
+    public String getConteudo() {
+        return conteudo;
+    }
+
     @Override
     public String toString() {
         return conteudo;
@@ -1,96 +1,45 @@
 package entities;
 
-import java.io.*;
-import java.util.HashMap;
+import storage.SnapshotStorage;
+
+import java.io.File;
 import java.util.Map;
 
 /**
- * Classe responsvel pela persistncia dos dados do sistema Jackut.
- * Oferece mtodos para salvar e carregar os dados em arquivo.
+ * Nomes dos arquivos de dados do sistema Jackut e acesso direto ao arquivo de snapshot.
+ * A persistncia em si fica nas implementaes de {@link storage.StorageBackend}.
  */
 public class Jackut {
     public static final String DATA_FILE = "jackut_data.ser";  // Nome do arquivo de dados
+    public static final String LOG_FILE = "jackut_data.log";  // Arquivo do armazenamento em log
+    public static final String LSM_DIR = "jackut_lsm";  // Diretrio do armazenamento LSM
+    public static final String ARCHIVE_DIR = "jackut_arquivo";  // Diretrio das mensagens arquivadas
+    public static final String REPLICATION_DIR = "jackut_replicacao";  // Log do primrio da replicao
+    public static final String ANALYSIS_DIR = "jackut_analises";  // Diretrio dos resultados de anlise
 
     /**
-     * Salva os dados do sistema em arquivo de forma serializada.
-     * Agora inclui usurios e comunidades.
+     * Salva os dados do sistema no arquivo de snapshot.
      *
      * @param dados Mapa contendo:
      *              - "usuarios": Map<String, User>
      *              - "comunidades": Map<String, Community>
      * @throws RuntimeException Se ocorrer erro durante o processo de salvamento
      */
+    @SuppressWarnings("unchecked")
     public static void save(Map<String, Object> dados) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(DATA_FILE))) {
-
-            // Limpeza de referncias antes de salvar
-            Map<String, User> usuarios = (Map<String, User>) dados.get("usuarios");
-            Map<String, Community> comunidades = (Map<String, Community>) dados.get("comunidades");
-
-            // Remove usurios inexistentes das comunidades
-            for (Community comunidade : comunidades.values()) {
-                comunidade.getMembers().removeIf(m -> !usuarios.containsKey(m.getLogin()));
-
-                // Verifica se o dono ainda existe
-                if (!usuarios.containsKey(comunidade.getOwner().getLogin())) {
-                    comunidade.getMembers().clear(); // Limpa membros se dono no existir
-                }
-            }
-
-            // Cria cpia defensiva para serializao
-            Map<String, Object> dadosParaSalvar = new HashMap<>();
-            dadosParaSalvar.put("usuarios", new HashMap<>(usuarios));
-            dadosParaSalvar.put("comunidades", new HashMap<>(comunidades));
-
-            oos.writeObject(dadosParaSalvar);
-        } catch (IOException e) {
-            throw new RuntimeException("Falha ao salvar dados", e);
-        }
+        new SnapshotStorage(new File(DATA_FILE)).salvar((Map<String, User>) dados.get("usuarios"),
+                (Map<String, Community>) dados.get("comunidades"), null, null);
     }
 
     /**
-     * Carrega os dados a partir do arquivo serializado.
-     * Agora carrega usurios e comunidades.
+     * Carrega os dados a partir do arquivo de snapshot.
      *
      * @return Mapa contendo:
      *         - "usuarios": Map<String, User>
      *         - "comunidades": Map<String, Community>
      *         ou null se arquivo no existir/estiver corrompido
      */
-    @SuppressWarnings("unchecked")
     public static Map<String, Object> load() {
-        File file = new File(DATA_FILE);
-        if (!file.exists()) return null;
-
-        try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(file))) {
-
-            Map<String, Object> dados = (Map<String, Object>) ois.readObject();
-
-            // Verifica integridade dos dados carregados
-            Map<String, User> usuarios = (Map<String, User>) dados.get("usuarios");
-            Map<String, Community> comunidades = (Map<String, Community>) dados.get("comunidades");
-
-            // Reconstroi referncias entre usurios e comunidades
-            for (Community comunidade : comunidades.values()) {
-                // Atualiza referncia ao dono
-                User dono = usuarios.get(comunidade.getOwner().getLogin());
-                if (dono != null) {
-                    // Atualiza a referncia do dono na comunidade
-                    comunidade.getMembers().removeIf(m -> !usuarios.containsKey(m.getLogin()));
-                    comunidade.getMembers().add(dono); // Garante que o dono est na lista
-                } else {
-                    // Se dono no existe, a comunidade  invlida
-                    comunidades.remove(comunidade.getName());
-                }
-            }
-
-            return dados;
-        } catch (Exception e) {
-            // Cria backup do arquivo corrompido
-            file.renameTo(new File(DATA_FILE + ".backup_" + System.currentTimeMillis()));
-            return null;
-        }
+        return new SnapshotStorage(new File(DATA_FILE)).carregar();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,161 @@
+package entities;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Arquivo frio das mensagens de comunidade lidas que saram da memria.
+ *
+ * <p>Cada usurio tem um diretrio prprio com segmentos somente-anexao
+ * ({@code segmento-00000.gz}, {@code segmento-00001.gz}, ...). Um segmento nunca 
+ * reescrito: cada arquivamento cria um novo, comprimido com GZIP. A leitura 
+ * preguiosa: os segmentos so abertos um de cada vez, conforme a iterao avana.</p>
+ */
+public class MessageArchive {
+
+    private final File diretorio;
+
+    /**
+     * @param diretorio Diretrio raiz do arquivo (criado sob demanda)
+     */
+    public MessageArchive(File diretorio) {
+        this.diretorio = diretorio;
+    }
+
+    /**
+     * Grava um novo segmento com as mensagens informadas.
+     * @param login Login do dono das mensagens
+     * @param mensagens Mensagens a arquivar, na ordem de leitura
+     * @throws IOException Se o segmento no puder ser gravado
+     */
+    public void arquivar(String login, List<CommunityMessage> mensagens) throws IOException {
+        if (mensagens.isEmpty()) {
+            return;
+        }
+        File pasta = pastaDoUsuario(login);
+        if (!pasta.isDirectory() && !pasta.mkdirs()) {
+            throw new IOException("No foi possvel criar " + pasta);
+        }
+        File segmento = new File(pasta, String.format("segmento-%05d.gz", segmentos(login).size()));
+        File temporario = new File(pasta, segmento.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temporario))))) {
+            out.writeInt(mensagens.size());
+            for (CommunityMessage mensagem : mensagens) {
+                escreverTexto(out, mensagem.getComunidade());
+                escreverTexto(out, mensagem.getRemetente());
+                escreverTexto(out, mensagem.getConteudo());
+                out.writeLong(mensagem.getData().getTime());
+            }
+        }
+        if (!temporario.renameTo(segmento)) {
+            throw new IOException("No foi possvel gravar " + segmento);
+        }
+    }
+
+    /**
+     * Percorre as mensagens arquivadas de um usurio, da mais antiga para a mais recente.
+     * Somente o segmento corrente fica aberto durante a iterao.
+     * @param login Login do usurio
+     * @return Itervel preguioso sobre as mensagens arquivadas
+     */
+    public Iterable<CommunityMessage> ler(String login) {
+        return () -> new Iterator<>() {
+            private final Iterator<File> arquivos = segmentos(login).iterator();
+            private Iterator<CommunityMessage> atual = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!atual.hasNext() && arquivos.hasNext()) {
+                    atual = lerSegmento(arquivos.next()).iterator();
+                }
+                return atual.hasNext();
+            }
+
+            @Override
+            public CommunityMessage next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return atual.next();
+            }
+        };
+    }
+
+    /**
+     * Apaga todas as mensagens arquivadas de um usurio.
+     * @param login Login do usurio
+     */
+    public void remover(String login) {
+        apagar(pastaDoUsuario(login));
+    }
+
+    /**
+     * Apaga o arquivo inteiro.
+     */
+    public void limpar() {
+        apagar(diretorio);
+    }
+
+    private List<File> segmentos(String login) {
+        File[] arquivos = pastaDoUsuario(login).listFiles((pasta, nome) -> nome.endsWith(".gz"));
+        if (arquivos == null) {
+            return new ArrayList<>();
+        }
+        List<File> ordenados = new ArrayList<>(Arrays.asList(arquivos));
+        ordenados.sort(Comparator.comparing(File::getName));
+        return ordenados;
+    }
+
+    private List<CommunityMessage> lerSegmento(File segmento) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(segmento))))) {
+            int quantidade = in.readInt();
+            List<CommunityMessage> mensagens = new ArrayList<>(quantidade);
+            for (int i = 0; i < quantidade; i++) {
+                String comunidade = lerTexto(in);
+                String remetente = lerTexto(in);
+                String conteudo = lerTexto(in);
+                mensagens.add(new CommunityMessage(comunidade, remetente, conteudo, new Date(in.readLong())));
+            }
+            return mensagens;
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao ler mensagens arquivadas", e);
+        }
+    }
+
+    // Login codificado em hexadecimal para formar um nome de diretrio sempre vlido
+    private File pastaDoUsuario(String login) {
+        StringBuilder nome = new StringBuilder();
+        for (byte b : login.getBytes(StandardCharsets.UTF_8)) {
+            nome.append(String.format("%02x", b));
+        }
+        return new File(diretorio, nome.toString());
+    }
+
+    private static void escreverTexto(DataOutputStream out, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String lerTexto(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void apagar(File arquivo) {
+        File[] filhos = arquivo.listFiles();
+        if (filhos != null) {
+            for (File filho : filhos) {
+                apagar(filho);
+            }
+        }
+        arquivo.delete();
+    }
+}
@@ -0,0 +1,271 @@
+package entities;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fila de recados armazenada fora do heap.
+ * Cada recado  codificado em UTF-8 e gravado em blocos ({@code ByteBuffer} diretos);
+ * um objeto {@link Message} s  criado no momento da leitura.
+ * Assim o heap e as pausas do GC no crescem com a quantidade de recados no lidos.
+ *
+ * <p>Formato de cada registro: [int tamanho remetente][bytes][int tamanho contedo][bytes].
+ * Um registro nunca  dividido entre blocos; recados maiores que o maior bloco recebem
+ * um bloco exclusivo.</p>
+ *
+ * <p>Os blocos comeam pequenos e dobram a cada novo bloco da fila, de
+ * {@value #MENOR_BLOCO} at {@value #MAIOR_BLOCO} bytes: uma caixa com poucos recados
+ * ocupa s {@value #MENOR_BLOCO} bytes. Os blocos so fatias de placas diretas de
+ * {@value #TAMANHO_PLACA} bytes, em vez de uma alocao direta cada, e os esvaziados
+ * voltam para um pool global por tamanho. Uma placa  liberada pelo GC quando nenhuma
+ * das suas fatias est mais em uso nem no pool.</p>
+ *
+ * <p>A fila no  thread-safe, assim como as demais colees de {@link User}.</p>
+ */
+public class OffHeapMessageQueue extends AbstractQueue<Message> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int MENOR_BLOCO = 256;
+    private static final int MAIOR_BLOCO = 4096;
+    private static final int TAMANHO_PLACA = 1 << 20;
+
+    // Bytes livres guardados por tamanho de bloco para reutilizao
+    private static final int MAXIMO_BYTES_LIVRES = 4 << 20;
+
+    // Um por tamanho de bloco: MENOR_BLOCO, 2 * MENOR_BLOCO, ..., MAIOR_BLOCO
+    private static final Tamanho[] TAMANHOS = criarTamanhos();
+
+    // Blocos em uso: o primeiro  lido, o ltimo recebe novos registros (position = fim dos dados)
+    private transient ArrayDeque<ByteBuffer> blocos = new ArrayDeque<>();
+
+    // Posio de leitura dentro do primeiro bloco
+    private transient int leitura;
+
+    private transient int tamanho;
+
+    /**
+     * Cria uma fila vazia. Nenhum bloco  alocado at o primeiro recado.
+     */
+    public OffHeapMessageQueue() {
+    }
+
+    /**
+     * Cria uma fila com os recados de outra coleo, na mesma ordem.
+     * @param recados Recados a serem copiados
+     */
+    public OffHeapMessageQueue(Collection<Message> recados) {
+        addAll(recados);
+    }
+
+    @Override
+    public boolean offer(Message recado) {
+        byte[] remetente = recado.getRemetente().getBytes(StandardCharsets.UTF_8);
+        byte[] conteudo = recado.getContent().getBytes(StandardCharsets.UTF_8);
+        int tamanhoRegistro = 8 + remetente.length + conteudo.length;
+
+        ByteBuffer bloco = blocos.peekLast();
+        if (bloco == null || bloco.remaining() < tamanhoRegistro) {
+            int desejado = bloco == null ? MENOR_BLOCO : Math.min(MAIOR_BLOCO, bloco.capacity() * 2);
+            bloco = alocarBloco(Math.max(desejado, tamanhoRegistro));
+            blocos.addLast(bloco);
+        }
+        bloco.putInt(remetente.length).put(remetente);
+        bloco.putInt(conteudo.length).put(conteudo);
+        tamanho++;
+        return true;
+    }
+
+    @Override
+    public Message poll() {
+        if (tamanho == 0) {
+            return null;
+        }
+        ByteBuffer bloco = blocos.peekFirst();
+        Message recado = decodificar(bloco, leitura);
+        leitura += tamanhoRegistro(bloco, leitura);
+        tamanho--;
+
+        if (leitura == bloco.position()) {
+            blocos.pollFirst();
+            liberarBloco(bloco);
+            leitura = 0;
+        }
+        return recado;
+    }
+
+    @Override
+    public Message peek() {
+        if (tamanho == 0) {
+            return null;
+        }
+        return decodificar(blocos.peekFirst(), leitura);
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public void clear() {
+        for (ByteBuffer bloco : blocos) {
+            liberarBloco(bloco);
+        }
+        blocos.clear();
+        leitura = 0;
+        tamanho = 0;
+    }
+
+    /**
+     * Iterador somente leitura, na ordem de chegada dos recados.
+     */
+    @Override
+    public Iterator<Message> iterator() {
+        return new Iterator<>() {
+            private final Iterator<ByteBuffer> iteradorBlocos = blocos.iterator();
+            private ByteBuffer bloco = iteradorBlocos.hasNext() ? iteradorBlocos.next() : null;
+            private int posicao = leitura;
+            private int restantes = tamanho;
+
+            @Override
+            public boolean hasNext() {
+                return restantes > 0;
+            }
+
+            @Override
+            public Message next() {
+                if (restantes == 0) {
+                    throw new NoSuchElementException();
+                }
+                if (posicao == bloco.position()) {
+                    bloco = iteradorBlocos.next();
+                    posicao = 0;
+                }
+                Message recado = decodificar(bloco, posicao);
+                posicao += tamanhoRegistro(bloco, posicao);
+                restantes--;
+                return recado;
+            }
+        };
+    }
+
+    private static Message decodificar(ByteBuffer bloco, int posicao) {
+        int tamanhoRemetente = bloco.getInt(posicao);
+        String remetente = lerTexto(bloco, posicao + 4, tamanhoRemetente);
+        int inicioConteudo = posicao + 4 + tamanhoRemetente;
+        int tamanhoConteudo = bloco.getInt(inicioConteudo);
+        String conteudo = lerTexto(bloco, inicioConteudo + 4, tamanhoConteudo);
+        return new Message(remetente, conteudo);
+    }
+
+    private static int tamanhoRegistro(ByteBuffer bloco, int posicao) {
+        int tamanhoRemetente = bloco.getInt(posicao);
+        int tamanhoConteudo = bloco.getInt(posicao + 4 + tamanhoRemetente);
+        return 8 + tamanhoRemetente + tamanhoConteudo;
+    }
+
+    private static String lerTexto(ByteBuffer bloco, int posicao, int tamanho) {
+        byte[] bytes = new byte[tamanho];
+        bloco.get(posicao, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Tamanho[] criarTamanhos() {
+        List<Tamanho> tamanhos = new ArrayList<>();
+        for (int tamanho = MENOR_BLOCO; tamanho <= MAIOR_BLOCO; tamanho *= 2) {
+            tamanhos.add(new Tamanho(tamanho));
+        }
+        return tamanhos.toArray(new Tamanho[0]);
+    }
+
+    /**
+     * @param tamanhoMinimo Bytes necessrios
+     * @return Bloco vazio com pelo menos {@code tamanhoMinimo} bytes
+     */
+    private static ByteBuffer alocarBloco(int tamanhoMinimo) {
+        if (tamanhoMinimo > MAIOR_BLOCO) {
+            return ByteBuffer.allocateDirect(tamanhoMinimo); // bloco exclusivo, no volta para o pool
+        }
+        for (Tamanho tamanho : TAMANHOS) {
+            if (tamanho.bytes >= tamanhoMinimo) {
+                return tamanho.alocar();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static void liberarBloco(ByteBuffer bloco) {
+        for (Tamanho tamanho : TAMANHOS) {
+            if (tamanho.bytes == bloco.capacity()) {
+                tamanho.liberar(bloco);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Blocos de um tamanho: o pool dos livres e a placa de onde saem os novos.
+     */
+    private static final class Tamanho {
+        private final int bytes;
+        private final ConcurrentLinkedQueue<ByteBuffer> livres = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger quantidadeLivres = new AtomicInteger();
+        private ByteBuffer placa;
+        private int proximo;
+
+        Tamanho(int bytes) {
+            this.bytes = bytes;
+        }
+
+        ByteBuffer alocar() {
+            ByteBuffer bloco = livres.poll();
+            if (bloco != null) {
+                quantidadeLivres.decrementAndGet();
+                return bloco;
+            }
+            synchronized (this) {
+                if (placa == null || proximo == TAMANHO_PLACA) {
+                    placa = ByteBuffer.allocateDirect(TAMANHO_PLACA);
+                    proximo = 0;
+                }
+                bloco = placa.slice(proximo, bytes);
+                proximo += bytes;
+                return bloco;
+            }
+        }
+
+        void liberar(ByteBuffer bloco) {
+            if (quantidadeLivres.incrementAndGet() <= MAXIMO_BYTES_LIVRES / bytes) {
+                bloco.clear();
+                livres.offer(bloco);
+            } else {
+                quantidadeLivres.decrementAndGet();
+            }
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(tamanho);
+        for (Message recado : this) {
+            out.writeObject(recado.getRemetente());
+            out.writeObject(recado.getContent());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        blocos = new ArrayDeque<>();
+        int quantidade = in.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            offer(new Message((String) in.readObject(), (String) in.readObject()));
+        }
+    }
+}
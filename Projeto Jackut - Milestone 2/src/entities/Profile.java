@@ -1,36 +1,65 @@
 package entities;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Classe que representa um perfil de usurio com atributos dinmicos.
  * Implementa Serializable para permitir a serializao dos objetos.
+ *
+ * <p>Os nomes dos atributos ficam no {@link AttributeRegistry}, compartilhado por
+ * todos os perfis; cada perfil guarda somente um vetor compacto slot -> valor.
+ * Atributos raros, que ficaram sem slot no registro, vo para um mapa criado s
+ * nos perfis que os usam.</p>
  */
 public class Profile implements Serializable {
     private static final long serialVersionUID = 1L;  // Verso para controle de serializao
 
-    // Mapa que armazena os atributos do perfil (chave-valor)
-    private Map<String, String> attributes;
+    // Mantm o formato serializado original (mapa "attributes"), j que os slots so locais ao processo
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("attributes", Map.class)
+    };
+
+    private static final String[] VAZIO = new String[0];
+
+    // Valores dos atributos indexados pelo slot do AttributeRegistry (null = no preenchido)
+    private transient String[] valores;
+    // Atributos sem slot (nome normalizado -> valor); null enquanto o perfil no tem nenhum
+    private transient Map<String, String> raros;
 
     /**
      * Construtor que inicializa um perfil vazio.
-     * Cria um novo HashMap para armazenar os atributos.
      */
     public Profile() {
-        this.attributes = new HashMap<>();
+        this.valores = VAZIO;
     }
 
     /**
      * Adiciona ou atualiza um atributo no perfil.
-     * A chave  convertida para lowercase para padronizao.
+     * A chave  normalizada para minsculas pelo registro de atributos.
      *
      * @param key   Nome do atributo (ser convertido para minsculas)
      * @param value Valor do atributo a ser armazenado
      */
     public void setAttribute(String key, String value) {
-        attributes.put(key.toLowerCase(), value);
+        int slot = AttributeRegistry.slot(key);
+        if (slot < 0) {
+            if (raros == null) {
+                raros = new HashMap<>(4);
+            }
+            raros.put(AttributeRegistry.normalizar(key), value);
+            return;
+        }
+        if (slot >= valores.length) {
+            valores = Arrays.copyOf(valores, slot + 1);
+        }
+        valores[slot] = value;
     }
 
     /**
@@ -41,7 +70,54 @@ public class Profile implements Serializable {
      * @return Valor do atributo ou string vazia ("") se no existir
      */
     public String getAttribute(String key) {
-        return attributes.getOrDefault(key.toLowerCase(), "");
+        int slot = AttributeRegistry.slotExistente(key);
+        if (slot < 0) {
+            String valor = raros == null ? null : raros.get(AttributeRegistry.normalizar(key));
+            return valor == null ? "" : valor;
+        }
+        if (slot >= valores.length || valores[slot] == null) {
+            return "";
+        }
+        return valores[slot];
+    }
+
+    /**
+     * @return Cpia defensiva dos atributos preenchidos do perfil
+     */
+    public Map<String, String> getAttributes() {
+        Map<String, String> attributes = new HashMap<>();
+        for (int slot = 0; slot < valores.length; slot++) {
+            if (valores[slot] != null) {
+                attributes.put(AttributeRegistry.nome(slot), valores[slot]);
+            }
+        }
+        if (raros != null) {
+            raros.forEach((nome, valor) -> {
+                if (valor != null) {
+                    attributes.put(nome, valor);
+                }
+            });
+        }
+        return attributes;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField campos = out.putFields();
+        campos.put("attributes", getAttributes());
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField campos = in.readFields();
+        Map<String, String> attributes = (Map<String, String>) campos.get("attributes", null);
+        valores = VAZIO;
+        raros = null;
+        if (attributes != null) {
+            for (Map.Entry<String, String> atributo : attributes.entrySet()) {
+                setAttribute(atributo.getKey(), atributo.getValue());
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,59 @@
+package entities;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Poltica de reteno das mensagens de comunidade j lidas.
+ * Define quantas mensagens lidas um usurio mantm em memria e por quanto tempo;
+ * as que excedem esses limites so movidas para o {@link MessageArchive}.
+ *
+ * <p>Para no gravar um segmento de arquivo a cada leitura, o arquivamento s 
+ * disparado quando a quantidade passa do mximo mais uma folga ({@code lote}).</p>
+ */
+public class RetentionPolicy implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Poltica padro: 1000 mensagens lidas, por at 30 dias, arquivadas em lotes de 100. */
+    public static final RetentionPolicy PADRAO = new RetentionPolicy(1000, TimeUnit.DAYS.toMillis(30), 100);
+
+    private final int maximoMensagens;
+    private final long idadeMaxima;
+    private final int lote;
+
+    /**
+     * @param maximoMensagens Quantidade de mensagens lidas mantidas em memria
+     * @param idadeMaxima Idade mxima (em milissegundos) de uma mensagem lida em memria
+     * @param lote Folga acima do mximo antes de disparar o arquivamento
+     */
+    public RetentionPolicy(int maximoMensagens, long idadeMaxima, int lote) {
+        if (maximoMensagens < 0 || idadeMaxima < 0 || lote < 0) {
+            throw new RuntimeException("Poltica de reteno invlida.");
+        }
+        this.maximoMensagens = maximoMensagens;
+        this.idadeMaxima = idadeMaxima;
+        this.lote = lote;
+    }
+
+    public int getMaximoMensagens() {
+        return maximoMensagens;
+    }
+
+    public long getIdadeMaxima() {
+        return idadeMaxima;
+    }
+
+    public int getLote() {
+        return lote;
+    }
+
+    /**
+     * Verifica se uma mensagem lida j passou da idade mxima.
+     * @param mensagem Mensagem lida
+     * @param agora Instante atual em milissegundos
+     * @return true se a mensagem deve ser arquivada
+     */
+    public boolean expirou(CommunityMessage mensagem, long agora) {
+        return agora - mensagem.getData().getTime() > idadeMaxima;
+    }
+}
@@ -1,8 +1,20 @@
 package entities;
 
 import exceptions.*;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.*;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 
 /**
  * Esta entidade representa um usurio do sistema Jackut, contendo todas as informaes
@@ -13,11 +25,27 @@ import java.util.*;
 public class User implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    // Formato binrio de escreverDados. No formato 1 os dados comeam direto pelo login (writeUTF);
+    // a partir do 2 vm a marca e o nmero do formato, e a partir do 3 todos os textos so
+    // gravados por escreverTexto. A marca tambm  um tamanho vlido de writeUTF: um login do
+    // formato 1 com exatamente 65535 bytes e comeando por U+0002 ou U+0003 seria lido como marca.
+    private static final int MARCA_FORMATO = 0xFFFF;
+    private static final int FORMATO = 3;
+
+    /**
+     * Incio de uma senha guardada como hash PBKDF2 ({@code {pbkdf2}iteraes$sal$hash}, em
+     * Base64), como sai da exportao. Senhas escolhidas pelo usurio no podem comear assim.
+     */
+    public static final String PREFIXO_SENHA_PROTEGIDA = "{pbkdf2}";
+    private static final int ITERACOES_SENHA = 10_000;
+    private static final int BITS_HASH_SENHA = 256;
+
     // Dados bsicos do usurio
     private final String login;
     private final String senha;
     private final String nome;
     private Profile profile;
+    private boolean remoto; // usurio sombra de outro n do cluster
 
     // Relacionamentos avanados (US8_1)
     private Set<String> idolos = new HashSet<>();   // Quem eu sigo (sou f)
@@ -41,6 +69,14 @@ public class User implements Serializable {
         fas.add(fa);
     }
 
+    /**
+     * Remove um dolo da lista do usurio.
+     * @param idolo Login do dolo
+     */
+    public void removerIdolo(String idolo) {
+        idolos.remove(idolo);
+    }
+
     /**
      * Verifica se o usurio  f de outro usurio.
      * @param idolo Login do usurio a verificar
@@ -58,6 +94,14 @@ public class User implements Serializable {
         paqueras.add(paquera);
     }
 
+    /**
+     * Remove uma paquera da lista do usurio.
+     * @param paquera Login da paquera
+     */
+    public void removerPaquera(String paquera) {
+        paqueras.remove(paquera);
+    }
+
     /**
      * Verifica se o usurio tem outro usurio como paquera.
      * @param paquera Login do usurio a verificar
@@ -84,6 +128,13 @@ public class User implements Serializable {
         return inimigos.contains(inimigo);
     }
 
+    /**
+     * @return Quantidade de fs do usurio, sem copiar a lista
+     */
+    public int getQuantidadeFas() {
+        return fas.size();
+    }
+
     /**
      * @return Cpia defensiva da lista de dolos do usurio
      */
@@ -115,7 +166,7 @@ public class User implements Serializable {
     // Relacionamentos bsicos
     private final LinkedHashSet<String> amigos = new LinkedHashSet<>();
     private final LinkedHashSet<String> solicitacoesPendentes = new LinkedHashSet<>();
-    private Queue<Message> recados = new LinkedList<>();
+    private Queue<Message> recados = new OffHeapMessageQueue(); // recados ficam fora do heap
     private List<String> comunidadesParticipando = new ArrayList<>();
 
     /**
@@ -128,6 +179,17 @@ public class User implements Serializable {
         }
     }
 
+    /**
+     * Remove o usurio de uma comunidade, descartando as mensagens dela ainda no lidas.
+     * @param nomeComunidade Nome da comunidade
+     * @return true se o usurio participava da comunidade ou tinha mensagens dela
+     */
+    public boolean removerComunidade(String nomeComunidade) {
+        boolean descartou = naoLidasPorComunidade.containsKey(nomeComunidade)
+                && descartarMensagens(mensagem -> mensagem.getComunidade().equals(nomeComunidade));
+        return comunidadesParticipando.remove(nomeComunidade) | descartou;
+    }
+
     /**
      * @return Cpia defensiva da lista de comunidades do usurio
      */
@@ -135,9 +197,78 @@ public class User implements Serializable {
         return new ArrayList<>(comunidadesParticipando);
     }
 
-    // Mensagens de comunidade
-    private Queue<CommunityMessage> mensagens = new LinkedList<>();
-    private Queue<CommunityMessage> mensagensLidas = new LinkedList<>();
+    // Mensagens de comunidade, em filas de blocos (uma referncia por mensagem)
+    private Queue<CommunityMessage> mensagens = new ChunkedQueue<>();
+    private Queue<CommunityMessage> mensagensLidas = new ChunkedQueue<>();
+
+    // Contadores de mensagens no lidas por comunidade (nome -> quantidade)
+    private Map<String, Integer> naoLidasPorComunidade = new HashMap<>();
+
+    // Recados e mensagens de comunidade enviados pelo usurio
+    private int atividade;
+
+    /**
+     * Conta mais um recado ou mensagem de comunidade enviado pelo usurio.
+     */
+    public void registrarAtividade() {
+        atividade++;
+    }
+
+    /**
+     * @return Quantidade de recados e mensagens de comunidade enviados pelo usurio
+     */
+    public int getAtividade() {
+        return atividade;
+    }
+
+    /**
+     * @param tentativa Senha informada
+     * @return true se for a senha do usurio (comparada com o hash, se a senha for protegida)
+     */
+    public boolean verificarSenha(String tentativa) {
+        if (tentativa == null) {
+            return false;
+        }
+        if (!senha.startsWith(PREFIXO_SENHA_PROTEGIDA)) {
+            return senha.equals(tentativa);
+        }
+        String[] partes = senha.substring(PREFIXO_SENHA_PROTEGIDA.length()).split("\\$");
+        if (partes.length != 3) {
+            return false;
+        }
+        try {
+            int iteracoes = Integer.parseInt(partes[0]);
+            byte[] sal = Base64.getDecoder().decode(partes[1]);
+            byte[] esperado = Base64.getDecoder().decode(partes[2]);
+            return MessageDigest.isEqual(esperado, pbkdf2(tentativa, sal, iteracoes));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param senha Senha em texto (ou j protegida, que  devolvida como est)
+     * @return {@link #PREFIXO_SENHA_PROTEGIDA} seguido de iteraes, sal aleatrio e hash
+     */
+    public static String protegerSenha(String senha) {
+        if (senha.startsWith(PREFIXO_SENHA_PROTEGIDA)) {
+            return senha;
+        }
+        byte[] sal = new byte[16];
+        new SecureRandom().nextBytes(sal);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIXO_SENHA_PROTEGIDA + ITERACOES_SENHA + "$" + base64.encodeToString(sal) + "$"
+                + base64.encodeToString(pbkdf2(senha, sal, ITERACOES_SENHA));
+    }
+
+    private static byte[] pbkdf2(String senha, byte[] sal, int iteracoes) {
+        try {
+            PBEKeySpec especificacao = new PBEKeySpec(senha.toCharArray(), sal, iteracoes, BITS_HASH_SENHA);
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(especificacao).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 indisponvel.", e);
+        }
+    }
 
     /**
      * Recebe uma mensagem de comunidade.
@@ -145,6 +276,56 @@ public class User implements Serializable {
      */
     public void receberMensagem(CommunityMessage mensagem) {
         mensagens.add(mensagem);
+        naoLidasPorComunidade.merge(mensagem.getComunidade(), 1, Integer::sum);
+    }
+
+    /**
+     * @return Cpia defensiva da fila de mensagens de comunidade no lidas
+     */
+    public Queue<CommunityMessage> getMensagens() {
+        return new ChunkedQueue<>(mensagens);
+    }
+
+    /**
+     * @return Cpia defensiva das mensagens de comunidade lidas ainda em memria, da mais antiga
+     */
+    public Queue<CommunityMessage> getMensagensLidas() {
+        return new ChunkedQueue<>(mensagensLidas);
+    }
+
+    /**
+     * Acrescenta uma mensagem j lida, como na importao; a reteno vale para ela como para as demais.
+     */
+    public void adicionarMensagemLida(CommunityMessage mensagem) {
+        mensagensLidas.add(mensagem);
+    }
+
+    /**
+     * Retira da fila de no lidas a mensagem mais recente com os dados informados.
+     * @return true se alguma mensagem foi retirada
+     */
+    public boolean retirarMensagem(String comunidade, String remetente, Date data, String conteudo) {
+        int posicao = -1;
+        int indice = 0;
+        for (CommunityMessage mensagem : mensagens) {
+            if (mensagem.getComunidade().equals(comunidade) && mensagem.getRemetente().equals(remetente)
+                    && mensagem.getData().equals(data) && mensagem.getConteudo().equals(conteudo)) {
+                posicao = indice;
+            }
+            indice++;
+        }
+        if (posicao < 0) {
+            return false;
+        }
+        for (int i = 0, total = mensagens.size(); i < total; i++) {
+            CommunityMessage mensagem = mensagens.poll();
+            if (i != posicao) {
+                mensagens.add(mensagem);
+            } else {
+                descontarNaoLida(mensagem);
+            }
+        }
+        return true;
     }
 
     /**
@@ -159,7 +340,9 @@ public class User implements Serializable {
      * Confirma a leitura da mensagem, movendo para a fila de lidas.
      */
     public void confirmarLeituraMensagem() {
-        mensagensLidas.add(mensagens.poll());
+        CommunityMessage mensagem = mensagens.poll();
+        descontarNaoLida(mensagem);
+        mensagensLidas.add(mensagem);
     }
 
     /**
@@ -167,7 +350,107 @@ public class User implements Serializable {
      * @return Mensagem lida ou null se no houver
      */
     public CommunityMessage lerMensagem() {
-        return mensagens.poll();
+        CommunityMessage mensagem = mensagens.poll();
+        descontarNaoLida(mensagem);
+        return mensagem;
+    }
+
+    /**
+     * L at {@code quantidade} mensagens de uma vez, confirmando a leitura de cada uma.
+     * @param quantidade Nmero mximo de mensagens a ler
+     * @return Mensagens lidas, na ordem de chegada (vazia se no houver)
+     */
+    public List<CommunityMessage> lerMensagens(int quantidade) {
+        List<CommunityMessage> lidas = new ArrayList<>(Math.min(quantidade, mensagens.size()));
+        for (Iterator<CommunityMessage> proximas = mensagens.iterator(); lidas.size() < quantidade && proximas.hasNext(); ) {
+            lidas.add(proximas.next());
+        }
+        for (CommunityMessage mensagem : lidas) {
+            mensagens.poll();
+            descontarNaoLida(mensagem);
+            mensagensLidas.add(mensagem);
+        }
+        return lidas;
+    }
+
+    /**
+     * @return Quantidade de mensagens de comunidade no lidas
+     */
+    public int getQuantidadeMensagens() {
+        return mensagens.size();
+    }
+
+    /**
+     * @param comunidade Nome da comunidade
+     * @return Quantidade de mensagens no lidas daquela comunidade
+     */
+    public int getQuantidadeMensagens(String comunidade) {
+        return naoLidasPorComunidade.getOrDefault(comunidade, 0);
+    }
+
+    /**
+     * Seleciona as mensagens lidas mais antigas que excedem a poltica de reteno.
+     * As mensagens continuam em memria at {@link #descartarMensagensLidas(int)}
+     * ser chamado, para que s sejam removidas depois de arquivadas.
+     * @param politica Poltica de reteno
+     * @param agora Instante atual em milissegundos
+     * @return Mensagens a arquivar, da mais antiga para a mais recente (vazia se nada expirou)
+     */
+    public List<CommunityMessage> getMensagensLidasExpiradas(RetentionPolicy politica, long agora) {
+        List<CommunityMessage> expiradas = new ArrayList<>();
+        int excedentes = mensagensLidas.size() - politica.getMaximoMensagens();
+        boolean loteCompleto = excedentes > politica.getLote();
+        for (CommunityMessage mensagem : mensagensLidas) {
+            if (loteCompleto && expiradas.size() < excedentes) {
+                expiradas.add(mensagem);
+            } else if (politica.expirou(mensagem, agora)) {
+                expiradas.add(mensagem);
+            } else {
+                break;
+            }
+        }
+        return expiradas;
+    }
+
+    /**
+     * Remove da memria as {@code quantidade} mensagens lidas mais antigas.
+     * @param quantidade Nmero de mensagens a descartar
+     */
+    public void descartarMensagensLidas(int quantidade) {
+        for (int i = 0; i < quantidade && !mensagensLidas.isEmpty(); i++) {
+            mensagensLidas.poll();
+        }
+    }
+
+    /**
+     * @return Quantidade de mensagens lidas mantidas em memria
+     */
+    public int getQuantidadeMensagensLidas() {
+        return mensagensLidas.size();
+    }
+
+    /**
+     * Retira da fila de no lidas as mensagens aceitas pelo filtro, mantendo a ordem das demais.
+     * @return true se alguma mensagem foi descartada
+     */
+    private boolean descartarMensagens(java.util.function.Predicate<CommunityMessage> filtro) {
+        boolean descartou = false;
+        for (int i = mensagens.size(); i > 0; i--) {
+            CommunityMessage mensagem = mensagens.poll();
+            if (filtro.test(mensagem)) {
+                descontarNaoLida(mensagem);
+                descartou = true;
+            } else {
+                mensagens.add(mensagem);
+            }
+        }
+        return descartou;
+    }
+
+    private void descontarNaoLida(CommunityMessage mensagem) {
+        if (mensagem != null) {
+            naoLidasPorComunidade.computeIfPresent(mensagem.getComunidade(), (nome, total) -> total > 1 ? total - 1 : null);
+        }
     }
 
     /**
@@ -183,6 +466,25 @@ public class User implements Serializable {
         this.profile = new Profile();
     }
 
+    /**
+     * Cria um usurio "sombra": representa, em um n do cluster, um usurio que mora em
+     * outro n (por exemplo, um membro de comunidade). S o login  conhecido.
+     * @param login Login do usurio remoto
+     * @return Usurio sombra
+     */
+    public static User sombra(String login) {
+        User usuario = new User(login, "", login);
+        usuario.remoto = true;
+        return usuario;
+    }
+
+    /**
+     * @return true se o usurio mora em outro n do cluster (ver {@link #sombra(String)})
+     */
+    public boolean isRemoto() {
+        return remoto;
+    }
+
     // Getters bsicos
     public String getLogin() { return login; }
     public String getSenha() { return senha; }
@@ -206,6 +508,15 @@ public class User implements Serializable {
         amigos.add(loginAmigo);
     }
 
+    /**
+     * Desfaz a confirmao de uma amizade, que volta a ser uma solicitao pendente.
+     * @param loginAmigo Login do amigo
+     */
+    public void desfazerAmizade(String loginAmigo) {
+        amigos.remove(loginAmigo);
+        solicitacoesPendentes.add(loginAmigo);
+    }
+
     /**
      * Verifica se um usurio  amigo.
      * @param loginAmigo Login do usurio a verificar
@@ -230,18 +541,120 @@ public class User implements Serializable {
         recados.add(recado);
     }
 
+    /**
+     * Retira da fila o recado mais recente com o remetente e o contedo informados.
+     * @param remetente Login do remetente
+     * @param conteudo Texto do recado
+     * @return true se algum recado foi retirado
+     */
+    public boolean retirarRecado(String remetente, String conteudo) {
+        int posicao = -1;
+        int indice = 0;
+        for (Message recado : recados) {
+            if (recado.getRemetente().equals(remetente) && recado.getContent().equals(conteudo)) {
+                posicao = indice;
+            }
+            indice++;
+        }
+        if (posicao < 0) {
+            return false;
+        }
+        // Mesma rotao de removerReferencias: a fila s aceita insero no fim
+        for (int i = 0, total = recados.size(); i < total; i++) {
+            Message recado = recados.poll();
+            if (i != posicao) {
+                recados.add(recado);
+            }
+        }
+        return true;
+    }
+
     /**
      * L e remove o prximo recado da fila.
      * @return Recado lido
      * @throws NoMessagesException Se no houver recados
      */
     public Message lerRecado() throws NoMessagesException {
-        if (recados.isEmpty()) {
+        Message recado = tentarLerRecado();
+        if (recado == null) {
             throw new NoMessagesException("No h recados.");
         }
+        return recado;
+    }
+
+    /**
+     * L e remove o prximo recado da fila, sem lanar exceo.
+     * @return Recado lido, ou {@code null} se no houver
+     */
+    public Message tentarLerRecado() {
         return recados.poll();
     }
 
+    /**
+     * L e remove at {@code quantidade} recados de uma vez.
+     * @param quantidade Nmero mximo de recados a ler
+     * @return Recados lidos, na ordem de chegada (vazia se no houver)
+     */
+    public List<Message> lerRecados(int quantidade) {
+        List<Message> lidos = new ArrayList<>(Math.min(quantidade, recados.size()));
+        while (lidos.size() < quantidade && !recados.isEmpty()) {
+            lidos.add(recados.poll());
+        }
+        return lidos;
+    }
+
+    /**
+     * @return Quantidade de recados no lidos
+     */
+    public int getQuantidadeRecados() {
+        return recados.size();
+    }
+
+    /**
+     * Apaga todas as referncias a outro usurio (removido do sistema): relacionamentos,
+     * solicitaes pendentes, recados e mensagens de comunidade no lidas enviados por ele.
+     * @param loginRemovido Login do usurio removido
+     * @return true se havia alguma referncia
+     */
+    public boolean removerReferencias(String loginRemovido) {
+        boolean alterado = amigos.remove(loginRemovido);
+        alterado |= solicitacoesPendentes.remove(loginRemovido);
+        alterado |= idolos.remove(loginRemovido);
+        alterado |= fas.remove(loginRemovido);
+        alterado |= paqueras.remove(loginRemovido);
+        alterado |= inimigos.remove(loginRemovido);
+
+        boolean temMensagem = false;
+        for (CommunityMessage mensagem : mensagens) {
+            if (mensagem.getRemetente().equals(loginRemovido)) {
+                temMensagem = true;
+                break;
+            }
+        }
+        if (temMensagem) {
+            alterado |= descartarMensagens(mensagem -> mensagem.getRemetente().equals(loginRemovido));
+        }
+
+        boolean temRecado = false;
+        for (Message recado : recados) {
+            if (recado.getRemetente().equals(loginRemovido)) {
+                temRecado = true;
+                break;
+            }
+        }
+        if (!temRecado) {
+            return alterado;
+        }
+        // A fila de recados s aceita insero no fim: os recados mantidos so reinseridos em ordem
+        for (int i = recados.size(); i > 0; i--) {
+            Message recado = recados.poll();
+            if (!recado.getRemetente().equals(loginRemovido)) {
+                recados.add(recado);
+            }
+        }
+        return true;
+    }
+
     /**
      * @return Cpia defensiva das solicitaes de amizade pendentes
      */
@@ -255,4 +668,212 @@ public class User implements Serializable {
     public Queue<Message> getRecados() {
         return new LinkedList<>(recados);
     }
+
+    /**
+     * Grava o usurio em formato binrio compacto, sem os metadados de classe da serializao
+     * do Java: textos como tamanho seguido dos bytes UTF-8, conjuntos como quantidade seguida
+     * dos logins e mensagens campo a campo. Equivale a {@link #escreverDados(DataOutput)} seguido de
+     * {@link #escreverMensagens(DataOutput)}; o inverso  {@link #ler(DataInput)}.
+     * @param out Destino
+     */
+    public void escrever(DataOutput out) throws IOException {
+        escreverDados(out);
+        escreverMensagens(out);
+    }
+
+    /**
+     * L um usurio gravado por {@link #escrever(DataOutput)}.
+     * @param in Origem
+     * @return Usurio reconstrudo
+     */
+    public static User ler(DataInput in) throws IOException {
+        User usuario = lerDados(in);
+        usuario.lerMensagens(in);
+        return usuario;
+    }
+
+    /**
+     * Grava um texto como tamanho em int seguido dos bytes UTF-8, sem o limite de 64 KB de
+     * {@link DataOutput#writeUTF(String)}.
+     * @param out Destino
+     * @param texto Texto gravado
+     */
+    public static void escreverTexto(DataOutput out, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * L um texto gravado por {@link #escreverTexto(DataOutput, String)}.
+     * @param in Origem
+     * @return Texto lido
+     */
+    public static String lerTexto(DataInput in) throws IOException {
+        int tamanho = in.readInt();
+        if (tamanho < 0) {
+            throw new IOException("Tamanho de texto invlido: " + tamanho);
+        }
+        byte[] bytes = new byte[tamanho];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Termina um {@link DataInput#readUTF()} cujo tamanho j foi lido, para formatos em que os
+     * dois primeiros bytes podem ser uma marca ou o tamanho do primeiro texto.
+     * @param in Origem
+     * @param tamanho Tamanho j lido (unsigned short)
+     * @return Texto lido
+     */
+    public static String lerUTF(DataInput in, int tamanho) throws IOException {
+        byte[] bytes = new byte[2 + tamanho];
+        bytes[0] = (byte) (tamanho >>> 8);
+        bytes[1] = (byte) tamanho;
+        in.readFully(bytes, 2, tamanho);
+        return DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Grava login, senha, nome, perfil, relacionamentos, comunidades e o contador de atividade,
+     * sem as filas de mensagens. Os dados comeam por uma marca e o nmero do formato.
+     * @param out Destino
+     */
+    public void escreverDados(DataOutput out) throws IOException {
+        out.writeShort(MARCA_FORMATO);
+        out.writeByte(FORMATO);
+        escreverTexto(out, login);
+        escreverTexto(out, senha);
+        escreverTexto(out, nome);
+        Map<String, String> atributos = profile.getAttributes();
+        out.writeInt(atributos.size());
+        for (Map.Entry<String, String> atributo : atributos.entrySet()) {
+            escreverTexto(out, atributo.getKey());
+            escreverTexto(out, atributo.getValue());
+        }
+        for (Collection<String> logins : List.of(idolos, fas, paqueras, inimigos, amigos,
+                solicitacoesPendentes, comunidadesParticipando)) {
+            out.writeInt(logins.size());
+            for (String valor : logins) {
+                escreverTexto(out, valor);
+            }
+        }
+        out.writeInt(atividade);
+    }
+
+    /**
+     * L os dados gravados por {@link #escreverDados(DataOutput)}, inclusive nos formatos 1,
+     * anterior ao contador de atividade, e 2, com os textos curtos em {@code writeUTF}.
+     * @param in Origem
+     * @return Usurio com as filas de mensagens vazias
+     */
+    public static User lerDados(DataInput in) throws IOException {
+        int inicio = in.readUnsignedShort();
+        int formato = 1;
+        String login;
+        if (inicio == MARCA_FORMATO) {
+            formato = in.readUnsignedByte();
+            if (formato > FORMATO) {
+                throw new IOException("Formato de usurio desconhecido: " + formato);
+            }
+            login = lerTexto(in, formato);
+        } else {
+            login = lerUTF(in, inicio);
+        }
+        User usuario = new User(login, lerTexto(in, formato), lerTexto(in, formato));
+        for (int i = in.readInt(); i > 0; i--) {
+            usuario.profile.setAttribute(lerTexto(in, formato), lerTexto(in));
+        }
+        for (Collection<String> logins : List.of(usuario.idolos, usuario.fas, usuario.paqueras,
+                usuario.inimigos, usuario.amigos, usuario.solicitacoesPendentes, usuario.comunidadesParticipando)) {
+            for (int i = in.readInt(); i > 0; i--) {
+                logins.add(lerTexto(in, formato));
+            }
+        }
+        if (formato >= 2) {
+            usuario.atividade = in.readInt();
+        }
+        return usuario;
+    }
+
+    // Texto curto (login, nome, chave de atributo): writeUTF at o formato 2, escreverTexto depois
+    private static String lerTexto(DataInput in, int formato) throws IOException {
+        return formato >= 3 ? lerTexto(in) : in.readUTF();
+    }
+
+    /**
+     * Grava as filas de recados e de mensagens de comunidade (no lidas e lidas). Comea pelo
+     * nmero do formato negado, que as gravaes antigas (iniciadas pela quantidade de
+     * recados) nunca tm.
+     * @param out Destino
+     */
+    public void escreverMensagens(DataOutput out) throws IOException {
+        out.writeInt(-FORMATO);
+        out.writeInt(recados.size());
+        for (Message recado : recados) {
+            escreverTexto(out, recado.getRemetente());
+            escreverTexto(out, recado.getContent());
+        }
+        for (Queue<CommunityMessage> fila : List.of(mensagens, mensagensLidas)) {
+            out.writeInt(fila.size());
+            for (CommunityMessage mensagem : fila) {
+                escreverTexto(out, mensagem.getComunidade());
+                escreverTexto(out, mensagem.getRemetente());
+                escreverTexto(out, mensagem.getConteudo());
+                out.writeLong(mensagem.getData().getTime());
+            }
+        }
+    }
+
+    /**
+     * L as filas gravadas por {@link #escreverMensagens(DataOutput)}, acrescentando-as s do usurio.
+     * @param in Origem
+     */
+    public void lerMensagens(DataInput in) throws IOException {
+        int inicio = in.readInt();
+        int formato = 2;
+        int quantidade = inicio;
+        if (inicio < 0) {
+            formato = -inicio;
+            if (formato > FORMATO) {
+                throw new IOException("Formato de mensagens desconhecido: " + formato);
+            }
+            quantidade = in.readInt();
+        }
+        for (int i = quantidade; i > 0; i--) {
+            recados.add(new Message(lerTexto(in, formato), lerTexto(in)));
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            receberMensagem(new CommunityMessage(lerTexto(in, formato), lerTexto(in, formato), lerTexto(in),
+                    new Date(in.readLong())));
+        }
+        for (int i = in.readInt(); i > 0; i--) {
+            mensagensLidas.add(new CommunityMessage(lerTexto(in, formato), lerTexto(in, formato), lerTexto(in),
+                    new Date(in.readLong())));
+        }
+    }
+
+    /**
+     * Restaura o usurio serializado, migrando filas antigas (LinkedList) para a fila fora
+     * do heap (recados) e para filas em blocos (mensagens de comunidade) e recalculando os
+     * contadores de mensagens no lidas ausentes em arquivos antigos.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (!(recados instanceof OffHeapMessageQueue)) {
+            recados = new OffHeapMessageQueue(recados);
+        }
+        if (!(mensagens instanceof ChunkedQueue)) {
+            mensagens = new ChunkedQueue<>(mensagens);
+        }
+        if (!(mensagensLidas instanceof ChunkedQueue)) {
+            mensagensLidas = new ChunkedQueue<>(mensagensLidas);
+        }
+        if (naoLidasPorComunidade == null) {
+            naoLidasPorComunidade = new HashMap<>();
+            for (CommunityMessage mensagem : mensagens) {
+                naoLidasPorComunidade.merge(mensagem.getComunidade(), 1, Integer::sum);
+            }
+        }
+    }
 }
\ No newline at end of file
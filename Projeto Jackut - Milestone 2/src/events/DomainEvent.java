@@ -0,0 +1,144 @@
+package events;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Evento de domnio publicado pelo {@code JackutService} aps cada mutao.
+ *
+ * <p>Os eventos so posies pr-alocadas do {@link EventRing} e so reaproveitados quando o
+ * anel d a volta: um assinante s pode usar o evento dentro de
+ * {@link EventHandler#aoReceber(DomainEvent, boolean)}; para guard-lo, use {@link #copiar()}.</p>
+ *
+ * <p>O significado de {@code login}, {@code alvo} e {@code texto} depende do tipo; ver {@link Tipo}.</p>
+ *
+ * <p>Num n do cluster, cada n publica as alteraes da sua partio: uma operao entre
+ * parties gera o evento nos dois ns envolvidos, e as compensaes de uma operao que
+ * falhou no meio geram os tipos de remoo e retirada.</p>
+ */
+public final class DomainEvent {
+
+    /**
+     * Tipos de evento, com o contedo de cada campo.
+     */
+    public enum Tipo {
+        /** login = novo usurio, texto = nome. */
+        USUARIO_CRIADO,
+        /** login = usurio, alvo = atributo, texto = novo valor. */
+        PERFIL_EDITADO,
+        /** login = quem convidou, alvo = convidado. */
+        AMIZADE_SOLICITADA,
+        /** login = quem aceitou, alvo = quem havia convidado. */
+        AMIZADE_CONFIRMADA,
+        /** login = f, alvo = dolo. */
+        IDOLO_ADICIONADO,
+        /** login = usurio, alvo = paquera. */
+        PAQUERA_ADICIONADA,
+        /** login = usurio, alvo = inimigo. */
+        INIMIGO_ADICIONADO,
+        /** login = remetente, alvo = destinatrio, texto = recado. */
+        RECADO_ENVIADO,
+        /** login = dono, alvo = comunidade, texto = descrio. */
+        COMUNIDADE_CRIADA,
+        /** login = novo membro, alvo = comunidade. */
+        MEMBRO_ADICIONADO,
+        /** login = remetente, alvo = comunidade, texto = mensagem. */
+        MENSAGEM_COMUNIDADE_ENVIADA,
+        /** login = usurio removido. */
+        USUARIO_REMOVIDO,
+        /** login = usurio, alvo = quem deixou de ser amigo (volta a ser convite pendente). */
+        AMIZADE_DESFEITA,
+        /** login = f, alvo = dolo. */
+        IDOLO_REMOVIDO,
+        /** login = usurio, alvo = paquera. */
+        PAQUERA_REMOVIDA,
+        /** login = remetente, alvo = destinatrio, texto = recado. */
+        RECADO_RETIRADO,
+        /** alvo = comunidade. */
+        COMUNIDADE_REMOVIDA,
+        /** login = membro, alvo = comunidade. */
+        MEMBRO_REMOVIDO,
+        /** login = remetente, alvo = comunidade, texto = mensagem. */
+        MENSAGEM_COMUNIDADE_RETIRADA,
+        /** texto = arquivo importado. */
+        DADOS_IMPORTADOS,
+        /** Nenhum campo. */
+        SISTEMA_ZERADO
+    }
+
+    // Sequncia da posio do anel: -1 enquanto o produtor a preenche, a sequncia depois
+    volatile long publicada = -1;
+    long sequencia;
+    long instante;
+    Tipo tipo;
+    String login;
+    String alvo;
+    String texto;
+
+    DomainEvent() {
+    }
+
+    void preencher(long sequencia, Tipo tipo, String login, String alvo, String texto) {
+        publicada = -1;
+        VarHandle.storeStoreFence();
+        this.sequencia = sequencia;
+        this.instante = System.currentTimeMillis();
+        this.tipo = tipo;
+        this.login = login;
+        this.alvo = alvo;
+        this.texto = texto;
+        publicada = sequencia;
+    }
+
+    void copiarDe(DomainEvent outro) {
+        sequencia = outro.sequencia;
+        instante = outro.instante;
+        tipo = outro.tipo;
+        login = outro.login;
+        alvo = outro.alvo;
+        texto = outro.texto;
+    }
+
+    /**
+     * @return Posio do evento no fluxo, comeando em 0 e sem lacunas
+     */
+    public long getSequencia() {
+        return sequencia;
+    }
+
+    /**
+     * @return Momento da publicao, em milissegundos desde a poca
+     */
+    public long getInstante() {
+        return instante;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getAlvo() {
+        return alvo;
+    }
+
+    public String getTexto() {
+        return texto;
+    }
+
+    /**
+     * @return Cpia independente do anel, que pode ser guardada aps o retorno do assinante
+     */
+    public DomainEvent copiar() {
+        DomainEvent copia = new DomainEvent();
+        copia.copiarDe(this);
+        return copia;
+    }
+
+    @Override
+    public String toString() {
+        return sequencia + " " + tipo + " " + login + " " + alvo + " " + texto;
+    }
+}
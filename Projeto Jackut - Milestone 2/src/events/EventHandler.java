@@ -0,0 +1,15 @@
+package events;
+
+/**
+ * Assinante do fluxo de eventos. Cada assinante roda em uma thread prpria e recebe
+ * os eventos em ordem de sequncia, em lotes.
+ */
+@FunctionalInterface
+public interface EventHandler {
+
+    /**
+     * @param evento Evento recebido; vlido apenas durante a chamada
+     * @param fimDoLote true no ltimo evento disponvel do lote atual (bom momento para descarregar buffers)
+     */
+    void aoReceber(DomainEvent evento, boolean fimDoLote) throws Exception;
+}
@@ -0,0 +1,193 @@
+package events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fluxo ordenado de {@link DomainEvent}s em um anel pr-alocado, com um produtor e vrios assinantes.
+ *
+ * <p>O produtor (o servio, dentro das suas operaes sincronizadas) s preenche a prxima
+ * posio do anel e avana o cursor: no aloca objetos nem acorda threads, ento publicar
+ * no depende dos assinantes. Cada assinante tem uma thread que l, em lote, tudo o que foi
+ * publicado desde a ltima leitura e ento marca a prpria sequncia.</p>
+ *
+ * <p>O produtor nunca espera: publica dentro das operaes do servio, e um assinante lento
+ * no pode segurar a trava delas. Um assinante que fica uma volta inteira atrs perde os eventos
+ * sobrescritos e salta para os mais antigos ainda no anel; a perda  contada em
+ * {@link Assinatura#getPerdidos()} e indica anel pequeno ou assinante lento. Para no ler uma
+ * posio enquanto ela  sobrescrita, o assinante copia o evento para um objeto prprio e
+ * confere a sequncia da posio antes e depois da cpia.</p>
+ */
+public class EventRing {
+
+    public static final int CAPACIDADE_PADRAO = 1 << 16;
+
+    // Pausa de um assinante sem eventos
+    private static final long ESPERA_NS = 100_000;
+
+    private final DomainEvent[] eventos;
+    private final int mascara;
+    // ltima sequncia publicada
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final List<Assinatura> assinaturas = new CopyOnWriteArrayList<>();
+    private long proximaSequencia;
+
+    /**
+     * @param capacidade Quantidade de posies do anel (potncia de 2)
+     */
+    public EventRing(int capacidade) {
+        if (capacidade <= 0 || Integer.bitCount(capacidade) != 1) {
+            throw new RuntimeException("Capacidade do anel deve ser potncia de 2.");
+        }
+        eventos = new DomainEvent[capacidade];
+        for (int i = 0; i < capacidade; i++) {
+            eventos[i] = new DomainEvent();
+        }
+        mascara = capacidade - 1;
+    }
+
+    /**
+     * Publica um evento, sobrescrevendo o mais antigo do anel. No espera pelos assinantes:
+     * o custo  o de preencher uma posio.
+     */
+    public synchronized void publicar(DomainEvent.Tipo tipo, String login, String alvo, String texto) {
+        long sequencia = proximaSequencia++;
+        eventos[(int) sequencia & mascara].preencher(sequencia, tipo, login, alvo, texto);
+        cursor.lazySet(sequencia);
+    }
+
+    /**
+     * Registra um assinante, que recebe os eventos publicados a partir de agora.
+     * @param nome Nome do assinante, usado no nome da thread
+     * @param tratador Cdigo executado para cada evento, na thread do assinante
+     * @return Assinatura, para acompanhar ou cancelar
+     */
+    public synchronized Assinatura assinar(String nome, EventHandler tratador) {
+        Assinatura assinatura = new Assinatura(nome, tratador, cursor.get());
+        assinaturas.add(assinatura);
+        assinatura.thread.start();
+        return assinatura;
+    }
+
+    /**
+     * @return Quantidade de eventos publicados desde a criao
+     */
+    public long getPublicados() {
+        return cursor.get() + 1;
+    }
+
+    public int getCapacidade() {
+        return eventos.length;
+    }
+
+    /**
+     * Assinante registrado no anel, com sua thread e seus contadores.
+     */
+    public final class Assinatura {
+
+        private final String nome;
+        private final EventHandler tratador;
+        // ltima sequncia processada
+        private final AtomicLong sequencia;
+        private final AtomicLong falhas = new AtomicLong();
+        private final AtomicLong perdidos = new AtomicLong();
+        // Cpia do evento entregue ao tratador, para que a posio possa ser sobrescrita durante a entrega
+        private final DomainEvent atual = new DomainEvent();
+        private final Thread thread;
+        private volatile boolean ativa = true;
+
+        private Assinatura(String nome, EventHandler tratador, long inicio) {
+            this.nome = nome;
+            this.tratador = tratador;
+            this.sequencia = new AtomicLong(inicio);
+            this.thread = new Thread(this::consumir, "jackut-eventos-" + nome);
+            this.thread.setDaemon(true);
+        }
+
+        private void consumir() {
+            long proxima = sequencia.get() + 1;
+            while (ativa) {
+                long disponivel = cursor.get();
+                if (disponivel < proxima) {
+                    LockSupport.parkNanos(ESPERA_NS);
+                    continue;
+                }
+                long s = proxima;
+                while (s <= disponivel) {
+                    long maisAntiga = cursor.get() - mascara;
+                    if (s < maisAntiga) {
+                        // Uma volta atrs: as posies at aqui j foram sobrescritas
+                        perdidos.addAndGet(maisAntiga - s);
+                        s = maisAntiga;
+                        if (s > disponivel) {
+                            break;
+                        }
+                    }
+                    if (copiar(s)) {
+                        try {
+                            tratador.aoReceber(atual, s == disponivel);
+                        } catch (Exception e) {
+                            falhas.incrementAndGet();
+                        }
+                    } else {
+                        perdidos.incrementAndGet();
+                    }
+                    s++;
+                }
+                sequencia.lazySet(s - 1);
+                proxima = s;
+            }
+        }
+
+        /**
+         * Copia a posio da sequncia para {@link #atual}.
+         * @return false se a posio foi sobrescrita antes ou durante a cpia
+         */
+        private boolean copiar(long s) {
+            DomainEvent posicao = eventos[(int) s & mascara];
+            if (posicao.publicada != s) {
+                return false;
+            }
+            atual.copiarDe(posicao);
+            VarHandle.acquireFence();
+            return posicao.publicada == s;
+        }
+
+        /**
+         * Interrompe a entrega deste assinante.
+         */
+        public void cancelar() {
+            ativa = false;
+            assinaturas.remove(this);
+            LockSupport.unpark(thread);
+        }
+
+        public String getNome() {
+            return nome;
+        }
+
+        /**
+         * @return Eventos publicados que este assinante ainda no processou
+         */
+        public long getPendentes() {
+            return cursor.get() - sequencia.get();
+        }
+
+        /**
+         * @return Eventos sobrescritos antes que este assinante os lesse
+         */
+        public long getPerdidos() {
+            return perdidos.get();
+        }
+
+        /**
+         * @return Eventos em que o tratador lanou exceo (o evento  descartado e a entrega segue)
+         */
+        public long getFalhas() {
+            return falhas.get();
+        }
+    }
+}
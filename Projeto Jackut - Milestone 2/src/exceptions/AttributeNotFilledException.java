@@ -2,6 +2,6 @@ package exceptions;
 
 public class AttributeNotFilledException extends RuntimeException {
     public AttributeNotFilledException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
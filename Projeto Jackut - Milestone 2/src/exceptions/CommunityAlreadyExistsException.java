@@ -2,6 +2,6 @@ package exceptions;
 
 public class CommunityAlreadyExistsException extends Exception {
   public CommunityAlreadyExistsException(String message) {
-    super(message);
+    super(message, null, false, false);
   }
 }
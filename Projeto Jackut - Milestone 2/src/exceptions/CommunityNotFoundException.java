@@ -2,6 +2,6 @@ package exceptions;
 
 public class CommunityNotFoundException extends RuntimeException {
     public CommunityNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
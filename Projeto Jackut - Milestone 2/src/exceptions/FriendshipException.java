@@ -2,7 +2,7 @@ package exceptions;
 
 public class FriendshipException extends RuntimeException {
   public FriendshipException(String message) {
-    super(message);
+    super(message, null, false, false);
   }
 }
 
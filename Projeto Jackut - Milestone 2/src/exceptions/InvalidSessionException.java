@@ -2,6 +2,6 @@ package exceptions;
 
 public class InvalidSessionException extends Exception {
     public InvalidSessionException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,13 @@
+package exceptions;
+
+/**
+ * Erro de validao sem tipo especfico (ex.: "Login invlido.").
+ *
+ * <p>Como as demais excees do pacote, no captura a pilha: so falhas esperadas, cuja
+ * mensagem  tudo o que interessa, e a captura da pilha dominaria o custo da chamada.</p>
+ */
+public class JackutException extends RuntimeException {
+    public JackutException(String message) {
+        super(message, null, false, false);
+    }
+}
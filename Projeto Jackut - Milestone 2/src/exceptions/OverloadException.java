@@ -0,0 +1,7 @@
+package exceptions;
+
+public class OverloadException extends RuntimeException {
+    public OverloadException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,7 @@
+package exceptions;
+
+public class RateLimitException extends RuntimeException {
+    public RateLimitException(String message) {
+        super(message, null, false, false);
+    }
+}
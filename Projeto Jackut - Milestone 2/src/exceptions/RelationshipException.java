@@ -2,6 +2,6 @@ package exceptions;
 
 public class RelationshipException extends RuntimeException {
     public RelationshipException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
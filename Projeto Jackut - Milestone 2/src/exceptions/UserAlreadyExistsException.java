@@ -2,6 +2,6 @@ package exceptions;
 
 public class UserAlreadyExistsException extends RuntimeException {
     public UserAlreadyExistsException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
\ No newline at end of file
@@ -2,6 +2,6 @@ package exceptions;
 
 public class UserAlreadyInCommunityException extends Exception {
     public UserAlreadyInCommunityException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
\ No newline at end of file
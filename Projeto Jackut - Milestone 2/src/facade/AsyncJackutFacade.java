@@ -0,0 +1,372 @@
+package facade;
+
+import network.VirtualThreads;
+import services.Resultado;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Variante assncrona da {@link JackutFacade}: toda operao devolve um {@link CompletableFuture}.
+ *
+ * <p>Cada usurio tem uma caixa de tarefas executada em srie (no estilo de um ator), em uma
+ * thread virtual quando disponvel: operaes do mesmo usurio terminam na ordem em que foram
+ * chamadas e operaes de usurios diferentes rodam em paralelo. Operaes identificadas por
+ * sesso usam a caixa do dono da sesso.</p>
+ *
+ * <p>Operaes entre dois usurios (amizade, dolo, paquera, inimigo, recado) ocupam as duas
+ * caixas: a tarefa entra na caixa do menor login e, quando chega a vez dela, entra na caixa do
+ * maior login e espera ali. Como toda espera vai do menor para o maior login, no h ciclo
+ * entre caixas. Operaes sem usurio (buscas, comunidades por nome, administrao) no tm
+ * ordem entre si.</p>
+ *
+ * <p>O {@code JackutService} continua com sua prpria sincronizao; esta fachada no muda o
+ * resultado de nenhuma operao, s a ordem e a concorrncia em que so submetidas.</p>
+ */
+public class AsyncJackutFacade {
+
+    // Tarefas executadas por vez antes de a caixa ceder a thread a outras caixas
+    private static final int LOTE = 64;
+
+    private final JackutFacade facade;
+    private final ExecutorService executor = VirtualThreads.novoExecutorPorTarefa();
+    private final Map<String, Caixa> caixas = new ConcurrentHashMap<>();
+    // Sesses j resolvidas, para no consultar o servio a cada operao (idSessao -> login)
+    private final Map<String, String> sessoes = new ConcurrentHashMap<>();
+
+    public AsyncJackutFacade() {
+        this(new JackutFacade());
+    }
+
+    /**
+     * @param facade Fachada sncrona que executa as operaes
+     */
+    public AsyncJackutFacade(JackutFacade facade) {
+        this.facade = facade;
+    }
+
+    /**
+     * Encerra as threads da fachada depois das operaes j submetidas.
+     */
+    public void encerrar() {
+        executor.shutdown();
+    }
+
+    public CompletableFuture<Void> zerarSistema() {
+        return semUsuario(() -> {
+            facade.zerarSistema();
+            sessoes.clear();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> criarUsuario(String login, String senha, String nome) {
+        return doUsuario(login, () -> {
+            facade.criarUsuario(login, senha, nome);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> criarComunidade(String idSessao, String nome, String descricao) {
+        return daSessao(idSessao, () -> {
+            facade.criarComunidade(idSessao, nome, descricao);
+            return null;
+        });
+    }
+
+    public CompletableFuture<String> getDescricaoComunidade(String nome) {
+        return semUsuario(() -> facade.getDescricaoComunidade(nome));
+    }
+
+    public CompletableFuture<String> getDonoComunidade(String nome) {
+        return semUsuario(() -> facade.getDonoComunidade(nome));
+    }
+
+    public CompletableFuture<Void> adicionarComunidade(String idSessao, String nomeComunidade) {
+        return daSessao(idSessao, () -> {
+            facade.adicionarComunidade(idSessao, nomeComunidade);
+            return null;
+        });
+    }
+
+    public CompletableFuture<String> getComunidades(String login) {
+        return doUsuario(login, () -> facade.getComunidades(login));
+    }
+
+    public CompletableFuture<String> getMembrosComunidade(String nome) {
+        return semUsuario(() -> facade.getMembrosComunidade(nome));
+    }
+
+    public CompletableFuture<String> abrirSessao(String login, String senha) {
+        return doUsuario(login, () -> {
+            String idSessao = facade.abrirSessao(login, senha);
+            sessoes.put(idSessao, login);
+            return idSessao;
+        });
+    }
+
+    public CompletableFuture<Void> editarPerfil(String idSessao, String atributo, String valor) {
+        return daSessao(idSessao, () -> {
+            facade.editarPerfil(idSessao, atributo, valor);
+            return null;
+        });
+    }
+
+    public CompletableFuture<String> getAtributoUsuario(String login, String atributo) {
+        return doUsuario(login, () -> facade.getAtributoUsuario(login, atributo));
+    }
+
+    public CompletableFuture<String> buscarUsuarios(String atributo, String valor, int inicio, int limite) {
+        return semUsuario(() -> facade.buscarUsuarios(atributo, valor, inicio, limite));
+    }
+
+    public CompletableFuture<String> buscarUsuariosPorPrefixo(String atributo, String prefixo, int inicio, int limite) {
+        return semUsuario(() -> facade.buscarUsuariosPorPrefixo(atributo, prefixo, inicio, limite));
+    }
+
+    public CompletableFuture<String> getAmigos(String login) {
+        return doUsuario(login, () -> facade.getAmigos(login));
+    }
+
+    public CompletableFuture<Void> enviarRecado(String idSessao, String destinatario, String mensagem) {
+        return daSessaoComOutro(idSessao, destinatario, () -> {
+            facade.enviarRecado(idSessao, destinatario, mensagem);
+            return null;
+        });
+    }
+
+    public CompletableFuture<String> lerRecado(String idSessao) {
+        return daSessao(idSessao, () -> facade.lerRecado(idSessao));
+    }
+
+    public CompletableFuture<String> lerRecados(String idSessao, int quantidade) {
+        return daSessao(idSessao, () -> facade.lerRecados(idSessao, quantidade));
+    }
+
+    public CompletableFuture<Integer> getNumeroRecados(String idSessao) {
+        return daSessao(idSessao, () -> facade.getNumeroRecados(idSessao));
+    }
+
+    public CompletableFuture<Void> enviarMensagem(String idSessao, String comunidade, String mensagem) {
+        return daSessao(idSessao, () -> {
+            facade.enviarMensagem(idSessao, comunidade, mensagem);
+            return null;
+        });
+    }
+
+    public CompletableFuture<String> lerMensagem(String idSessao) {
+        return daSessao(idSessao, () -> facade.lerMensagem(idSessao));
+    }
+
+    public CompletableFuture<String> lerMensagens(String idSessao, int quantidade) {
+        return daSessao(idSessao, () -> facade.lerMensagens(idSessao, quantidade));
+    }
+
+    public CompletableFuture<String> getMensagensArquivadas(String idSessao, int inicio, int limite) {
+        return daSessao(idSessao, () -> facade.getMensagensArquivadas(idSessao, inicio, limite));
+    }
+
+    public CompletableFuture<Integer> getNumeroMensagens(String idSessao) {
+        return daSessao(idSessao, () -> facade.getNumeroMensagens(idSessao));
+    }
+
+    public CompletableFuture<Integer> getNumeroMensagensComunidade(String idSessao, String comunidade) {
+        return daSessao(idSessao, () -> facade.getNumeroMensagensComunidade(idSessao, comunidade));
+    }
+
+    public CompletableFuture<Void> adicionarAmigo(String idSessao, String amigo) {
+        return daSessaoComOutro(idSessao, amigo, () -> {
+            facade.adicionarAmigo(idSessao, amigo);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> ehAmigo(String login, String amigo) {
+        return deDois(login, amigo, () -> facade.ehAmigo(login, amigo));
+    }
+
+    public CompletableFuture<Void> adicionarIdolo(String idSessao, String idolo) {
+        return daSessaoComOutro(idSessao, idolo, () -> {
+            facade.adicionarIdolo(idSessao, idolo);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> ehFa(String fa, String idolo) {
+        return doUsuario(fa, () -> facade.ehFa(fa, idolo));
+    }
+
+    public CompletableFuture<String> getFas(String login) {
+        return doUsuario(login, () -> facade.getFas(login));
+    }
+
+    public CompletableFuture<Void> adicionarPaquera(String idSessao, String paquera) {
+        return daSessaoComOutro(idSessao, paquera, () -> {
+            facade.adicionarPaquera(idSessao, paquera);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> ehPaquera(String idSessao, String paquera) {
+        return daSessao(idSessao, () -> facade.ehPaquera(idSessao, paquera));
+    }
+
+    public CompletableFuture<String> getPaqueras(String idSessao) {
+        return daSessao(idSessao, () -> facade.getPaqueras(idSessao));
+    }
+
+    public CompletableFuture<Void> adicionarInimigo(String idSessao, String inimigo) {
+        return daSessaoComOutro(idSessao, inimigo, () -> {
+            facade.adicionarInimigo(idSessao, inimigo);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> removerUsuario(String idSessao) {
+        String login = getLogin(idSessao);
+        return daSessao(idSessao, () -> {
+            facade.removerUsuario(idSessao);
+            sessoes.values().removeIf(dono -> dono.equals(login));
+            return null;
+        });
+    }
+
+    public CompletableFuture<Long> importarDados(String arquivo) {
+        return semUsuario(() -> facade.importarDados(arquivo));
+    }
+
+    public CompletableFuture<Long> exportarDados(String prefixo, boolean comprimir, long tamanhoParte) {
+        return semUsuario(() -> facade.exportarDados(prefixo, comprimir, tamanhoParte));
+    }
+
+    public CompletableFuture<Void> encerrarSistema() {
+        return semUsuario(() -> {
+            facade.encerrarSistema();
+            return null;
+        });
+    }
+
+    /**
+     * @return Login do dono da sesso, ou {@code null} se a sesso no existir
+     */
+    private String getLogin(String idSessao) {
+        if (idSessao == null) {
+            return null;
+        }
+        String login = sessoes.get(idSessao);
+        if (login == null) {
+            Resultado<String> resultado = facade.jackutService.tentarGetLoginDaSessao(idSessao);
+            if (resultado.isOk()) {
+                login = resultado.getValor();
+                sessoes.put(idSessao, login);
+            }
+        }
+        return login;
+    }
+
+    private <T> CompletableFuture<T> semUsuario(Supplier<T> operacao) {
+        return CompletableFuture.supplyAsync(operacao, executor);
+    }
+
+    private <T> CompletableFuture<T> doUsuario(String login, Supplier<T> operacao) {
+        if (login == null) {
+            return semUsuario(operacao); // vai falhar na validao da fachada
+        }
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        enfileirar(login, () -> completar(futuro, operacao));
+        return futuro;
+    }
+
+    private <T> CompletableFuture<T> daSessao(String idSessao, Supplier<T> operacao) {
+        return doUsuario(getLogin(idSessao), operacao);
+    }
+
+    private <T> CompletableFuture<T> daSessaoComOutro(String idSessao, String outro, Supplier<T> operacao) {
+        return deDois(getLogin(idSessao), outro, operacao);
+    }
+
+    /**
+     * Executa a operao com as caixas dos dois usurios ocupadas, entrando primeiro na do menor login.
+     */
+    private <T> CompletableFuture<T> deDois(String login, String outro, Supplier<T> operacao) {
+        if (login == null || outro == null || login.equals(outro)) {
+            return doUsuario(login != null ? login : outro, operacao);
+        }
+        String primeiro = login.compareTo(outro) < 0 ? login : outro;
+        String segundo = primeiro.equals(login) ? outro : login;
+        CompletableFuture<T> futuro = new CompletableFuture<>();
+        enfileirar(primeiro, () -> {
+            CompletableFuture<Void> concluida = new CompletableFuture<>();
+            enfileirar(segundo, () -> {
+                completar(futuro, operacao);
+                concluida.complete(null);
+            });
+            concluida.join(); // mantm a caixa do primeiro ocupada at a operao terminar
+        });
+        return futuro;
+    }
+
+    private static <T> void completar(CompletableFuture<T> futuro, Supplier<T> operacao) {
+        try {
+            futuro.complete(operacao.get());
+        } catch (RuntimeException e) {
+            futuro.completeExceptionally(e);
+        }
+    }
+
+    private void enfileirar(String login, Runnable tarefa) {
+        while (!caixas.computeIfAbsent(login, Caixa::new).enviar(tarefa)) {
+            // A caixa acabou de ser desativada; a prxima volta cria outra
+        }
+    }
+
+    /**
+     * Fila de tarefas de um usurio, executadas uma de cada vez. Quando esvazia, a caixa sai
+     * do mapa; uma tarefa nova cria outra caixa, que s passa a existir depois que a anterior
+     * terminou tudo, preservando a ordem.
+     */
+    private final class Caixa implements Runnable {
+
+        private final String login;
+        private final ArrayDeque<Runnable> tarefas = new ArrayDeque<>();
+        private boolean agendada;
+        private boolean desativada;
+
+        Caixa(String login) {
+            this.login = login;
+        }
+
+        synchronized boolean enviar(Runnable tarefa) {
+            if (desativada) {
+                return false;
+            }
+            tarefas.add(tarefa);
+            if (!agendada) {
+                agendada = true;
+                executor.execute(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            for (int executadas = 0; executadas < LOTE; executadas++) {
+                Runnable tarefa;
+                synchronized (this) {
+                    tarefa = tarefas.poll();
+                    if (tarefa == null) {
+                        desativada = true;
+                        caixas.remove(login, this);
+                        return;
+                    }
+                }
+                tarefa.run();
+            }
+            executor.execute(this); // cede a thread e continua depois, ainda agendada
+        }
+    }
+}
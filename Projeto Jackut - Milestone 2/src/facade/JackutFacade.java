@@ -2,14 +2,34 @@ package facade;
 
 import exceptions.*;
 import services.JackutService;
+import java.io.File;
 import java.util.*;
 
 /**
  * Fachada principal do sistema Jackut que expe as operaes para o EasyAccept.
  * Traduz chamadas dos testes para operaes internas do sistema.
+ *
+ * <p>As operaes mais frequentes usam a API de {@link services.Resultado} do servio e s
+ * lanam exceo na sada, com as excees pr-alocadas e sem pilha de cada falha.</p>
  */
 public class JackutFacade {
-    private final JackutService jackutService = new JackutService();
+    protected final JackutService jackutService;
+
+    /**
+     * Cria a fachada com os dados no diretrio de trabalho.
+     */
+    public JackutFacade() {
+        jackutService = new JackutService();
+    }
+
+    /**
+     * Cria a fachada com os dados em um diretrio prprio, para rodar vrias instncias
+     * isoladas no mesmo processo.
+     * @param diretorio Diretrio dos dados (criado se no existir)
+     */
+    public JackutFacade(File diretorio) {
+        jackutService = new JackutService(diretorio);
+    }
 
     /**
      * Reinicia o sistema, removendo todos os usurios e dados persistentes.
@@ -34,12 +54,21 @@ public class JackutFacade {
         try {
             jackutService.criarComunidade(idSessao, nome, descricao);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         } catch (CommunityAlreadyExistsException e) {
-            throw new RuntimeException("Comunidade com esse nome j existe.");
+            throw new JackutException("Comunidade com esse nome j existe.");
         }
     }
 
+    /**
+     * Login dono de uma sesso, sem passar pela trava do servio. Usado pelo controle de
+     * admisso da rede; no  um comando.
+     * @return Login, ou {@code null} se a sesso no existir
+     */
+    public String resolverSessao(String idSessao) {
+        return jackutService.resolverSessao(idSessao);
+    }
+
     /**
      * Obtm a descrio de uma comunidade.
      */
@@ -47,7 +76,7 @@ public class JackutFacade {
         try {
             return jackutService.getDescricaoComunidade(nome);
         } catch (CommunityNotFoundException e) {
-            throw new RuntimeException("Comunidade no existe.");
+            throw new JackutException("Comunidade no existe.");
         }
     }
 
@@ -58,7 +87,7 @@ public class JackutFacade {
         try {
             return jackutService.getDonoComunidade(nome);
         } catch (CommunityNotFoundException e) {
-            throw new RuntimeException("Comunidade no existe.");
+            throw new JackutException("Comunidade no existe.");
         }
     }
 
@@ -72,11 +101,11 @@ public class JackutFacade {
         try {
             jackutService.adicionarUsuarioAComunidade(idSessao, nomeComunidade);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         } catch (CommunityNotFoundException e) {
-            throw new RuntimeException("Comunidade no existe.");
+            throw new JackutException("Comunidade no existe.");
         } catch (UserAlreadyInCommunityException e) {
-            throw new RuntimeException("Usuario j faz parte dessa comunidade.");
+            throw new JackutException("Usuario j faz parte dessa comunidade.");
         }
     }
 
@@ -89,7 +118,7 @@ public class JackutFacade {
         try {
             return jackutService.getComunidadesDoUsuario(login);
         } catch (UserNotFoundException e) {
-            throw new RuntimeException("Usurio no cadastrado.");
+            throw new JackutException("Usurio no cadastrado.");
         }
     }
 
@@ -97,7 +126,7 @@ public class JackutFacade {
         try {
             return jackutService.getMembrosComunidade(nome);
         } catch (CommunityNotFoundException e) {
-            throw new RuntimeException("Comunidade no existe.");
+            throw new JackutException("Comunidade no existe.");
         }
     }
 
@@ -107,7 +136,7 @@ public class JackutFacade {
      * Corresponde ao comando ##abrirSessao nos testes.
      */
     public String abrirSessao(String login, String senha) {
-        return jackutService.abrirSessao(login, senha);
+        return jackutService.tentarAbrirSessao(login, senha).obter();
     }
 
     /**
@@ -119,7 +148,7 @@ public class JackutFacade {
      */
     public void editarPerfil(String idSessao, String atributo, String valor) {
         if (idSessao == null || idSessao.isEmpty()) {
-            throw new RuntimeException("Usurio no cadastrado.");
+            throw new JackutException("Usurio no cadastrado.");
         }
         jackutService.editarPerfil(idSessao, atributo, valor);
     }
@@ -130,7 +159,31 @@ public class JackutFacade {
      * Corresponde ao comando ##getAtributoUsuario nos testes.
      */
     public String getAtributoUsuario(String login, String atributo) {
-        return jackutService.getAtributoUsuario(login, atributo);
+        return jackutService.tentarGetAtributoUsuario(login, atributo).obter();
+    }
+
+    /**
+     * Busca usurios pelo valor exato de um atributo de perfil.
+     * @param atributo Nome do atributo
+     * @param valor Valor procurado
+     * @param inicio Posio do primeiro resultado
+     * @param limite Quantidade mxima de resultados
+     * @return Logins no formato {login1,login2}
+     */
+    public String buscarUsuarios(String atributo, String valor, int inicio, int limite) {
+        return "{" + String.join(",", jackutService.buscarUsuariosPorAtributo(atributo, valor, inicio, limite)) + "}";
+    }
+
+    /**
+     * Busca usurios cujo atributo de perfil comea com o prefixo informado.
+     * @param atributo Nome do atributo
+     * @param prefixo Prefixo procurado
+     * @param inicio Posio do primeiro resultado
+     * @param limite Quantidade mxima de resultados
+     * @return Logins no formato {login1,login2}
+     */
+    public String buscarUsuariosPorPrefixo(String atributo, String prefixo, int inicio, int limite) {
+        return "{" + String.join(",", jackutService.buscarUsuariosPorPrefixo(atributo, prefixo, inicio, limite)) + "}";
     }
 
     /**
@@ -154,7 +207,7 @@ public class JackutFacade {
      * Corresponde ao comando ##enviarRecado nos testes.
      */
     public void enviarRecado(String idSessao, String destinatario, String mensagem) {
-        jackutService.enviarRecado(idSessao, destinatario, mensagem);
+        jackutService.tentarEnviarRecado(idSessao, destinatario, mensagem).obter();
     }
 
     /**
@@ -163,28 +216,84 @@ public class JackutFacade {
      * Corresponde ao comando ##lerRecado nos testes.
      */
     public String lerRecado(String idSessao) {
-        return jackutService.lerRecado(idSessao);
+        return jackutService.tentarLerRecado(idSessao).obter();
+    }
+
+
+    /**
+     * L at {@code quantidade} recados em uma nica chamada.
+     * @param idSessao ID da sesso
+     * @param quantidade Nmero mximo de recados
+     * @return Recados no formato {recado1,recado2}; {} se no houver
+     */
+    public String lerRecados(String idSessao, int quantidade) {
+        return "{" + String.join(",", jackutService.lerRecados(idSessao, quantidade)) + "}";
     }
 
+    /**
+     * @param idSessao ID da sesso
+     * @return Quantidade de recados no lidos
+     */
+    public int getNumeroRecados(String idSessao) {
+        return jackutService.getNumeroRecados(idSessao);
+    }
 
     public void enviarMensagem(String idSessao, String comunidade, String mensagem) {
         try {
             jackutService.enviarMensagem(idSessao, comunidade, mensagem);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         } catch (CommunityNotFoundException e) {
-            throw new RuntimeException(e.getMessage());
+            throw new JackutException(e.getMessage());
         }
     }
 
     public String lerMensagem(String idSessao) {
+        return jackutService.tentarLerMensagem(idSessao).obter(); // Toda a lgica movida para o Service
+    }
+
+    /**
+     * L at {@code quantidade} mensagens de comunidade em uma nica chamada.
+     * @param idSessao ID da sesso
+     * @param quantidade Nmero mximo de mensagens
+     * @return Mensagens no formato {msg1,msg2}; {} se no houver
+     */
+    public String lerMensagens(String idSessao, int quantidade) {
         try {
-            return jackutService.lerMensagem(idSessao); // Toda a lgica movida para o Service
-        } catch (InvalidSessionException | NoMessagesException e) {
-            throw new RuntimeException(e.getMessage());
+            return "{" + String.join(",", jackutService.lerMensagens(idSessao, quantidade)) + "}";
+        } catch (InvalidSessionException e) {
+            throw new JackutException(e.getMessage());
         }
     }
 
+    /**
+     * Lista mensagens de comunidade j lidas e movidas para o arquivo em disco.
+     * @param idSessao ID da sesso
+     * @param inicio Posio da primeira mensagem
+     * @param limite Quantidade mxima de mensagens
+     * @return Mensagens no formato {msg1,msg2}
+     */
+    public String getMensagensArquivadas(String idSessao, int inicio, int limite) {
+        return "{" + String.join(",", jackutService.getMensagensArquivadas(idSessao, inicio, limite)) + "}";
+    }
+
+    /**
+     * @param idSessao ID da sesso
+     * @return Quantidade de mensagens de comunidade no lidas
+     */
+    public int getNumeroMensagens(String idSessao) {
+        return jackutService.getNumeroMensagens(idSessao);
+    }
+
+    /**
+     * @param idSessao ID da sesso
+     * @param comunidade Nome da comunidade
+     * @return Quantidade de mensagens no lidas daquela comunidade
+     */
+    public int getNumeroMensagensComunidade(String idSessao, String comunidade) {
+        return jackutService.getNumeroMensagensComunidade(idSessao, comunidade);
+    }
+
     /**
      * Adiciona ou confirma uma amizade entre usurios.
      * @param idSessao ID da sesso do usurio que est executando a ao
@@ -192,7 +301,7 @@ public class JackutFacade {
      * Corresponde ao comando ##adicionarAmigo nos testes.
      */
     public void adicionarAmigo(String idSessao, String amigo) {
-        jackutService.adicionarAmigo(idSessao, amigo);
+        jackutService.tentarAdicionarAmigo(idSessao, amigo).obter();
     }
 
     /**
@@ -201,7 +310,7 @@ public class JackutFacade {
      * Corresponde ao comando ##ehAmigo nos testes.
      */
     public boolean ehAmigo(String login, String amigo) {
-        return jackutService.ehAmigo(login, amigo);
+        return jackutService.tentarEhAmigo(login, amigo).obter();
     }
 
     //US8_1
@@ -211,11 +320,11 @@ public class JackutFacade {
         try {
             jackutService.adicionarIdolo(idSessao, idolo);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         } catch (UserNotFoundException e) {
-            throw new RuntimeException("Usurio no cadastrado.");
+            throw new JackutException("Usurio no cadastrado.");
         } catch (RelationshipException e) {
-            throw new RuntimeException(e.getMessage());
+            throw new JackutException(e.getMessage());
         }
     }
 
@@ -227,16 +336,42 @@ public class JackutFacade {
         return jackutService.getFas(login);
     }
 
+    // Rankings
+
+    /**
+     * @param quantidade Nmero mximo de usurios
+     * @return Usurios com mais fs, no formato {login:fs,...}
+     */
+    public String getUsuariosComMaisFas(int quantidade) {
+        return jackutService.getUsuariosComMaisFas(quantidade);
+    }
+
+    /**
+     * @param quantidade Nmero mximo de comunidades
+     * @return Comunidades com mais membros, no formato {nome:membros,...}
+     */
+    public String getMaioresComunidades(int quantidade) {
+        return jackutService.getMaioresComunidades(quantidade);
+    }
+
+    /**
+     * @param quantidade Nmero mximo de usurios
+     * @return Usurios que mais enviaram recados e mensagens de comunidade, no formato {login:envios,...}
+     */
+    public String getUsuariosMaisAtivos(int quantidade) {
+        return jackutService.getUsuariosMaisAtivos(quantidade);
+    }
+
     // Paquera
     public void adicionarPaquera(String idSessao, String paquera) {
         try {
             jackutService.adicionarPaquera(idSessao, paquera);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         } catch (UserNotFoundException e) {
-            throw new RuntimeException("Usurio no cadastrado.");
+            throw new JackutException("Usurio no cadastrado.");
         } catch (RelationshipException e) {
-            throw new RuntimeException(e.getMessage());
+            throw new JackutException(e.getMessage());
         }
     }
 
@@ -244,7 +379,7 @@ public class JackutFacade {
         try {
             return jackutService.ehPaquera(idSessao, paquera);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         }
     }
 
@@ -252,7 +387,7 @@ public class JackutFacade {
         try {
             return jackutService.getPaqueras(idSessao);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         }
     }
 
@@ -261,11 +396,11 @@ public class JackutFacade {
         try {
             jackutService.adicionarInimigo(idSessao, inimigo);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         } catch (UserNotFoundException e) {
-            throw new RuntimeException("Usurio no cadastrado.");
+            throw new JackutException("Usurio no cadastrado.");
         } catch (RelationshipException e) {
-            throw new RuntimeException(e.getMessage());
+            throw new JackutException(e.getMessage());
         }
     }
 
@@ -277,19 +412,62 @@ public class JackutFacade {
         try {
             jackutService.removerUsuario(idSessao);
         } catch (InvalidSessionException e) {
-            throw new RuntimeException("Sesso invlida ou expirada.");
+            throw new JackutException("Sesso invlida ou expirada.");
         } catch (UserNotFoundException e) {
-            throw new RuntimeException("Usurio no cadastrado.");
+            throw new JackutException("Usurio no cadastrado.");
         }
     }
 
     //US9_1
 
+    /**
+     * Importa em massa dados de um arquivo (usurios, perfis, relacionamentos e comunidades).
+     * @param arquivo Caminho do arquivo de importao
+     * @return Quantidade de registros importados
+     */
+    public long importarDados(String arquivo) {
+        return jackutService.importarDados(arquivo);
+    }
+
+    /**
+     * Exporta todos os dados para arquivos de texto, um registro por linha.
+     * @param prefixo Caminho e prefixo dos arquivos gerados
+     * @param comprimir true para comprimir as partes com GZIP
+     * @param tamanhoParte Tamanho aproximado de cada parte, em bytes
+     * @return Quantidade de registros exportados
+     */
+    public long exportarDados(String prefixo, boolean comprimir, long tamanhoParte) {
+        return jackutService.exportarDados(prefixo, comprimir, tamanhoParte);
+    }
+
+    /**
+     * Analisa o grafo de amizades (componentes conexos, agrupamento e graus) e grava o resultado
+     * no diretrio de anlises dos dados. Tarefa de administrao, no exposta pela rede.
+     * @return Nome do arquivo de resultado
+     */
+    public String analisarAmizades() {
+        return jackutService.analisarAmizades();
+    }
+
+    /**
+     * @return true quando todos os dados salvos j foram carregados
+     */
+    public boolean estaPronto() {
+        return jackutService.estaPronto();
+    }
+
+    /**
+     * @return Situao da carga dos dados salvos (progresso, na carga progressiva)
+     */
+    public String getProgressoCarga() {
+        return jackutService.getProgressoCarga();
+    }
+
     /**
      * Persiste todos os dados do sistema antes de encerrar.
      * Corresponde ao comando ##encerrarSistema nos testes.
      */
     public void encerrarSistema() {
-        jackutService.salvarDados();
+        jackutService.encerrarSistema();
     }
 }
\ No newline at end of file
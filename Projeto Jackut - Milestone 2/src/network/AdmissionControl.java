@@ -0,0 +1,213 @@
+package network;
+
+import exceptions.OverloadException;
+import exceptions.RateLimitException;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Controle de admisso dos comandos recebidos pela rede, aplicado pelo
+ * {@link CommandDispatcher} antes de qualquer trabalho do servio.
+ *
+ * <p>Dois mecanismos, nesta ordem:</p>
+ * <ul>
+ *   <li>Descarte por carga: o comando  recusado ({@link OverloadException}) se j h
+ *       comandos demais em andamento, ou se h algum em andamento e a latncia mdia
+ *       recente passou do limite. Sem nada em andamento o comando sempre entra, e a
+ *       latncia dele volta a alimentar a mdia.</li>
+ *   <li>Limite por chave: cada {@link ClasseOperacao} tem seu prprio balde de fichas por
+ *       login. A chave  o primeiro argumento do comando; quando  uma sesso conhecida, o
+ *       comando  cobrado do login dono dela, ento abrir vrias sesses no multiplica o
+ *       oramento. Sem ficha, o comando  recusado ({@link RateLimitException}). Comandos sem
+ *       sesso nem login s passam pelo descarte.</li>
+ * </ul>
+ * <p>Tudo  feito sem travas; os contadores ficam disponveis em {@link #getContadores()}.</p>
+ */
+public class AdmissionControl {
+
+    /**
+     * Classes de operao, cada uma com seu oramento.
+     */
+    public enum ClasseOperacao {
+        /** Abertura de sesso e criao de conta, por login. */
+        AUTENTICACAO,
+        /** Consultas. */
+        LEITURA,
+        /** Escritas sem difuso. */
+        ESCRITA,
+        /** Recados e mensagens de comunidade, que so persistidos e entregues a outros usurios. */
+        DIFUSAO
+    }
+
+    public static final int PROFUNDIDADE_MAXIMA_PADRAO = 256;
+    public static final long LATENCIA_MAXIMA_PADRAO_MS = 200;
+
+    private static final Set<String> AUTENTICACAO = Set.of("abrirSessao", "criarUsuario");
+    private static final Set<String> DIFUSAO = Set.of("enviarRecado", "enviarMensagem");
+    // Comandos cujo primeiro argumento no  sesso nem login
+    private static final Set<String> SEM_CHAVE = Set.of("getDescricaoComunidade",
+            "getDonoComunidade", "getMembrosComunidade", "buscarUsuarios", "buscarUsuariosPorPrefixo");
+
+    private final RateLimiter[] limites = new RateLimiter[ClasseOperacao.values().length];
+    private final LongAdder[] limitados = new LongAdder[ClasseOperacao.values().length];
+    private final LongAdder admitidos = new LongAdder();
+    private final LongAdder descartadosPorProfundidade = new LongAdder();
+    private final LongAdder descartadosPorLatencia = new LongAdder();
+    private final AtomicInteger emAndamento = new AtomicInteger();
+    // Mdia mvel exponencial; atualizaes concorrentes podem se sobrepor, o que basta para um sinal de carga
+    private volatile long latenciaMediaNs;
+    private volatile int profundidadeMaxima = PROFUNDIDADE_MAXIMA_PADRAO;
+    private volatile long latenciaMaximaNs = LATENCIA_MAXIMA_PADRAO_MS * 1_000_000;
+    // Sesso -> login; sem ele, cada sesso tem seu balde
+    private volatile Function<String, String> resolvedorSessao;
+
+    /**
+     * Cria o controle com os oramentos padro por segundo (rajada): autenticao 5 (10),
+     * leitura 1000 (2000), escrita 50 (100) e difuso 5 (20).
+     */
+    public AdmissionControl() {
+        definirLimite(ClasseOperacao.AUTENTICACAO, 5, 10);
+        definirLimite(ClasseOperacao.LEITURA, 1000, 2000);
+        definirLimite(ClasseOperacao.ESCRITA, 50, 100);
+        definirLimite(ClasseOperacao.DIFUSAO, 5, 20);
+        for (int i = 0; i < limitados.length; i++) {
+            limitados[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Substitui o oramento de uma classe; os baldes existentes da classe so descartados.
+     * @param porSegundo Requisies por segundo, por login
+     * @param rajada Requisies seguidas aceitas por quem estava ocioso
+     */
+    public void definirLimite(ClasseOperacao classe, double porSegundo, int rajada) {
+        limites[classe.ordinal()] = new RateLimiter(porSegundo, rajada);
+    }
+
+    /**
+     * @param profundidade Comandos em andamento a partir dos quais novos so descartados
+     * @param latenciaMaximaMs Latncia mdia acima da qual novos comandos so descartados
+     */
+    public void definirLimitesDeCarga(int profundidade, long latenciaMaximaMs) {
+        this.profundidadeMaxima = profundidade;
+        this.latenciaMaximaNs = latenciaMaximaMs * 1_000_000;
+    }
+
+    /**
+     * @param resolvedor Devolve o login dono de uma sesso, ou {@code null} se no for sesso
+     */
+    void setResolvedorSessao(Function<String, String> resolvedor) {
+        this.resolvedorSessao = resolvedor;
+    }
+
+    /**
+     * @return Classe de operao do comando
+     */
+    public static ClasseOperacao classificar(String comando) {
+        if (AUTENTICACAO.contains(comando)) {
+            return ClasseOperacao.AUTENTICACAO;
+        }
+        if (DIFUSAO.contains(comando)) {
+            return ClasseOperacao.DIFUSAO;
+        }
+        return CommandDispatcher.LEITURAS.contains(comando) ? ClasseOperacao.LEITURA : ClasseOperacao.ESCRITA;
+    }
+
+    /**
+     * Decide se o comando entra. Se entrar, {@link #concluir(long)} deve ser chamado ao final.
+     * @return Instante de entrada, para {@link #concluir(long)}
+     * @throws OverloadException Se o sistema estiver sobrecarregado
+     * @throws RateLimitException Se a sesso ou o login excedeu o oramento da classe
+     */
+    long admitir(String comando, List<String> argumentos) {
+        int andamento = emAndamento.incrementAndGet();
+        if (andamento > profundidadeMaxima) {
+            emAndamento.decrementAndGet();
+            descartadosPorProfundidade.increment();
+            throw new OverloadException("Sistema sobrecarregado, tente novamente.");
+        }
+        if (andamento > 1 && latenciaMediaNs > latenciaMaximaNs) {
+            emAndamento.decrementAndGet();
+            descartadosPorLatencia.increment();
+            throw new OverloadException("Sistema sobrecarregado, tente novamente.");
+        }
+
+        long agora = System.nanoTime();
+        if (!argumentos.isEmpty() && argumentos.get(0) != null && !SEM_CHAVE.contains(comando)) {
+            ClasseOperacao classe = classificar(comando);
+            if (!limites[classe.ordinal()].tentarAdquirir(chave(argumentos.get(0)), agora)) {
+                emAndamento.decrementAndGet();
+                limitados[classe.ordinal()].increment();
+                throw new RateLimitException("Limite de requisies excedido, tente novamente mais tarde.");
+            }
+        }
+        admitidos.increment();
+        return agora;
+    }
+
+    /**
+     * @return Login dono da sesso, ou o prprio argumento se no for uma sesso conhecida
+     */
+    private String chave(String argumento) {
+        Function<String, String> resolvedor = resolvedorSessao;
+        String login = resolvedor == null ? null : resolvedor.apply(argumento);
+        return login == null ? argumento : login;
+    }
+
+    /**
+     * @param inicio Valor devolvido por {@link #admitir(String, List)}
+     */
+    void concluir(long inicio) {
+        long latencia = System.nanoTime() - inicio;
+        long media = latenciaMediaNs;
+        latenciaMediaNs = media + (latencia - media) / 8;
+        emAndamento.decrementAndGet();
+    }
+
+    public long getAdmitidos() {
+        return admitidos.sum();
+    }
+
+    public long getLimitados(ClasseOperacao classe) {
+        return limitados[classe.ordinal()].sum();
+    }
+
+    public long getDescartadosPorProfundidade() {
+        return descartadosPorProfundidade.sum();
+    }
+
+    public long getDescartadosPorLatencia() {
+        return descartadosPorLatencia.sum();
+    }
+
+    public int getEmAndamento() {
+        return emAndamento.get();
+    }
+
+    /**
+     * @return Latncia mdia recente, em milissegundos
+     */
+    public double getLatenciaMediaMs() {
+        return latenciaMediaNs / 1e6;
+    }
+
+    /**
+     * @return Contadores em texto, um por linha ({@code nome=valor})
+     */
+    public String getContadores() {
+        StringBuilder texto = new StringBuilder();
+        texto.append("admitidos=").append(getAdmitidos()).append('\n');
+        for (ClasseOperacao classe : ClasseOperacao.values()) {
+            texto.append("limitados.").append(classe.name().toLowerCase()).append('=')
+                    .append(getLimitados(classe)).append('\n');
+        }
+        texto.append("descartados.profundidade=").append(getDescartadosPorProfundidade()).append('\n');
+        texto.append("descartados.latencia=").append(getDescartadosPorLatencia()).append('\n');
+        texto.append("emAndamento=").append(getEmAndamento()).append('\n');
+        texto.append(String.format(Locale.ROOT, "latenciaMediaMs=%.3f", getLatenciaMediaMs()));
+        return texto.toString();
+    }
+}
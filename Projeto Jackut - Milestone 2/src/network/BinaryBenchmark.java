@@ -0,0 +1,77 @@
+package network;
+
+import facade.JackutFacade;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Compara a vazo do protocolo binrio com e sem pipelining, usando operaes pequenas
+ * ({@code ehAmigo}, {@code ehFa}, {@code getAtributoUsuario}).
+ *
+ * <p>Sem pipelining, cada comando espera a resposta do anterior. Com pipelining, at
+ * {@code janela} comandos ficam em trnsito na mesma conexo.</p>
+ *
+ * <p>Uso: {@code BinaryBenchmark [operacoes] [janela]}. O servidor  iniciado no prprio
+ * processo, numa porta livre, usando os dados do diretrio atual (que so zerados).</p>
+ */
+public class BinaryBenchmark {
+
+    private static final int USUARIOS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int operacoes = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int janela = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+        JackutFacade facade = new JackutFacade();
+        facade.zerarSistema(); // administrao no  exposta pela rede
+        JackutBinaryServer servidor = new JackutBinaryServer(facade, 0);
+        servidor.iniciar();
+        try (JackutBinaryClient cliente = new JackutBinaryClient("localhost", servidor.getPorta())) {
+            preparar(cliente);
+
+            medir("aquecimento", cliente, operacoes / 10, 1);
+            medir("sem pipelining", cliente, operacoes, 1);
+            medir("com pipelining (janela " + janela + ")", cliente, operacoes, janela);
+        } finally {
+            servidor.parar();
+        }
+    }
+
+    private static void preparar(JackutBinaryClient cliente) throws Exception {
+        String[] sessoes = new String[USUARIOS];
+        for (int i = 0; i < USUARIOS; i++) {
+            cliente.executar("criarUsuario", "bench" + i, "senha", "Usuario " + i);
+            sessoes[i] = cliente.executar("abrirSessao", "bench" + i, "senha");
+            cliente.executar("editarPerfil", sessoes[i], "cidade", "Cidade " + i);
+        }
+        for (int i = 1; i < USUARIOS; i += 2) {
+            cliente.executar("adicionarAmigo", sessoes[i], "bench0");
+            cliente.executar("adicionarAmigo", sessoes[0], "bench" + i);
+            cliente.executar("adicionarIdolo", sessoes[i], "bench0");
+        }
+    }
+
+    private static void medir(String rotulo, JackutBinaryClient cliente, int operacoes, int janela) throws Exception {
+        Semaphore emTransito = new Semaphore(janela);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < operacoes; i++) {
+            String alvo = "bench" + (i % USUARIOS);
+            emTransito.acquire();
+            CompletableFuture<String> resultado;
+            switch (i % 3) {
+                case 0: resultado = cliente.enviar("ehAmigo", "bench0", alvo); break;
+                case 1: resultado = cliente.enviar("ehFa", alvo, "bench0"); break;
+                default: resultado = cliente.enviar("getAtributoUsuario", alvo, "cidade");
+            }
+            resultado.whenComplete((valor, erro) -> emTransito.release());
+            if (janela == 1) {
+                resultado.join();
+            }
+        }
+        emTransito.acquire(janela); // espera as respostas restantes
+        emTransito.release(janela);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("%-32s %8d ops em %6.2f s: %,10.0f ops/s%n", rotulo, operacoes, segundos, operacoes / segundos);
+    }
+}
@@ -0,0 +1,206 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formato dos quadros do protocolo binrio do Jackut.
+ *
+ * <p>Todo quadro comea com um {@code int} com o tamanho do restante do quadro.
+ * Inteiros so big-endian e textos so UTF-8 precedidos do tamanho em bytes
+ * (tamanho -1 representa {@code null}).</p>
+ * <pre>
+ * requisio: [int tamanho][int id][short comando][short nArgs]([int n][bytes])*
+ * resposta:   [int tamanho][int id][byte status][int n][bytes]
+ * </pre>
+ *
+ * <p>Cada comando tem um cdigo fixo, definido na tabela abaixo: cdigos no mudam entre
+ * verses e nunca so reaproveitados, ento um comando novo recebe um cdigo novo e um
+ * comando removido deixa o seu cdigo vago. O id  escolhido pelo cliente e devolvido na
+ * resposta, o que permite enviar vrios comandos seguidos na mesma conexo sem esperar
+ * as respostas; o servidor responde na ordem em que os comandos chegaram.</p>
+ */
+public final class BinaryProtocol {
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERRO = 1;
+
+    /** Primeiro comando de uma conexo com servidor que exige credencial; leva a credencial. */
+    public static final int CODIGO_AUTENTICAR = 0;
+
+    /** Maior quadro aceito; acima disso a conexo  encerrada. */
+    public static final int TAMANHO_MAXIMO = 16 * 1024 * 1024;
+
+    private static final Map<String, Integer> CODIGOS = new HashMap<>();
+    private static final Map<Integer, String> COMANDOS = new HashMap<>();
+
+    static {
+        // Autenticao da conexo (ver JackutBinaryServer), tratada pelo prprio servidor
+        registrar(CODIGO_AUTENTICAR, "autenticar");
+
+        // Fachada (1-99)
+        registrar(1, "zerarSistema");
+        registrar(2, "criarUsuario");
+        registrar(3, "abrirSessao");
+        registrar(4, "editarPerfil");
+        registrar(5, "getAtributoUsuario");
+        registrar(6, "getAmigos");
+        registrar(7, "adicionarAmigo");
+        registrar(8, "ehAmigo");
+        registrar(9, "enviarRecado");
+        registrar(10, "lerRecado");
+        registrar(11, "criarComunidade");
+        registrar(12, "getDescricaoComunidade");
+        registrar(13, "getDonoComunidade");
+        registrar(14, "getMembrosComunidade");
+        registrar(15, "adicionarComunidade");
+        registrar(16, "getComunidades");
+        registrar(17, "enviarMensagem");
+        registrar(18, "lerMensagem");
+        registrar(19, "adicionarIdolo");
+        registrar(20, "ehFa");
+        registrar(21, "getFas");
+        registrar(22, "adicionarPaquera");
+        registrar(23, "ehPaquera");
+        registrar(24, "getPaqueras");
+        registrar(25, "adicionarInimigo");
+        registrar(26, "removerUsuario");
+        registrar(27, "encerrarSistema");
+        registrar(28, "buscarUsuarios");
+        registrar(29, "buscarUsuariosPorPrefixo");
+        registrar(30, "lerRecados");
+        registrar(31, "getNumeroRecados");
+        registrar(32, "lerMensagens");
+        registrar(33, "getNumeroMensagens");
+        registrar(34, "getNumeroMensagensComunidade");
+        registrar(35, "getMensagensArquivadas");
+        registrar(36, "importarDados");
+        registrar(37, "exportarDados");
+        registrar(38, "estaPronto");
+        registrar(39, "getProgressoCarga");
+        registrar(40, "getUsuariosComMaisFas");
+        registrar(41, "getMaioresComunidades");
+        registrar(42, "getUsuariosMaisAtivos");
+        // 43: analisarAmizades, retirado da rede
+
+        // Operaes de partio do ClusterNode (100-199)
+        registrar(100, "getLoginDaSessao");
+        registrar(101, "getRelacoes");
+        registrar(102, "registrarSolicitacao");
+        registrar(103, "registrarAmizade");
+        registrar(104, "registrarIdolo");
+        registrar(105, "registrarFa");
+        registrar(106, "registrarPaquera");
+        registrar(107, "registrarInimigo");
+        registrar(108, "entregarRecado");
+        registrar(109, "registrarAtividade");
+        registrar(110, "criarComunidadeRemota");
+        registrar(111, "adicionarMembroRemoto");
+        registrar(112, "registrarComunidade");
+        registrar(113, "getLoginsMembros");
+        registrar(114, "entregarMensagem");
+        registrar(115, "getNumeroMensagensComunidadeRemota");
+        registrar(116, "buscarUsuariosCodificados");
+        registrar(117, "buscarUsuariosPorPrefixoComValores");
+        registrar(118, "removerReferencias");
+        registrar(119, "esquecerComunidades");
+        registrar(120, "desfazerAmizade");
+        registrar(121, "desfazerIdolo");
+        registrar(122, "desfazerPaquera");
+        registrar(123, "retirarRecado");
+        registrar(124, "desfazerComunidadeRemota");
+        registrar(125, "removerMembroRemoto");
+        registrar(126, "retirarMensagem");
+        registrar(127, "getRankingCodificado");
+    }
+
+    private BinaryProtocol() {
+    }
+
+    private static void registrar(int codigo, String comando) {
+        if (COMANDOS.put(codigo, comando) != null || CODIGOS.put(comando, codigo) != null) {
+            throw new IllegalStateException("Cdigo ou comando repetido: " + codigo + " " + comando);
+        }
+    }
+
+    /**
+     * @param comando Nome do comando
+     * @return Cdigo fixo do comando, ou -1 se ele no existir no protocolo
+     */
+    public static int getCodigo(String comando) {
+        Integer codigo = CODIGOS.get(comando);
+        return codigo == null ? -1 : codigo;
+    }
+
+    /**
+     * @param codigo Cdigo recebido
+     * @return Nome do comando, ou {@code null} se o cdigo no estiver atribudo
+     */
+    public static String getComando(int codigo) {
+        return COMANDOS.get(codigo);
+    }
+
+    /**
+     * Monta um quadro de requisio completo, pronto para envio.
+     */
+    public static ByteBuffer requisicao(int id, int comando, List<String> argumentos) {
+        byte[][] bytes = new byte[argumentos.size()][];
+        int tamanho = 4 + 2 + 2;
+        for (int i = 0; i < bytes.length; i++) {
+            String argumento = argumentos.get(i);
+            bytes[i] = argumento == null ? null : argumento.getBytes(StandardCharsets.UTF_8);
+            tamanho += 4 + (bytes[i] == null ? 0 : bytes[i].length);
+        }
+        ByteBuffer quadro = ByteBuffer.allocate(4 + tamanho);
+        quadro.putInt(tamanho).putInt(id).putShort((short) comando).putShort((short) bytes.length);
+        for (byte[] argumento : bytes) {
+            if (argumento == null) {
+                quadro.putInt(-1);
+            } else {
+                quadro.putInt(argumento.length).put(argumento);
+            }
+        }
+        quadro.flip();
+        return quadro;
+    }
+
+    /**
+     * Monta um quadro de resposta completo, pronto para envio.
+     */
+    public static ByteBuffer resposta(int id, byte status, String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer quadro = ByteBuffer.allocate(4 + 4 + 1 + 4 + bytes.length);
+        quadro.putInt(4 + 1 + 4 + bytes.length).putInt(id).put(status).putInt(bytes.length).put(bytes);
+        quadro.flip();
+        return quadro;
+    }
+
+    /**
+     * L os argumentos de uma requisio. O buffer deve estar posicionado logo aps o cdigo do comando.
+     */
+    static List<String> lerArgumentos(ByteBuffer quadro) {
+        int quantidade = quadro.getShort() & 0xFFFF;
+        List<String> argumentos = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            argumentos.add(lerTexto(quadro));
+        }
+        return argumentos;
+    }
+
+    static String lerTexto(ByteBuffer quadro) {
+        int tamanho = quadro.getInt();
+        if (tamanho == -1) {
+            return null;
+        }
+        if (tamanho < 0 || tamanho > quadro.remaining()) {
+            throw new RuntimeException("Quadro invlido.");
+        }
+        String texto = new String(quadro.array(), quadro.arrayOffset() + quadro.position(), tamanho, StandardCharsets.UTF_8);
+        quadro.position(quadro.position() + tamanho);
+        return texto;
+    }
+}
@@ -0,0 +1,82 @@
+package network;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Sobe um cluster local para testes: uma JVM por {@link ClusterNode}, cada uma com seu
+ * prprio diretrio de dados ({@code diretorio/no-0}, {@code diretorio/no-1}, ...).
+ *
+ * <p>Uso: {@code ClusterLauncher [nos] [portaInicial] [diretorio]}. Quando todos os ns
+ * esto aceitando conexes, imprime o valor da propriedade {@value ClusterRouter#PROPRIEDADE_NOS}
+ * para usar com o {@link ClusterRouter}, por exemplo:</p>
+ * <pre>
+ * java -Djackut.cluster=localhost:9100,localhost:9101,localhost:9102 \
+ *      easyaccept.EasyAccept network.ClusterRouter src/scripts/us1_1.txt
+ * </pre>
+ * <p>Ns e roteador se autenticam com a credencial da varivel de ambiente
+ * {@value ClusterRouter#VARIAVEL_CREDENCIAL}. Se ela no estiver definida, o lanador sorteia
+ * uma e a imprime, para ser exportada antes de iniciar o roteador.</p>
+ * <p>Os ns so encerrados junto com o lanador.</p>
+ */
+public class ClusterLauncher {
+
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int portaInicial = args.length > 1 ? Integer.parseInt(args[1]) : 9100;
+        File diretorio = new File(args.length > 2 ? args[2] : "cluster");
+
+        String credencial = System.getenv(ClusterRouter.VARIAVEL_CREDENCIAL);
+        if (credencial == null || credencial.isBlank()) {
+            byte[] sorteio = new byte[24];
+            new SecureRandom().nextBytes(sorteio);
+            credencial = Base64.getUrlEncoder().withoutPadding().encodeToString(sorteio);
+            System.out.println(ClusterRouter.VARIAVEL_CREDENCIAL + "=" + credencial);
+        }
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processos = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processos.forEach(Process::destroy)));
+
+        StringBuilder enderecos = new StringBuilder();
+        for (int no = 0; no < quantidade; no++) {
+            File dados = new File(diretorio, "no-" + no);
+            dados.mkdirs();
+            ProcessBuilder processo = new ProcessBuilder(java,
+                    "-Dfile.encoding=" + System.getProperty("file.encoding"),
+                    "-cp", System.getProperty("java.class.path"),
+                    ClusterNode.class.getName(), String.valueOf(portaInicial + no))
+                    .directory(dados)
+                    .inheritIO();
+            processo.environment().put(ClusterRouter.VARIAVEL_CREDENCIAL, credencial);
+            processos.add(processo.start());
+            enderecos.append(no == 0 ? "" : ",").append("localhost:").append(portaInicial + no);
+        }
+
+        for (int no = 0; no < quantidade; no++) {
+            aguardarPorta(portaInicial + no, processos.get(no));
+        }
+        System.out.println(ClusterRouter.PROPRIEDADE_NOS + "=" + enderecos);
+
+        for (Process processo : processos) {
+            processo.waitFor();
+        }
+    }
+
+    static void aguardarPorta(int porta, Process processo) throws InterruptedException {
+        while (processo.isAlive()) {
+            try {
+                new Socket("localhost", porta).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new RuntimeException("N da porta " + porta + " terminou durante a inicializao.");
+    }
+}
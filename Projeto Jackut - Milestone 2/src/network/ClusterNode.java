@@ -0,0 +1,211 @@
+package network;
+
+import exceptions.*;
+import facade.JackutFacade;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Set;
+
+/**
+ * N de um cluster Jackut: a fachada completa, servindo a partio local de usurios e
+ * comunidades, mais as operaes de partio usadas pelo {@link ClusterRouter} para
+ * coordenar aes entre ns.  exposto pelo protocolo binrio ({@link JackutBinaryServer}).
+ *
+ * <p>As operaes de partio no passam por validao nenhuma, ento s so servidas na
+ * porta entre ns, que exige a credencial do cluster. A porta de clientes, opcional,
+ * aceita apenas os {@link CommandDispatcher#COMANDOS_USUARIO}.</p>
+ *
+ * <p>Listas trafegam no formato de {@link CommandDispatcher#codificarArgumentos(java.util.List)}.</p>
+ */
+public class ClusterNode extends JackutFacade {
+
+    /** Operaes de partio, chamadas apenas pelo roteador. */
+    static final Set<String> OPERACOES_PARTICAO = Set.of(
+            "getLoginDaSessao", "getRelacoes", "registrarSolicitacao", "registrarAmizade", "registrarIdolo",
+            "registrarFa", "registrarPaquera", "registrarInimigo", "entregarRecado", "registrarAtividade",
+            "criarComunidadeRemota", "adicionarMembroRemoto", "registrarComunidade", "getLoginsMembros",
+            "entregarMensagem", "getNumeroMensagensComunidadeRemota", "buscarUsuariosCodificados",
+            "buscarUsuariosPorPrefixoComValores", "removerReferencias", "esquecerComunidades",
+            "desfazerAmizade", "desfazerIdolo", "desfazerPaquera", "retirarRecado", "desfazerComunidadeRemota",
+            "removerMembroRemoto", "retirarMensagem", "getRankingCodificado");
+
+    /** Tudo o que o roteador usa: comandos de usurio, de administrao e de partio. */
+    static final Set<String> COMANDOS_ROTEADOR = CommandDispatcher.uniao(
+            CommandDispatcher.uniao(CommandDispatcher.COMANDOS_USUARIO, CommandDispatcher.COMANDOS_ADMINISTRACAO),
+            OPERACOES_PARTICAO);
+
+    public String getLoginDaSessao(String idSessao) {
+        return jackutService.getLoginDaSessao(idSessao);
+    }
+
+    public int getRelacoes(String login, String outro) {
+        return jackutService.getRelacoes(login, outro);
+    }
+
+    public void registrarSolicitacao(String login, String remetente) {
+        jackutService.registrarSolicitacao(login, remetente);
+    }
+
+    public void registrarAmizade(String login, String amigo) {
+        jackutService.registrarAmizade(login, amigo);
+    }
+
+    public void registrarIdolo(String login, String idolo) {
+        jackutService.registrarIdolo(login, idolo);
+    }
+
+    public void registrarFa(String login, String fa) {
+        jackutService.registrarFa(login, fa);
+    }
+
+    public void registrarPaquera(String login, String paquera) {
+        jackutService.registrarPaquera(login, paquera);
+    }
+
+    public void registrarInimigo(String login, String inimigo) {
+        jackutService.registrarInimigo(login, inimigo);
+    }
+
+    public void entregarRecado(String destinatario, String remetente, String conteudo) {
+        jackutService.entregarRecado(destinatario, remetente, conteudo);
+    }
+
+    public void registrarAtividade(String login) {
+        jackutService.registrarAtividade(login);
+    }
+
+    public void criarComunidadeRemota(String nome, String descricao, String dono) {
+        try {
+            jackutService.criarComunidadeRemota(nome, descricao, dono);
+        } catch (CommunityAlreadyExistsException e) {
+            throw new RuntimeException("Comunidade com esse nome j existe.");
+        }
+    }
+
+    public void adicionarMembroRemoto(String nome, String login) {
+        try {
+            jackutService.adicionarMembroRemoto(nome, login);
+        } catch (UserAlreadyInCommunityException e) {
+            throw new RuntimeException("Usuario j faz parte dessa comunidade.");
+        }
+    }
+
+    public void registrarComunidade(String login, String nomeComunidade) {
+        jackutService.registrarComunidade(login, nomeComunidade);
+    }
+
+    /**
+     * @return Logins dos membros, comeando pelo dono, codificados
+     */
+    public String getLoginsMembros(String nome) {
+        return CommandDispatcher.codificarArgumentos(jackutService.getLoginsMembros(nome));
+    }
+
+    /**
+     * @param destinatarios Logins dos membros locais, codificados
+     */
+    public void entregarMensagem(String destinatarios, String comunidade, String remetente, long data, String conteudo) {
+        jackutService.entregarMensagem(CommandDispatcher.decodificarArgumentos(destinatarios),
+                comunidade, remetente, data, conteudo);
+    }
+
+    public int getNumeroMensagensComunidadeRemota(String login, String comunidade) {
+        return jackutService.getNumeroMensagensComunidadeRemota(login, comunidade);
+    }
+
+    /**
+     * @return Logins codificados, em ordem alfabtica
+     */
+    public String buscarUsuariosCodificados(String atributo, String valor, int inicio, int limite) {
+        return CommandDispatcher.codificarArgumentos(
+                jackutService.buscarUsuariosPorAtributo(atributo, valor, inicio, limite));
+    }
+
+    /**
+     * @return Pares valor, login codificados
+     */
+    public String buscarUsuariosPorPrefixoComValores(String atributo, String prefixo, int inicio, int limite) {
+        return CommandDispatcher.codificarArgumentos(
+                jackutService.buscarUsuariosPorPrefixoComValores(atributo, prefixo, inicio, limite));
+    }
+
+    /**
+     * @param ranking "fas", "comunidades" ou "atividade"
+     * @return Pares chave, pontuao codificados, da maior pontuao para a menor
+     */
+    public String getRankingCodificado(String ranking, int quantidade) {
+        return CommandDispatcher.codificarArgumentos(jackutService.getRankingEmPares(ranking, quantidade));
+    }
+
+    /**
+     * @return Nomes das comunidades removidas, codificados
+     */
+    public String removerReferencias(String login) {
+        return CommandDispatcher.codificarArgumentos(jackutService.removerReferencias(login));
+    }
+
+    /**
+     * @param nomes Nomes das comunidades, codificados
+     */
+    public void esquecerComunidades(String nomes) {
+        jackutService.esquecerComunidades(CommandDispatcher.decodificarArgumentos(nomes));
+    }
+
+    // Compensaes, usadas pelo roteador quando um passo seguinte falha em outro n
+
+    public void desfazerAmizade(String login, String amigo) {
+        jackutService.desfazerAmizade(login, amigo);
+    }
+
+    public void desfazerIdolo(String login, String idolo) {
+        jackutService.desfazerIdolo(login, idolo);
+    }
+
+    public void desfazerPaquera(String login, String paquera) {
+        jackutService.desfazerPaquera(login, paquera);
+    }
+
+    public void retirarRecado(String destinatario, String remetente, String conteudo) {
+        jackutService.retirarRecado(destinatario, remetente, conteudo);
+    }
+
+    public void desfazerComunidadeRemota(String nome) {
+        jackutService.desfazerComunidadeRemota(nome);
+    }
+
+    public void removerMembroRemoto(String nome, String login) {
+        jackutService.removerMembroRemoto(nome, login);
+    }
+
+    /**
+     * @param destinatarios Logins dos membros locais, codificados
+     */
+    public void retirarMensagem(String destinatarios, String comunidade, String remetente, long data, String conteudo) {
+        jackutService.retirarMensagem(CommandDispatcher.decodificarArgumentos(destinatarios),
+                comunidade, remetente, data, conteudo);
+    }
+
+    /**
+     * Inicia um n usando os dados do diretrio atual. A credencial da porta entre ns vem da
+     * varivel de ambiente {@value ClusterRouter#VARIAVEL_CREDENCIAL}.
+     * @param args portaNos [interface] [portaClientes] (interface padro: loopback)
+     */
+    public static void main(String[] args) throws IOException {
+        int portaNos = Integer.parseInt(args[0]);
+        InetAddress endereco = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        ClusterNode no = new ClusterNode();
+
+        JackutBinaryServer servidorNos = new JackutBinaryServer(
+                new CommandDispatcher(no, COMANDOS_ROTEADOR), endereco, portaNos, ClusterRouter.lerCredencial());
+        servidorNos.iniciar();
+        System.out.println("N Jackut escutando o roteador em " + endereco.getHostAddress() + ":" + servidorNos.getPorta());
+
+        if (args.length > 2) {
+            JackutBinaryServer servidorClientes = new JackutBinaryServer(
+                    new CommandDispatcher(no), endereco, Integer.parseInt(args[2]));
+            servidorClientes.iniciar();
+            System.out.println("N Jackut escutando clientes em " + endereco.getHostAddress() + ":" + servidorClientes.getPorta());
+        }
+    }
+}
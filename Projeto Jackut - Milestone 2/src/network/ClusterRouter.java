@@ -0,0 +1,796 @@
+package network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static services.JackutService.RELACAO_AMIGO;
+import static services.JackutService.RELACAO_IDOLO;
+import static services.JackutService.RELACAO_INIMIGO;
+import static services.JackutService.RELACAO_PAQUERA;
+import static services.JackutService.RELACAO_SOLICITACAO;
+
+/**
+ * Camada de roteamento do modo cluster. Tem os mesmos mtodos da {@link facade.JackutFacade}
+ * e pode substitu-la, inclusive nos testes do EasyAccept, mas guarda os dados em vrios
+ * {@link ClusterNode}s.
+ *
+ * <p><b>Particionamento.</b> Cada usurio mora no n dono do seu login e cada comunidade no
+ * n dono do seu nome, segundo um {@link ConsistentHashRing}. Os IDs de sesso devolvidos
+ * ao cliente levam o nmero do n na frente ({@code "2:uuid"}), ento comandos com sesso
+ * vo direto ao n certo.</p>
+ *
+ * <p><b>Operaes entre parties.</b> Se todos os envolvidos moram no mesmo n, o comando
+ *  repassado sem alteraes. Caso contrrio o roteador coordena:</p>
+ * <ol>
+ *   <li>resolve o login da sesso no n de origem ({@code getLoginDaSessao});</li>
+ *   <li>l o estado da relao nos dois lados ({@code getRelacoes}) e faz as mesmas
+ *       validaes do servio, com as mesmas mensagens de erro, na mesma ordem;</li>
+ *   <li>aplica cada lado no seu n ({@code registrarAmizade}, {@code registrarFa}, ...).</li>
+ * </ol>
+ * <p>Comunidades guardam membros de outros ns como usurios "sombra"; mensagens de
+ * comunidade so distribudas pelo roteador, um lote por n, e a remoo de um usurio
+ *  propagada a todos os ns ({@code removerReferencias}, {@code esquecerComunidades}).</p>
+ *
+ * <p>No h transao distribuda: operaes que envolvem o mesmo par de usurios so
+ * serializadas por travas do prprio roteador, o que vale apenas para um roteador. A remoo
+ * de usurios e o reincio do sistema bloqueiam todas as demais operaes entre parties.
+ * A importao em massa deve ser feita diretamente em cada n.</p>
+ *
+ * <p><b>Falhas no meio do caminho.</b> Cada escrita em mais de um n  uma sequncia de
+ * passos em que todo passo, menos o ltimo, tem uma compensao no prprio n
+ * ({@code desfazerAmizade}, {@code retirarRecado}, {@code desfazerComunidadeRemota}, ...).
+ * Se um passo falha, os anteriores so desfeitos em ordem inversa e o erro original chega
+ * ao cliente. A remoo de usurio no tem volta: os seus passos podem ser repetidos sem
+ * efeito extra e o roteador guarda as comunidades ainda no esquecidas, ento repetir o
+ * comando depois de uma falha conclui a remoo.</p>
+ */
+public class ClusterRouter {
+
+    /** Propriedade com a lista de ns: {@code host:porta,host:porta,...}. */
+    public static final String PROPRIEDADE_NOS = "jackut.cluster";
+
+    /** Varivel de ambiente com a credencial compartilhada pelos ns e pelo roteador. */
+    public static final String VARIAVEL_CREDENCIAL = "JACKUT_CLUSTER_CREDENCIAL";
+
+    private static final int TRAVAS = 64;
+
+    private final ConsistentHashRing anel;
+    private final JackutBinaryClient[] nos;
+    private final Object[] travas = new Object[TRAVAS];
+    private final ReentrantReadWriteLock bloqueioGlobal = new ReentrantReadWriteLock();
+    // Remoes interrompidas: login -> comunidades removidas que os ns ainda precisam esquecer.
+    // Usado s com o bloqueio global de escrita
+    private final Map<String, Set<String>> comunidadesAEsquecer = new HashMap<>();
+
+    /**
+     * Conecta aos ns listados na propriedade de sistema {@value #PROPRIEDADE_NOS}, com a
+     * credencial da varivel de ambiente {@value #VARIAVEL_CREDENCIAL}.
+     * Usado pelo EasyAccept, que exige um construtor sem argumentos.
+     */
+    public ClusterRouter() throws IOException {
+        this(lerEnderecos(System.getProperty(PROPRIEDADE_NOS)), lerCredencial());
+    }
+
+    /**
+     * @param enderecos Endereo de cada n; a posio na lista  o nmero do n
+     * @param credencial Credencial da porta entre ns
+     * @throws IOException Se algum n estiver inacessvel
+     * @throws RuntimeException Se algum n recusar a credencial
+     */
+    public ClusterRouter(List<InetSocketAddress> enderecos, String credencial) throws IOException {
+        this.anel = new ConsistentHashRing(enderecos.size());
+        this.nos = new JackutBinaryClient[enderecos.size()];
+        for (int i = 0; i < nos.length; i++) {
+            nos[i] = new JackutBinaryClient(enderecos.get(i).getHostString(), enderecos.get(i).getPort(), credencial);
+        }
+        for (int i = 0; i < TRAVAS; i++) {
+            travas[i] = new Object();
+        }
+    }
+
+    static String lerCredencial() {
+        String credencial = System.getenv(VARIAVEL_CREDENCIAL);
+        if (credencial == null || credencial.isBlank()) {
+            throw new RuntimeException("Varivel de ambiente " + VARIAVEL_CREDENCIAL + " no definida.");
+        }
+        return credencial;
+    }
+
+    static List<InetSocketAddress> lerEnderecos(String lista) {
+        if (lista == null || lista.isBlank()) {
+            throw new RuntimeException("Propriedade " + PROPRIEDADE_NOS + " no definida.");
+        }
+        List<InetSocketAddress> enderecos = new ArrayList<>();
+        for (String endereco : lista.split(",")) {
+            int separador = endereco.lastIndexOf(':');
+            enderecos.add(new InetSocketAddress(endereco.substring(0, separador).trim(),
+                    Integer.parseInt(endereco.substring(separador + 1).trim())));
+        }
+        return enderecos;
+    }
+
+    // Sistema
+
+    public void zerarSistema() {
+        bloqueioGlobal.writeLock().lock();
+        try {
+            chamarTodos("zerarSistema");
+        } finally {
+            bloqueioGlobal.writeLock().unlock();
+        }
+    }
+
+    public void encerrarSistema() {
+        chamarTodos("encerrarSistema");
+    }
+
+    /**
+     * @return true quando todos os ns terminaram de carregar seus dados
+     */
+    public boolean estaPronto() {
+        for (String resposta : chamarTodos("estaPronto")) {
+            if (!Boolean.parseBoolean(resposta)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return "pronto" quando todos os ns terminaram a carga; seno a situao de cada n
+     */
+    public String getProgressoCarga() {
+        if (estaPronto()) {
+            return "pronto";
+        }
+        List<String> situacoes = chamarTodos("getProgressoCarga");
+        StringJoiner progresso = new StringJoiner(", ");
+        for (int no = 0; no < situacoes.size(); no++) {
+            progresso.add("n " + no + ": " + situacoes.get(no));
+        }
+        return progresso.toString();
+    }
+
+    // Usurios e perfis
+
+    public void criarUsuario(String login, String senha, String nome) {
+        chamar(noDoUsuario(login), "criarUsuario", login, senha, nome);
+    }
+
+    public String abrirSessao(String login, String senha) {
+        int no = noDoUsuario(login);
+        return no + ":" + chamar(no, "abrirSessao", login, senha);
+    }
+
+    public void editarPerfil(String idSessao, String atributo, String valor) {
+        Sessao sessao = new Sessao(idSessao);
+        chamar(sessao.no, "editarPerfil", sessao.id, atributo, valor);
+    }
+
+    public String getAtributoUsuario(String login, String atributo) {
+        return chamar(noDoUsuario(login), "getAtributoUsuario", login, atributo);
+    }
+
+    /**
+     * Consulta todos os ns e intercala os resultados em ordem alfabtica de login.
+     */
+    public String buscarUsuarios(String atributo, String valor, int inicio, int limite) {
+        validarPaginacao(inicio, limite);
+        List<String> logins = new ArrayList<>();
+        for (String resposta : chamarTodos("buscarUsuariosCodificados", atributo, valor, "0", fimDaPagina(inicio, limite))) {
+            logins.addAll(CommandDispatcher.decodificarArgumentos(resposta));
+        }
+        Collections.sort(logins);
+        return formatar(pagina(logins, inicio, limite));
+    }
+
+    /**
+     * Consulta todos os ns e intercala os resultados por valor e login, como a busca local.
+     */
+    public String buscarUsuariosPorPrefixo(String atributo, String prefixo, int inicio, int limite) {
+        validarPaginacao(inicio, limite);
+        List<String[]> pares = new ArrayList<>();
+        for (String resposta : chamarTodos("buscarUsuariosPorPrefixoComValores", atributo, prefixo, "0", fimDaPagina(inicio, limite))) {
+            List<String> campos = CommandDispatcher.decodificarArgumentos(resposta);
+            for (int i = 0; i + 1 < campos.size(); i += 2) {
+                pares.add(new String[]{campos.get(i), campos.get(i + 1)});
+            }
+        }
+        pares.sort(Comparator.<String[], String>comparing(par -> par[0]).thenComparing(par -> par[1]));
+        List<String> logins = new ArrayList<>();
+        for (String[] par : pares) {
+            logins.add(par[1]);
+        }
+        return formatar(pagina(logins, inicio, limite));
+    }
+
+    public void removerUsuario(String idSessao) {
+        Sessao sessao = new Sessao(idSessao);
+        bloqueioGlobal.writeLock().lock();
+        try {
+            String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+
+            // Cada n apaga as referncias locais e informa as comunidades do usurio que removeu.
+            // As respostas dos ns que responderam ficam guardadas mesmo se outro falhar, porque
+            // numa nova tentativa essas comunidades j no existem mais
+            Set<String> comunidadesRemovidas = comunidadesAEsquecer.computeIfAbsent(login, l -> new LinkedHashSet<>());
+            List<CompletableFuture<String>> respostas = new ArrayList<>();
+            for (int no = 0; no < nos.length; no++) {
+                respostas.add(enviar(no, "removerReferencias", login));
+            }
+            RuntimeException falha = null;
+            for (CompletableFuture<String> resposta : respostas) {
+                try {
+                    comunidadesRemovidas.addAll(CommandDispatcher.decodificarArgumentos(aguardar(List.of(resposta)).get(0)));
+                } catch (RuntimeException e) {
+                    falha = falha == null ? e : falha;
+                }
+            }
+            if (falha != null) {
+                throw falha;
+            }
+            if (!comunidadesRemovidas.isEmpty()) {
+                chamarTodos("esquecerComunidades", CommandDispatcher.codificarArgumentos(new ArrayList<>(comunidadesRemovidas)));
+            }
+
+            // Por ltimo, porque sem a sesso o comando no pode ser repetido
+            chamar(sessao.no, "removerUsuario", sessao.id);
+            comunidadesAEsquecer.remove(login);
+        } finally {
+            bloqueioGlobal.writeLock().unlock();
+        }
+    }
+
+    // Amizades
+
+    public String getAmigos(String login) {
+        return chamar(noDoUsuario(login), "getAmigos", login);
+    }
+
+    public void adicionarAmigo(String idSessao, String amigo) {
+        Sessao sessao = new Sessao(idSessao);
+        int noAmigo = noDoUsuario(amigo);
+        if (noAmigo == sessao.no) {
+            chamar(sessao.no, "adicionarAmigo", sessao.id, amigo);
+            return;
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        coordenar(login, amigo, () -> {
+            int relacoesAmigo = relacoes(noAmigo, amigo, login);
+            verificarInimigo(relacoesAmigo, noAmigo, amigo);
+            int relacoesUsuario = relacoes(sessao.no, login, amigo);
+            if ((relacoesUsuario & RELACAO_AMIGO) != 0) {
+                throw new RuntimeException("Usurio j est adicionado como amigo.");
+            }
+            if ((relacoesAmigo & RELACAO_SOLICITACAO) != 0) {
+                throw new RuntimeException("Usurio j est adicionado como amigo, esperando aceitao do convite.");
+            }
+
+            if ((relacoesUsuario & RELACAO_SOLICITACAO) != 0) {
+                aplicar(passo(() -> chamar(sessao.no, "registrarAmizade", login, amigo),
+                              () -> chamar(sessao.no, "desfazerAmizade", login, amigo)),
+                        passo(() -> chamar(noAmigo, "registrarAmizade", amigo, login), null));
+            } else {
+                chamar(noAmigo, "registrarSolicitacao", amigo, login);
+            }
+        });
+    }
+
+    public boolean ehAmigo(String login, String amigo) {
+        int noUsuario = noDoUsuario(login);
+        int noAmigo = noDoUsuario(amigo);
+        if (noUsuario == noAmigo) {
+            return Boolean.parseBoolean(chamar(noUsuario, "ehAmigo", login, amigo));
+        }
+        int deUsuario = relacoes(noUsuario, login, amigo);
+        int deAmigo = relacoes(noAmigo, amigo, login);
+        return (deUsuario & RELACAO_AMIGO) != 0 && (deAmigo & RELACAO_AMIGO) != 0;
+    }
+
+    // Recados
+
+    public void enviarRecado(String idSessao, String destinatario, String mensagem) {
+        Sessao sessao = new Sessao(idSessao);
+        int noDestinatario = noDoUsuario(destinatario);
+        if (noDestinatario == sessao.no) {
+            chamar(sessao.no, "enviarRecado", sessao.id, destinatario, mensagem);
+            return;
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        bloqueioGlobal.readLock().lock();
+        try {
+            verificarInimigo(relacoes(noDestinatario, destinatario, login), noDestinatario, destinatario);
+            aplicar(passo(() -> chamar(noDestinatario, "entregarRecado", destinatario, login, mensagem),
+                          () -> chamar(noDestinatario, "retirarRecado", destinatario, login, mensagem)),
+                    passo(() -> chamar(sessao.no, "registrarAtividade", login), null));
+        } finally {
+            bloqueioGlobal.readLock().unlock();
+        }
+    }
+
+    public String lerRecado(String idSessao) {
+        Sessao sessao = new Sessao(idSessao);
+        return chamar(sessao.no, "lerRecado", sessao.id);
+    }
+
+    public String lerRecados(String idSessao, int quantidade) {
+        Sessao sessao = new Sessao(idSessao);
+        return chamar(sessao.no, "lerRecados", sessao.id, String.valueOf(quantidade));
+    }
+
+    public int getNumeroRecados(String idSessao) {
+        Sessao sessao = new Sessao(idSessao);
+        return Integer.parseInt(chamar(sessao.no, "getNumeroRecados", sessao.id));
+    }
+
+    // Comunidades
+
+    public void criarComunidade(String idSessao, String nome, String descricao) {
+        Sessao sessao = new Sessao(idSessao);
+        int noComunidade = noDaComunidade(nome);
+        if (noComunidade == sessao.no) {
+            chamar(sessao.no, "criarComunidade", sessao.id, nome, descricao);
+            return;
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        bloqueioGlobal.readLock().lock();
+        try {
+            aplicar(passo(() -> chamar(noComunidade, "criarComunidadeRemota", nome, descricao, login),
+                          () -> chamar(noComunidade, "desfazerComunidadeRemota", nome)),
+                    passo(() -> chamar(sessao.no, "registrarComunidade", login, nome), null));
+        } finally {
+            bloqueioGlobal.readLock().unlock();
+        }
+    }
+
+    public String getDescricaoComunidade(String nome) {
+        return chamar(noDaComunidade(nome), "getDescricaoComunidade", nome);
+    }
+
+    public String getDonoComunidade(String nome) {
+        return chamar(noDaComunidade(nome), "getDonoComunidade", nome);
+    }
+
+    public String getMembrosComunidade(String nome) {
+        return chamar(noDaComunidade(nome), "getMembrosComunidade", nome);
+    }
+
+    public void adicionarComunidade(String idSessao, String nomeComunidade) {
+        Sessao sessao = new Sessao(idSessao);
+        int noComunidade = noDaComunidade(nomeComunidade);
+        if (noComunidade == sessao.no) {
+            chamar(sessao.no, "adicionarComunidade", sessao.id, nomeComunidade);
+            return;
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        bloqueioGlobal.readLock().lock();
+        try {
+            aplicar(passo(() -> chamar(noComunidade, "adicionarMembroRemoto", nomeComunidade, login),
+                          () -> chamar(noComunidade, "removerMembroRemoto", nomeComunidade, login)),
+                    passo(() -> chamar(sessao.no, "registrarComunidade", login, nomeComunidade), null));
+        } finally {
+            bloqueioGlobal.readLock().unlock();
+        }
+    }
+
+    public String getComunidades(String login) {
+        return chamar(noDoUsuario(login), "getComunidades", login);
+    }
+
+    /**
+     * Distribui a mensagem aos membros da comunidade: uma chamada por n, em paralelo. Se
+     * algum n falhar, a mensagem  retirada dos ns que j a receberam.
+     */
+    public void enviarMensagem(String idSessao, String comunidade, String mensagem) {
+        Sessao sessao = new Sessao(idSessao);
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        bloqueioGlobal.readLock().lock();
+        try {
+            List<String> membros = CommandDispatcher.decodificarArgumentos(
+                    chamar(noDaComunidade(comunidade), "getLoginsMembros", comunidade));
+
+            Map<Integer, List<String>> membrosPorNo = new TreeMap<>();
+            for (String membro : membros) {
+                membrosPorNo.computeIfAbsent(noDoUsuario(membro), no -> new ArrayList<>()).add(membro);
+            }
+            String data = String.valueOf(System.currentTimeMillis());
+            Map<Integer, CompletableFuture<String>> entregas = new TreeMap<>();
+            for (Map.Entry<Integer, List<String>> grupo : membrosPorNo.entrySet()) {
+                entregas.put(grupo.getKey(), enviar(grupo.getKey(), "entregarMensagem",
+                        CommandDispatcher.codificarArgumentos(grupo.getValue()), comunidade, login, data, mensagem));
+            }
+            RuntimeException falha = null;
+            for (CompletableFuture<String> entrega : entregas.values()) {
+                try {
+                    aguardar(List.of(entrega));
+                } catch (RuntimeException e) {
+                    if (falha == null) {
+                        falha = e;
+                    } else {
+                        falha.addSuppressed(e);
+                    }
+                }
+            }
+            if (falha == null) {
+                try {
+                    chamar(sessao.no, "registrarAtividade", login);
+                    return;
+                } catch (RuntimeException e) {
+                    falha = e;
+                }
+            }
+
+            // As entregas correm em paralelo, ento qualquer n pode ter recebido a mensagem;
+            // retirar de quem no recebeu no tem efeito
+            for (Map.Entry<Integer, List<String>> grupo : membrosPorNo.entrySet()) {
+                try {
+                    chamar(grupo.getKey(), "retirarMensagem", CommandDispatcher.codificarArgumentos(grupo.getValue()),
+                            comunidade, login, data, mensagem);
+                } catch (RuntimeException e) {
+                    falha.addSuppressed(e);
+                }
+            }
+            throw falha;
+        } finally {
+            bloqueioGlobal.readLock().unlock();
+        }
+    }
+
+    public String lerMensagem(String idSessao) {
+        Sessao sessao = new Sessao(idSessao);
+        return chamar(sessao.no, "lerMensagem", sessao.id);
+    }
+
+    public String lerMensagens(String idSessao, int quantidade) {
+        Sessao sessao = new Sessao(idSessao);
+        return chamar(sessao.no, "lerMensagens", sessao.id, String.valueOf(quantidade));
+    }
+
+    public String getMensagensArquivadas(String idSessao, int inicio, int limite) {
+        Sessao sessao = new Sessao(idSessao);
+        return chamar(sessao.no, "getMensagensArquivadas", sessao.id, String.valueOf(inicio), String.valueOf(limite));
+    }
+
+    public int getNumeroMensagens(String idSessao) {
+        Sessao sessao = new Sessao(idSessao);
+        return Integer.parseInt(chamar(sessao.no, "getNumeroMensagens", sessao.id));
+    }
+
+    public int getNumeroMensagensComunidade(String idSessao, String comunidade) {
+        Sessao sessao = new Sessao(idSessao);
+        int noComunidade = noDaComunidade(comunidade);
+        if (noComunidade == sessao.no) {
+            return Integer.parseInt(chamar(sessao.no, "getNumeroMensagensComunidade", sessao.id, comunidade));
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        chamar(noComunidade, "getDescricaoComunidade", comunidade); // valida a existncia
+        return Integer.parseInt(chamar(sessao.no, "getNumeroMensagensComunidadeRemota", login, comunidade));
+    }
+
+    // F-dolo, paquera e inimigo
+
+    public void adicionarIdolo(String idSessao, String idolo) {
+        Sessao sessao = new Sessao(idSessao);
+        int noIdolo = noDoUsuario(idolo);
+        if (noIdolo == sessao.no) {
+            chamar(sessao.no, "adicionarIdolo", sessao.id, idolo);
+            return;
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        coordenar(login, idolo, () -> {
+            verificarInimigo(relacoes(noIdolo, idolo, login), noIdolo, idolo);
+            if ((relacoes(sessao.no, login, idolo) & RELACAO_IDOLO) != 0) {
+                throw new RuntimeException("Usurio j est adicionado como dolo.");
+            }
+            aplicar(passo(() -> chamar(sessao.no, "registrarIdolo", login, idolo),
+                          () -> chamar(sessao.no, "desfazerIdolo", login, idolo)),
+                    passo(() -> chamar(noIdolo, "registrarFa", idolo, login), null));
+        });
+    }
+
+    public boolean ehFa(String fa, String idolo) {
+        return Boolean.parseBoolean(chamar(noDoUsuario(fa), "ehFa", fa, idolo));
+    }
+
+    public String getFas(String login) {
+        return chamar(noDoUsuario(login), "getFas", login);
+    }
+
+    public void adicionarPaquera(String idSessao, String paquera) {
+        Sessao sessao = new Sessao(idSessao);
+        int noPaquera = noDoUsuario(paquera);
+        if (noPaquera == sessao.no) {
+            chamar(sessao.no, "adicionarPaquera", sessao.id, paquera);
+            return;
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        coordenar(login, paquera, () -> {
+            int relacoesPaquera = relacoes(noPaquera, paquera, login);
+            verificarInimigo(relacoesPaquera, noPaquera, paquera);
+            if ((relacoes(sessao.no, login, paquera) & RELACAO_PAQUERA) != 0) {
+                throw new RuntimeException("Usurio j est adicionado como paquera.");
+            }
+            Passo registrar = passo(() -> chamar(sessao.no, "registrarPaquera", login, paquera),
+                                    () -> chamar(sessao.no, "desfazerPaquera", login, paquera));
+            if ((relacoesPaquera & RELACAO_PAQUERA) == 0) {
+                aplicar(registrar);
+                return;
+            }
+
+            // Paquera mtua: recados automticos para os dois lados
+            String nomeUsuario = chamar(sessao.no, "getAtributoUsuario", login, "nome");
+            String nomePaquera = chamar(noPaquera, "getAtributoUsuario", paquera, "nome");
+            String paraUsuario = nomePaquera + "  seu paquera - Recado do Jackut.";
+            String paraPaquera = nomeUsuario + "  seu paquera - Recado do Jackut.";
+            aplicar(registrar,
+                    passo(() -> chamar(sessao.no, "entregarRecado", login, "Sistema", paraUsuario),
+                          () -> chamar(sessao.no, "retirarRecado", login, "Sistema", paraUsuario)),
+                    passo(() -> chamar(noPaquera, "entregarRecado", paquera, "Sistema", paraPaquera), null));
+        });
+    }
+
+    public boolean ehPaquera(String idSessao, String paquera) {
+        Sessao sessao = new Sessao(idSessao);
+        return Boolean.parseBoolean(chamar(sessao.no, "ehPaquera", sessao.id, paquera));
+    }
+
+    public String getPaqueras(String idSessao) {
+        Sessao sessao = new Sessao(idSessao);
+        return chamar(sessao.no, "getPaqueras", sessao.id);
+    }
+
+    public void adicionarInimigo(String idSessao, String inimigo) {
+        Sessao sessao = new Sessao(idSessao);
+        int noInimigo = noDoUsuario(inimigo);
+        if (noInimigo == sessao.no) {
+            chamar(sessao.no, "adicionarInimigo", sessao.id, inimigo);
+            return;
+        }
+        String login = chamar(sessao.no, "getLoginDaSessao", sessao.id);
+        coordenar(login, inimigo, () -> {
+            verificarInimigo(relacoes(noInimigo, inimigo, login), noInimigo, inimigo);
+            if ((relacoes(sessao.no, login, inimigo) & RELACAO_INIMIGO) != 0) {
+                throw new RuntimeException("Usurio j est adicionado como inimigo.");
+            }
+            chamar(sessao.no, "registrarInimigo", login, inimigo);
+        });
+    }
+
+    // Rankings
+
+    public String getUsuariosComMaisFas(int quantidade) {
+        return mesclarRankings("fas", quantidade);
+    }
+
+    public String getMaioresComunidades(int quantidade) {
+        return mesclarRankings("comunidades", quantidade);
+    }
+
+    public String getUsuariosMaisAtivos(int quantidade) {
+        return mesclarRankings("atividade", quantidade);
+    }
+
+    /**
+     * Cada n ranqueia s os prprios usurios ou comunidades, ento os {@code quantidade}
+     * primeiros do cluster esto entre os {@code quantidade} primeiros de algum n: basta
+     * intercalar as respostas pela pontuao, como o ranking local. Os ns respondem em pares
+     * codificados, j que logins e nomes de comunidade podem conter ',' e ':'.
+     */
+    private String mesclarRankings(String ranking, int quantidade) {
+        List<Map.Entry<String, Long>> entradas = new ArrayList<>();
+        for (String resposta : chamarTodos("getRankingCodificado", ranking, String.valueOf(quantidade))) {
+            List<String> pares = CommandDispatcher.decodificarArgumentos(resposta);
+            for (int i = 0; i + 1 < pares.size(); i += 2) {
+                entradas.add(Map.entry(pares.get(i), Long.parseLong(pares.get(i + 1))));
+            }
+        }
+        entradas.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        StringJoiner primeiros = new StringJoiner(",", "{", "}");
+        for (Map.Entry<String, Long> entrada : entradas.subList(0, Math.min(quantidade, entradas.size()))) {
+            primeiros.add(entrada.getKey() + ":" + entrada.getValue());
+        }
+        return primeiros.toString();
+    }
+
+    // Importao e exportao
+
+    public long importarDados(String arquivo) {
+        throw new RuntimeException("Importao no suportada pelo roteador: importe os dados em cada n.");
+    }
+
+    /**
+     * Cada n exporta a prpria partio, com o nmero do n acrescentado ao prefixo.
+     */
+    public long exportarDados(String prefixo, boolean comprimir, long tamanhoParte) {
+        List<CompletableFuture<String>> exportacoes = new ArrayList<>();
+        for (int no = 0; no < nos.length; no++) {
+            exportacoes.add(enviar(no, "exportarDados", prefixo + "-no" + no,
+                    String.valueOf(comprimir), String.valueOf(tamanhoParte)));
+        }
+        long total = 0;
+        for (String registros : aguardar(exportacoes)) {
+            total += Long.parseLong(registros);
+        }
+        return total;
+    }
+
+    /**
+     * Cada n s enxerga as amizades entre os prprios usurios, e os componentes atravessam
+     * os ns; a anlise  feita em um n, sobre os dados dele.
+     */
+    public String analisarAmizades() {
+        throw new RuntimeException("Anlise no suportada pelo roteador: analise os dados em cada n.");
+    }
+
+    // Roteamento
+
+    /**
+     * Sesso recebida do cliente: n de origem e ID local. IDs sem o prefixo do n so
+     * repassados intactos ao n 0, que responde com o erro de sesso usual.
+     */
+    private class Sessao {
+        final int no;
+        final String id;
+
+        Sessao(String idSessao) {
+            int separador = idSessao == null ? -1 : idSessao.indexOf(':');
+            int numero = -1;
+            if (separador > 0) {
+                try {
+                    numero = Integer.parseInt(idSessao.substring(0, separador));
+                } catch (NumberFormatException e) {
+                    numero = -1;
+                }
+            }
+            if (numero >= 0 && numero < nos.length) {
+                this.no = numero;
+                this.id = idSessao.substring(separador + 1);
+            } else {
+                this.no = 0;
+                this.id = idSessao;
+            }
+        }
+    }
+
+    private int noDoUsuario(String login) {
+        return anel.getNo(login);
+    }
+
+    private int noDaComunidade(String nome) {
+        return anel.getNo(nome);
+    }
+
+    private int relacoes(int no, String login, String outro) {
+        return Integer.parseInt(chamar(no, "getRelacoes", login, outro));
+    }
+
+    private void verificarInimigo(int relacoes, int no, String login) {
+        if ((relacoes & RELACAO_INIMIGO) != 0) {
+            throw new RuntimeException("Funo invlida: " + chamar(no, "getAtributoUsuario", login, "nome") + "  seu inimigo.");
+        }
+    }
+
+    /**
+     * Executa uma operao entre parties com o par de usurios travado neste roteador.
+     */
+    private void coordenar(String login1, String login2, Runnable operacao) {
+        int primeira = Math.floorMod(login1.hashCode(), TRAVAS);
+        int segunda = Math.floorMod(login2.hashCode(), TRAVAS);
+        bloqueioGlobal.readLock().lock();
+        try {
+            // Ordem fixa de aquisio evita impasse entre operaes sobre o mesmo par
+            synchronized (travas[Math.min(primeira, segunda)]) {
+                synchronized (travas[Math.max(primeira, segunda)]) {
+                    operacao.run();
+                }
+            }
+        } finally {
+            bloqueioGlobal.readLock().unlock();
+        }
+    }
+
+    /**
+     * Passo de uma escrita em mais de um n: a ao e a compensao que a desfaz
+     * ({@code null} quando o passo  o ltimo e no precisa ser desfeito).
+     */
+    private static final class Passo {
+        final Runnable acao;
+        final Runnable compensacao;
+
+        Passo(Runnable acao, Runnable compensacao) {
+            this.acao = acao;
+            this.compensacao = compensacao;
+        }
+    }
+
+    private static Passo passo(Runnable acao, Runnable compensacao) {
+        return new Passo(acao, compensacao);
+    }
+
+    /**
+     * Executa os passos em ordem. Se um falhar, desfaz os anteriores em ordem inversa e
+     * relana a falha; compensaes que tambm falham ficam como excees suprimidas.
+     */
+    private static void aplicar(Passo... passos) {
+        for (int executados = 0; executados < passos.length; executados++) {
+            try {
+                passos[executados].acao.run();
+            } catch (RuntimeException falha) {
+                for (int i = executados - 1; i >= 0; i--) {
+                    try {
+                        passos[i].compensacao.run();
+                    } catch (RuntimeException e) {
+                        falha.addSuppressed(e);
+                    }
+                }
+                throw falha;
+            }
+        }
+    }
+
+    private String chamar(int no, String comando, String... argumentos) {
+        try {
+            return nos[no].executar(comando, argumentos);
+        } catch (IOException e) {
+            throw new RuntimeException("N " + no + " indisponvel.");
+        }
+    }
+
+    private CompletableFuture<String> enviar(int no, String comando, String... argumentos) {
+        try {
+            return nos[no].enviar(comando, argumentos);
+        } catch (IOException e) {
+            throw new RuntimeException("N " + no + " indisponvel.");
+        }
+    }
+
+    /**
+     * Envia o mesmo comando a todos os ns, em paralelo.
+     * @return Resposta de cada n, na ordem dos ns
+     */
+    private List<String> chamarTodos(String comando, String... argumentos) {
+        List<CompletableFuture<String>> respostas = new ArrayList<>();
+        for (int no = 0; no < nos.length; no++) {
+            respostas.add(enviar(no, comando, argumentos));
+        }
+        return aguardar(respostas);
+    }
+
+    private static List<String> aguardar(List<CompletableFuture<String>> respostas) {
+        List<String> resultados = new ArrayList<>();
+        for (CompletableFuture<String> resposta : respostas) {
+            try {
+                resultados.add(resposta.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("N indisponvel.");
+            }
+        }
+        return resultados;
+    }
+
+    private static void validarPaginacao(int inicio, int limite) {
+        if (inicio < 0 || limite <= 0) {
+            throw new RuntimeException("Paginao invlida.");
+        }
+    }
+
+    private static String fimDaPagina(int inicio, int limite) {
+        return String.valueOf((int) Math.min((long) inicio + limite, Integer.MAX_VALUE));
+    }
+
+    private static List<String> pagina(List<String> logins, int inicio, int limite) {
+        int fim = (int) Math.min((long) inicio + limite, logins.size());
+        return inicio >= logins.size() ? Collections.emptyList() : logins.subList(inicio, fim);
+    }
+
+    private static String formatar(List<String> logins) {
+        return "{" + String.join(",", logins) + "}";
+    }
+}
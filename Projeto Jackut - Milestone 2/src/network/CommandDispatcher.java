@@ -0,0 +1,253 @@
+package network;
+
+import facade.JackutFacade;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Traduz comandos recebidos pela rede em chamadas aos mtodos pblicos da {@link JackutFacade}
+ * (ou de uma subclasse, como o {@link ClusterNode}).
+ * O nome do comando  o nome do mtodo (ex.: "ehAmigo") e os argumentos chegam como texto,
+ * sendo convertidos para o tipo de cada parmetro (String, int, long ou boolean).
+ *
+ * <p>S so despachados os comandos de uma lista explcita, e no todo mtodo pblico da
+ * fachada. Por padro, a lista  {@link #COMANDOS_USUARIO}: administrao (zerar, encerrar,
+ * importar, exportar, analisar) e comandos que recebem caminhos de arquivo no ficam
+ * acessveis pela rede. Listas maiores so usadas apenas em canais internos autenticados
+ * (ver {@link ClusterNode}).</p>
+ *
+ * <p>A fachada no tem mtodos sobrecarregados, ento o nome identifica o mtodo.
+ * O {@code JackutService} j  sincronizado, portanto o despachante pode ser usado
+ * por vrias threads ao mesmo tempo.</p>
+ */
+public class CommandDispatcher {
+
+    /**
+     * Comandos de usurio que no alteram o estado.
+     */
+    public static final Set<String> LEITURAS = Set.of(
+            "getDescricaoComunidade", "getDonoComunidade", "getComunidades", "getMembrosComunidade",
+            "getAtributoUsuario", "buscarUsuarios", "buscarUsuariosPorPrefixo", "getAmigos",
+            "getNumeroRecados", "getMensagensArquivadas", "getNumeroMensagens",
+            "getNumeroMensagensComunidade", "ehAmigo", "ehFa", "getFas", "ehPaquera", "getPaqueras",
+            "getUsuariosComMaisFas", "getMaioresComunidades", "getUsuariosMaisAtivos",
+            "estaPronto", "getProgressoCarga");
+
+    /**
+     * Comandos que qualquer cliente pode enviar pela rede: as leituras acima e as escritas
+     * feitas em nome de um usurio (cadastro, sesso, relacionamentos, recados e comunidades).
+     */
+    public static final Set<String> COMANDOS_USUARIO = uniao(LEITURAS, Set.of(
+            "criarUsuario", "abrirSessao", "editarPerfil", "adicionarAmigo", "enviarRecado",
+            "lerRecado", "lerRecados", "criarComunidade", "adicionarComunidade", "enviarMensagem",
+            "lerMensagem", "lerMensagens", "adicionarIdolo", "adicionarPaquera", "adicionarInimigo",
+            "removerUsuario"));
+
+    /**
+     * Comandos de administrao, que apagam ou persistem todos os dados ou leem e gravam
+     * arquivos do servidor. Nunca entram em {@link #COMANDOS_USUARIO}.
+     */
+    public static final Set<String> COMANDOS_ADMINISTRACAO = Set.of(
+            "zerarSistema", "encerrarSistema", "importarDados", "exportarDados");
+
+    private final JackutFacade facade;
+    private final Map<String, Method> comandos = new HashMap<>();
+    private volatile AdmissionControl controleAdmissao;
+
+    /**
+     * Despachante dos {@link #COMANDOS_USUARIO}.
+     * @param facade Fachada que executar os comandos
+     */
+    public CommandDispatcher(JackutFacade facade) {
+        this(facade, COMANDOS_USUARIO);
+    }
+
+    /**
+     * @param facade Fachada que executar os comandos
+     * @param permitidos Nomes dos mtodos da fachada que podem ser chamados
+     * @throws IllegalArgumentException Se algum nome no for mtodo pblico da fachada
+     */
+    public CommandDispatcher(JackutFacade facade, Set<String> permitidos) {
+        this.facade = facade;
+        for (Method metodo : facade.getClass().getMethods()) {
+            if (permitidos.contains(metodo.getName()) && metodo.getDeclaringClass() != Object.class
+                    && !Modifier.isStatic(metodo.getModifiers())) {
+                comandos.put(metodo.getName(), metodo);
+            }
+        }
+        for (String comando : permitidos) {
+            if (!comandos.containsKey(comando)) {
+                throw new IllegalArgumentException("A fachada no tem o comando " + comando + ".");
+            }
+        }
+    }
+
+    /**
+     * @return Conjunto com os elementos dos dois conjuntos
+     */
+    public static Set<String> uniao(Set<String> a, Set<String> b) {
+        Set<String> uniao = new HashSet<>(a);
+        uniao.addAll(b);
+        return Collections.unmodifiableSet(uniao);
+    }
+
+    /**
+     * @param comando Nome do comando
+     * @return true se o comando pode ser despachado
+     */
+    public boolean existe(String comando) {
+        return comandos.containsKey(comando);
+    }
+
+    /**
+     * @return Nomes de todos os comandos disponveis, em ordem alfabtica
+     */
+    public List<String> getComandos() {
+        List<String> nomes = new ArrayList<>(comandos.keySet());
+        Collections.sort(nomes);
+        return nomes;
+    }
+
+    /**
+     * Executa um comando na fachada.
+     * @param comando Nome do mtodo da fachada
+     * @param argumentos Argumentos em texto, na ordem dos parmetros
+     * @return Resultado convertido em texto ("" para mtodos sem retorno)
+     * @throws RuntimeException Com a mensagem de erro original da fachada, ou se o comando for invlido
+     * @throws exceptions.RateLimitException Se o controle de admisso limitar a sesso ou o login
+     * @throws exceptions.OverloadException Se o controle de admisso descartar o comando por sobrecarga
+     */
+    public String executar(String comando, List<String> argumentos) {
+        Method metodo = comandos.get(comando);
+        if (metodo == null) {
+            throw new RuntimeException("Comando desconhecido: " + comando);
+        }
+        AdmissionControl controle = controleAdmissao;
+        if (controle == null) {
+            return invocar(metodo, comando, argumentos);
+        }
+        long inicio = controle.admitir(comando, argumentos);
+        try {
+            return invocar(metodo, comando, argumentos);
+        } finally {
+            controle.concluir(inicio);
+        }
+    }
+
+    /**
+     * Passa a submeter os comandos ao controle de admisso (limites por sesso e descarte por carga)
+     * antes de chegarem  fachada.
+     * @param controle Controle de admisso, ou {@code null} para desativar
+     */
+    public void setControleAdmissao(AdmissionControl controle) {
+        if (controle != null) {
+            controle.setResolvedorSessao(facade::resolverSessao);
+        }
+        this.controleAdmissao = controle;
+    }
+
+    public AdmissionControl getControleAdmissao() {
+        return controleAdmissao;
+    }
+
+    private String invocar(Method metodo, String comando, List<String> argumentos) {
+        Class<?>[] tipos = metodo.getParameterTypes();
+        if (tipos.length == 1 && argumentos.isEmpty()) {
+            argumentos = Collections.singletonList(""); // um nico argumento vazio  codificado como texto vazio
+        }
+        if (tipos.length != argumentos.size()) {
+            throw new RuntimeException("Comando " + comando + " espera " + tipos.length + " argumentos.");
+        }
+
+        Object[] valores = new Object[tipos.length];
+        for (int i = 0; i < tipos.length; i++) {
+            valores[i] = converter(argumentos.get(i), tipos[i]);
+        }
+
+        try {
+            Object resultado = metodo.invoke(facade, valores);
+            return resultado == null ? "" : resultado.toString();
+        } catch (InvocationTargetException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw new RuntimeException(causa.getMessage(), causa);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Comando inacessvel: " + comando);
+        }
+    }
+
+    private static Object converter(String valor, Class<?> tipo) {
+        try {
+            if (tipo == int.class) {
+                return Integer.parseInt(valor);
+            }
+            if (tipo == long.class) {
+                return Long.parseLong(valor);
+            }
+            if (tipo == boolean.class) {
+                return Boolean.parseBoolean(valor);
+            }
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Argumento numrico invlido: " + valor);
+        }
+        return valor;
+    }
+
+    /**
+     * Codifica argumentos em texto compacto: um por linha, com '\' e quebras de linha escapados.
+     * @param argumentos Argumentos do comando
+     * @return Texto codificado
+     */
+    public static String codificarArgumentos(List<String> argumentos) {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < argumentos.size(); i++) {
+            if (i > 0) {
+                texto.append('\n');
+            }
+            String argumento = argumentos.get(i);
+            for (int j = 0; j < argumento.length(); j++) {
+                char c = argumento.charAt(j);
+                if (c == '\\') {
+                    texto.append("\\\\");
+                } else if (c == '\n') {
+                    texto.append("\\n");
+                } else {
+                    texto.append(c);
+                }
+            }
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Operao inversa de {@link #codificarArgumentos(List)}.
+     * @param texto Texto codificado (vazio = nenhum argumento)
+     * @return Argumentos decodificados
+     */
+    public static List<String> decodificarArgumentos(String texto) {
+        List<String> argumentos = new ArrayList<>();
+        if (texto.isEmpty()) {
+            return argumentos;
+        }
+        StringBuilder atual = new StringBuilder();
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '\n') {
+                argumentos.add(atual.toString());
+                atual.setLength(0);
+            } else if (c == '\\' && i + 1 < texto.length()) {
+                char proximo = texto.charAt(++i);
+                atual.append(proximo == 'n' ? '\n' : proximo);
+            } else {
+                atual.append(c);
+            }
+        }
+        argumentos.add(atual.toString());
+        return argumentos;
+    }
+}
@@ -0,0 +1,66 @@
+package network;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Anel de hash consistente que distribui chaves (logins e nomes de comunidades) entre ns.
+ *
+ * <p>Cada n ocupa vrios pontos virtuais do anel; uma chave pertence ao primeiro ponto
+ * no sentido horrio a partir do seu hash. Com isso a carga fica equilibrada e, ao incluir
+ * um n, s as chaves que passam a cair nos pontos dele mudam de dono.</p>
+ *
+ * <p>O hash  o MD5 da chave, para que todo processo (roteadores e ferramentas) calcule
+ * o mesmo dono sem depender da JVM.</p>
+ */
+public class ConsistentHashRing {
+
+    public static final int PONTOS_POR_NO = 160;
+
+    private final TreeMap<Long, Integer> anel = new TreeMap<>();
+    private final int nos;
+
+    /**
+     * @param nos Quantidade de ns, identificados de 0 a nos - 1
+     */
+    public ConsistentHashRing(int nos) {
+        if (nos <= 0) {
+            throw new RuntimeException("Quantidade de ns invlida.");
+        }
+        this.nos = nos;
+        for (int no = 0; no < nos; no++) {
+            for (int ponto = 0; ponto < PONTOS_POR_NO; ponto++) {
+                anel.put(hash("no-" + no + "#" + ponto), no);
+            }
+        }
+    }
+
+    /**
+     * @param chave Login ou nome de comunidade ({@code null}  tratado como texto vazio)
+     * @return N dono da chave
+     */
+    public int getNo(String chave) {
+        Map.Entry<Long, Integer> ponto = anel.ceilingEntry(hash(chave == null ? "" : chave));
+        return ponto != null ? ponto.getValue() : anel.firstEntry().getValue();
+    }
+
+    public int getQuantidadeNos() {
+        return nos;
+    }
+
+    private static long hash(String chave) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(chave.getBytes(StandardCharsets.UTF_8));
+            long valor = 0;
+            for (int i = 0; i < 8; i++) {
+                valor = (valor << 8) | (digest[i] & 0xFF);
+            }
+            return valor;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // MD5  obrigatrio em toda JVM
+        }
+    }
+}
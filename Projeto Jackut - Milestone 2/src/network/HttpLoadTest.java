@@ -0,0 +1,135 @@
+package network;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente de carga local para o {@link JackutHttpServer}.
+ *
+ * <p>Cria alguns usurios e amizades, com logins novos a cada execuo (o servidor no 
+ * zerado: administrao no  exposta pela rede) e, em seguida, dispara {@code clientes} clientes
+ * simultneos, cada um fazendo {@code requisicoes} chamadas de leitura e escrita
+ * pelo mesmo {@link HttpClient} (conexes keep-alive). Ao final imprime a vazo
+ * e os percentis de latncia.</p>
+ *
+ * <p>Uso: {@code HttpLoadTest [url] [clientes] [requisicoes]}. Sem URL (ou com URL vazia), um servidor
+ *  iniciado no prprio processo, numa porta livre.</p>
+ */
+public class HttpLoadTest {
+
+    private static final int USUARIOS = 50;
+
+    private final HttpClient cliente = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(VirtualThreads.novoExecutorPorTarefa())
+            .build();
+    private final String url;
+    private final String prefixo = "carga" + Long.toString(System.currentTimeMillis(), 36) + "-";
+
+    public HttpLoadTest(String url) {
+        this.url = url.endsWith("/") ? url : url + "/";
+    }
+
+    /**
+     * Executa um comando e devolve o corpo da resposta.
+     * @throws RuntimeException Se o servidor responder com erro
+     */
+    public String executar(String comando, String... argumentos) throws Exception {
+        HttpRequest requisicao = HttpRequest.newBuilder(URI.create(url + comando))
+                .POST(HttpRequest.BodyPublishers.ofString(CommandDispatcher.codificarArgumentos(Arrays.asList(argumentos))))
+                .build();
+        HttpResponse<String> resposta = cliente.send(requisicao, HttpResponse.BodyHandlers.ofString());
+        if (resposta.statusCode() != 200) {
+            throw new RuntimeException(resposta.body());
+        }
+        return resposta.body();
+    }
+
+    private String[] preparar() throws Exception {
+        String[] sessoes = new String[USUARIOS];
+        for (int i = 0; i < USUARIOS; i++) {
+            executar("criarUsuario", prefixo + i, "senha", "Usuario " + i);
+            sessoes[i] = executar("abrirSessao", prefixo + i, "senha");
+            executar("editarPerfil", sessoes[i], "cidade", "Cidade " + (i % 10));
+        }
+        for (int i = 1; i < USUARIOS; i++) {
+            executar("adicionarAmigo", sessoes[i], prefixo + "0");
+            executar("adicionarAmigo", sessoes[0], prefixo + i);
+        }
+        return sessoes;
+    }
+
+    private void rodar(int clientes, int requisicoes) throws Exception {
+        String[] sessoes = preparar();
+        long[] latencias = new long[clientes * requisicoes];
+        AtomicLong erros = new AtomicLong();
+        ExecutorService executor = VirtualThreads.novoExecutorPorTarefa();
+        CountDownLatch fim = new CountDownLatch(clientes);
+
+        long inicio = System.nanoTime();
+        for (int c = 0; c < clientes; c++) {
+            int id = c;
+            executor.execute(() -> {
+                Random aleatorio = new Random(id);
+                try {
+                    for (int r = 0; r < requisicoes; r++) {
+                        int usuario = aleatorio.nextInt(USUARIOS);
+                        long antes = System.nanoTime();
+                        try {
+                            switch (r % 4) {
+                                case 0: executar("ehAmigo", prefixo + "0", prefixo + usuario); break;
+                                case 1: executar("getAtributoUsuario", prefixo + usuario, "cidade"); break;
+                                case 2: executar("getAmigos", prefixo + usuario); break;
+                                default: executar("enviarRecado", sessoes[usuario], prefixo + ((usuario + 1) % USUARIOS), "oi");
+                            }
+                        } catch (Exception e) {
+                            erros.incrementAndGet();
+                        }
+                        latencias[id * requisicoes + r] = System.nanoTime() - antes;
+                    }
+                } finally {
+                    fim.countDown();
+                }
+            });
+        }
+        fim.await();
+        long duracao = System.nanoTime() - inicio;
+        executor.shutdown();
+
+        Arrays.sort(latencias);
+        System.out.printf("%d clientes x %d requisies em %.2f s: %.0f req/s, %d erros%n",
+                clientes, requisicoes, duracao / 1e9, latencias.length / (duracao / 1e9), erros.get());
+        System.out.printf("latncia p50=%.2f ms p99=%.2f ms mx=%.2f ms%n",
+                percentil(latencias, 0.50), percentil(latencias, 0.99), latencias[latencias.length - 1] / 1e6);
+    }
+
+    private static double percentil(long[] ordenadas, double p) {
+        return ordenadas[(int) Math.min(ordenadas.length - 1, Math.round(p * (ordenadas.length - 1)))] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        JackutHttpServer servidorLocal = null;
+        String url;
+        if (args.length > 0 && !args[0].isEmpty()) {
+            url = args[0];
+        } else {
+            servidorLocal = new JackutHttpServer(new facade.JackutFacade(), 0);
+            servidorLocal.iniciar();
+            url = "http://localhost:" + servidorLocal.getPorta() + "/";
+        }
+        int clientes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int requisicoes = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        new HttpLoadTest(url).rodar(clientes, requisicoes);
+        if (servidorLocal != null) {
+            servidorLocal.parar();
+        }
+    }
+}
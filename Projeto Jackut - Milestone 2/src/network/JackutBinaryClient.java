@@ -0,0 +1,152 @@
+package network;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cliente do protocolo binrio ({@link BinaryProtocol}).
+ *
+ * <p>{@link #enviar(String, String...)} escreve o comando e retorna imediatamente um
+ * {@link CompletableFuture}; vrios comandos podem ser enviados antes de qualquer resposta
+ * chegar. Uma thread de leitura associa cada resposta ao seu pedido pelo id.
+ * {@link #executar(String, String...)}  a forma sncrona, que espera a resposta.</p>
+ *
+ * <p>O cliente pode ser compartilhado entre threads.</p>
+ */
+public class JackutBinaryClient implements Closeable {
+
+    private final Socket socket;
+    private final DataOutputStream saida;
+    private final DataInputStream entrada;
+    private final Map<Integer, CompletableFuture<String>> pendentes = new ConcurrentHashMap<>();
+    private final AtomicInteger proximoId = new AtomicInteger();
+    private final Thread leitor;
+    private volatile IOException falha;
+
+    /**
+     * @param host Endereo do servidor
+     * @param porta Porta do servidor
+     * @throws IOException Se a conexo falhar
+     */
+    public JackutBinaryClient(String host, int porta) throws IOException {
+        this(host, porta, null);
+    }
+
+    /**
+     * Conecta a um servidor que exige credencial; a conexo  autenticada antes de o
+     * construtor retornar.
+     * @param host Endereo do servidor
+     * @param porta Porta do servidor
+     * @param credencial Credencial do servidor, ou null para servidor aberto
+     * @throws IOException Se a conexo falhar
+     * @throws RuntimeException Se o servidor recusar a credencial
+     */
+    public JackutBinaryClient(String host, int porta, String credencial) throws IOException {
+        this.socket = new Socket(host, porta);
+        this.socket.setTcpNoDelay(true);
+        this.saida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        this.entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        this.leitor = new Thread(this::lerRespostas, "jackut-binario-cliente");
+        this.leitor.setDaemon(true);
+        this.leitor.start();
+        if (credencial != null) {
+            try {
+                executar("autenticar", credencial);
+            } catch (IOException | RuntimeException e) {
+                socket.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Envia um comando sem esperar a resposta.
+     * @param comando Nome do mtodo da fachada
+     * @param argumentos Argumentos em texto
+     * @return Resultado futuro; completa com erro se a fachada lanar exceo
+     * @throws IOException Se a escrita falhar
+     */
+    public CompletableFuture<String> enviar(String comando, String... argumentos) throws IOException {
+        int codigo = BinaryProtocol.getCodigo(comando);
+        if (codigo < 0) {
+            throw new RuntimeException("Comando desconhecido: " + comando);
+        }
+        int id = proximoId.incrementAndGet();
+        CompletableFuture<String> resultado = new CompletableFuture<>();
+        pendentes.put(id, resultado);
+        if (falha != null) {
+            pendentes.remove(id);
+            throw falha;
+        }
+        ByteBuffer quadro = BinaryProtocol.requisicao(id, codigo, Arrays.asList(argumentos));
+        synchronized (saida) {
+            saida.write(quadro.array(), 0, quadro.limit());
+            saida.flush();
+        }
+        return resultado;
+    }
+
+    /**
+     * Envia um comando e espera a resposta.
+     * @return Resultado em texto
+     * @throws RuntimeException Com a mensagem de erro da fachada
+     * @throws IOException Se a conexo falhar
+     */
+    public String executar(String comando, String... argumentos) throws IOException {
+        try {
+            return enviar(comando, argumentos).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void lerRespostas() {
+        try {
+            while (true) {
+                int tamanho = entrada.readInt();
+                int id = entrada.readInt();
+                byte status = entrada.readByte();
+                byte[] texto = new byte[entrada.readInt()];
+                entrada.readFully(texto);
+                if (tamanho != 4 + 1 + 4 + texto.length) {
+                    throw new IOException("Quadro invlido.");
+                }
+                CompletableFuture<String> resultado = pendentes.remove(id);
+                if (resultado == null) {
+                    continue;
+                }
+                String valor = new String(texto, StandardCharsets.UTF_8);
+                if (status == BinaryProtocol.STATUS_OK) {
+                    resultado.complete(valor);
+                } else {
+                    resultado.completeExceptionally(new RuntimeException(valor));
+                }
+            }
+        } catch (IOException e) {
+            falha = e;
+            for (CompletableFuture<String> resultado : pendentes.values()) {
+                resultado.completeExceptionally(e);
+            }
+            pendentes.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,341 @@
+package network;
+
+import facade.JackutFacade;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Servidor NIO do protocolo binrio ({@link BinaryProtocol}).
+ *
+ * <p>Uma nica thread de seleo aceita conexes, l os quadros e escreve as respostas.
+ * Os comandos de cada conexo so executados em srie, fora da thread de seleo (em uma
+ * thread virtual, se disponvel), na ordem em que chegaram; conexes diferentes rodam em
+ * paralelo. O cliente pode enviar vrios comandos sem esperar as respostas, que voltam na
+ * mesma ordem.</p>
+ *
+ * <p>Cada conexo tem no mximo {@value #EM_VOO_MAXIMO} comandos recebidos e ainda no
+ * respondidos por completo. Ao atingir o limite o servidor para de ler a conexo at que as
+ * respostas sejam escritas, ento um cliente que envia mais rpido do que l as respostas
+ *  contido pelo prprio TCP, sem acumular filas no servidor.</p>
+ *
+ * <p>Por padro o servidor escuta s na interface de loopback. Um servidor criado com
+ * credencial s executa comandos de conexes que comearam pelo comando
+ * {@link BinaryProtocol#CODIGO_AUTENTICAR} com a mesma credencial.</p>
+ */
+public class JackutBinaryServer {
+
+    private static final int TAMANHO_LEITURA = 64 * 1024;
+    static final int EM_VOO_MAXIMO = 256;
+    // Comandos executados por vez antes de a conexo ceder a thread a outras conexes
+    private static final int LOTE = 64;
+
+    private final CommandDispatcher despachante;
+    // Credencial exigida das conexes, ou null para servidor aberto
+    private final byte[] credencial;
+    private final ExecutorService executor;
+    private final Selector seletor;
+    private final ServerSocketChannel canalServidor;
+    // Conexes com respostas novas, aguardando a thread de seleo ativar a escrita
+    private final Queue<Conexao> prontas = new ConcurrentLinkedQueue<>();
+    private volatile boolean ativo;
+    private Thread threadSelecao;
+
+    /**
+     * @param facade Fachada a ser exposta
+     * @param porta Porta TCP na interface de loopback (0 escolhe uma porta livre)
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public JackutBinaryServer(JackutFacade facade, int porta) throws IOException {
+        this(new CommandDispatcher(facade), porta);
+    }
+
+    /**
+     * @param despachante Despachante que executar os comandos (ex.: um que restringe ou registra comandos)
+     * @param porta Porta TCP na interface de loopback (0 escolhe uma porta livre)
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public JackutBinaryServer(CommandDispatcher despachante, int porta) throws IOException {
+        this(despachante, InetAddress.getLoopbackAddress(), porta);
+    }
+
+    /**
+     * @param despachante Despachante que executar os comandos
+     * @param endereco Interface em que o servidor escuta
+     * @param porta Porta TCP (0 escolhe uma porta livre)
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public JackutBinaryServer(CommandDispatcher despachante, InetAddress endereco, int porta) throws IOException {
+        this(despachante, endereco, porta, null);
+    }
+
+    /**
+     * @param despachante Despachante que executar os comandos
+     * @param endereco Interface em que o servidor escuta
+     * @param porta Porta TCP (0 escolhe uma porta livre)
+     * @param credencial Credencial exigida de cada conexo antes de qualquer comando, ou null
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public JackutBinaryServer(CommandDispatcher despachante, InetAddress endereco, int porta, String credencial)
+            throws IOException {
+        this.despachante = despachante;
+        this.credencial = credencial == null ? null : credencial.getBytes(StandardCharsets.UTF_8);
+        this.executor = VirtualThreads.novoExecutorPorTarefa();
+        this.seletor = Selector.open();
+        this.canalServidor = ServerSocketChannel.open();
+        this.canalServidor.bind(new InetSocketAddress(endereco, porta), 1024);
+        this.canalServidor.configureBlocking(false);
+        this.canalServidor.register(seletor, SelectionKey.OP_ACCEPT);
+    }
+
+    public void iniciar() {
+        ativo = true;
+        threadSelecao = new Thread(this::laco, "jackut-binario");
+        threadSelecao.start();
+    }
+
+    public void parar() throws IOException {
+        ativo = false;
+        seletor.wakeup();
+        try {
+            threadSelecao.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey chave : seletor.keys()) {
+            chave.channel().close();
+        }
+        seletor.close();
+        executor.shutdown();
+    }
+
+    /**
+     * @return Porta em que o servidor est escutando
+     */
+    public int getPorta() throws IOException {
+        return ((InetSocketAddress) canalServidor.getLocalAddress()).getPort();
+    }
+
+    private void laco() {
+        while (ativo) {
+            try {
+                seletor.select();
+                Conexao pronta;
+                while ((pronta = prontas.poll()) != null) {
+                    if (pronta.chave.isValid()) {
+                        pronta.chave.interestOps(pronta.chave.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> chaves = seletor.selectedKeys().iterator();
+                while (chaves.hasNext()) {
+                    SelectionKey chave = chaves.next();
+                    chaves.remove();
+                    try {
+                        if (chave.isAcceptable()) {
+                            aceitar();
+                        } else {
+                            if (chave.isReadable()) {
+                                ler((Conexao) chave.attachment());
+                            }
+                            if (chave.isValid() && chave.isWritable()) {
+                                escrever((Conexao) chave.attachment());
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        chave.cancel();
+                        chave.channel().close();
+                    }
+                }
+            } catch (IOException e) {
+                // Falha do seletor: tenta novamente enquanto o servidor estiver ativo
+            }
+        }
+    }
+
+    private void aceitar() throws IOException {
+        SocketChannel canal = canalServidor.accept();
+        if (canal == null) {
+            return;
+        }
+        canal.configureBlocking(false);
+        canal.socket().setTcpNoDelay(true);
+        Conexao conexao = new Conexao(canal);
+        conexao.chave = canal.register(seletor, SelectionKey.OP_READ, conexao);
+    }
+
+    private void ler(Conexao conexao) throws IOException {
+        if (conexao.canal.read(conexao.leitura) < 0) {
+            conexao.chave.cancel();
+            conexao.canal.close();
+            return;
+        }
+        ByteBuffer leitura = conexao.leitura;
+        leitura.flip();
+        while (leitura.remaining() >= 4 && conexao.emVoo < EM_VOO_MAXIMO) {
+            int tamanho = leitura.getInt(leitura.position());
+            if (tamanho < 8 || tamanho > BinaryProtocol.TAMANHO_MAXIMO) {
+                throw new IOException("Quadro invlido.");
+            }
+            if (leitura.remaining() < 4 + tamanho) {
+                break;
+            }
+            byte[] corpo = new byte[tamanho];
+            leitura.position(leitura.position() + 4);
+            leitura.get(corpo);
+            despachar(conexao, ByteBuffer.wrap(corpo));
+        }
+        leitura.compact();
+        if (conexao.emVoo >= EM_VOO_MAXIMO) {
+            // Limite atingido: o restante fica no buffer e a leitura volta quando as respostas sarem
+            conexao.chave.interestOps(conexao.chave.interestOps() & ~SelectionKey.OP_READ);
+            return;
+        }
+        if (!leitura.hasRemaining()) {
+            // Quadro maior que o buffer: amplia at caber o quadro inteiro
+            int necessario = 4 + conexao.leitura.getInt(0);
+            ByteBuffer maior = ByteBuffer.allocate(Math.max(necessario, leitura.capacity() * 2));
+            leitura.flip();
+            maior.put(leitura);
+            conexao.leitura = maior;
+        }
+    }
+
+    /**
+     * Chamado pela thread de seleo: o quadro entra na fila da conexo, que  executada em srie.
+     */
+    private void despachar(Conexao conexao, ByteBuffer quadro) {
+        conexao.emVoo++;
+        conexao.enviar(quadro);
+    }
+
+    /**
+     * Executa um quadro de requisio e devolve o quadro de resposta.
+     */
+    private ByteBuffer executar(Conexao conexao, ByteBuffer quadro) {
+        int id = quadro.getInt();
+        try {
+            int codigo = quadro.getShort() & 0xFFFF;
+            if (codigo == BinaryProtocol.CODIGO_AUTENTICAR) {
+                conexao.autenticar(BinaryProtocol.lerArgumentos(quadro));
+                return BinaryProtocol.resposta(id, BinaryProtocol.STATUS_OK, "");
+            }
+            if (!conexao.autenticada) {
+                throw new RuntimeException("Conexo no autenticada.");
+            }
+            String comando = BinaryProtocol.getComando(codigo);
+            if (comando == null) {
+                throw new RuntimeException("Comando desconhecido: " + codigo);
+            }
+            List<String> argumentos = BinaryProtocol.lerArgumentos(quadro);
+            return BinaryProtocol.resposta(id, BinaryProtocol.STATUS_OK, despachante.executar(comando, argumentos));
+        } catch (RuntimeException e) {
+            return BinaryProtocol.resposta(id, BinaryProtocol.STATUS_ERRO,
+                    e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+    }
+
+    private void escrever(Conexao conexao) throws IOException {
+        ByteBuffer resposta;
+        while ((resposta = conexao.saida.peek()) != null) {
+            conexao.canal.write(resposta);
+            if (resposta.hasRemaining()) {
+                return; // buffer do socket cheio; continua no prximo OP_WRITE
+            }
+            conexao.saida.poll();
+            if (conexao.emVoo-- == EM_VOO_MAXIMO) {
+                conexao.chave.interestOps(conexao.chave.interestOps() | SelectionKey.OP_READ);
+                ler(conexao); // quadros que ficaram no buffer enquanto a leitura estava suspensa
+            }
+        }
+        // Uma resposta que chegar depois daqui reativa a escrita via "prontas"
+        conexao.chave.interestOps(conexao.chave.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Conexo aceita. Os campos de leitura, escrita e {@code emVoo} so usados s pela thread
+     * de seleo; a fila de requisies  executada por uma tarefa de cada vez, como uma caixa
+     * de mensagens.
+     */
+    private class Conexao implements Runnable {
+        final SocketChannel canal;
+        final Queue<ByteBuffer> saida = new ConcurrentLinkedQueue<>();
+        final ArrayDeque<ByteBuffer> requisicoes = new ArrayDeque<>();
+        ByteBuffer leitura = ByteBuffer.allocate(TAMANHO_LEITURA);
+        SelectionKey chave;
+        // Requisies recebidas cuja resposta ainda no foi escrita por inteiro
+        int emVoo;
+        private boolean agendada;
+        // Lido e escrito s pela tarefa da conexo, que executa os quadros em srie
+        private boolean autenticada = credencial == null;
+
+        Conexao(SocketChannel canal) {
+            this.canal = canal;
+        }
+
+        /**
+         * Compara a credencial recebida com a do servidor em tempo constante. Uma tentativa
+         * errada no autentica a conexo, e os comandos seguintes continuam recusados.
+         */
+        void autenticar(List<String> argumentos) {
+            if (credencial == null) {
+                return;
+            }
+            String recebida = argumentos.isEmpty() ? null : argumentos.get(0);
+            if (recebida == null || !MessageDigest.isEqual(credencial, recebida.getBytes(StandardCharsets.UTF_8))) {
+                throw new RuntimeException("Credencial invlida.");
+            }
+            autenticada = true;
+        }
+
+        synchronized void enviar(ByteBuffer quadro) {
+            requisicoes.add(quadro);
+            if (!agendada) {
+                agendada = true;
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int executadas = 0; executadas < LOTE; executadas++) {
+                ByteBuffer quadro;
+                synchronized (this) {
+                    quadro = requisicoes.poll();
+                    if (quadro == null) {
+                        agendada = false;
+                        return;
+                    }
+                }
+                saida.add(executar(this, quadro));
+                prontas.add(this);
+                seletor.wakeup();
+            }
+            executor.execute(this); // cede a thread e continua depois, ainda agendada
+        }
+    }
+
+    /**
+     * Inicia o servidor usando os dados do diretrio atual, com o controle de admisso padro.
+     * @param args [porta] [interface] (padro 9090 e loopback)
+     */
+    public static void main(String[] args) throws IOException {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+        InetAddress endereco = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        CommandDispatcher despachante = new CommandDispatcher(new JackutFacade());
+        despachante.setControleAdmissao(new AdmissionControl());
+        JackutBinaryServer servidor = new JackutBinaryServer(despachante, endereco, porta);
+        servidor.iniciar();
+        System.out.println("Jackut binrio escutando em " + endereco.getHostAddress() + ":" + servidor.getPorta());
+    }
+}
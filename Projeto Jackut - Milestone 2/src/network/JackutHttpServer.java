@@ -0,0 +1,161 @@
+package network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exceptions.OverloadException;
+import exceptions.RateLimitException;
+import facade.JackutFacade;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Servidor HTTP embutido que expe as operaes da {@link JackutFacade} pela rede.
+ *
+ * <p>Protocolo: {@code POST /<comando>}, onde o comando  o nome do mtodo da fachada e
+ * precisa estar entre os comandos do despachante ({@link CommandDispatcher#COMANDOS_USUARIO},
+ * por padro; no h autenticao alm da sesso do prprio usurio).
+ * O corpo traz os argumentos em UTF-8, um por linha (ver
+ * {@link CommandDispatcher#codificarArgumentos(List)}). A resposta tem status 200 com o
+ * resultado em texto, 422 com a mensagem de erro da fachada, ou 404 para comando
+ * desconhecido. {@code GET /} lista os comandos disponveis.</p>
+ *
+ * <p>Com um {@link AdmissionControl} no despachante, comandos limitados recebem 429 e
+ * comandos descartados por sobrecarga recebem 503; {@code GET /admissao} mostra os contadores.</p>
+ *
+ * <p>Cada requisio  atendida por uma virtual thread prpria (ou por um pool sem limite
+ * em JDKs antigos). As conexes HTTP/1.1 so mantidas abertas (keep-alive) entre requisies.</p>
+ *
+ * <p>Por padro o servidor escuta s na interface de loopback; outra interface precisa ser
+ * escolhida explicitamente.</p>
+ */
+public class JackutHttpServer {
+
+    private final HttpServer servidor;
+    private final CommandDispatcher despachante;
+    private final ExecutorService executor;
+
+    /**
+     * @param facade Fachada a ser exposta
+     * @param porta Porta TCP na interface de loopback (0 escolhe uma porta livre)
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public JackutHttpServer(JackutFacade facade, int porta) throws IOException {
+        this(new CommandDispatcher(facade), porta);
+    }
+
+    /**
+     * @param despachante Despachante que executar os comandos
+     * @param porta Porta TCP na interface de loopback (0 escolhe uma porta livre)
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public JackutHttpServer(CommandDispatcher despachante, int porta) throws IOException {
+        this(despachante, InetAddress.getLoopbackAddress(), porta);
+    }
+
+    /**
+     * @param despachante Despachante que executar os comandos
+     * @param endereco Interface em que o servidor escuta
+     * @param porta Porta TCP (0 escolhe uma porta livre)
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public JackutHttpServer(CommandDispatcher despachante, InetAddress endereco, int porta) throws IOException {
+        this.despachante = despachante;
+        this.executor = VirtualThreads.novoExecutorPorTarefa();
+        this.servidor = HttpServer.create(new InetSocketAddress(endereco, porta), 1024);
+        this.servidor.createContext("/", this::atender);
+        this.servidor.setExecutor(executor);
+    }
+
+    public void iniciar() {
+        servidor.start();
+    }
+
+    public void parar() {
+        servidor.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * @return Porta em que o servidor est escutando
+     */
+    public int getPorta() {
+        return servidor.getAddress().getPort();
+    }
+
+    private void atender(HttpExchange troca) throws IOException {
+        try {
+            String comando = troca.getRequestURI().getPath().substring(1);
+            if (comando.isEmpty()) {
+                responder(troca, 200, String.join("\n", despachante.getComandos()));
+                return;
+            }
+            if (comando.equals("admissao") && troca.getRequestMethod().equals("GET")) {
+                AdmissionControl controle = despachante.getControleAdmissao();
+                responder(troca, controle == null ? 404 : 200,
+                        controle == null ? "Controle de admisso desativado." : controle.getContadores());
+                return;
+            }
+            if (!despachante.existe(comando)) {
+                responder(troca, 404, "Comando desconhecido: " + comando);
+                return;
+            }
+
+            List<String> argumentos = CommandDispatcher.decodificarArgumentos(lerCorpo(troca.getRequestBody()));
+            String resultado;
+            try {
+                resultado = despachante.executar(comando, argumentos);
+            } catch (RateLimitException e) {
+                responder(troca, 429, e.getMessage());
+                return;
+            } catch (OverloadException e) {
+                responder(troca, 503, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                responder(troca, 422, e.getMessage() == null ? e.toString() : e.getMessage());
+                return;
+            }
+            responder(troca, 200, resultado);
+        } finally {
+            troca.close();
+        }
+    }
+
+    private static String lerCorpo(InputStream corpo) throws IOException {
+        return new String(corpo.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void responder(HttpExchange troca, int status, String texto) throws IOException {
+        byte[] corpo = texto.getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if (corpo.length == 0) {
+            troca.sendResponseHeaders(status, -1); // sem corpo; a conexo continua reutilizvel
+            return;
+        }
+        troca.sendResponseHeaders(status, corpo.length);
+        try (OutputStream saida = troca.getResponseBody()) {
+            saida.write(corpo);
+        }
+    }
+
+    /**
+     * Inicia o servidor usando os dados do diretrio atual, com o controle de admisso padro.
+     * @param args [porta] [interface] (padro 8080 e loopback)
+     */
+    public static void main(String[] args) throws IOException {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        InetAddress endereco = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        CommandDispatcher despachante = new CommandDispatcher(new JackutFacade());
+        despachante.setControleAdmissao(new AdmissionControl());
+        JackutHttpServer servidor = new JackutHttpServer(despachante, endereco, porta);
+        servidor.iniciar();
+        System.out.println("Jackut HTTP escutando em " + endereco.getHostAddress() + ":" + servidor.getPorta()
+                + (VirtualThreads.disponiveis() ? " (virtual threads)" : " (threads de plataforma)"));
+    }
+}
@@ -0,0 +1,61 @@
+package network;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Baldes de fichas por chave (sesso ou login), sem travas.
+ *
+ * <p>Cada balde  guardado como o instante terico da prxima chegada (algoritmo GCRA), um
+ * nico {@code long} atualizado por compare-and-set: uma requisio  aceita se esse instante
+ * no est mais de {@code rajada - 1} intervalos  frente do relgio, e ento o empurra um
+ * intervalo adiante. O efeito  o de um balde com {@code rajada} fichas reabastecido a
+ * {@code porSegundo} fichas por segundo.</p>
+ *
+ * <p>Baldes cheios equivalem a baldes novos, ento so descartados quando h chaves demais.</p>
+ */
+class RateLimiter {
+
+    private static final int LIMITE_CHAVES = 100_000;
+
+    private final long intervaloNs;
+    private final long toleranciaNs;
+    private final ConcurrentHashMap<String, AtomicLong> proximaChegada = new ConcurrentHashMap<>();
+
+    /**
+     * @param porSegundo Fichas repostas por segundo
+     * @param rajada Capacidade do balde (requisies seguidas aceitas com o balde cheio)
+     */
+    RateLimiter(double porSegundo, int rajada) {
+        if (porSegundo <= 0 || rajada <= 0) {
+            throw new RuntimeException("Limite invlido.");
+        }
+        this.intervaloNs = (long) (1_000_000_000L / porSegundo);
+        this.toleranciaNs = intervaloNs * (rajada - 1);
+    }
+
+    /**
+     * @param chave Sesso ou login
+     * @param agora Instante atual, de {@link System#nanoTime()}
+     * @return true se havia ficha (e ela foi consumida)
+     */
+    boolean tentarAdquirir(String chave, long agora) {
+        AtomicLong chegada = proximaChegada.get(chave);
+        if (chegada == null) {
+            if (proximaChegada.size() >= LIMITE_CHAVES) {
+                proximaChegada.values().removeIf(c -> c.get() <= agora);
+            }
+            chegada = proximaChegada.computeIfAbsent(chave, k -> new AtomicLong(agora));
+        }
+        while (true) {
+            long atual = chegada.get();
+            long base = Math.max(atual, agora);
+            if (base - agora > toleranciaNs) {
+                return false;
+            }
+            if (chegada.compareAndSet(atual, base + intervaloNs)) {
+                return true;
+            }
+        }
+    }
+}
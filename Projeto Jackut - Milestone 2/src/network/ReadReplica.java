@@ -0,0 +1,242 @@
+package network;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rplica de leitura: recebe o log de mutaes do {@link ReplicationPrimary}, aplica as
+ * entradas na ordem e atende pelo protocolo binrio somente os comandos de leitura.
+ *
+ * <p>Ao conectar, a rplica informa a poca e o prximo offset que precisa; se o primrio
+ * no puder continuar dali, envia um snapshot e o log segue a partir do offset do snapshot.
+ * Quando a conexo cai, a rplica reconecta e retoma do mesmo ponto.</p>
+ *
+ * <p>A rplica aplica cada entrada com o instante registrado pelo primrio e confere o
+ * resultado com o dele. Se uma entrada falha ou d resultado diferente, a rplica divergiu:
+ * ela para de atender leituras, desconecta e pede um snapshot novo ao reconectar.</p>
+ *
+ * <p>O atraso  o tempo desde a ltima vez em que a rplica estava em dia com o primrio
+ * (todas as entradas anunciadas no pulso aplicadas). Leituras so recusadas quando o atraso
+ * passa do limite configurado, de modo que uma rplica nunca responde com dados mais antigos
+ * que esse limite.</p>
+ */
+public class ReadReplica {
+
+    private static final long ESPERA_RECONEXAO_MS = 500;
+
+    private final ReplicaFacade facade = new ReplicaFacade();
+    private final CommandDispatcher aplicador = new CommandDispatcher(facade);
+    private final String hostPrimario;
+    private final int portaPrimario;
+    private final long atrasoMaximoMs;
+    private final JackutBinaryServer servidor;
+    private volatile boolean ativo;
+    private Thread threadReplicacao;
+
+    private long epoca;
+    private volatile long proximoOffset;
+    // Estado local diferente do primrio: leituras recusadas at o prximo snapshot
+    private volatile boolean divergente;
+    private volatile long offsetPrimario;
+    private volatile long ultimaSincronizacao;
+
+    /**
+     * @param hostPrimario Host do primrio
+     * @param portaPrimario Porta de replicao do primrio
+     * @param portaClientes Porta do protocolo binrio para leituras (0 escolhe uma livre)
+     * @param atrasoMaximoMs Atraso acima do qual as leituras so recusadas
+     * @throws IOException Se a porta no puder ser aberta
+     */
+    public ReadReplica(String hostPrimario, int portaPrimario, int portaClientes, long atrasoMaximoMs) throws IOException {
+        this.hostPrimario = hostPrimario;
+        this.portaPrimario = portaPrimario;
+        this.atrasoMaximoMs = atrasoMaximoMs;
+        this.servidor = new JackutBinaryServer(new DespachanteLeitura(), portaClientes);
+    }
+
+    public void iniciar() {
+        ativo = true;
+        servidor.iniciar();
+        threadReplicacao = new Thread(this::replicar, "jackut-replica");
+        threadReplicacao.setDaemon(true);
+        threadReplicacao.start();
+    }
+
+    public void parar() throws IOException {
+        ativo = false;
+        threadReplicacao.interrupt();
+        servidor.parar();
+    }
+
+    public int getPortaClientes() throws IOException {
+        return servidor.getPorta();
+    }
+
+    /**
+     * @return Quantidade de entradas aplicadas (prximo offset esperado)
+     */
+    public long getOffsetAplicado() {
+        return proximoOffset;
+    }
+
+    /**
+     * @return Entradas j anunciadas pelo primrio e ainda no aplicadas
+     */
+    public long getEntradasPendentes() {
+        return Math.max(0, offsetPrimario - proximoOffset);
+    }
+
+    /**
+     * @return Milissegundos desde a ltima vez em que a rplica estava em dia
+     *         ({@link Long#MAX_VALUE} se ainda no sincronizou)
+     */
+    public long getAtrasoMs() {
+        long sincronizacao = ultimaSincronizacao;
+        return sincronizacao == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - sincronizacao;
+    }
+
+    private void replicar() {
+        while (ativo) {
+            try (Socket socket = new Socket(hostPrimario, portaPrimario)) {
+                socket.setTcpNoDelay(true);
+                DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                saida.writeLong(epoca);
+                saida.writeLong(divergente ? -1 : proximoOffset); // -1 nunca est no log: pede snapshot
+                saida.flush();
+                while (ativo) {
+                    byte tipo = entrada.readByte();
+                    if (tipo == ReplicationPrimary.SNAPSHOT) {
+                        receberSnapshot(entrada);
+                    } else if (tipo == ReplicationPrimary.ENTRADA) {
+                        receberEntrada(entrada);
+                    } else if (tipo == ReplicationPrimary.PULSO) {
+                        offsetPrimario = entrada.readLong();
+                        if (proximoOffset >= offsetPrimario) {
+                            ultimaSincronizacao = System.currentTimeMillis();
+                        }
+                    } else {
+                        throw new IOException("Mensagem de replicao desconhecida: " + tipo);
+                    }
+                }
+            } catch (IOException e) {
+                if (divergente) {
+                    System.err.println("Rplica: " + e.getMessage() + "; pedindo snapshot ao primrio.");
+                }
+                try {
+                    Thread.sleep(ESPERA_RECONEXAO_MS);
+                } catch (InterruptedException interrompida) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receberSnapshot(DataInputStream entrada) throws IOException {
+        long novaEpoca = entrada.readLong();
+        long offset = entrada.readLong();
+        int quantidadeSessoes = entrada.readInt();
+        Map<String, String> sessoes = new HashMap<>();
+        for (int i = 0; i < quantidadeSessoes; i++) {
+            String idSessao = ReplicationLog.lerTexto(entrada);
+            sessoes.put(idSessao, ReplicationLog.lerTexto(entrada));
+        }
+        int tamanho = entrada.readInt();
+        if (tamanho < 0) {
+            throw new IOException("Snapshot invlido.");
+        }
+        byte[] dados = new byte[tamanho];
+        entrada.readFully(dados);
+        facade.aplicarSnapshot(dados, sessoes);
+        epoca = novaEpoca;
+        proximoOffset = offset;
+        divergente = false;
+    }
+
+    private void receberEntrada(DataInputStream entrada) throws IOException {
+        long offset = entrada.readLong();
+        long instante = entrada.readLong();
+        String comando = ReplicationLog.lerTexto(entrada);
+        int quantidade = entrada.readInt();
+        if (quantidade < 0 || quantidade > Short.MAX_VALUE) {
+            throw new IOException("Entrada invlida no fluxo de replicao.");
+        }
+        List<String> argumentos = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            argumentos.add(ReplicationLog.lerTexto(entrada));
+        }
+        String resultadoPrimario = ReplicationLog.lerTexto(entrada);
+        if (offset != proximoOffset) {
+            throw new IOException("Entrada fora de ordem: esperado " + proximoOffset + ", recebido " + offset);
+        }
+        String resultado;
+        try {
+            facade.fixarInstante(instante);
+            if (comando.equals("abrirSessao")) {
+                facade.restaurarSessao(resultadoPrimario, argumentos.get(0));
+                resultado = resultadoPrimario;
+            } else {
+                resultado = aplicador.executar(comando, argumentos);
+            }
+        } catch (RuntimeException e) {
+            resultado = "erro: " + e.getMessage();
+        }
+        if (!Objects.equals(resultado, resultadoPrimario)) {
+            // O comando teve sucesso no primrio com outro resultado: o estado local j no  o dele
+            divergente = true;
+            throw new IOException("Rplica divergente no offset " + offset + " (" + comando + "): "
+                    + resultado + " no lugar de " + resultadoPrimario);
+        }
+        proximoOffset = offset + 1;
+    }
+
+    /**
+     * Atende somente leituras, e apenas enquanto o atraso estiver dentro do limite.
+     */
+    private class DespachanteLeitura extends CommandDispatcher {
+
+        DespachanteLeitura() {
+            super(facade);
+        }
+
+        @Override
+        public String executar(String comando, List<String> argumentos) {
+            if (!CommandDispatcher.LEITURAS.contains(comando)) {
+                throw new RuntimeException("Rplica somente leitura: envie " + comando + " ao primrio.");
+            }
+            if (divergente) {
+                throw new RuntimeException("Rplica divergente: aguardando novo snapshot.");
+            }
+            long atraso = getAtrasoMs();
+            if (atraso > atrasoMaximoMs) {
+                throw new RuntimeException(atraso == Long.MAX_VALUE ? "Rplica ainda no sincronizada."
+                        : "Rplica atrasada em " + atraso + " ms.");
+            }
+            return super.executar(comando, argumentos);
+        }
+    }
+
+    /**
+     * Inicia uma rplica usando o diretrio atual para os dados locais.
+     * @param args hostPrimario portaReplicacao [portaClientes] [atrasoMaximoMs] (padro 9202 e 2000)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int portaClientes = args.length > 2 ? Integer.parseInt(args[2]) : 9202;
+        long atrasoMaximo = args.length > 3 ? Long.parseLong(args[3]) : 2000;
+        ReadReplica replica = new ReadReplica(args[0], Integer.parseInt(args[1]), portaClientes, atrasoMaximo);
+        replica.iniciar();
+        System.out.println("Rplica Jackut escutando na porta " + replica.getPortaClientes());
+        while (true) {
+            Thread.sleep(5000);
+            long atraso = replica.getAtrasoMs();
+            System.out.println("Rplica " + replica.getPortaClientes() + ": offset " + replica.getOffsetAplicado()
+                    + ", pendentes " + replica.getEntradasPendentes()
+                    + ", atraso " + (atraso == Long.MAX_VALUE ? "-" : atraso + " ms"));
+        }
+    }
+}
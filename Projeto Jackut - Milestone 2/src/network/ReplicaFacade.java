@@ -0,0 +1,50 @@
+package network;
+
+import facade.JackutFacade;
+
+import java.util.Map;
+
+/**
+ * Fachada usada pelo primrio e pelas rplicas de leitura, com as operaes de replicao
+ * (snapshot e sesses). Essas operaes so de pacote, ento no viram comandos de rede:
+ * os comandos expostos so exatamente os da {@link JackutFacade}.
+ */
+public class ReplicaFacade extends JackutFacade {
+
+    // Instante da escrita em andamento: o primrio o fixa antes de cada escrita e o registra
+    // no log, e a rplica usa o instante registrado, ento datas e reteno coincidem
+    private volatile long instante = System.currentTimeMillis();
+
+    public ReplicaFacade() {
+        jackutService.setRelogio(() -> instante);
+    }
+
+    void fixarInstante(long instante) {
+        this.instante = instante;
+    }
+
+    Map<String, String> getSessoes() {
+        return jackutService.getSessoes();
+    }
+
+    void restaurarSessao(String idSessao, String login) {
+        jackutService.restaurarSessao(idSessao, login);
+    }
+
+    /**
+     * @return Estado atual no formato do arquivo de snapshot
+     */
+    byte[] gerarSnapshot() {
+        return jackutService.gerarSnapshot();
+    }
+
+    /**
+     * Substitui o estado local pelo snapshot recebido do primrio.
+     * @param dados Estado do primrio, de {@link #gerarSnapshot()}
+     * @param sessoes Sesses ativas no primrio (idSessao -> login)
+     */
+    void aplicarSnapshot(byte[] dados, Map<String, String> sessoes) {
+        jackutService.aplicarSnapshot(dados);
+        sessoes.forEach((idSessao, login) -> jackutService.restaurarSessao(idSessao, login));
+    }
+}
@@ -0,0 +1,57 @@
+package network;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sobe localmente um primrio e suas rplicas de leitura, uma JVM por processo, cada uma
+ * com seu prprio diretrio de dados ({@code diretorio/primario}, {@code diretorio/replica-0}, ...).
+ *
+ * <p>Uso: {@code ReplicationLauncher [replicas] [portaInicial] [diretorio]}. O primrio atende
+ * clientes em {@code portaInicial} e rplicas em {@code portaInicial + 1}; a rplica {@code i}
+ * atende leituras em {@code portaInicial + 2 + i}. Escritas devem ir ao primrio; leituras
+ * podem ser distribudas entre as rplicas com o {@link JackutBinaryClient}.</p>
+ * <p>Os processos so encerrados junto com o lanador.</p>
+ */
+public class ReplicationLauncher {
+
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int portaInicial = args.length > 1 ? Integer.parseInt(args[1]) : 9200;
+        File diretorio = new File(args.length > 2 ? args[2] : "replicacao");
+
+        List<Process> processos = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processos.forEach(Process::destroy)));
+
+        processos.add(iniciar(new File(diretorio, "primario"), ReplicationPrimary.class.getName(),
+                String.valueOf(portaInicial), String.valueOf(portaInicial + 1)));
+        ClusterLauncher.aguardarPorta(portaInicial, processos.get(0));
+
+        for (int i = 0; i < quantidade; i++) {
+            processos.add(iniciar(new File(diretorio, "replica-" + i), ReadReplica.class.getName(),
+                    "localhost", String.valueOf(portaInicial + 1), String.valueOf(portaInicial + 2 + i)));
+        }
+        for (int i = 0; i < quantidade; i++) {
+            ClusterLauncher.aguardarPorta(portaInicial + 2 + i, processos.get(1 + i));
+        }
+        System.out.println("Primrio em localhost:" + portaInicial + ", rplicas em localhost:"
+                + (portaInicial + 2) + (quantidade > 1 ? " a " + (portaInicial + 1 + quantidade) : ""));
+
+        for (Process processo : processos) {
+            processo.waitFor();
+        }
+    }
+
+    private static Process iniciar(File dados, String classe, String... argumentos) throws Exception {
+        dados.mkdirs();
+        List<String> comando = new ArrayList<>();
+        comando.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        comando.add("-Dfile.encoding=" + System.getProperty("file.encoding"));
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(classe);
+        comando.addAll(List.of(argumentos));
+        return new ProcessBuilder(comando).directory(dados).inheritIO().start();
+    }
+}
@@ -0,0 +1,375 @@
+package network;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log ordenado das mutaes aplicadas no primrio. Cada entrada recebe um offset
+ * sequencial; as rplicas pedem as entradas a partir do prximo offset que precisam.
+ *
+ * <p>Cada entrada leva, alm do comando, o instante em que o primrio a executou e o
+ * resultado que devolveu, para que a rplica aplique com o mesmo relgio e confira o
+ * resultado.</p>
+ *
+ * <p>O log fica em disco, em dois segmentos ({@code log-anterior} e {@code log-atual}):
+ * quando o atual passa do tamanho configurado, o anterior  apagado e o atual toma o seu
+ * lugar. As entradas mais recentes tambm ficam em memria; as demais so lidas do arquivo
+ * a partir de um ndice esparso, com uma posio a cada {@value #BLOCO} entradas. Uma rplica
+ * que pede um offset que j saiu dos dois segmentos recomea a partir de um snapshot.</p>
+ *
+ * <p>A poca identifica a sequncia de offsets. Ela  mantida entre reincios s quando o
+ * log foi fechado por {@link #fechar()}: depois de uma queda o log pode ter perdido entradas
+ * que o estado j tem, ento uma poca nova  sorteada e as rplicas recebem um snapshot.
+ * Por isso as escritas no precisam de fsync uma a uma.</p>
+ */
+class ReplicationLog {
+
+    static final class Entrada {
+        final long offset;
+        final long instante;
+        final String comando;
+        final List<String> argumentos;
+        final String resultado;
+
+        Entrada(long offset, long instante, String comando, List<String> argumentos, String resultado) {
+            this.offset = offset;
+            this.instante = instante;
+            this.comando = comando;
+            this.argumentos = argumentos;
+            this.resultado = resultado;
+        }
+    }
+
+    // Entradas entre duas posies do ndice esparso
+    static final int BLOCO = 1024;
+
+    private static final String ATUAL = "log-atual";
+    private static final String ANTERIOR = "log-anterior";
+    private static final String EPOCA = "epoca";
+    private static final String FECHADO = "fechado";
+
+    private final File diretorio;
+    private final int capacidade;
+    private final long tamanhoSegmento;
+    private final long epoca;
+
+    private Segmento anterior;
+    private Segmento atual;
+    // Falha de escrita: o arquivo deixou de ter todas as entradas e no pode mais ser lido
+    private boolean integro = true;
+
+    // Entradas recentes em memria, a partir de primeiroRecente
+    private final List<Entrada> recentes = new ArrayList<>();
+    private long primeiroRecente;
+
+    /**
+     * @param diretorio Diretrio dos segmentos do log (criado se no existir)
+     * @param capacidade Quantidade de entradas mantidas em memria; ao exceder, a metade mais antiga  descartada
+     * @param tamanhoSegmento Tamanho do segmento atual, em bytes, a partir do qual ele  rotacionado
+     * @throws IOException Se o diretrio ou os segmentos no puderem ser abertos
+     */
+    ReplicationLog(File diretorio, int capacidade, long tamanhoSegmento) throws IOException {
+        if (!diretorio.isDirectory() && !diretorio.mkdirs()) {
+            throw new IOException("No foi possvel criar o diretrio " + diretorio + ".");
+        }
+        this.diretorio = diretorio;
+        this.capacidade = capacidade;
+        this.tamanhoSegmento = tamanhoSegmento;
+
+        File epocaSalva = new File(diretorio, EPOCA);
+        boolean fechadoCorretamente = new File(diretorio, FECHADO).delete() && epocaSalva.isFile();
+        if (fechadoCorretamente) {
+            this.epoca = lerEpoca(epocaSalva);
+            File arquivoAnterior = new File(diretorio, ANTERIOR);
+            this.anterior = arquivoAnterior.isFile() ? Segmento.abrir(arquivoAnterior, -1) : null;
+            this.atual = Segmento.abrir(new File(diretorio, ATUAL), anterior == null ? -1 : anterior.proximoOffset);
+        } else {
+            this.epoca = new SecureRandom().nextLong();
+            Files.deleteIfExists(new File(diretorio, ANTERIOR).toPath());
+            Files.deleteIfExists(new File(diretorio, ATUAL).toPath());
+            gravarEpoca(epocaSalva, epoca);
+            this.atual = Segmento.abrir(new File(diretorio, ATUAL), 0);
+        }
+        this.primeiroRecente = atual.proximoOffset;
+    }
+
+    /**
+     * @return poca desta sequncia de offsets
+     */
+    long getEpoca() {
+        return epoca;
+    }
+
+    /**
+     * Registra uma escrita aplicada no primrio.
+     * @return Offset atribudo  entrada
+     */
+    synchronized long anexar(long instante, String comando, List<String> argumentos, String resultado) {
+        long offset = getProximoOffset();
+        Entrada entrada = new Entrada(offset, instante, comando, new ArrayList<>(argumentos), resultado);
+        recentes.add(entrada);
+        if (recentes.size() > capacidade) {
+            int descartadas = recentes.size() / 2;
+            recentes.subList(0, descartadas).clear();
+            primeiroRecente += descartadas;
+        }
+        if (integro) {
+            try {
+                atual.anexar(entrada);
+                if (atual.tamanho() >= tamanhoSegmento) {
+                    rotacionar();
+                }
+            } catch (IOException e) {
+                // As rplicas continuam recebendo as entradas da memria; sem o marcador de
+                // fechamento, o prximo incio sorteia uma poca nova
+                integro = false;
+            }
+        }
+        notifyAll();
+        return offset;
+    }
+
+    synchronized long getProximoOffset() {
+        return primeiroRecente + recentes.size();
+    }
+
+    /**
+     * @return true se o log ainda tem todas as entradas a partir do offset
+     */
+    synchronized boolean contem(long offset) {
+        return offset >= getPrimeiroOffset() && offset <= getProximoOffset();
+    }
+
+    /**
+     * L entradas a partir de um offset, esperando at {@code esperaMs} se ainda no houver nenhuma.
+     * @return Entradas em ordem (possivelmente vazia), ou {@code null} se o offset j foi descartado
+     */
+    synchronized List<Entrada> lerDesde(long offset, int maximo, long esperaMs) throws InterruptedException {
+        long limite = System.currentTimeMillis() + esperaMs;
+        long restante = esperaMs;
+        while (offset >= getProximoOffset() && restante > 0) {
+            wait(restante);
+            restante = limite - System.currentTimeMillis();
+        }
+        if (offset < getPrimeiroOffset()) {
+            return null;
+        }
+        if (offset < primeiroRecente) {
+            try {
+                return (anterior != null && offset < anterior.proximoOffset ? anterior : atual).ler(offset, maximo);
+            } catch (IOException e) {
+                return null; // a rplica recomea por um snapshot
+            }
+        }
+        int inicio = (int) (offset - primeiroRecente);
+        int fim = Math.min(recentes.size(), inicio + maximo);
+        return inicio >= fim ? new ArrayList<>() : new ArrayList<>(recentes.subList(inicio, fim));
+    }
+
+    /**
+     * Grava em disco tudo o que foi anexado e marca o log como fechado corretamente, o que
+     * permite retomar a mesma poca no prximo incio.
+     */
+    synchronized void fechar() throws IOException {
+        if (anterior != null) {
+            anterior.fechar();
+        }
+        atual.fechar();
+        if (integro) {
+            new FileOutputStream(new File(diretorio, FECHADO)).close();
+        }
+    }
+
+    private long getPrimeiroOffset() {
+        if (!integro) {
+            return primeiroRecente;
+        }
+        return anterior != null ? anterior.primeiroOffset : atual.primeiroOffset;
+    }
+
+    private void rotacionar() throws IOException {
+        if (anterior != null) {
+            anterior.fechar();
+        }
+        atual.fechar();
+        File arquivoAnterior = new File(diretorio, ANTERIOR);
+        Files.move(new File(diretorio, ATUAL).toPath(), arquivoAnterior.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        anterior = Segmento.abrir(arquivoAnterior, -1);
+        atual = Segmento.abrir(new File(diretorio, ATUAL), anterior.proximoOffset);
+    }
+
+    private static long lerEpoca(File arquivo) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new FileInputStream(arquivo))) {
+            return entrada.readLong();
+        }
+    }
+
+    private static void gravarEpoca(File arquivo, long epoca) throws IOException {
+        try (FileOutputStream saida = new FileOutputStream(arquivo)) {
+            new DataOutputStream(saida).writeLong(epoca);
+            saida.getFD().sync();
+        }
+    }
+
+    /**
+     * Segmento do log em disco. Cada entrada  gravada como {@code [int tamanho][bytes]},
+     * com o contedo de {@link #serializar(Entrada)}.
+     */
+    private static final class Segmento {
+        final File arquivo;
+        final RandomAccessFile acesso;
+        final long primeiroOffset;
+        long proximoOffset;
+        // Posio no arquivo da entrada primeiroOffset + i * BLOCO
+        final List<Long> indice = new ArrayList<>();
+
+        private Segmento(File arquivo, long primeiroOffset) throws IOException {
+            this.arquivo = arquivo;
+            this.acesso = new RandomAccessFile(arquivo, "rw");
+            this.primeiroOffset = primeiroOffset;
+            this.proximoOffset = primeiroOffset;
+        }
+
+        /**
+         * Abre um segmento e reconstri o ndice. Uma entrada incompleta no fim  descartada.
+         * @param primeiroOffset Offset da primeira entrada de um segmento vazio, ou -1 para
+         *                       usar o da primeira entrada gravada
+         */
+        static Segmento abrir(File arquivo, long primeiroOffset) throws IOException {
+            long inicio = primeiroOffset;
+            if (inicio < 0 && arquivo.length() >= 12) {
+                try (DataInputStream entrada = new DataInputStream(new FileInputStream(arquivo))) {
+                    entrada.readInt();
+                    inicio = entrada.readLong();
+                }
+            }
+            Segmento segmento = new Segmento(arquivo, Math.max(inicio, 0));
+            long posicao = 0;
+            long comprimento = arquivo.length();
+            try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)))) {
+                while (posicao + 4 <= comprimento) {
+                    int tamanho = entrada.readInt();
+                    if (tamanho < 8 || posicao + 4 + tamanho > comprimento) {
+                        break;
+                    }
+                    if ((segmento.proximoOffset - segmento.primeiroOffset) % BLOCO == 0) {
+                        segmento.indice.add(posicao);
+                    }
+                    entrada.skipNBytes(tamanho);
+                    posicao += 4 + tamanho;
+                    segmento.proximoOffset++;
+                }
+            }
+            segmento.acesso.setLength(posicao);
+            return segmento;
+        }
+
+        long tamanho() throws IOException {
+            return acesso.length();
+        }
+
+        void anexar(Entrada entrada) throws IOException {
+            byte[] dados = serializar(entrada);
+            long posicao = acesso.length();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + dados.length);
+            DataOutputStream saida = new DataOutputStream(bytes);
+            saida.writeInt(dados.length);
+            saida.write(dados);
+            acesso.seek(posicao);
+            acesso.write(bytes.toByteArray());
+            if ((proximoOffset - primeiroOffset) % BLOCO == 0) {
+                indice.add(posicao);
+            }
+            proximoOffset++;
+        }
+
+        /**
+         * L at {@code maximo} entradas a partir de um offset deste segmento.
+         */
+        List<Entrada> ler(long offset, int maximo) throws IOException {
+            int bloco = (int) ((offset - primeiroOffset) / BLOCO);
+            acesso.seek(indice.get(bloco));
+            List<Entrada> lidas = new ArrayList<>();
+            for (long atual = primeiroOffset + (long) bloco * BLOCO; atual < proximoOffset && lidas.size() < maximo; atual++) {
+                int tamanho = acesso.readInt();
+                if (tamanho < 8 || tamanho > acesso.length() - acesso.getFilePointer()) {
+                    throw new IOException("Entrada invlida no log de replicao.");
+                }
+                if (atual < offset) {
+                    acesso.seek(acesso.getFilePointer() + tamanho);
+                    continue;
+                }
+                byte[] dados = new byte[tamanho];
+                acesso.readFully(dados);
+                lidas.add(desserializar(dados));
+            }
+            return lidas;
+        }
+
+        void fechar() throws IOException {
+            if (acesso.getChannel().isOpen()) {
+                acesso.getFD().sync();
+                acesso.close();
+            }
+        }
+    }
+
+    private static byte[] serializar(Entrada entrada) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream saida = new DataOutputStream(bytes);
+        saida.writeLong(entrada.offset);
+        saida.writeLong(entrada.instante);
+        escreverTexto(saida, entrada.comando);
+        saida.writeInt(entrada.argumentos.size());
+        for (String argumento : entrada.argumentos) {
+            escreverTexto(saida, argumento);
+        }
+        escreverTexto(saida, entrada.resultado);
+        return bytes.toByteArray();
+    }
+
+    private static Entrada desserializar(byte[] dados) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(dados));
+        long offset = entrada.readLong();
+        long instante = entrada.readLong();
+        String comando = lerTexto(entrada);
+        int quantidade = entrada.readInt();
+        if (quantidade < 0 || quantidade > dados.length) {
+            throw new IOException("Entrada invlida no log de replicao.");
+        }
+        List<String> argumentos = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            argumentos.add(lerTexto(entrada));
+        }
+        return new Entrada(offset, instante, comando, argumentos, lerTexto(entrada));
+    }
+
+    static void escreverTexto(DataOutput saida, String texto) throws IOException {
+        if (texto == null) {
+            saida.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.writeInt(bytes.length);
+        saida.write(bytes);
+    }
+
+    static String lerTexto(DataInput entrada) throws IOException {
+        int tamanho = entrada.readInt();
+        if (tamanho == -1) {
+            return null;
+        }
+        if (tamanho < 0 || tamanho > BinaryProtocol.TAMANHO_MAXIMO) {
+            throw new IOException("Texto invlido no fluxo de replicao.");
+        }
+        byte[] bytes = new byte[tamanho];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,257 @@
+package network;
+
+import entities.Jackut;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Primrio da replicao: atende leituras e escritas pelo protocolo binrio e envia s
+ * rplicas ({@link ReadReplica}) o log ordenado das mutaes aplicadas.
+ *
+ * <p>As escritas so executadas uma de cada vez, junto com a incluso no log, de modo que
+ * a ordem do log  a ordem em que o estado mudou. Comandos que falham no entram no log.
+ * Cada entrada leva o instante da execuo, que  tambm o relgio da fachada durante a
+ * escrita, e o resultado devolvido ao cliente: a rplica aplica com o mesmo instante e
+ * confere o resultado. O {@code abrirSessao}  registrado sem a senha; o id gerado vai no
+ * resultado, para que as rplicas reconheam as mesmas sesses.</p>
+ *
+ * <p>O log  gravado no diretrio {@value entities.Jackut#REPLICATION_DIR} (ver
+ * {@link ReplicationLog}), ento rplicas atrasadas e reincios do primrio retomam do
+ * log em vez de exigir um snapshot.</p>
+ *
+ * <p>Fluxo de replicao, sobre uma conexo TCP por rplica:</p>
+ * <pre>
+ * rplica -> primrio: [long poca][long prximo offset]
+ * primrio -> rplica: SNAPSHOT [long poca][long offset][int n]([texto id][texto login])*[int n][bytes]
+ *                      ENTRADA  [long offset][long instante][texto comando][int n]([texto])*[texto resultado]
+ *                      PULSO    [long prximo offset do primrio]
+ * </pre>
+ * <p>Se a poca (sorteada quando o log no foi fechado corretamente) no confere ou o offset pedido j saiu
+ * do log, a rplica recebe primeiro um snapshot. Um pulso  enviado aps cada lote e, sem
+ * escritas, a cada {@value #INTERVALO_PULSO_MS} ms; a rplica mede o prprio atraso por ele.</p>
+ *
+ * <p>Os clientes s enviam {@link CommandDispatcher#COMANDOS_USUARIO}; as
+ * {@link CommandDispatcher#LEITURAS} deixam de entrar no log e so as nicas aceitas pelas rplicas.</p>
+ */
+public class ReplicationPrimary {
+
+    static final byte SNAPSHOT = 1;
+    static final byte ENTRADA = 2;
+    static final byte PULSO = 3;
+
+    static final long INTERVALO_PULSO_MS = 200;
+    private static final int CAPACIDADE_LOG = 100_000;
+    private static final long TAMANHO_SEGMENTO_LOG = 256L * 1024 * 1024;
+    private static final int LOTE = 1024;
+
+    private final ReplicaFacade facade = new ReplicaFacade();
+    private final ReplicationLog log;
+    private final long epoca;
+    // Serializa as escritas com a incluso no log e a gerao de snapshots
+    private final Object escrita = new Object();
+    private final AtomicInteger replicasConectadas = new AtomicInteger();
+    private final JackutBinaryServer servidor;
+    private final ServerSocket servidorReplicacao;
+    private final ExecutorService executor = VirtualThreads.novoExecutorPorTarefa();
+    private volatile boolean ativo;
+
+    /**
+     * Primrio na interface de loopback, com o log no diretrio atual.
+     * @param portaClientes Porta do protocolo binrio para os clientes (0 escolhe uma livre)
+     * @param portaReplicacao Porta em que as rplicas se conectam (0 escolhe uma livre)
+     * @throws IOException Se alguma porta ou o log no puderem ser abertos
+     */
+    public ReplicationPrimary(int portaClientes, int portaReplicacao) throws IOException {
+        this(InetAddress.getLoopbackAddress(), portaClientes, portaReplicacao, new File(Jackut.REPLICATION_DIR));
+    }
+
+    /**
+     * @param endereco Interface em que as duas portas escutam
+     * @param portaClientes Porta do protocolo binrio para os clientes (0 escolhe uma livre)
+     * @param portaReplicacao Porta em que as rplicas se conectam (0 escolhe uma livre)
+     * @param diretorioLog Diretrio do log de replicao
+     * @throws IOException Se alguma porta ou o log no puderem ser abertos
+     */
+    public ReplicationPrimary(InetAddress endereco, int portaClientes, int portaReplicacao, File diretorioLog)
+            throws IOException {
+        this.log = new ReplicationLog(diretorioLog, CAPACIDADE_LOG, TAMANHO_SEGMENTO_LOG);
+        this.epoca = log.getEpoca();
+        this.servidor = new JackutBinaryServer(new DespachanteRegistrado(), endereco, portaClientes);
+        this.servidorReplicacao = new ServerSocket(portaReplicacao, 50, endereco);
+    }
+
+    public void iniciar() {
+        ativo = true;
+        servidor.iniciar();
+        executor.execute(this::aceitarReplicas);
+    }
+
+    public void parar() throws IOException {
+        ativo = false;
+        servidorReplicacao.close();
+        servidor.parar();
+        executor.shutdownNow();
+        synchronized (escrita) {
+            log.fechar();
+        }
+    }
+
+    public int getPortaClientes() throws IOException {
+        return servidor.getPorta();
+    }
+
+    public int getPortaReplicacao() {
+        return servidorReplicacao.getLocalPort();
+    }
+
+    /**
+     * @return Offset que ser atribudo  prxima escrita
+     */
+    public long getOffset() {
+        return log.getProximoOffset();
+    }
+
+    public int getReplicasConectadas() {
+        return replicasConectadas.get();
+    }
+
+    private void aceitarReplicas() {
+        while (ativo) {
+            try {
+                Socket socket = servidorReplicacao.accept();
+                executor.execute(() -> atenderReplica(socket));
+            } catch (IOException e) {
+                // Socket fechado em parar(), ou falha ao aceitar uma conexo
+            }
+        }
+    }
+
+    private void atenderReplica(Socket socket) {
+        replicasConectadas.incrementAndGet();
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            long epocaReplica = entrada.readLong();
+            long offset = entrada.readLong();
+            if (epocaReplica != epoca || !log.contem(offset)) {
+                offset = enviarSnapshot(saida);
+            }
+            while (ativo) {
+                List<ReplicationLog.Entrada> entradas = log.lerDesde(offset, LOTE, INTERVALO_PULSO_MS);
+                if (entradas == null) {
+                    offset = enviarSnapshot(saida); // rplica ficou atrs do que o log ainda guarda
+                    continue;
+                }
+                for (ReplicationLog.Entrada e : entradas) {
+                    saida.writeByte(ENTRADA);
+                    saida.writeLong(e.offset);
+                    saida.writeLong(e.instante);
+                    ReplicationLog.escreverTexto(saida, e.comando);
+                    saida.writeInt(e.argumentos.size());
+                    for (String argumento : e.argumentos) {
+                        ReplicationLog.escreverTexto(saida, argumento);
+                    }
+                    ReplicationLog.escreverTexto(saida, e.resultado);
+                    offset = e.offset + 1;
+                }
+                saida.writeByte(PULSO);
+                saida.writeLong(log.getProximoOffset());
+                saida.flush();
+            }
+        } catch (IOException e) {
+            // Rplica desconectou; ela volta a pedir a partir do seu offset
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicasConectadas.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Offset a partir do qual o snapshot enviado precisa ser complementado pelo log
+     */
+    private long enviarSnapshot(DataOutputStream saida) throws IOException {
+        byte[] dados;
+        Map<String, String> sessoes;
+        long offset;
+        synchronized (escrita) {
+            dados = facade.gerarSnapshot();
+            sessoes = facade.getSessoes();
+            offset = log.getProximoOffset();
+        }
+        saida.writeByte(SNAPSHOT);
+        saida.writeLong(epoca);
+        saida.writeLong(offset);
+        saida.writeInt(sessoes.size());
+        for (Map.Entry<String, String> sessao : sessoes.entrySet()) {
+            ReplicationLog.escreverTexto(saida, sessao.getKey());
+            ReplicationLog.escreverTexto(saida, sessao.getValue());
+        }
+        saida.writeInt(dados.length);
+        saida.write(dados);
+        return offset;
+    }
+
+    /**
+     * Executa os comandos dos clientes, registrando no log as escritas bem-sucedidas.
+     */
+    private class DespachanteRegistrado extends CommandDispatcher {
+
+        DespachanteRegistrado() {
+            super(facade);
+        }
+
+        @Override
+        public String executar(String comando, List<String> argumentos) {
+            if (CommandDispatcher.LEITURAS.contains(comando)) {
+                return super.executar(comando, argumentos);
+            }
+            synchronized (escrita) {
+                if (!ativo) {
+                    throw new RuntimeException("Primrio encerrando: escrita recusada.");
+                }
+                long instante = System.currentTimeMillis();
+                facade.fixarInstante(instante);
+                String resultado = super.executar(comando, argumentos);
+                log.anexar(instante, comando,
+                        comando.equals("abrirSessao") ? argumentos.subList(0, 1) : argumentos, resultado);
+                return resultado;
+            }
+        }
+    }
+
+    /**
+     * Inicia o primrio usando os dados do diretrio atual. O log  fechado ao encerrar o
+     * processo, para que o prximo incio mantenha a poca.
+     * @param args [portaClientes] [portaReplicacao] [interface] (padro 9200, 9201 e loopback)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int portaClientes = args.length > 0 ? Integer.parseInt(args[0]) : 9200;
+        int portaReplicacao = args.length > 1 ? Integer.parseInt(args[1]) : 9201;
+        InetAddress endereco = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+        ReplicationPrimary primario = new ReplicationPrimary(endereco, portaClientes, portaReplicacao,
+                new File(Jackut.REPLICATION_DIR));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                primario.parar();
+            } catch (IOException e) {
+                // Sem o marcador de fechamento o prximo incio sorteia uma poca nova
+            }
+        }));
+        primario.iniciar();
+        System.out.println("Primrio Jackut: clientes na porta " + primario.getPortaClientes()
+                + ", rplicas na porta " + primario.getPortaReplicacao());
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println("Primrio: offset " + primario.getOffset()
+                    + ", rplicas conectadas " + primario.getReplicasConectadas());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package network;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Acesso s virtual threads do JDK.
+ *
+ * <p>O projeto ainda compila em JDKs sem virtual threads, ento o executor  obtido
+ * por reflexo: em JDK 21+ cada tarefa ganha sua prpria virtual thread; em verses
+ * anteriores usa-se um pool de threads de plataforma sem limite fixo.</p>
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return Executor com uma thread (virtual, se disponvel) por tarefa
+     */
+    public static ExecutorService novoExecutorPorTarefa() {
+        try {
+            Method fabrica = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) fabrica.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * @return true se o JDK em execuo oferece virtual threads
+     */
+    public static boolean disponiveis() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
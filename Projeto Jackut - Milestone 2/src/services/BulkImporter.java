@@ -0,0 +1,289 @@
+package services;
+
+import entities.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Carga em massa de usurios, perfis, relacionamentos, comunidades e mensagens
+ * a partir de um arquivo no formato de {@link DataRecord}.
+ *
+ * <p>O arquivo  lido em blocos de linhas. As linhas de cada bloco so interpretadas
+ * e validadas em paralelo; em seguida os registros so aplicados em ordem, direto
+ * nas estruturas em memria, sem passar pelas operaes de sesso e sem persistir
+ * a cada registro. Quem chama  responsvel por salvar uma nica vez ao final.</p>
+ *
+ * <p>Registros que referenciam usurios ou comunidades precisam aparecer depois
+ * do registro que os cria. Relacionamentos repetidos so ignorados. As regras de
+ * relacionamento das operaes valem tambm aqui: ningum se relaciona com quem o tem
+ * como inimigo, e amizade exige que nenhum dos dois seja inimigo do outro.</p>
+ */
+class BulkImporter {
+
+    // Linhas interpretadas em paralelo por vez
+    private static final int TAMANHO_BLOCO = 65536;
+
+    private final Map<String, User> usuarios;
+    private final Map<String, Community> comunidades;
+    private final ProfileIndex indicePerfis;
+    // Recebe (login, comunidade) de cada usurio ou comunidade alterado, qualquer um pode ser null
+    private final BiConsumer<String, String> marcarAlterados;
+
+    private long registros;
+
+    BulkImporter(Map<String, User> usuarios, Map<String, Community> comunidades, ProfileIndex indicePerfis,
+                 BiConsumer<String, String> marcarAlterados) {
+        this.usuarios = usuarios;
+        this.comunidades = comunidades;
+        this.indicePerfis = indicePerfis;
+        this.marcarAlterados = marcarAlterados;
+    }
+
+    /**
+     * Importa todos os registros do arquivo.
+     * @param arquivo Caminho do arquivo de importao (UTF-8; comprimido com GZIP se terminar em .gz)
+     * @return Quantidade de registros importados
+     * @throws IOException Se o arquivo no puder ser lido
+     * @throws RuntimeException Se alguma linha for invlida (a mensagem indica a linha)
+     */
+    long importar(Path arquivo) throws IOException {
+        InputStream entrada = Files.newInputStream(arquivo);
+        if (arquivo.getFileName().toString().endsWith(".gz")) {
+            entrada = new GZIPInputStream(entrada, 65536);
+        }
+        try (BufferedReader leitor = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8), 65536)) {
+            List<String> bloco = new ArrayList<>(TAMANHO_BLOCO);
+            long primeiraLinha = 1;
+            String linha;
+            while ((linha = leitor.readLine()) != null) {
+                bloco.add(linha);
+                if (bloco.size() == TAMANHO_BLOCO) {
+                    aplicar(interpretar(bloco, primeiraLinha), primeiraLinha);
+                    primeiraLinha += bloco.size();
+                    bloco.clear();
+                }
+            }
+            aplicar(interpretar(bloco, primeiraLinha), primeiraLinha);
+        }
+        return registros;
+    }
+
+    /**
+     * Interpreta as linhas do bloco em paralelo. Linhas vazias ou iniciadas por '#' so ignoradas.
+     */
+    private DataRecord[] interpretar(List<String> bloco, long primeiraLinha) {
+        DataRecord[] resultado = new DataRecord[bloco.size()];
+        String[] erros = new String[bloco.size()];
+        IntStream.range(0, bloco.size()).parallel().forEach(i -> {
+            String linha = bloco.get(i);
+            if (linha.isEmpty() || linha.startsWith("#")) {
+                return;
+            }
+            try {
+                DataRecord registro = DataRecord.decodificar(linha);
+                validarCampos(registro);
+                resultado[i] = registro;
+            } catch (RuntimeException e) {
+                erros[i] = e.getMessage();
+            }
+        });
+
+        // Reporta o primeiro erro do bloco, na ordem do arquivo
+        for (int i = 0; i < erros.length; i++) {
+            if (erros[i] != null) {
+                throw erro(primeiraLinha + i, erros[i]);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Validaes que no dependem do estado do sistema (feitas em paralelo).
+     */
+    private static void validarCampos(DataRecord registro) {
+        switch (registro.getTipo()) {
+            case DataRecord.USUARIO:
+                if (registro.getCampo(0).isBlank()) throw new RuntimeException("Login invlido.");
+                if (registro.getCampo(1).isBlank()) throw new RuntimeException("Senha invlida.");
+                break;
+            case DataRecord.AMIZADE:
+            case DataRecord.SOLICITACAO:
+            case DataRecord.IDOLO:
+            case DataRecord.PAQUERA:
+            case DataRecord.INIMIGO:
+                if (registro.getCampo(0).equals(registro.getCampo(1))) {
+                    throw new RuntimeException("Usurio no pode se relacionar consigo mesmo.");
+                }
+                break;
+            case DataRecord.MENSAGEM:
+            case DataRecord.MENSAGEM_LIDA:
+                try {
+                    Long.parseLong(registro.getCampo(3));
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Data invlida.");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Aplica os registros do bloco em ordem, validando as referncias.
+     */
+    private void aplicar(DataRecord[] bloco, long primeiraLinha) {
+        for (int i = 0; i < bloco.length; i++) {
+            if (bloco[i] == null) {
+                continue;
+            }
+            try {
+                aplicar(bloco[i]);
+                registros++;
+            } catch (RuntimeException e) {
+                throw erro(primeiraLinha + i, e.getMessage());
+            }
+        }
+    }
+
+    private void aplicar(DataRecord registro) {
+        switch (registro.getTipo()) {
+            case DataRecord.USUARIO: {
+                String login = registro.getCampo(0);
+                if (usuarios.containsKey(login)) {
+                    throw new RuntimeException("Conta com esse nome j existe.");
+                }
+                usuarios.put(login, new User(login, registro.getCampo(1), registro.getCampo(2)));
+                marcarAlterados.accept(login, null);
+                break;
+            }
+            case DataRecord.ATRIBUTO: {
+                User usuario = usuario(registro.getCampo(0));
+                String valorAntigo = usuario.getProfile().getAttribute(registro.getCampo(1));
+                usuario.getProfile().setAttribute(registro.getCampo(1), registro.getCampo(2));
+                indicePerfis.atualizar(usuario.getLogin(), registro.getCampo(1), valorAntigo, registro.getCampo(2));
+                marcarAlterados.accept(usuario.getLogin(), null);
+                break;
+            }
+            case DataRecord.AMIZADE: {
+                User usuario = usuario(registro.getCampo(0));
+                User amigo = usuario(registro.getCampo(1));
+                validarInimizade(usuario, amigo);
+                validarInimizade(amigo, usuario);
+                usuario.confirmarAmizade(amigo.getLogin());
+                amigo.confirmarAmizade(usuario.getLogin());
+                marcarAlterados.accept(usuario.getLogin(), null);
+                marcarAlterados.accept(amigo.getLogin(), null);
+                break;
+            }
+            case DataRecord.SOLICITACAO: {
+                User remetente = usuario(registro.getCampo(0));
+                User destinatario = usuario(registro.getCampo(1));
+                validarInimizade(remetente, destinatario);
+                if (!remetente.isAmigo(destinatario.getLogin())) {
+                    destinatario.adicionarSolicitacao(remetente.getLogin());
+                    marcarAlterados.accept(destinatario.getLogin(), null);
+                }
+                break;
+            }
+            case DataRecord.IDOLO: {
+                User fa = usuario(registro.getCampo(0));
+                User idolo = usuario(registro.getCampo(1));
+                validarInimizade(fa, idolo);
+                fa.adicionarIdolo(idolo.getLogin());
+                idolo.adicionarFa(fa.getLogin());
+                marcarAlterados.accept(fa.getLogin(), null);
+                marcarAlterados.accept(idolo.getLogin(), null);
+                break;
+            }
+            case DataRecord.PAQUERA: {
+                User usuario = usuario(registro.getCampo(0));
+                User paquera = usuario(registro.getCampo(1));
+                validarInimizade(usuario, paquera);
+                usuario.adicionarPaquera(paquera.getLogin());
+                marcarAlterados.accept(usuario.getLogin(), null);
+                break;
+            }
+            case DataRecord.INIMIGO: {
+                User usuario = usuario(registro.getCampo(0));
+                User inimigo = usuario(registro.getCampo(1));
+                validarInimizade(usuario, inimigo);
+                usuario.adicionarInimigo(inimigo.getLogin());
+                marcarAlterados.accept(usuario.getLogin(), null);
+                break;
+            }
+            case DataRecord.COMUNIDADE: {
+                String nome = registro.getCampo(0);
+                if (comunidades.containsKey(nome)) {
+                    throw new RuntimeException("Comunidade com esse nome j existe.");
+                }
+                User dono = usuario(registro.getCampo(1));
+                comunidades.put(nome, new Community(nome, registro.getCampo(2), dono));
+                dono.adicionarComunidade(nome);
+                marcarAlterados.accept(dono.getLogin(), nome);
+                break;
+            }
+            case DataRecord.MEMBRO: {
+                Community comunidade = comunidades.get(registro.getCampo(0));
+                if (comunidade == null) {
+                    throw new RuntimeException("Comunidade no existe.");
+                }
+                User membro = usuario(registro.getCampo(1));
+                comunidade.addMember(membro);
+                membro.adicionarComunidade(comunidade.getName());
+                marcarAlterados.accept(membro.getLogin(), comunidade.getName());
+                break;
+            }
+            case DataRecord.RECADO:
+                usuario(registro.getCampo(0)).adicionarRecado(new Message(registro.getCampo(1), registro.getCampo(2)));
+                marcarAlterados.accept(registro.getCampo(0), null);
+                break;
+            case DataRecord.MENSAGEM:
+                usuario(registro.getCampo(0)).receberMensagem(mensagem(registro));
+                marcarAlterados.accept(registro.getCampo(0), null);
+                break;
+            case DataRecord.MENSAGEM_LIDA:
+                usuario(registro.getCampo(0)).adicionarMensagemLida(mensagem(registro));
+                marcarAlterados.accept(registro.getCampo(0), null);
+                break;
+            default:
+                throw new RuntimeException("Tipo de registro desconhecido: " + registro.getTipo());
+        }
+    }
+
+    /**
+     * Mesma regra das operaes de relacionamento do servio.
+     * @throws RuntimeException Se {@code destino} tiver {@code origem} como inimigo
+     */
+    private static void validarInimizade(User origem, User destino) {
+        if (destino.ehInimigo(origem.getLogin())) {
+            throw new RuntimeException("Funo invlida: " + destino.getNome() + "  seu inimigo.");
+        }
+    }
+
+    private static CommunityMessage mensagem(DataRecord registro) {
+        return new CommunityMessage(registro.getCampo(1), registro.getCampo(2), registro.getCampo(4),
+                new Date(Long.parseLong(registro.getCampo(3))));
+    }
+
+    private User usuario(String login) {
+        User usuario = usuarios.get(login);
+        if (usuario == null) {
+            throw new RuntimeException("Usurio no cadastrado.");
+        }
+        return usuario;
+    }
+
+    private static RuntimeException erro(long linha, String mensagem) {
+        return new RuntimeException("Erro na linha " + linha + ": " + mensagem);
+    }
+}
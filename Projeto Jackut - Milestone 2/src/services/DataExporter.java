@@ -0,0 +1,257 @@
+package services;
+
+import entities.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportao em fluxo de todos os dados do Jackut, no formato de {@link DataRecord}
+ * (o mesmo aceito pela importao em massa).
+ *
+ * <p>Os dados nunca so materializados de uma vez: o exportador percorre os usurios
+ * em fatias e s segura a trava do servio enquanto formata uma fatia, liberando-a
+ * antes de gravar em disco. Operaes de escrita podem ser executadas entre as fatias.
+ * Por isso a exportao no  uma fotografia instantnea: cada usurio  consistente
+ * consigo mesmo, mas usurios diferentes podem refletir momentos diferentes.</p>
+ *
+ * <p>A sada  dividida em partes ({@code prefixo-00000.tsv}, {@code prefixo-00001.tsv}, ...)
+ * de tamanho aproximadamente fixo, opcionalmente comprimidas com GZIP. Os registros so
+ * gravados em passadas (usurios, relacionamentos, comunidades, mensagens) para que toda
+ * referncia aparea depois do registro que a cria.</p>
+ *
+ * <p>As senhas saem protegidas por hash ({@link User#protegerSenha(String)}), calculado fora
+ * da trava. As mensagens de comunidade lidas saem como {@code mensagemLida}, incluindo as que
+ * j foram para o arquivo em disco, antes das no lidas.</p>
+ */
+class DataExporter {
+
+    // Usurios formatados por vez enquanto a trava est em posse do exportador
+    private static final int TAMANHO_FATIA = 512;
+
+    private final Object trava;
+    private final Map<String, User> usuarios;
+    private final Map<String, Community> comunidades;
+    private final MessageArchive arquivoMensagens;
+
+    DataExporter(Object trava, Map<String, User> usuarios, Map<String, Community> comunidades,
+                 MessageArchive arquivoMensagens) {
+        this.trava = trava;
+        this.usuarios = usuarios;
+        this.comunidades = comunidades;
+        this.arquivoMensagens = arquivoMensagens;
+    }
+
+    /**
+     * Exporta todos os dados.
+     * @param prefixo Caminho e prefixo dos arquivos gerados
+     * @param comprimir true para gravar cada parte com GZIP
+     * @param tamanhoParte Tamanho aproximado, em bytes, de cada parte no disco
+     * @return Quantidade de registros exportados
+     * @throws IOException Se houver falha de escrita
+     */
+    long exportar(String prefixo, boolean comprimir, long tamanhoParte) throws IOException {
+        String[] logins;
+        String[] nomesComunidades;
+        synchronized (trava) {
+            // Apenas as chaves so copiadas; os registros so gerados fatia a fatia
+            logins = usuarios.keySet().toArray(new String[0]);
+            nomesComunidades = comunidades.keySet().toArray(new String[0]);
+        }
+
+        try (ChunkedWriter saida = new ChunkedWriter(prefixo, comprimir, tamanhoParte)) {
+            exportarFatias(logins, saida, this::usuario);
+            exportarFatias(logins, saida, this::relacionamentos);
+            exportarFatias(nomesComunidades, saida, this::comunidade);
+            exportarFatias(logins, saida, this::mensagens);
+            return saida.getRegistros();
+        }
+    }
+
+    private interface Formatador {
+        void formatar(String chave, List<DataRecord> destino);
+    }
+
+    private void exportarFatias(String[] chaves, ChunkedWriter saida, Formatador formatador) throws IOException {
+        List<DataRecord> fatia = new ArrayList<>();
+        for (int inicio = 0; inicio < chaves.length; inicio += TAMANHO_FATIA) {
+            int fim = Math.min(chaves.length, inicio + TAMANHO_FATIA);
+            synchronized (trava) {
+                for (int i = inicio; i < fim; i++) {
+                    formatador.formatar(chaves[i], fatia);
+                }
+            }
+            for (DataRecord registro : fatia) {
+                saida.escrever(protegerSenha(registro));
+            }
+            fatia.clear();
+        }
+    }
+
+    private void usuario(String login, List<DataRecord> destino) {
+        User usuario = usuarios.get(login);
+        if (usuario == null) {
+            return; // removido depois que as chaves foram copiadas
+        }
+        // A senha em texto s vive na fatia: protegerSenha troca pelo hash antes de gravar
+        destino.add(new DataRecord(DataRecord.USUARIO, login, usuario.getSenha(), usuario.getNome()));
+        for (Map.Entry<String, String> atributo : usuario.getProfile().getAttributes().entrySet()) {
+            destino.add(new DataRecord(DataRecord.ATRIBUTO, login, atributo.getKey(), atributo.getValue()));
+        }
+    }
+
+    private static DataRecord protegerSenha(DataRecord registro) {
+        if (!registro.getTipo().equals(DataRecord.USUARIO)) {
+            return registro;
+        }
+        return new DataRecord(DataRecord.USUARIO, registro.getCampo(0),
+                User.protegerSenha(registro.getCampo(1)), registro.getCampo(2));
+    }
+
+    private void relacionamentos(String login, List<DataRecord> destino) {
+        User usuario = usuarios.get(login);
+        if (usuario == null) {
+            return;
+        }
+        for (String amigo : usuario.getAmigos()) {
+            if (login.compareTo(amigo) < 0 && usuarios.containsKey(amigo)) { // cada amizade uma nica vez
+                destino.add(new DataRecord(DataRecord.AMIZADE, login, amigo));
+            }
+        }
+        for (String remetente : usuario.getSolicitacoesPendentes()) {
+            if (usuarios.containsKey(remetente)) {
+                destino.add(new DataRecord(DataRecord.SOLICITACAO, remetente, login));
+            }
+        }
+        adicionarRelacoes(DataRecord.IDOLO, login, usuario.getIdolos(), destino);
+        adicionarRelacoes(DataRecord.PAQUERA, login, usuario.getPaqueras(), destino);
+        adicionarRelacoes(DataRecord.INIMIGO, login, usuario.getInimigos(), destino);
+    }
+
+    private void adicionarRelacoes(String tipo, String login, Set<String> alvos, List<DataRecord> destino) {
+        for (String alvo : alvos) {
+            if (usuarios.containsKey(alvo)) {
+                destino.add(new DataRecord(tipo, login, alvo));
+            }
+        }
+    }
+
+    private void comunidade(String nome, List<DataRecord> destino) {
+        Community comunidade = comunidades.get(nome);
+        if (comunidade == null) {
+            return;
+        }
+        String dono = comunidade.getOwner().getLogin();
+        destino.add(new DataRecord(DataRecord.COMUNIDADE, nome, dono, comunidade.getDescription()));
+        for (User membro : comunidade.getMembers()) {
+            if (!membro.getLogin().equals(dono)) {
+                destino.add(new DataRecord(DataRecord.MEMBRO, nome, membro.getLogin()));
+            }
+        }
+    }
+
+    private void mensagens(String login, List<DataRecord> destino) {
+        User usuario = usuarios.get(login);
+        if (usuario == null) {
+            return;
+        }
+        for (Message recado : usuario.getRecados()) {
+            destino.add(new DataRecord(DataRecord.RECADO, login, recado.getRemetente(), recado.getContent()));
+        }
+        for (CommunityMessage mensagem : arquivoMensagens.ler(login)) {
+            destino.add(mensagem(DataRecord.MENSAGEM_LIDA, login, mensagem));
+        }
+        for (CommunityMessage mensagem : usuario.getMensagensLidas()) {
+            destino.add(mensagem(DataRecord.MENSAGEM_LIDA, login, mensagem));
+        }
+        for (CommunityMessage mensagem : usuario.getMensagens()) {
+            destino.add(mensagem(DataRecord.MENSAGEM, login, mensagem));
+        }
+    }
+
+    private static DataRecord mensagem(String tipo, String login, CommunityMessage mensagem) {
+        return new DataRecord(tipo, login, mensagem.getComunidade(), mensagem.getRemetente(),
+                String.valueOf(mensagem.getData().getTime()), mensagem.getConteudo());
+    }
+
+    /**
+     * Sada dividida em partes: abre um novo arquivo quando o atual passa do tamanho limite.
+     */
+    private static class ChunkedWriter implements Closeable {
+        private final String prefixo;
+        private final boolean comprimir;
+        private final long tamanhoParte;
+
+        private int parte;
+        private CountingOutputStream contador;
+        private Writer escritor;
+        private long registros;
+
+        ChunkedWriter(String prefixo, boolean comprimir, long tamanhoParte) {
+            if (tamanhoParte <= 0) {
+                throw new RuntimeException("Tamanho de parte invlido.");
+            }
+            this.prefixo = prefixo;
+            this.comprimir = comprimir;
+            this.tamanhoParte = tamanhoParte;
+        }
+
+        void escrever(DataRecord registro) throws IOException {
+            if (escritor == null || contador.getBytes() >= tamanhoParte) {
+                abrirProximaParte();
+            }
+            escritor.write(registro.codificar());
+            escritor.write('\n');
+            registros++;
+        }
+
+        long getRegistros() {
+            return registros;
+        }
+
+        private void abrirProximaParte() throws IOException {
+            close();
+            String nome = String.format("%s-%05d.tsv%s", prefixo, parte++, comprimir ? ".gz" : "");
+            contador = new CountingOutputStream(new FileOutputStream(nome));
+            OutputStream destino = comprimir ? new GZIPOutputStream(contador, 65536) : contador;
+            escritor = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), 65536);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (escritor != null) {
+                escritor.close();
+                escritor = null;
+            }
+        }
+    }
+
+    /**
+     * Conta os bytes que efetivamente chegam ao arquivo (aps a compresso).
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long bytes;
+
+        CountingOutputStream(OutputStream destino) {
+            super(destino);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro de uma linha dos arquivos de importao/exportao do Jackut.
+ *
+ * <p>Cada linha tem o tipo do registro seguido dos campos, separados por tabulao.
+ * Tabulaes, quebras de linha e barras invertidas dentro dos campos so escapadas
+ * como {@code \t}, {@code \n}, {@code \r} e {@code \\}. Tipos reconhecidos:</p>
+ * <pre>
+ * usuario      login senha nome           (senha em texto ou protegida, ver User.protegerSenha)
+ * atributo     login atributo valor
+ * amizade      login1 login2
+ * solicitacao  remetente destinatario
+ * idolo        fa idolo
+ * paquera      login paquera
+ * inimigo      login inimigo
+ * comunidade   nome dono descricao
+ * membro       comunidade login
+ * recado       destinatario remetente conteudo
+ * mensagem     destinatario comunidade remetente data(ms) conteudo
+ * mensagemLida destinatario comunidade remetente data(ms) conteudo
+ * </pre>
+ */
+public class DataRecord {
+
+    public static final String USUARIO = "usuario";
+    public static final String ATRIBUTO = "atributo";
+    public static final String AMIZADE = "amizade";
+    public static final String SOLICITACAO = "solicitacao";
+    public static final String IDOLO = "idolo";
+    public static final String PAQUERA = "paquera";
+    public static final String INIMIGO = "inimigo";
+    public static final String COMUNIDADE = "comunidade";
+    public static final String MEMBRO = "membro";
+    public static final String RECADO = "recado";
+    public static final String MENSAGEM = "mensagem";
+    public static final String MENSAGEM_LIDA = "mensagemLida";
+
+    private final String tipo;
+    private final String[] campos;
+
+    public DataRecord(String tipo, String... campos) {
+        this.tipo = tipo;
+        this.campos = campos;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    /**
+     * @param indice Posio do campo (0 = primeiro campo aps o tipo)
+     * @return Valor do campo
+     */
+    public String getCampo(int indice) {
+        return campos[indice];
+    }
+
+    public int getQuantidadeCampos() {
+        return campos.length;
+    }
+
+    /**
+     * Quantidade de campos esperada para cada tipo de registro.
+     * @param tipo Tipo do registro
+     * @return Nmero de campos ou -1 se o tipo for desconhecido
+     */
+    public static int camposEsperados(String tipo) {
+        switch (tipo) {
+            case AMIZADE:
+            case SOLICITACAO:
+            case IDOLO:
+            case PAQUERA:
+            case INIMIGO:
+            case MEMBRO:
+                return 2;
+            case USUARIO:
+            case ATRIBUTO:
+            case COMUNIDADE:
+            case RECADO:
+                return 3;
+            case MENSAGEM:
+            case MENSAGEM_LIDA:
+                return 5;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Converte o registro em uma linha (sem a quebra de linha final).
+     * @return Linha codificada
+     */
+    public String codificar() {
+        StringBuilder linha = new StringBuilder(tipo);
+        for (String campo : campos) {
+            linha.append('\t');
+            escapar(campo, linha);
+        }
+        return linha.toString();
+    }
+
+    /**
+     * Interpreta uma linha, validando o tipo e a quantidade de campos.
+     * @param linha Linha lida do arquivo
+     * @return Registro correspondente
+     * @throws RuntimeException Se a linha estiver mal formada
+     */
+    public static DataRecord decodificar(String linha) {
+        List<String> partes = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        for (int i = 0; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (c == '\t') {
+                partes.add(atual.toString());
+                atual.setLength(0);
+            } else if (c == '\\' && i + 1 < linha.length()) {
+                char proximo = linha.charAt(++i);
+                switch (proximo) {
+                    case 't': atual.append('\t'); break;
+                    case 'n': atual.append('\n'); break;
+                    case 'r': atual.append('\r'); break;
+                    case '\\': atual.append('\\'); break;
+                    default: throw new RuntimeException("Escape invlido: \\" + proximo);
+                }
+            } else {
+                atual.append(c);
+            }
+        }
+        partes.add(atual.toString());
+
+        String tipo = partes.get(0);
+        int esperados = camposEsperados(tipo);
+        if (esperados < 0) {
+            throw new RuntimeException("Tipo de registro desconhecido: " + tipo);
+        }
+        if (partes.size() - 1 != esperados) {
+            throw new RuntimeException("Registro " + tipo + " deve ter " + esperados + " campos.");
+        }
+        return new DataRecord(tipo, partes.subList(1, partes.size()).toArray(new String[0]));
+    }
+
+    private static void escapar(String campo, StringBuilder destino) {
+        for (int i = 0; i < campo.length(); i++) {
+            char c = campo.charAt(i);
+            switch (c) {
+                case '\t': destino.append("\\t"); break;
+                case '\n': destino.append("\\n"); break;
+                case '\r': destino.append("\\r"); break;
+                case '\\': destino.append("\\\\"); break;
+                default: destino.append(c);
+            }
+        }
+    }
+}
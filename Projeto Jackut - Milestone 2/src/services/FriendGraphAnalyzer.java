@@ -0,0 +1,378 @@
+package services;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Anlise do grafo de amizades: componentes conexos, coeficiente de agrupamento de cada
+ * usurio e distribuio de graus, gravados em um arquivo de texto.
+ *
+ * <p>A anlise l uma verso publicada do {@link ReadView}, que  imutvel: o resultado  uma
+ * fotografia consistente do grafo, sem segurar a trava do servio. As etapas rodam em
+ * paralelo no pool comum de fork-join, uma tarefa por faixa de usurios:</p>
+ * <ol>
+ *     <li>os logins so ordenados e numerados, e cada usurio ganha o seu grau (amigos que
+ *     existem nesta verso);</li>
+ *     <li>cada amizade  guardada uma nica vez, em arrays de inteiros (lista de adjacncia
+ *     compacta), no usurio de menor grau do par; o custo  de um {@code int} por amizade;</li>
+ *     <li>os componentes saem de uma unio-busca sem travas: cada raiz  ligada  menor por
+ *     compare-and-set, e a busca encurta o caminho pela metade;</li>
+ *     <li>os tringulos so contados pela interseo das listas ordenadas dos dois lados de
+ *     cada amizade, o que encontra cada tringulo uma vez e mantm usurios com muitos amigos
+ *     longe do pior caso.</li>
+ * </ol>
+ *
+ * <p>As amizades do Jackut so sempre mtuas, e a anlise parte disso. No cluster, cada n s
+ * enxerga os prprios usurios; amigos que esto em outros ns ficam de fora.</p>
+ */
+final class FriendGraphAnalyzer {
+
+    // Usurios formatados por tarefa na gravao do arquivo
+    private static final int TAMANHO_FATIA = 1 << 16;
+
+    private final long numeroVersao;
+    private final String[] logins;
+    private final Function<String, ? extends Collection<String>> amigosDe;
+
+    // Grafo numerado: grau de cada usurio e amizades guardadas no usurio de menor grau
+    private int[] grau;
+    private int[] inicio;
+    private int[] vizinhos;
+
+    // Resultados
+    private int[] componente;
+    private float[] coeficiente;
+    private long triangulos;
+
+    /**
+     * @param numeroVersao Nmero da verso analisada, registrado no arquivo
+     * @param logins Usurios do grafo, sem repetio
+     * @param amigosDe Amigos de cada usurio; amigos que no esto em {@code logins} so ignorados
+     */
+    FriendGraphAnalyzer(long numeroVersao, String[] logins, Function<String, ? extends Collection<String>> amigosDe) {
+        this.numeroVersao = numeroVersao;
+        this.logins = logins.clone();
+        this.amigosDe = amigosDe;
+    }
+
+    /**
+     * @return Anlise do grafo da verso
+     */
+    static FriendGraphAnalyzer de(ReadView versao) {
+        String[] logins = new String[versao.getQuantidadeUsuarios()];
+        int[] posicao = new int[1];
+        versao.paraCadaUsuario((login, amigos) -> logins[posicao[0]++] = login);
+        return new FriendGraphAnalyzer(versao.getNumero(), logins, login -> versao.getUsuario(login).amigos);
+    }
+
+    /**
+     * Executa a anlise e grava o resultado.
+     * @param arquivo Arquivo de sada, substitudo se existir
+     * @return Quantidade de componentes conexos
+     * @throws IOException Se houver falha de escrita
+     */
+    long analisar(Path arquivo) throws IOException {
+        long inicioAnalise = System.nanoTime();
+        montarGrafo();
+        calcularComponentes();
+        contarTriangulos();
+        return gravar(arquivo, (System.nanoTime() - inicioAnalise) / 1_000_000);
+    }
+
+    private void montarGrafo() {
+        // Ordenar os logins torna o representante de cada componente o seu menor login
+        Arrays.parallelSort(logins);
+        int n = logins.length;
+        IndiceLogins indice = new IndiceLogins(logins);
+
+        grau = new int[n];
+        IntStream.range(0, n).parallel().forEach(u -> {
+            int amigos = 0;
+            for (String amigo : amigosDe.apply(logins[u])) {
+                int v = indice.get(amigo);
+                if (v >= 0 && v != u) {
+                    amigos++;
+                }
+            }
+            grau[u] = amigos;
+        });
+
+        // Cada amizade fica com o lado de menor grau (empate: menor nmero)
+        int[] adiante = new int[n];
+        IntStream.range(0, n).parallel().forEach(u -> {
+            int quantidade = 0;
+            for (String amigo : amigosDe.apply(logins[u])) {
+                int v = indice.get(amigo);
+                if (v >= 0 && v != u && antes(u, v)) {
+                    quantidade++;
+                }
+            }
+            adiante[u] = quantidade;
+        });
+        inicio = new int[n + 1];
+        long total = 0;
+        for (int u = 0; u < n; u++) {
+            inicio[u] = (int) total;
+            total += adiante[u];
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new RuntimeException("Grafo de amizades grande demais para a anlise.");
+            }
+        }
+        inicio[n] = (int) total;
+
+        vizinhos = new int[(int) total];
+        IntStream.range(0, n).parallel().forEach(u -> {
+            int proximo = inicio[u];
+            for (String amigo : amigosDe.apply(logins[u])) {
+                int v = indice.get(amigo);
+                if (v >= 0 && v != u && antes(u, v)) {
+                    vizinhos[proximo++] = v;
+                }
+            }
+            Arrays.sort(vizinhos, inicio[u], proximo);
+        });
+    }
+
+    /**
+     * @return true se a amizade entre u e v fica guardada em u
+     */
+    private boolean antes(int u, int v) {
+        return grau[u] < grau[v] || (grau[u] == grau[v] && u < v);
+    }
+
+    private void calcularComponentes() {
+        int n = logins.length;
+        AtomicIntegerArray pai = new AtomicIntegerArray(n);
+        IntStream.range(0, n).parallel().forEach(u -> pai.set(u, u));
+        IntStream.range(0, n).parallel().forEach(u -> {
+            for (int i = inicio[u]; i < inicio[u + 1]; i++) {
+                unir(pai, u, vizinhos[i]);
+            }
+        });
+        componente = new int[n];
+        IntStream.range(0, n).parallel().forEach(u -> componente[u] = raiz(pai, u));
+    }
+
+    /**
+     * Liga as razes de u e v, sempre a maior sob a menor; assim no se formam ciclos e a raiz
+     * de cada componente  o seu menor nmero.
+     */
+    private static void unir(AtomicIntegerArray pai, int u, int v) {
+        while (true) {
+            u = raiz(pai, u);
+            v = raiz(pai, v);
+            if (u == v) {
+                return;
+            }
+            if (u < v) {
+                int troca = u;
+                u = v;
+                v = troca;
+            }
+            if (pai.compareAndSet(u, u, v)) {
+                return;
+            }
+            // Outra tarefa ligou u antes: tenta de novo a partir das razes atuais
+        }
+    }
+
+    private static int raiz(AtomicIntegerArray pai, int x) {
+        int p;
+        while ((p = pai.get(x)) != x) {
+            int avo = pai.get(p);
+            if (avo != p) {
+                // Falhar aqui no  problema: outra tarefa j encurtou o caminho
+                pai.compareAndSet(x, p, avo);
+            }
+            x = avo;
+        }
+        return x;
+    }
+
+    private void contarTriangulos() {
+        int n = logins.length;
+        AtomicLongArray porUsuario = new AtomicLongArray(n);
+        IntStream.range(0, n).parallel().forEach(u -> {
+            long deU = 0;
+            for (int i = inicio[u]; i < inicio[u + 1]; i++) {
+                int v = vizinhos[i];
+                // Vizinhos comuns guardados em u e em v: cada um fecha um tringulo u-v-w
+                int a = inicio[u], fimA = inicio[u + 1];
+                int b = inicio[v], fimB = inicio[v + 1];
+                long deV = 0;
+                while (a < fimA && b < fimB) {
+                    int x = vizinhos[a], y = vizinhos[b];
+                    if (x < y) {
+                        a++;
+                    } else if (x > y) {
+                        b++;
+                    } else {
+                        porUsuario.incrementAndGet(x);
+                        deV++;
+                        a++;
+                        b++;
+                    }
+                }
+                if (deV > 0) {
+                    porUsuario.addAndGet(v, deV);
+                    deU += deV;
+                }
+            }
+            if (deU > 0) {
+                porUsuario.addAndGet(u, deU);
+            }
+        });
+
+        coeficiente = new float[n];
+        long total = IntStream.range(0, n).parallel().mapToLong(u -> {
+            long t = porUsuario.get(u);
+            long d = grau[u];
+            coeficiente[u] = d < 2 ? 0f : (float) (2.0 * t / (d * (d - 1)));
+            return t;
+        }).sum();
+        triangulos = total / 3;
+    }
+
+    private long gravar(Path arquivo, long duracao) throws IOException {
+        int n = logins.length;
+        int[] tamanhoComponente = new int[n];
+        long amizades = 0;
+        int maiorGrau = 0;
+        double somaCoeficientes = 0;
+        long triplas = 0;
+        for (int u = 0; u < n; u++) {
+            tamanhoComponente[componente[u]]++;
+            amizades += grau[u];
+            maiorGrau = Math.max(maiorGrau, grau[u]);
+            somaCoeficientes += coeficiente[u];
+            triplas += (long) grau[u] * (grau[u] - 1) / 2;
+        }
+        amizades /= 2;
+
+        long[] porGrau = new long[maiorGrau + 1];
+        for (int u = 0; u < n; u++) {
+            porGrau[grau[u]]++;
+        }
+        TreeMap<Integer, Integer> porTamanho = new TreeMap<>();
+        long componentes = 0;
+        int maiorComponente = 0;
+        for (int tamanho : tamanhoComponente) {
+            if (tamanho > 0) {
+                componentes++;
+                maiorComponente = Math.max(maiorComponente, tamanho);
+                porTamanho.merge(tamanho, 1, Integer::sum);
+            }
+        }
+
+        try (Writer saida = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(arquivo), StandardCharsets.UTF_8), 1 << 16)) {
+            saida.write("# resumo\n");
+            saida.write("versao\t" + numeroVersao + "\n");
+            saida.write("usuarios\t" + n + "\n");
+            saida.write("amizades\t" + amizades + "\n");
+            saida.write("componentes\t" + componentes + "\n");
+            saida.write("maior componente\t" + maiorComponente + "\n");
+            saida.write("triangulos\t" + triangulos + "\n");
+            saida.write("coeficiente medio\t" + decimal(n == 0 ? 0 : somaCoeficientes / n) + "\n");
+            saida.write("transitividade\t" + decimal(triplas == 0 ? 0 : 3.0 * triangulos / triplas) + "\n");
+            saida.write("duracao ms\t" + duracao + "\n");
+
+            saida.write("# grau\tusuarios\n");
+            for (int d = 0; d < porGrau.length; d++) {
+                if (porGrau[d] > 0) {
+                    saida.write(d + "\t" + porGrau[d] + "\n");
+                }
+            }
+
+            saida.write("# tamanho do componente\tcomponentes\n");
+            for (Map.Entry<Integer, Integer> entrada : porTamanho.entrySet()) {
+                saida.write(entrada.getKey() + "\t" + entrada.getValue() + "\n");
+            }
+
+            // Uma linha por usurio; as fatias so formatadas em paralelo e gravadas em ordem
+            saida.write("# login\tcomponente\tgrau\tcoeficiente\n");
+            int fatias = (n + TAMANHO_FATIA - 1) / TAMANHO_FATIA;
+            int lote = Math.max(1, Runtime.getRuntime().availableProcessors());
+            for (int primeira = 0; primeira < fatias; primeira += lote) {
+                String[] texto = new String[Math.min(lote, fatias - primeira)];
+                int base = primeira;
+                IntStream.range(0, texto.length).parallel().forEach(i -> texto[i] = formatarFatia(base + i));
+                for (String parte : texto) {
+                    saida.write(parte);
+                }
+            }
+        }
+        return componentes;
+    }
+
+    private String formatarFatia(int fatia) {
+        int de = fatia * TAMANHO_FATIA;
+        int ate = Math.min(logins.length, de + TAMANHO_FATIA);
+        StringBuilder texto = new StringBuilder((ate - de) * 32);
+        for (int u = de; u < ate; u++) {
+            texto.append(logins[u]).append('\t')
+                    .append(logins[componente[u]]).append('\t')
+                    .append(grau[u]).append('\t')
+                    .append(decimal(coeficiente[u])).append('\n');
+        }
+        return texto.toString();
+    }
+
+    /**
+     * @return Valor entre 0 e 1 com quatro casas decimais
+     */
+    private static String decimal(double valor) {
+        long inteiro = Math.round(valor * 10_000);
+        String casas = Long.toString(inteiro % 10_000);
+        return inteiro / 10_000 + "." + "0000".substring(casas.length()) + casas;
+    }
+
+    /**
+     * ndice somente leitura de login para nmero, em endereamento aberto: dois arrays em vez
+     * de uma entrada e um {@code Integer} por usurio, e consultas sem travas.
+     */
+    private static final class IndiceLogins {
+        private final String[] chaves;
+        private final int[] numeros;
+        private final int mascara;
+
+        IndiceLogins(String[] logins) {
+            int capacidade = Integer.highestOneBit(Math.max(1, logins.length)) << 2;
+            chaves = new String[capacidade];
+            numeros = new int[capacidade];
+            mascara = capacidade - 1;
+            for (int i = 0; i < logins.length; i++) {
+                int posicao = posicao(logins[i]);
+                while (chaves[posicao] != null) {
+                    posicao = (posicao + 1) & mascara;
+                }
+                chaves[posicao] = logins[i];
+                numeros[posicao] = i;
+            }
+        }
+
+        /**
+         * @return Nmero do login, ou -1 se ele no estiver no ndice
+         */
+        int get(String login) {
+            for (int posicao = posicao(login); chaves[posicao] != null; posicao = (posicao + 1) & mascara) {
+                if (chaves[posicao].equals(login)) {
+                    return numeros[posicao];
+                }
+            }
+            return -1;
+        }
+
+        private int posicao(String login) {
+            int h = login.hashCode() * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mascara;
+        }
+    }
+}
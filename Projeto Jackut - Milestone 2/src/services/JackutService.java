@@ -1,42 +1,283 @@
 package services;
 
 import entities.*;
+import events.DomainEvent;
+import events.EventRing;
 import exceptions.*;
+import storage.ShardedLoad;
+import storage.SnapshotStorage;
+import storage.StorageBackend;
 import java.util.*;
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 
 /**
  * Servio responsvel por gerenciar servios oferecidos pelo Jackut:
  * comunidades, realcionamentos, persistncia de arquivos,
  * sesses, amizades e mensagens enviadas e recebidas do sistema Jackut.
+ *
+ * <p>As operaes pblicas so sincronizadas no prprio servio, de modo que ele pode
+ * ser usado por mais de uma thread; a exportao usa a mesma trava, por fatias. As consultas
+ * de amigos, fs e comunidades no usam a trava: leem a ltima verso publicada de um
+ * {@link ReadView}, imutvel, que os escritores trocam ao final de cada mutao.</p>
+ *
+ * <p>Com {@code -D}{@value #PROPRIEDADE_CARGA}{@code =progressiva}, se o armazenamento permitir
+ * carregar por partes, o construtor retorna logo e os dados so carregados em segundo plano
+ * (ver {@link WarmupLoader}): usurios j carregados so atendidos de imediato e os demais so
+ * carregados na hora, com prioridade. At o fim da carga a gravao  adiada; ao final, o
+ * estado inteiro  gravado se houve mutaes.</p>
  */
 public class JackutService {
 
+    /** Propriedade de sistema com o modo de carga: completa (padro) ou progressiva. */
+    public static final String PROPRIEDADE_CARGA = "jackut.carga";
+
     // Mapa que armazena todos os usurios do sistema (login -> User)
     private Map<String, User> usuarios;
 
-    // Mapa que controla as sesses ativas (idSessao -> login)
-    private Map<String, String> sessoesAtivas;
+    // Mapa que controla as sesses ativas (idSessao -> login); alterado s com a trava do
+    // servio, mas concorrente para que resolverSessao possa consult-lo sem ela
+    private volatile Map<String, String> sessoesAtivas;
 
     // Mapa que armazena todas as comunidades do sistema (nome -> Community)
     private Map<String, Community> comunidades = new HashMap<>();
 
+    // ndice invertido dos atributos de perfil (atributo -> valor -> logins)
+    private final ProfileIndex indicePerfis = new ProfileIndex();
+
+    // Rankings da pgina inicial, atualizados a cada publicao de verso (ver atualizarRankings)
+    private final Leaderboard rankingFas = new Leaderboard();
+    private final Leaderboard rankingComunidades = new Leaderboard();
+    private final Leaderboard rankingAtividade = new Leaderboard();
+
+    // Arquivo frio das mensagens de comunidade lidas que excederam a reteno
+    private final MessageArchive arquivoMensagens;
+
+    // Resultados de analisarAmizades, sempre neste diretrio e com nome escolhido pelo servio
+    private final File diretorioAnalises;
+    // Uma anlise por vez: cada uma ocupa o pool comum de fork-join
+    private final AtomicBoolean analiseEmAndamento = new AtomicBoolean();
+
+    private RetentionPolicy politicaRetencao = RetentionPolicy.PADRAO;
+
+    // Instante atual, em milissegundos, para a data das mensagens de comunidade e a reteno
+    private LongSupplier relogio = System::currentTimeMillis;
+
+    // Fluxo dos eventos de domnio, publicados aps cada mutao bem-sucedida
+    private final EventRing eventos = new EventRing(EventRing.CAPACIDADE_PADRAO);
+
+    // Verso publicada dos dados de consulta, lida sem trava (ver ReadView)
+    private volatile ReadView versao = ReadView.VAZIA;
+
+    // Usurios e comunidades alterados desde a ltima gravao, para a verso de consulta
+    // e para o armazenamento; reconstruirVersao indica que qualquer um pode ter mudado
+    private final Set<String> usuariosAlterados = new HashSet<>();
+    private final Set<String> comunidadesAlteradas = new HashSet<>();
+    private boolean reconstruirVersao;
+
+    private final StorageBackend armazenamento;
+    private final boolean cargaProgressiva;
+
+    // Carga do incio progressivo (a ltima, mesmo concluda, para o acompanhamento); consultas
+    // sem trava passam por aguardarCarga() enquanto aguardandoCarga for true
+    private volatile WarmupLoader aquecimento;
+    private volatile boolean aguardandoCarga;
+    // Houve mutaes durante a carga progressiva, gravadas s em parte: falta a gravao completa
+    private boolean gravacaoPendente;
+    // Logins marcados s porque a carga progressiva os trouxe, sem mudana a gravar
+    private final Set<String> apenasCarregados = new HashSet<>();
+
     /**
-     * Construtor que inicializa o servio carregando dados persistentes.
+     * Construtor que inicializa o servio carregando dados persistentes do armazenamento
+     * configurado (ver {@link StorageBackend#configurado()}), no diretrio de trabalho.
      * Se no existirem dados, inicia com colees vazias.
      */
     public JackutService() {
-        Object loadedData = Jackut.load();
-        if (loadedData instanceof Map) {
-            Map<String, Object> dados = (Map<String, Object>) loadedData;
+        this(new File("."));
+    }
+
+    /**
+     * Cria um servio com todos os dados em um diretrio prprio, isolado de outras
+     * instncias do mesmo processo.
+     * @param diretorio Diretrio dos dados (criado se no existir)
+     */
+    public JackutService(File diretorio) {
+        this(StorageBackend.configurado(diretorio), diretorio);
+    }
+
+    /**
+     * @param armazenamento Armazenamento de onde os dados so carregados e onde so salvos
+     * @param diretorio Diretrio do arquivo de mensagens (criado se no existir)
+     */
+    public JackutService(StorageBackend armazenamento, File diretorio) {
+        this(armazenamento, diretorio, "progressiva".equals(System.getProperty(PROPRIEDADE_CARGA)));
+    }
+
+    /**
+     * @param armazenamento Armazenamento de onde os dados so carregados e onde so salvos
+     * @param diretorio Diretrio do arquivo de mensagens (criado se no existir)
+     * @param cargaProgressiva true para carregar os dados em segundo plano, quando o
+     *                         armazenamento permitir (ver {@link StorageBackend#carregarEmPartes()})
+     */
+    public JackutService(StorageBackend armazenamento, File diretorio, boolean cargaProgressiva) {
+        if (!diretorio.isDirectory() && !diretorio.mkdirs()) {
+            throw new JackutException("No foi possvel criar o diretrio de dados " + diretorio + ".");
+        }
+        this.armazenamento = armazenamento;
+        this.cargaProgressiva = cargaProgressiva;
+        this.arquivoMensagens = new MessageArchive(new File(diretorio, Jackut.ARCHIVE_DIR));
+        this.diretorioAnalises = new File(diretorio, Jackut.ANALYSIS_DIR);
+        carregarDados();
+    }
+
+    private void carregarDados() {
+        ShardedLoad partes = cargaProgressiva ? armazenamento.carregarEmPartes() : null;
+        if (partes == null) {
+            instalarDados(armazenamento.carregar());
+        } else {
+            iniciarAquecimento(partes);
+        }
+        limparAlteracoes();
+    }
+
+    /**
+     * Comea a carga progressiva: o servio passa a usar os mapas do {@link WarmupLoader},
+     * que carregam o que for preciso a cada acesso, e a verso de consulta comea vazia.
+     */
+    private void iniciarAquecimento(ShardedLoad partes) {
+        encerrarAquecimento();
+        WarmupLoader carga = new WarmupLoader(partes, this, this::instalarParticao, this::concluirAquecimento);
+        this.usuarios = carga.getUsuarios();
+        this.comunidades = carga.getComunidades();
+        this.sessoesAtivas = new ConcurrentHashMap<>();
+        indicePerfis.limpar();
+        limparRankings();
+        versao = ReadView.construir(versao.getNumero() + 1, Map.of(), Map.of());
+        aquecimento = carga;
+        aguardandoCarga = true;
+        carga.iniciar();
+    }
+
+    /**
+     * Chamado com a trava para cada partio instalada pela carga progressiva.
+     * @param publicar false quando a partio foi carregada no meio de uma operao, que
+     *                 publicar a verso de consulta ao terminar
+     */
+    private void instalarParticao(List<User> carregados, boolean publicar) {
+        for (User usuario : carregados) {
+            indicePerfis.adicionarUsuario(usuario);
+            if (usuariosAlterados.add(usuario.getLogin())) {
+                apenasCarregados.add(usuario.getLogin());
+            }
+        }
+        if (publicar) {
+            publicarVersao();
+            // Entre operaes s h estas marcas, que no mudaram nada a gravar
+            limparAlteracoes();
+        }
+    }
+
+    /**
+     * Chamado com a trava quando a carga progressiva termina: o servio volta aos mapas comuns
+     * e, se houve mutaes durante a carga, grava o estado inteiro (consolidando as gravaes
+     * parciais).
+     */
+    private void concluirAquecimento(Map<String, Community> carregadas, boolean publicar) {
+        usuarios = aquecimento.getUsuariosCarregados();
+        comunidades = aquecimento.getComunidadesCarregadas();
+        comunidadesAlteradas.addAll(carregadas.keySet());
+        if (!publicar) {
+            return; // a operao em andamento publica e grava ao terminar
+        }
+        if (gravacaoPendente) {
+            salvarDados();
+        } else {
+            publicarVersao();
+            limparAlteracoes();
+            aguardandoCarga = false;
+        }
+    }
+
+    /**
+     * Interrompe uma carga progressiva em andamento, mantendo o que j foi carregado.
+     */
+    private void encerrarAquecimento() {
+        WarmupLoader carga = aquecimento;
+        if (carga != null && !carga.isCompleta()) {
+            carga.cancelar();
+            usuarios = carga.getUsuariosCarregados();
+            comunidades = carga.getComunidadesCarregadas();
+            aquecimento = null;
+        }
+        aguardandoCarga = false;
+        gravacaoPendente = false;
+    }
+
+    /**
+     * Durante a carga progressiva, garante que os usurios indicados (ou tudo, sem logins)
+     * foram carregados e publicados antes de uma consulta sem trava.
+     */
+    private void aguardarCarga(String... logins) {
+        if (!aguardandoCarga) {
+            return;
+        }
+        synchronized (this) {
+            WarmupLoader carga = aquecimento;
+            if (carga == null || !aguardandoCarga) {
+                return;
+            }
+            if (logins.length == 0) {
+                carga.garantirTudo();
+            }
+            for (String login : logins) {
+                carga.garantirUsuario(login);
+            }
+            publicarVersao();
+            if (carga.isCompleta()) {
+                aguardandoCarga = false;
+            }
+        }
+    }
+
+    /**
+     * @return true quando todos os dados esto carregados (sempre, fora da carga progressiva)
+     */
+    public boolean estaPronto() {
+        WarmupLoader carga = aquecimento;
+        return carga == null || carga.isCompleta();
+    }
+
+    /**
+     * @return Situao da carga: "pronto" ou, na carga progressiva, o progresso ou o tempo total
+     */
+    public String getProgressoCarga() {
+        WarmupLoader carga = aquecimento;
+        return carga == null ? "pronto" : carga.getProgresso();
+    }
+
+    /**
+     * Substitui o estado em memria, encerrando todas as sesses.
+     * @param dados Mapa com "usuarios" e "comunidades", ou {@code null} para comear vazio
+     */
+    @SuppressWarnings("unchecked")
+    private void instalarDados(Map<String, Object> dados) {
+        encerrarAquecimento();
+        if (dados != null) {
             this.usuarios = (Map<String, User>) dados.get("usuarios");
             this.comunidades = (Map<String, Community>) dados.get("comunidades");
-            this.sessoesAtivas = new HashMap<>();
+            this.sessoesAtivas = new ConcurrentHashMap<>();
         } else {
             this.usuarios = new HashMap<>();
             this.comunidades = new HashMap<>();
-            this.sessoesAtivas = new HashMap<>();
+            this.sessoesAtivas = new ConcurrentHashMap<>();
         }
+        indicePerfis.reconstruir(usuarios.values());
+        reconstruirVersao = true;
+        publicarVersao();
     }
 
     /**
@@ -47,7 +288,7 @@ public class JackutService {
      * @throws InvalidSessionException Se a sesso no for vlida
      * @throws CommunityAlreadyExistsException Se j existir comunidade com esse nome
      */
-    public void criarComunidade(String idSessao, String nome, String descricao)
+    public synchronized void criarComunidade(String idSessao, String nome, String descricao)
             throws InvalidSessionException, CommunityAlreadyExistsException {
 
         // Verifica sesso vlida
@@ -66,7 +307,9 @@ public class JackutService {
 
         // Adiciona automaticamente ao dono
         dono.adicionarComunidade(nome);
+        marcarAlterados(dono.getLogin(), nome);
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.COMUNIDADE_CRIADA, dono.getLogin(), nome, descricao);
     }
 
     /**
@@ -75,7 +318,7 @@ public class JackutService {
      * @return Descrio da comunidade
      * @throws CommunityNotFoundException Se a comunidade no existir
      */
-    public String getDescricaoComunidade(String nome) throws CommunityNotFoundException {
+    public synchronized String getDescricaoComunidade(String nome) throws CommunityNotFoundException {
         Community comunidade = comunidades.get(nome);
         if (comunidade == null) {
             throw new CommunityNotFoundException("Comunidade no existe.");
@@ -89,7 +332,7 @@ public class JackutService {
      * @return Login do dono
      * @throws CommunityNotFoundException Se a comunidade no existir
      */
-    public String getDonoComunidade(String nome) throws CommunityNotFoundException {
+    public synchronized String getDonoComunidade(String nome) throws CommunityNotFoundException {
         Community comunidade = comunidades.get(nome);
         if (comunidade == null) {
             throw new CommunityNotFoundException("Comunidade no existe.");
@@ -104,22 +347,12 @@ public class JackutService {
      * @throws CommunityNotFoundException Se a comunidade no existir
      */
     public String getMembrosComunidade(String nome) throws CommunityNotFoundException {
-        Community comunidade = comunidades.get(nome);
-        if (comunidade == null) {
+        aguardarCarga();
+        String membros = versao.getMembros(nome);
+        if (membros == null) {
             throw new CommunityNotFoundException("Comunidade no existe.");
         }
-
-        List<String> membros = new ArrayList<>();
-
-        membros.add(comunidade.getOwner().getLogin());
-
-        for (User membro : comunidade.getMembers()) {
-            if (!membro.getLogin().equals(comunidade.getOwner().getLogin())) {
-                membros.add(membro.getLogin());
-            }
-        }
-
-        return "{" + String.join(",", membros) + "}";
+        return membros;
     }
 
     /**
@@ -130,7 +363,7 @@ public class JackutService {
      * @throws CommunityNotFoundException Se a comunidade no existir
      * @throws UserAlreadyInCommunityException Se o usurio j for membro
      */
-    public void adicionarUsuarioAComunidade(String idSessao, String nomeComunidade)
+    public synchronized void adicionarUsuarioAComunidade(String idSessao, String nomeComunidade)
             throws InvalidSessionException, CommunityNotFoundException, UserAlreadyInCommunityException {
 
         User usuario = getUsuarioPorSessao(idSessao);
@@ -150,7 +383,9 @@ public class JackutService {
         // Adiciona o usurio  comunidade
         comunidade.addMember(usuario);
         usuario.adicionarComunidade(nomeComunidade);
+        marcarAlterados(usuario.getLogin(), nomeComunidade);
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.MEMBRO_ADICIONADO, usuario.getLogin(), nomeComunidade, null);
     }
 
     /**
@@ -160,30 +395,32 @@ public class JackutService {
      * @throws UserNotFoundException Se o usurio no existir
      */
     public String getComunidadesDoUsuario(String login) throws UserNotFoundException {
-        User usuario = usuarios.get(login);
+        aguardarCarga(login);
+        ReadView.Usuario usuario = versao.getUsuario(login);
         if (usuario == null) {
             throw new UserNotFoundException("Usurio no cadastrado.");
         }
-
-        return "{" + String.join(",", usuario.getComunidadesParticipando()) + "}";
+        return usuario.comunidades;
     }
     /**
      * Cria um novo usurio no sistema aps validar os parmetros.
      * Lana excees especficas para casos de erro.
      */
-    public void criarUsuario(String login, String senha, String nome) {
+    public synchronized void criarUsuario(String login, String senha, String nome) {
         if (login == null || login.isBlank()) {
-            throw new RuntimeException("Login invlido.");
+            throw new JackutException("Login invlido.");
         }
-        if (senha == null || senha.isBlank()) {
-            throw new RuntimeException("Senha invlida.");
+        if (senha == null || senha.isBlank() || senha.startsWith(User.PREFIXO_SENHA_PROTEGIDA)) {
+            throw new JackutException("Senha invlida.");
         }
         if (usuarios.containsKey(login)) {
             throw new UserAlreadyExistsException("Conta com esse nome j existe.");
         }
 
         usuarios.put(login, new User(login, senha, nome));
+        marcarAlterados(login, null);
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.USUARIO_CRIADO, login, null, nome);
     }
 
 
@@ -193,45 +430,99 @@ public class JackutService {
      * Autentica um usurio e cria uma nova sesso.
      * Retorna um ID nico de sesso para uso futuro.
      */
-    public String abrirSessao(String login, String senha) {
+    public synchronized String abrirSessao(String login, String senha) {
+        return tentarAbrirSessao(login, senha).obter();
+    }
+
+    /**
+     * Variante de {@link #abrirSessao(String, String)} que devolve a falha em vez de lan-la.
+     */
+    public synchronized Resultado<String> tentarAbrirSessao(String login, String senha) {
         User usuario = usuarios.get(login);
-        if (usuario == null || !usuario.getSenha().equals(senha)) {
-            throw new RuntimeException("Login ou senha invlidos.");
+        if (usuario == null || !usuario.verificarSenha(senha)) {
+            return Resultado.falha(Resultado.Status.LOGIN_OU_SENHA_INVALIDOS);
         }
         String idSessao = UUID.randomUUID().toString();
         sessoesAtivas.put(idSessao, login);
-        return idSessao;
+        return Resultado.ok(idSessao);
     }
 
     /**
      * Recupera um atributo especfico do perfil do usurio.
      * Trata separadamente o atributo especial 'nome'.
      */
-    public String getAtributoUsuario(String login, String atributo) {
+    public synchronized String getAtributoUsuario(String login, String atributo) {
+        return tentarGetAtributoUsuario(login, atributo).obter();
+    }
+
+    /**
+     * Variante de {@link #getAtributoUsuario(String, String)} que devolve a falha em vez de lan-la.
+     */
+    public synchronized Resultado<String> tentarGetAtributoUsuario(String login, String atributo) {
         User usuario = usuarios.get(login);
         if (usuario == null) {
-            throw new UserNotFoundException("Usurio no cadastrado.");
+            return Resultado.falha(Resultado.Status.USUARIO_NAO_CADASTRADO);
         }
 
         if ("nome".equalsIgnoreCase(atributo)) {
-            return usuario.getNome();
+            return Resultado.ok(usuario.getNome());
         }
 
         String valor = usuario.getProfile().getAttribute(atributo);
         if (valor.isEmpty()) {
-            throw new AttributeNotFilledException("Atributo no preenchido.");
+            return Resultado.falha(Resultado.Status.ATRIBUTO_NAO_PREENCHIDO);
         }
-        return valor;
+        return Resultado.ok(valor);
     }
 
     /**
      * Edita um atributo do perfil do usurio autenticado.
      * Requer sesso vlida e persiste as alteraes.
      */
-    public void editarPerfil(String idSessao, String atributo, String valor) {
+    public synchronized void editarPerfil(String idSessao, String atributo, String valor) {
         User usuario = getUsuarioPorSessao(idSessao);
+        String valorAntigo = usuario.getProfile().getAttribute(atributo);
         usuario.getProfile().setAttribute(atributo, valor);
+        indicePerfis.atualizar(usuario.getLogin(), atributo, valorAntigo, valor);
+        marcarAlterados(usuario.getLogin(), null);
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.PERFIL_EDITADO, usuario.getLogin(), atributo, valor);
+    }
+
+    /**
+     * Busca usurios cujo atributo de perfil  igual ao valor informado.
+     * Usa o ndice de perfis, sem percorrer todos os usurios.
+     * @param atributo Nome do atributo
+     * @param valor Valor procurado
+     * @param inicio Posio do primeiro resultado
+     * @param limite Quantidade mxima de resultados
+     * @return Logins encontrados, em ordem alfabtica
+     */
+    public synchronized List<String> buscarUsuariosPorAtributo(String atributo, String valor, int inicio, int limite) {
+        return indicePerfis.buscarPorValor(atributo, valor, inicio, limite);
+    }
+
+    /**
+     * Busca usurios cujo atributo de perfil comea com o prefixo informado.
+     * @param atributo Nome do atributo
+     * @param prefixo Prefixo procurado
+     * @param inicio Posio do primeiro resultado
+     * @param limite Quantidade mxima de resultados
+     * @return Logins encontrados, ordenados por valor e login
+     */
+    public synchronized List<String> buscarUsuariosPorPrefixo(String atributo, String prefixo, int inicio, int limite) {
+        return indicePerfis.buscarPorPrefixo(atributo, prefixo, inicio, limite);
+    }
+
+    /**
+     * Login dono de uma sesso, consultado sem a trava do servio (usado pelo controle de
+     * admisso, antes de qualquer trabalho). Uma sesso aberta ou encerrada no mesmo instante
+     * pode ainda no aparecer.
+     * @param idSessao ID da sesso
+     * @return Login, ou {@code null} se a sesso no existir
+     */
+    public String resolverSessao(String idSessao) {
+        return idSessao == null ? null : sessoesAtivas.get(idSessao);
     }
 
     /**
@@ -239,68 +530,87 @@ public class JackutService {
      * Valida se a sesso existe antes de retornar.
      */
     private User getUsuarioPorSessao(String idSessao) {
-        String login = sessoesAtivas.get(idSessao);
+        String login = resolverSessao(idSessao);
         if (login == null) {
-            throw new UserNotFoundException("Usurio no cadastrado.");
+            throw Resultado.Status.USUARIO_NAO_CADASTRADO.getExcecao();
         }
         return usuarios.get(login);
     }
 
+    /**
+     * @return Usurio da sesso, ou {@code null} se a sesso no existir
+     */
+    private User getUsuarioPorSessaoOuNulo(String idSessao) {
+        String login = resolverSessao(idSessao);
+        return login == null ? null : usuarios.get(login);
+    }
+
     /**
      * Retorna a lista de amigos de um usurio.
      * Mantm a ordem de confirmao das amizades.
      */
     public LinkedHashSet<String> getAmigos(String login) {
-        User usuario = usuarios.get(login);
+        aguardarCarga(login);
+        ReadView.Usuario usuario = versao.getUsuario(login);
         if (usuario == null) {
             throw new UserNotFoundException("Usurio no cadastrado.");
         }
-        return usuario.getAmigos();
+        return new LinkedHashSet<>(usuario.amigos);
     }
 
     /**
      * Gerencia o processo de adio de amigos com todas as validaes necessrias.
      * Trata tanto solicitaes novas quanto confirmaes de amizade.
      */
-    public void adicionarAmigo(String idSessao, String amigoLogin) {
-
-        try {
-
-            User usuario = getUsuarioPorSessao(idSessao);
-            User amigo = usuarios.get(amigoLogin);
+    public synchronized void adicionarAmigo(String idSessao, String amigoLogin) {
+        tentarAdicionarAmigo(idSessao, amigoLogin).obter();
+    }
 
-            if (amigo == null) throw new UserNotFoundException("Usurio no cadastrado.");
+    /**
+     * Variante de {@link #adicionarAmigo(String, String)} que devolve a falha em vez de lan-la.
+     */
+    public synchronized Resultado<Void> tentarAdicionarAmigo(String idSessao, String amigoLogin) {
+        User usuario = getUsuarioPorSessaoOuNulo(idSessao);
+        User amigo = usuarios.get(amigoLogin);
 
-            // Inimigos no podem ser amigos
-            if (amigo.ehInimigo(usuario.getLogin())) {
-                throw new RelationshipException("Funo invlida: " + amigo.getNome() + "  seu inimigo.");
-            }
+        if (usuario == null || amigo == null) {
+            return Resultado.falha(Resultado.Status.USUARIO_NAO_CADASTRADO);
+        }
 
-            if (usuario.getLogin().equals(amigoLogin))
-                throw new FriendshipException("Usurio no pode adicionar a si mesmo como amigo.");
+        // Inimigos no podem ser amigos
+        if (amigo.ehInimigo(usuario.getLogin())) {
+            return Resultado.inimigo(amigo.getNome());
+        }
 
-            if (usuario.isAmigo(amigoLogin)) {
-                throw new FriendshipException("Usurio j est adicionado como amigo.");
-            }
+        if (usuario.getLogin().equals(amigoLogin)) {
+            return Resultado.falha(Resultado.Status.AMIZADE_CONSIGO);
+        }
 
-            if (amigo.getSolicitacoesPendentes().contains(usuario.getLogin())) {
-                throw new FriendshipException("Usurio j est adicionado como amigo, esperando aceitao do convite.");
-            }
+        if (usuario.isAmigo(amigoLogin)) {
+            return Resultado.falha(Resultado.Status.JA_AMIGO);
+        }
 
-            if (usuario.getSolicitacoesPendentes().contains(amigoLogin)) {
-                usuario.confirmarAmizade(amigoLogin);
-                amigo.confirmarAmizade(usuario.getLogin());
-                usuario.getSolicitacoesPendentes().remove(amigoLogin);
-            } else {
-                amigo.adicionarSolicitacao(usuario.getLogin());
-            }
+        if (amigo.getSolicitacoesPendentes().contains(usuario.getLogin())) {
+            return Resultado.falha(Resultado.Status.CONVITE_PENDENTE);
+        }
 
-            salvarDados();
-        } catch (UserNotFoundException e) {
-            throw new UserNotFoundException("Usurio no cadastrado.");
-        } catch (FriendshipException e) {
-            throw e;
+        DomainEvent.Tipo evento;
+        if (usuario.getSolicitacoesPendentes().contains(amigoLogin)) {
+            usuario.confirmarAmizade(amigoLogin);
+            amigo.confirmarAmizade(usuario.getLogin());
+            usuario.getSolicitacoesPendentes().remove(amigoLogin);
+            marcarAlterados(usuario.getLogin(), null);
+            marcarAlterados(amigoLogin, null);
+            evento = DomainEvent.Tipo.AMIZADE_CONFIRMADA;
+        } else {
+            amigo.adicionarSolicitacao(usuario.getLogin());
+            marcarAlterados(amigoLogin, null);
+            evento = DomainEvent.Tipo.AMIZADE_SOLICITADA;
         }
+
+        salvarDados();
+        eventos.publicar(evento, usuario.getLogin(), amigoLogin, null);
+        return Resultado.ok();
     }
 
     /**
@@ -308,16 +618,25 @@ public class JackutService {
      * Retorna true apenas se ambos estiverem na lista de amigos do outro.
      */
     public boolean ehAmigo(String login1, String login2) {
-        User user1 = usuarios.get(login1);
-        User user2 = usuarios.get(login2);
+        return tentarEhAmigo(login1, login2).obter();
+    }
+
+    /**
+     * Variante de {@link #ehAmigo(String, String)} que devolve a falha em vez de lan-la.
+     */
+    public Resultado<Boolean> tentarEhAmigo(String login1, String login2) {
+        aguardarCarga(login1, login2);
+        ReadView fixada = versao;
+        ReadView.Usuario user1 = fixada.getUsuario(login1);
+        ReadView.Usuario user2 = fixada.getUsuario(login2);
         if (user1 == null || user2 == null) {
-            throw new UserNotFoundException("Usurio no cadastrado.");
+            return Resultado.falha(Resultado.Status.USUARIO_NAO_CADASTRADO);
         }
-        return user1.isAmigo(login2) && user2.isAmigo(login1);
+        return Resultado.ok(user1.amigos.contains(login2) && user2.amigos.contains(login1));
     }
 
 
-    public void enviarMensagem(String idSessao, String nomeComunidade, String mensagem)
+    public synchronized void enviarMensagem(String idSessao, String nomeComunidade, String mensagem)
             throws InvalidSessionException, CommunityNotFoundException {
 
         User remetente = getUsuarioPorSessao(idSessao);
@@ -333,140 +652,664 @@ public class JackutService {
         CommunityMessage msg = new CommunityMessage(
                 nomeComunidade,
                 remetente.getLogin(),
-                mensagem
+                mensagem,
+                new Date(relogio.getAsLong())
         );
 
         // Envia para todos os membros (incluindo o remetente)
         for (User membro : comunidade.getMembers()) {
             membro.receberMensagem(msg);
+            if (!membro.isRemoto()) {
+                marcarAlterados(membro.getLogin(), null);
+            }
         }
+        remetente.registrarAtividade();
+        marcarAlterados(remetente.getLogin(), null);
 
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.MENSAGEM_COMUNIDADE_ENVIADA, remetente.getLogin(), nomeComunidade, mensagem);
     }
 
 
-    public String lerMensagem(String idSessao) throws InvalidSessionException, NoMessagesException {
-        User usuario = getUsuarioPorSessao(idSessao);
+    public synchronized String lerMensagem(String idSessao) throws InvalidSessionException, NoMessagesException {
+        return tentarLerMensagem(idSessao).obter();
+    }
+
+    /**
+     * Variante de {@link #lerMensagem(String)} que devolve a falha em vez de lan-la.
+     */
+    public synchronized Resultado<String> tentarLerMensagem(String idSessao) {
+        User usuario = getUsuarioPorSessaoOuNulo(idSessao);
         if (usuario == null) {
-            throw new InvalidSessionException("Sesso invlida ou expirada.");
+            return Resultado.falha(Resultado.Status.USUARIO_NAO_CADASTRADO);
         }
 
         CommunityMessage mensagem = usuario.getProximaMensagem();
         if (mensagem == null) {
-            throw new NoMessagesException("No h mensagens.");
+            return Resultado.falha(Resultado.Status.SEM_MENSAGENS);
         }
 
         usuario.confirmarLeituraMensagem(); // Lgica movida para c
-        return mensagem.toString();
+        boolean arquivou = arquivarMensagensExpiradas(usuario);
+        marcarAlterados(usuario.getLogin(), null);
+        if (arquivou) {
+            salvarDados();
+        }
+        return Resultado.ok(mensagem.toString());
     }
 
     /**
-     * Permite que um usurio envie uma mensagem para outro.
-     * Valida se o destinatrio existe e no  o prprio remetente.
+     * Define a poltica de reteno das mensagens de comunidade lidas.
+     * @param politica Nova poltica
      */
-    public void enviarRecado(String idSessao, String destinatarioLogin, String mensagem) {
-        User remetente = getUsuarioPorSessao(idSessao);
-        User destinatario = usuarios.get(destinatarioLogin);
+    public synchronized void setPoliticaRetencao(RetentionPolicy politica) {
+        this.politicaRetencao = politica;
+    }
 
-        if (destinatario == null) {
-            throw new UserNotFoundException("Usurio no cadastrado.");
-        }
+    /**
+     * Troca a fonte do instante atual usada nas datas das mensagens de comunidade e na
+     * reteno. Rplicas usam o instante registrado pelo primrio, para chegar ao mesmo estado.
+     * @param relogio Instante atual, em milissegundos
+     */
+    public synchronized void setRelogio(LongSupplier relogio) {
+        this.relogio = relogio;
+    }
 
-        if (destinatario.ehInimigo(remetente.getLogin())) {
-            throw new RelationshipException("Funo invlida: " + destinatario.getNome() + "  seu inimigo.");
+    /**
+     * Lista mensagens de comunidade j arquivadas do usurio, da mais antiga para a mais recente.
+     * Os segmentos do arquivo so lidos sob demanda, s at completar a pgina.
+     * @param idSessao ID da sesso do usurio
+     * @param inicio Posio da primeira mensagem
+     * @param limite Quantidade mxima de mensagens
+     * @return Contedo das mensagens arquivadas
+     */
+    public synchronized List<String> getMensagensArquivadas(String idSessao, int inicio, int limite) {
+        User usuario = getUsuarioPorSessao(idSessao);
+        if (inicio < 0) {
+            throw new JackutException("Paginao invlida.");
         }
+        validarQuantidade(limite);
 
-        if (remetente.getLogin().equals(destinatarioLogin)) {
-            throw new RuntimeException("Usurio no pode enviar recado para si mesmo.");
+        List<String> conteudos = new ArrayList<>();
+        int posicao = 0;
+        for (CommunityMessage mensagem : arquivoMensagens.ler(usuario.getLogin())) {
+            if (posicao++ < inicio) {
+                continue;
+            }
+            conteudos.add(mensagem.toString());
+            if (conteudos.size() == limite) {
+                break;
+            }
         }
+        return conteudos;
+    }
 
-        destinatario.adicionarRecado(new Message(remetente.getLogin(), mensagem));
-        salvarDados();
+    /**
+     * Move para o arquivo em disco as mensagens lidas que excedem a poltica de reteno.
+     * S descarta da memria depois que o segmento foi gravado. Quem chama deve salvar os
+     * dados quando houver arquivamento: seno uma recarga traria de volta, como lidas, as
+     * mensagens que j esto no arquivo.
+     * @return true se alguma mensagem foi arquivada
+     */
+    private boolean arquivarMensagensExpiradas(User usuario) {
+        List<CommunityMessage> expiradas = usuario.getMensagensLidasExpiradas(politicaRetencao, relogio.getAsLong());
+        if (expiradas.isEmpty()) {
+            return false;
+        }
+        try {
+            arquivoMensagens.arquivar(usuario.getLogin(), expiradas);
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao arquivar mensagens.");
+        }
+        usuario.descartarMensagensLidas(expiradas.size());
+        return true;
     }
 
     /**
-     * Recupera a prxima mensagem no lida do usurio.
-     * Retorna apenas o contedo textual da mensagem.
+     * L at {@code quantidade} mensagens de comunidade de uma s vez.
+     * Diferente de {@link #lerMensagem(String)}, uma caixa vazia no  erro:
+     * a lista retornada simplesmente fica vazia.
+     * @param idSessao ID da sesso do usurio
+     * @param quantidade Nmero mximo de mensagens
+     * @return Contedo das mensagens lidas, na ordem de chegada
+     * @throws InvalidSessionException Se a sesso no for vlida
      */
-    public String lerRecado(String idSessao) {
+    public synchronized List<String> lerMensagens(String idSessao, int quantidade) throws InvalidSessionException {
         User usuario = getUsuarioPorSessao(idSessao);
-        Message recado = usuario.lerRecado();
+        if (usuario == null) {
+            throw new InvalidSessionException("Sesso invlida ou expirada.");
+        }
+        validarQuantidade(quantidade);
 
-        if (recado == null) {
-            throw new RuntimeException("No h recados.");
+        List<String> conteudos = new ArrayList<>();
+        for (CommunityMessage mensagem : usuario.lerMensagens(quantidade)) {
+            conteudos.add(mensagem.toString());
+        }
+        boolean arquivou = arquivarMensagensExpiradas(usuario);
+        marcarAlterados(usuario.getLogin(), null);
+        if (arquivou) {
+            salvarDados();
         }
+        return conteudos;
+    }
 
-        return recado.toString();
+    /**
+     * Retorna a quantidade de mensagens de comunidade no lidas, em tempo constante.
+     * @param idSessao ID da sesso do usurio
+     * @return Total de mensagens no lidas
+     */
+    public synchronized int getNumeroMensagens(String idSessao) {
+        return getUsuarioPorSessao(idSessao).getQuantidadeMensagens();
     }
 
     /**
-     * Persiste o estado atual dos usurios em arquivo.
-     * Lana exceo em caso de falha na operao.
+     * Retorna a quantidade de mensagens no lidas de uma comunidade, em tempo constante.
+     * @param idSessao ID da sesso do usurio
+     * @param nomeComunidade Nome da comunidade
+     * @return Mensagens no lidas daquela comunidade
+     * @throws CommunityNotFoundException Se a comunidade no existir
      */
-    public void salvarDados() {
-        try {
-            Map<String, Object> dados = new HashMap<>();
-            dados.put("usuarios", usuarios);
-            dados.put("comunidades", comunidades);
-            Jackut.save(dados);
-        } catch (Exception e) {
-            throw new RuntimeException("Erro ao salvar dados.");
+    public synchronized int getNumeroMensagensComunidade(String idSessao, String nomeComunidade) {
+        User usuario = getUsuarioPorSessao(idSessao);
+        if (!comunidades.containsKey(nomeComunidade)) {
+            throw new CommunityNotFoundException("Comunidade no existe.");
         }
+        return usuario.getQuantidadeMensagens(nomeComunidade);
     }
 
-    //US8_1
+    /**
+     * Permite que um usurio envie uma mensagem para outro.
+     * Valida se o destinatrio existe e no  o prprio remetente.
+     */
+    public synchronized void enviarRecado(String idSessao, String destinatarioLogin, String mensagem) {
+        tentarEnviarRecado(idSessao, destinatarioLogin, mensagem).obter();
+    }
 
     /**
-     * Adiciona um dolo  lista de um usurio (relao f-dolo).
-     * @param idSessao ID da sesso do usurio que est adicionando o dolo
-     * @param idolo Login do usurio a ser adicionado como dolo
-     * @throws InvalidSessionException Se a sesso for invlida
-     * @throws UserNotFoundException Se o dolo no for encontrado
-     * @throws RelationshipException Se j existir a relao ou for invlida
+     * Variante de {@link #enviarRecado(String, String, String)} que devolve a falha em vez de lan-la.
      */
-    public void adicionarIdolo(String idSessao, String idolo)
-            throws InvalidSessionException, UserNotFoundException, RelationshipException {
-        User f = getUsuarioPorSessao(idSessao);
-        User dolo = usuarios.get(idolo);
+    public synchronized Resultado<Void> tentarEnviarRecado(String idSessao, String destinatarioLogin, String mensagem) {
+        User remetente = getUsuarioPorSessaoOuNulo(idSessao);
+        User destinatario = usuarios.get(destinatarioLogin);
 
-        validarRelacionamento(f, dolo, "f-dolo");
+        if (remetente == null || destinatario == null) {
+            return Resultado.falha(Resultado.Status.USUARIO_NAO_CADASTRADO);
+        }
 
-        if (f.ehFaDe(idolo)) {
-            throw new RelationshipException("Usurio j est adicionado como dolo.");
+        if (destinatario.ehInimigo(remetente.getLogin())) {
+            return Resultado.inimigo(destinatario.getNome());
         }
 
-        f.adicionarIdolo(idolo);
-        dolo.adicionarFa(f.getLogin());
+        if (remetente.getLogin().equals(destinatarioLogin)) {
+            return Resultado.falha(Resultado.Status.RECADO_PARA_SI);
+        }
+
+        destinatario.adicionarRecado(new Message(remetente.getLogin(), mensagem));
+        remetente.registrarAtividade();
+        marcarAlterados(destinatarioLogin, null);
+        marcarAlterados(remetente.getLogin(), null);
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.RECADO_ENVIADO, remetente.getLogin(), destinatarioLogin, mensagem);
+        return Resultado.ok();
     }
 
     /**
-     * Adiciona uma paquera  lista do usurio (relao unilateral).
-     * Envia notificao automtica se a paquera for mtua.
-     * @param idSessao ID da sesso do usurio
-     * @param paquera Login do usurio a ser adicionado como paquera
-     * @throws InvalidSessionException Se a sesso for invlida
-     * @throws UserNotFoundException Se a paquera no for encontrada
-     * @throws RelationshipException Se j existir a relao ou for invlida
+     * Recupera a prxima mensagem no lida do usurio.
+     * Retorna apenas o contedo textual da mensagem.
      */
-    public void adicionarPaquera(String idSessao, String paquera)
-            throws InvalidSessionException, UserNotFoundException, RelationshipException {
-        User usuario = getUsuarioPorSessao(idSessao);
-        User alvo = usuarios.get(paquera);
+    public synchronized String lerRecado(String idSessao) {
+        return tentarLerRecado(idSessao).obter();
+    }
 
-        validarRelacionamento(usuario, alvo, "paquera");
+    /**
+     * Variante de {@link #lerRecado(String)} que devolve a falha em vez de lan-la.
+     */
+    public synchronized Resultado<String> tentarLerRecado(String idSessao) {
+        User usuario = getUsuarioPorSessaoOuNulo(idSessao);
+        if (usuario == null) {
+            return Resultado.falha(Resultado.Status.USUARIO_NAO_CADASTRADO);
+        }
 
-        if (usuario.ehPaquera(paquera)) {
-            throw new RelationshipException("Usurio j est adicionado como paquera.");
+        Message recado = usuario.tentarLerRecado();
+        if (recado == null) {
+            return Resultado.falha(Resultado.Status.SEM_RECADOS);
         }
+        marcarAlterados(usuario.getLogin(), null);
+        return Resultado.ok(recado.toString());
+    }
 
-        usuario.adicionarPaquera(paquera);
+    /**
+     * L at {@code quantidade} recados de uma s vez.
+     * Uma caixa vazia resulta em lista vazia, sem lanar exceo.
+     * @param idSessao ID da sesso do usurio
+     * @param quantidade Nmero mximo de recados
+     * @return Contedo dos recados lidos, na ordem de chegada
+     */
+    public synchronized List<String> lerRecados(String idSessao, int quantidade) {
+        User usuario = getUsuarioPorSessao(idSessao);
+        validarQuantidade(quantidade);
 
-        // Verifica paquera mtua
-        if (alvo.ehPaquera(usuario.getLogin())) {
-            enviarRecadoAutomtico(usuario, alvo);
+        List<String> conteudos = new ArrayList<>();
+        for (Message recado : usuario.lerRecados(quantidade)) {
+            conteudos.add(recado.toString());
+        }
+        marcarAlterados(usuario.getLogin(), null);
+        return conteudos;
+    }
+
+    /**
+     * Retorna a quantidade de recados no lidos, em tempo constante.
+     * @param idSessao ID da sesso do usurio
+     * @return Total de recados no lidos
+     */
+    public synchronized int getNumeroRecados(String idSessao) {
+        return getUsuarioPorSessao(idSessao).getQuantidadeRecados();
+    }
+
+    private void validarQuantidade(int quantidade) {
+        if (quantidade <= 0) {
+            throw new JackutException("Quantidade invlida.");
+        }
+    }
+
+    /**
+     * Importa em massa usurios, perfis, relacionamentos, comunidades e mensagens.
+     * As linhas so validadas em paralelo e aplicadas direto na memria;
+     * os dados so persistidos uma nica vez, ao final.
+     * @param arquivo Caminho do arquivo no formato de {@link DataRecord}
+     * @return Quantidade de registros importados
+     * @throws RuntimeException Se o arquivo no puder ser lido ou tiver linha invlida.
+     *         Nada  importado: a memria volta ao ltimo estado gravado, mantendo as sesses.
+     */
+    public synchronized long importarDados(String arquivo) {
+        // O descarte de uma importao com erro rel o armazenamento, ento ele precisa estar em dia
+        aguardarCarga();
+        if (gravacaoPendente) {
+            salvarDados();
+        }
+        BulkImporter importador = new BulkImporter(usuarios, comunidades, indicePerfis, this::marcarAlterados);
+        long importados;
+        try {
+            importados = importador.importar(Paths.get(arquivo));
+        } catch (IOException | RuntimeException e) {
+            RuntimeException falha = e instanceof RuntimeException
+                    ? (RuntimeException) e : new RuntimeException("Erro ao ler arquivo de importao.");
+            descartarImportacao(falha);
+            throw falha;
+        }
+        salvarDados();
+        arquivarMensagensImportadas();
+        eventos.publicar(DomainEvent.Tipo.DADOS_IMPORTADOS, null, null, arquivo);
+        return importados;
+    }
+
+    /**
+     * Aplica a poltica de reteno s mensagens lidas recebidas na importao. A importao j
+     * est gravada; se o arquivo em disco falhar, as mensagens ficam em memria e a prxima
+     * leitura do usurio tenta de novo.
+     */
+    private void arquivarMensagensImportadas() {
+        boolean arquivou = false;
+        for (User usuario : usuarios.values()) {
+            try {
+                if (arquivarMensagensExpiradas(usuario)) {
+                    marcarAlterados(usuario.getLogin(), null);
+                    arquivou = true;
+                }
+            } catch (RuntimeException e) {
+                // fica para a prxima leitura
+            }
+        }
+        if (arquivou) {
+            salvarDados();
+        }
+    }
+
+    /**
+     * Desfaz os registros j aplicados por uma importao que falhou, recarregando o ltimo
+     * estado gravado; as sesses de usurios que continuam existindo so mantidas.
+     * @param falha Erro da importao, ao qual se junta um eventual erro da recarga
+     */
+    private void descartarImportacao(RuntimeException falha) {
+        Map<String, String> sessoes = sessoesAtivas;
+        try {
+            carregarDados();
+        } catch (RuntimeException e) {
+            falha.addSuppressed(e);
+            return;
+        }
+        sessoes.forEach((idSessao, login) -> {
+            if (usuarios.containsKey(login)) {
+                sessoesAtivas.put(idSessao, login);
+            }
+        });
+    }
+
+    /**
+     * Exporta todos os dados em arquivos no formato de {@link DataRecord}, sem materializ-los.
+     * A trava do servio s  mantida durante a formatao de cada fatia de usurios,
+     * ento as demais operaes continuam sendo atendidas durante a exportao.
+     * @param prefixo Caminho e prefixo dos arquivos gerados
+     * @param comprimir true para comprimir cada parte com GZIP
+     * @param tamanhoParte Tamanho aproximado de cada parte, em bytes
+     * @return Quantidade de registros exportados
+     */
+    public long exportarDados(String prefixo, boolean comprimir, long tamanhoParte) {
+        aguardarCarga();
+        try {
+            return new DataExporter(this, usuarios, comunidades, arquivoMensagens).exportar(prefixo, comprimir, tamanhoParte);
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao exportar dados.");
+        }
+    }
+
+    /**
+     * Analisa o grafo de amizades: componentes conexos, coeficiente de agrupamento de cada
+     * usurio e distribuio de graus. A anlise usa a verso de consulta publicada, sem a
+     * trava do servio, ento reflete um nico momento mesmo com escritas em andamento.
+     * <p> uma tarefa de administrao, fora dos comandos de rede: o resultado vai sempre para
+     * o diretrio {@link Jackut#ANALYSIS_DIR} dos dados, com nome escolhido aqui, e s uma
+     * anlise roda por vez.</p>
+     * @return Nome do arquivo de resultado, no formato de {@link FriendGraphAnalyzer}
+     */
+    public String analisarAmizades() {
+        aguardarCarga();
+        if (!analiseEmAndamento.compareAndSet(false, true)) {
+            throw new JackutException("Anlise de amizades j em andamento.");
+        }
+        try {
+            if (!diretorioAnalises.isDirectory() && !diretorioAnalises.mkdirs()) {
+                throw new JackutException("No foi possvel criar o diretrio de anlises " + diretorioAnalises + ".");
+            }
+            ReadView analisada = versao;
+            Path arquivo = diretorioAnalises.toPath().resolve(
+                    "amizades-" + analisada.getNumero() + "-" + System.currentTimeMillis() + ".txt");
+            FriendGraphAnalyzer.de(analisada).analisar(arquivo);
+            return arquivo.getFileName().toString();
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao gravar anlise.");
+        } finally {
+            analiseEmAndamento.set(false);
+        }
+    }
+
+    /**
+     * Fluxo de eventos de domnio: cada mutao bem-sucedida publica um {@link DomainEvent}
+     * depois de persistida. Assinantes rodam em threads prprias, fora do caminho das requisies.
+     * @return Anel de eventos do servio
+     */
+    public EventRing getEventos() {
+        return eventos;
+    }
+
+    /**
+     * Persiste o estado atual dos usurios em arquivo.
+     * Lana exceo em caso de falha na operao.
+     */
+    public synchronized void salvarDados() {
+        publicarVersao();
+        boolean parcial = false;
+        if (aguardandoCarga) {
+            if (aquecimento.isCompleta()) {
+                aguardandoCarga = false; // a carga terminou durante esta operao e acabou de ser publicada
+            } else {
+                // S parte dos dados foi carregada: grava s o que mudou, e a gravao completa
+                // fica para o fim da carga
+                parcial = true;
+            }
+        }
+        try {
+            if (parcial) {
+                Set<String> gravar = new HashSet<>(usuariosAlterados);
+                gravar.removeAll(apenasCarregados);
+                armazenamento.salvarParcial(usuarios, comunidades, gravar, comunidadesAlteradas);
+                gravacaoPendente |= !gravar.isEmpty() || !comunidadesAlteradas.isEmpty();
+            } else if (reconstruirVersao || gravacaoPendente) {
+                armazenamento.salvar(usuarios, comunidades, null, null);
+            } else {
+                armazenamento.salvar(usuarios, comunidades, usuariosAlterados, comunidadesAlteradas);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Erro ao salvar dados.");
+        }
+        if (!parcial) {
+            gravacaoPendente = false;
+        }
+        limparAlteracoes();
+    }
+
+    /**
+     * Persiste o estado e libera os arquivos do armazenamento. O servio continua utilizvel:
+     * o armazenamento reabre os arquivos no prximo acesso.
+     */
+    public synchronized void encerrarSistema() {
+        salvarDados();
+        armazenamento.fechar();
+    }
+
+    /**
+     * Registra que os dados de consulta de um usurio e/ou de uma comunidade mudaram.
+     * A mudana fica visvel s consultas na prxima publicao.
+     * @param login Login alterado, ou {@code null}
+     * @param comunidade Comunidade alterada, ou {@code null}
+     */
+    private void marcarAlterados(String login, String comunidade) {
+        if (login != null) {
+            usuariosAlterados.add(login);
+            apenasCarregados.remove(login);
+        }
+        if (comunidade != null) {
+            comunidadesAlteradas.add(comunidade);
+        }
+    }
+
+    /**
+     * Publica uma verso nova dos dados de consulta com as alteraes marcadas. Chamado com a
+     * trava do servio, depois que a mutao terminou, ento as consultas nunca veem s um
+     * dos lados de uma relao.
+     */
+    private void publicarVersao() {
+        ReadView atual = versao;
+        if (reconstruirVersao) {
+            versao = ReadView.construir(atual.getNumero() + 1, usuarios, comunidades);
+        } else if (!usuariosAlterados.isEmpty() || !comunidadesAlteradas.isEmpty()) {
+            versao = atual.atualizar(atual.getNumero() + 1, usuarios, usuariosAlterados,
+                    comunidades, comunidadesAlteradas);
+        }
+        atualizarRankings();
+    }
+
+    /**
+     * Leva aos rankings as alteraes marcadas: cada usurio ou comunidade alterado tem a
+     * pontuao recalculada, em O(log n); uma reconstruo da verso refaz os rankings inteiros.
+     */
+    private void atualizarRankings() {
+        if (reconstruirVersao) {
+            limparRankings();
+            for (User usuario : usuarios.values()) {
+                pontuar(usuario);
+            }
+            for (Community comunidade : comunidades.values()) {
+                rankingComunidades.definir(comunidade.getName(), comunidade.getMembers().size());
+            }
+            return;
+        }
+        for (String login : usuariosAlterados) {
+            User usuario = usuarios.get(login);
+            if (usuario != null) {
+                pontuar(usuario);
+            } else {
+                rankingFas.remover(login);
+                rankingAtividade.remover(login);
+            }
+        }
+        for (String nome : comunidadesAlteradas) {
+            Community comunidade = comunidades.get(nome);
+            if (comunidade != null) {
+                rankingComunidades.definir(nome, comunidade.getMembers().size());
+            } else {
+                rankingComunidades.remover(nome);
+            }
+        }
+    }
+
+    private void pontuar(User usuario) {
+        rankingFas.definir(usuario.getLogin(), usuario.getQuantidadeFas());
+        rankingAtividade.definir(usuario.getLogin(), usuario.getAtividade());
+    }
+
+    private void limparRankings() {
+        rankingFas.limpar();
+        rankingComunidades.limpar();
+        rankingAtividade.limpar();
+    }
+
+    /**
+     * @param quantidade Nmero mximo de usurios
+     * @return Usurios com mais fs e a quantidade de cada um, no formato {login:fs,...}
+     * @throws JackutException Se a quantidade no for positiva
+     */
+    public String getUsuariosComMaisFas(int quantidade) {
+        return getPrimeiros(rankingFas, quantidade);
+    }
+
+    /**
+     * @param quantidade Nmero mximo de comunidades
+     * @return Comunidades com mais membros e a quantidade de cada uma, no formato {nome:membros,...}
+     * @throws JackutException Se a quantidade no for positiva
+     */
+    public String getMaioresComunidades(int quantidade) {
+        return getPrimeiros(rankingComunidades, quantidade);
+    }
+
+    /**
+     * @param quantidade Nmero mximo de usurios
+     * @return Usurios que mais enviaram recados e mensagens de comunidade, no formato {login:envios,...}
+     * @throws JackutException Se a quantidade no for positiva
+     */
+    public String getUsuariosMaisAtivos(int quantidade) {
+        return getPrimeiros(rankingAtividade, quantidade);
+    }
+
+    /**
+     * Verso dos rankings para o roteador do cluster, sem o formato de texto, em que logins e
+     * nomes de comunidade com ',' ou ':' seriam ambguos.
+     * @param ranking "fas", "comunidades" ou "atividade"
+     * @param quantidade Nmero mximo de entradas
+     * @return Pares chave, pontuao, da maior pontuao para a menor
+     * @throws JackutException Se a quantidade no for positiva ou o ranking no existir
+     */
+    public List<String> getRankingEmPares(String ranking, int quantidade) {
+        Leaderboard escolhido;
+        switch (ranking) {
+            case "fas": escolhido = rankingFas; break;
+            case "comunidades": escolhido = rankingComunidades; break;
+            case "atividade": escolhido = rankingAtividade; break;
+            default: throw new JackutException("Ranking invlido.");
+        }
+        validarQuantidade(quantidade);
+        aguardarCarga();
+        List<String> pares = new ArrayList<>();
+        synchronized (this) {
+            escolhido.getPrimeiros(quantidade).forEach((chave, pontos) -> {
+                pares.add(chave);
+                pares.add(String.valueOf(pontos));
+            });
+        }
+        return pares;
+    }
+
+    private String getPrimeiros(Leaderboard ranking, int quantidade) {
+        validarQuantidade(quantidade);
+        aguardarCarga();
+        StringJoiner primeiros = new StringJoiner(",", "{", "}");
+        synchronized (this) {
+            ranking.getPrimeiros(quantidade).forEach((chave, pontos) -> primeiros.add(chave + ":" + pontos));
+        }
+        return primeiros.toString();
+    }
+
+    /**
+     * Esquece as alteraes marcadas, depois que foram publicadas e gravadas.
+     */
+    private void limparAlteracoes() {
+        reconstruirVersao = false;
+        usuariosAlterados.clear();
+        comunidadesAlteradas.clear();
+        apenasCarregados.clear();
+    }
+
+    /**
+     * @return Nmero da verso publicada dos dados de consulta
+     */
+    public long getNumeroVersao() {
+        return versao.getNumero();
+    }
+
+    //US8_1
+
+    /**
+     * Adiciona um dolo  lista de um usurio (relao f-dolo).
+     * @param idSessao ID da sesso do usurio que est adicionando o dolo
+     * @param idolo Login do usurio a ser adicionado como dolo
+     * @throws InvalidSessionException Se a sesso for invlida
+     * @throws UserNotFoundException Se o dolo no for encontrado
+     * @throws RelationshipException Se j existir a relao ou for invlida
+     */
+    public synchronized void adicionarIdolo(String idSessao, String idolo)
+            throws InvalidSessionException, UserNotFoundException, RelationshipException {
+        User f = getUsuarioPorSessao(idSessao);
+        User dolo = usuarios.get(idolo);
+
+        validarRelacionamento(f, dolo, "f-dolo");
+
+        if (f.ehFaDe(idolo)) {
+            throw new RelationshipException("Usurio j est adicionado como dolo.");
+        }
+
+        f.adicionarIdolo(idolo);
+        dolo.adicionarFa(f.getLogin());
+        marcarAlterados(f.getLogin(), null);
+        marcarAlterados(idolo, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.IDOLO_ADICIONADO, f.getLogin(), idolo, null);
+    }
+
+    /**
+     * Adiciona uma paquera  lista do usurio (relao unilateral).
+     * Envia notificao automtica se a paquera for mtua.
+     * @param idSessao ID da sesso do usurio
+     * @param paquera Login do usurio a ser adicionado como paquera
+     * @throws InvalidSessionException Se a sesso for invlida
+     * @throws UserNotFoundException Se a paquera no for encontrada
+     * @throws RelationshipException Se j existir a relao ou for invlida
+     */
+    public synchronized void adicionarPaquera(String idSessao, String paquera)
+            throws InvalidSessionException, UserNotFoundException, RelationshipException {
+        User usuario = getUsuarioPorSessao(idSessao);
+        User alvo = usuarios.get(paquera);
+
+        validarRelacionamento(usuario, alvo, "paquera");
+
+        if (usuario.ehPaquera(paquera)) {
+            throw new RelationshipException("Usurio j est adicionado como paquera.");
+        }
+
+        usuario.adicionarPaquera(paquera);
+
+        // Verifica paquera mtua
+        String[] recados = null;
+        if (alvo.ehPaquera(usuario.getLogin())) {
+            recados = enviarRecadoAutomtico(usuario, alvo);
+            marcarAlterados(paquera, null);
+        }
+        marcarAlterados(usuario.getLogin(), null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.PAQUERA_ADICIONADA, usuario.getLogin(), paquera, null);
+        if (recados != null) {
+            eventos.publicar(DomainEvent.Tipo.RECADO_ENVIADO, "Sistema", usuario.getLogin(), recados[0]);
+            eventos.publicar(DomainEvent.Tipo.RECADO_ENVIADO, "Sistema", paquera, recados[1]);
         }
-        salvarDados();
     }
 
     /**
@@ -477,7 +1320,7 @@ public class JackutService {
      * @throws UserNotFoundException Se o inimigo no for encontrado
      * @throws RelationshipException Se j existir a relao ou for invlida
      */
-    public void adicionarInimigo(String idSessao, String inimigo)
+    public synchronized void adicionarInimigo(String idSessao, String inimigo)
             throws InvalidSessionException, UserNotFoundException, RelationshipException {
         User usuario = getUsuarioPorSessao(idSessao);
         User alvo = usuarios.get(inimigo);
@@ -489,7 +1332,9 @@ public class JackutService {
         }
 
         usuario.adicionarInimigo(inimigo);
+        marcarAlterados(usuario.getLogin(), null);
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.INIMIGO_ADICIONADO, usuario.getLogin(), inimigo, null);
     }
 
     /**
@@ -523,13 +1368,15 @@ public class JackutService {
      * Envia recados automticos para ambos os usurios quando h paquera mtua.
      * @param usuario1 Primeiro usurio na relao
      * @param usuario2 Segundo usurio na relao
+     * @return Recados entregues ao primeiro e ao segundo usurio, para os eventos
      */
-    private void enviarRecadoAutomtico(User usuario1, User usuario2) {
+    private String[] enviarRecadoAutomtico(User usuario1, User usuario2) {
         String msg1 = usuario2.getNome() + "  seu paquera - Recado do Jackut.";
         String msg2 = usuario1.getNome() + "  seu paquera - Recado do Jackut.";
 
         usuario1.adicionarRecado(new Message("Sistema", msg1));
         usuario2.adicionarRecado(new Message("Sistema", msg2));
+        return new String[] {msg1, msg2};
     }
 
     /**
@@ -538,7 +1385,7 @@ public class JackutService {
      * @param dolo Login do usurio dolo
      * @return true se a relao existir, false caso contrrio
      */
-    public boolean ehFa(String f, String dolo) {
+    public synchronized boolean ehFa(String f, String dolo) {
         User user = usuarios.get(f);
         return user != null && user.ehFaDe(dolo);
     }
@@ -550,22 +1397,23 @@ public class JackutService {
      * @return true se for paquera, false caso contrrio
      * @throws InvalidSessionException Se a sesso for invlida
      */
-    public boolean ehPaquera(String idSessao, String paquera) throws InvalidSessionException {
+    public synchronized boolean ehPaquera(String idSessao, String paquera) throws InvalidSessionException {
         User user = getUsuarioPorSessao(idSessao);
         return user.ehPaquera(paquera);
     }
 
     public String getFas(String login) {
-        User user = usuarios.get(login);
-        return user != null ? "{" + String.join(",", user.getFas()) + "}" : "{}";
+        aguardarCarga(login);
+        ReadView.Usuario user = versao.getUsuario(login);
+        return user != null ? user.fas : "{}";
     }
 
-    public String getPaqueras(String idSessao) throws InvalidSessionException {
+    public synchronized String getPaqueras(String idSessao) throws InvalidSessionException {
         User user = getUsuarioPorSessao(idSessao);
         return "{" + String.join(",", user.getPaqueras()) + "}";
     }
 
-    public void removerUsuario(String idSessao) throws InvalidSessionException, UserNotFoundException {
+    public synchronized void removerUsuario(String idSessao) throws InvalidSessionException, UserNotFoundException {
         User usuario = getUsuarioPorSessao(idSessao);
         if (usuario == null) {
             throw new UserNotFoundException("Usurio no cadastrado.");
@@ -573,72 +1421,494 @@ public class JackutService {
 
         String login = usuario.getLogin();
 
-        // 1. Remover de comunidades (completo)
-        List<String> comunidadesParaRemover = new ArrayList<>();
+        // 1 e 2. Remover comunidades, participaes, relacionamentos e recados
+        apagarReferencias(login);
+
+        // 3. Remover sesses ativas
+        sessoesAtivas.values().removeIf(loginSessao -> loginSessao.equals(login));
+
+        // 4. Remover o usurio
+        indicePerfis.removerUsuario(usuario);
+        arquivoMensagens.remover(login);
+        usuarios.remove(login);
 
-        // Identifica comunidades para remover e limpa referncias
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.USUARIO_REMOVIDO, login, null, null);
+    }
+
+    /**
+     * Apaga deste n as referncias a um usurio removido: comunidades de que ele  dono,
+     * participao nas demais comunidades e relacionamentos e recados dos outros usurios.
+     * @param login Login do usurio removido
+     * @return Nomes das comunidades removidas por pertencerem ao usurio
+     */
+    private List<String> apagarReferencias(String login) {
+        List<String> comunidadesRemovidas = new ArrayList<>();
         for (Community comunidade : new ArrayList<>(comunidades.values())) {
             if (comunidade.getOwner().getLogin().equals(login)) {
-                // Marca comunidades onde  dono para remoo completa
-                comunidadesParaRemover.add(comunidade.getName());
-
-                // Remove a comunidade da lista de todos os membros
+                // Comunidade do usurio: some para todos os membros
                 for (User membro : comunidade.getMembers()) {
-                    membro.getComunidadesParticipando().remove(comunidade.getName());
+                    if (membro.removerComunidade(comunidade.getName()) && !membro.isRemoto()) {
+                        marcarAlterados(membro.getLogin(), null);
+                    }
                 }
-            } else {
-                // Remove o usurio da lista de membros
-                comunidade.getMembers().removeIf(m -> m.getLogin().equals(login));
+                comunidades.remove(comunidade.getName());
+                comunidadesRemovidas.add(comunidade.getName());
+                marcarAlterados(null, comunidade.getName());
+            } else if (comunidade.getMembers().removeIf(m -> m.getLogin().equals(login))) {
+                marcarAlterados(null, comunidade.getName());
+            }
+        }
 
-                // Remove a comunidade da lista do usurio
-                usuario.getComunidadesParticipando().remove(comunidade.getName());
+        for (User outroUsuario : usuarios.values()) {
+            if (outroUsuario.removerReferencias(login)) {
+                marcarAlterados(outroUsuario.getLogin(), null);
             }
         }
+        marcarAlterados(login, null);
+        return comunidadesRemovidas;
+    }
 
-        // Remove as comunidades do mapa principal
-        for (String nomeComunidade : comunidadesParaRemover) {
-            comunidades.remove(nomeComunidade);
+    //9_1
+
+    // Operaes de partio (modo cluster)
+    //
+    // Em modo cluster cada n guarda apenas parte dos usurios e comunidades. Os mtodos
+    // abaixo alteram somente o lado local de uma relao entre parties; as validaes e
+    // a aplicao do outro lado, no n vizinho, ficam a cargo do roteador (network.ClusterRouter).
+    // Membros de comunidades que moram em outro n so representados por usurios "sombra",
+    // que no constam no mapa de usurios.
+
+    /** Bits devolvidos por {@link #getRelacoes(String, String)}. */
+    public static final int RELACAO_AMIGO = 1;
+    public static final int RELACAO_SOLICITACAO = 2;
+    public static final int RELACAO_IDOLO = 4;
+    public static final int RELACAO_PAQUERA = 8;
+    public static final int RELACAO_INIMIGO = 16;
+
+    /**
+     * @param idSessao ID da sesso
+     * @return Login do usurio dono da sesso
+     * @throws UserNotFoundException Se a sesso no existir
+     */
+    public synchronized String getLoginDaSessao(String idSessao) {
+        return tentarGetLoginDaSessao(idSessao).obter();
+    }
+
+    public synchronized Resultado<String> tentarGetLoginDaSessao(String idSessao) {
+        User usuario = getUsuarioPorSessaoOuNulo(idSessao);
+        if (usuario == null) {
+            return Resultado.falha(Resultado.Status.USUARIO_NAO_CADASTRADO);
         }
+        return Resultado.ok(usuario.getLogin());
+    }
 
-        // 2. Remover relacionamentos com outros usurios
-        for (User outroUsuario : usuarios.values()) {
-            // Remove de amigos
-            outroUsuario.getAmigos().remove(login);
+    /**
+     * Descreve como um usurio local se relaciona com outro usurio, de qualquer n.
+     * @param login Usurio local
+     * @param outro Outro usurio
+     * @return Combinao dos bits RELACAO_*: amigo, solicitao recebida de {@code outro},
+     * f de {@code outro}, paquera de {@code outro} e {@code outro} como inimigo
+     * @throws UserNotFoundException Se o usurio local no existir
+     */
+    public synchronized int getRelacoes(String login, String outro) {
+        User usuario = usuarios.get(login);
+        if (usuario == null) {
+            throw new UserNotFoundException("Usurio no cadastrado.");
+        }
+        int relacoes = 0;
+        if (usuario.isAmigo(outro)) relacoes |= RELACAO_AMIGO;
+        if (usuario.getSolicitacoesPendentes().contains(outro)) relacoes |= RELACAO_SOLICITACAO;
+        if (usuario.ehFaDe(outro)) relacoes |= RELACAO_IDOLO;
+        if (usuario.ehPaquera(outro)) relacoes |= RELACAO_PAQUERA;
+        if (usuario.ehInimigo(outro)) relacoes |= RELACAO_INIMIGO;
+        return relacoes;
+    }
+
+    /**
+     * Registra no usurio local uma solicitao de amizade vinda de outro n.
+     */
+    public synchronized void registrarSolicitacao(String login, String remetente) {
+        getUsuarioLocal(login).adicionarSolicitacao(remetente);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.AMIZADE_SOLICITADA, remetente, login, null);
+    }
+
+    /**
+     * Confirma, no lado do usurio local, uma amizade com usurio de outro n.
+     */
+    public synchronized void registrarAmizade(String login, String amigo) {
+        getUsuarioLocal(login).confirmarAmizade(amigo);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.AMIZADE_CONFIRMADA, login, amigo, null);
+    }
 
-            // Remove de fs/dolos
-            outroUsuario.getIdolos().remove(login);
-            outroUsuario.getFas().remove(login);
+    /**
+     * Registra o lado do f: o usurio local passa a ter {@code idolo} como dolo.
+     */
+    public synchronized void registrarIdolo(String login, String idolo) {
+        getUsuarioLocal(login).adicionarIdolo(idolo);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.IDOLO_ADICIONADO, login, idolo, null);
+    }
+
+    /**
+     * Registra o lado do dolo: o usurio local ganha {@code fa} como f.
+     */
+    public synchronized void registrarFa(String login, String fa) {
+        getUsuarioLocal(login).adicionarFa(fa);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.IDOLO_ADICIONADO, fa, login, null);
+    }
+
+    public synchronized void registrarPaquera(String login, String paquera) {
+        getUsuarioLocal(login).adicionarPaquera(paquera);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.PAQUERA_ADICIONADA, login, paquera, null);
+    }
 
-            // Remove de paqueras
-            outroUsuario.getPaqueras().remove(login);
+    public synchronized void registrarInimigo(String login, String inimigo) {
+        getUsuarioLocal(login).adicionarInimigo(inimigo);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.INIMIGO_ADICIONADO, login, inimigo, null);
+    }
+
+    /**
+     * Entrega ao usurio local um recado enviado por usurio de outro n.
+     */
+    public synchronized void entregarRecado(String destinatario, String remetente, String conteudo) {
+        getUsuarioLocal(destinatario).adicionarRecado(new Message(remetente, conteudo));
+        marcarAlterados(destinatario, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.RECADO_ENVIADO, remetente, destinatario, conteudo);
+    }
+
+    /**
+     * Conta no usurio local um recado ou mensagem de comunidade que ele enviou e que o
+     * roteador entregou em outro n.
+     */
+    public synchronized void registrarAtividade(String login) {
+        getUsuarioLocal(login).registrarAtividade();
+        marcarAlterados(login, null);
+        salvarDados();
+    }
 
-            // Remove de inimigos
-            outroUsuario.getInimigos().remove(login);
+    /**
+     * Cria neste n uma comunidade cujo dono pode morar em outro n.
+     * @throws CommunityAlreadyExistsException Se j existir comunidade com esse nome
+     */
+    public synchronized void criarComunidadeRemota(String nome, String descricao, String dono)
+            throws CommunityAlreadyExistsException {
+        if (comunidades.containsKey(nome)) {
+            throw new CommunityAlreadyExistsException("Comunidade com esse nome j existe.");
+        }
+        comunidades.put(nome, new Community(nome, descricao, getUsuarioOuSombra(dono)));
+        marcarAlterados(null, nome);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.COMUNIDADE_CRIADA, dono, nome, descricao);
+    }
 
-            // Remove mensagens recebidas
-            outroUsuario.getRecados().removeIf(msg -> msg.getRemetente().equals(login));
+    /**
+     * Adiciona  comunidade local um membro que pode morar em outro n.
+     * @throws CommunityNotFoundException Se a comunidade no existir
+     * @throws UserAlreadyInCommunityException Se o usurio j for membro
+     */
+    public synchronized void adicionarMembroRemoto(String nome, String login) throws UserAlreadyInCommunityException {
+        Community comunidade = comunidades.get(nome);
+        if (comunidade == null) {
+            throw new CommunityNotFoundException("Comunidade no existe.");
+        }
+        for (User membro : comunidade.getMembers()) {
+            if (membro.getLogin().equals(login)) {
+                throw new UserAlreadyInCommunityException("Usuario j faz parte dessa comunidade.");
+            }
         }
+        comunidade.addMember(getUsuarioOuSombra(login));
+        marcarAlterados(null, nome);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.MEMBRO_ADICIONADO, login, nome, null);
+    }
 
-        // 3. Remover sesses ativas
-        sessoesAtivas.values().removeIf(loginSessao -> loginSessao.equals(login));
+    /**
+     * Registra no usurio local a participao em uma comunidade guardada em outro n.
+     */
+    public synchronized void registrarComunidade(String login, String nomeComunidade) {
+        getUsuarioLocal(login).adicionarComunidade(nomeComunidade);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.MEMBRO_ADICIONADO, login, nomeComunidade, null);
+    }
 
-        // 4. Remover o usurio
-        usuarios.remove(login);
+    /**
+     * @param nome Nome da comunidade local
+     * @return Logins de todos os membros, comeando pelo dono
+     * @throws CommunityNotFoundException Se a comunidade no existir
+     */
+    public synchronized List<String> getLoginsMembros(String nome) {
+        Community comunidade = comunidades.get(nome);
+        if (comunidade == null) {
+            throw new CommunityNotFoundException("Comunidade no existe.");
+        }
+        List<String> logins = new ArrayList<>();
+        logins.add(comunidade.getOwner().getLogin());
+        for (User membro : comunidade.getMembers()) {
+            if (!membro.getLogin().equals(comunidade.getOwner().getLogin())) {
+                logins.add(membro.getLogin());
+            }
+        }
+        return logins;
+    }
 
+    /**
+     * Entrega uma mensagem de comunidade aos membros que moram neste n.
+     * Logins desconhecidos so ignorados (usurio removido durante o envio).
+     */
+    public synchronized void entregarMensagem(List<String> destinatarios, String comunidade, String remetente,
+                                              long data, String conteudo) {
+        CommunityMessage mensagem = new CommunityMessage(comunidade, remetente, conteudo, new Date(data));
+        for (String login : destinatarios) {
+            User membro = usuarios.get(login);
+            if (membro != null) {
+                membro.receberMensagem(mensagem);
+                marcarAlterados(login, null);
+            }
+        }
         salvarDados();
+        eventos.publicar(DomainEvent.Tipo.MENSAGEM_COMUNIDADE_ENVIADA, remetente, comunidade, conteudo);
     }
 
-    //9_1
+    /**
+     * Verso de {@link #getNumeroMensagensComunidade(String, String)} para comunidades
+     * guardadas em outro n; a existncia da comunidade  verificada pelo roteador.
+     */
+    public synchronized int getNumeroMensagensComunidadeRemota(String login, String nomeComunidade) {
+        return getUsuarioLocal(login).getQuantidadeMensagens(nomeComunidade);
+    }
 
+    /**
+     * Busca por prefixo devolvendo tambm o valor do atributo, para que o roteador possa
+     * intercalar os resultados de vrios ns na mesma ordem da busca local.
+     * @return Pares valor, login, na ordem do ndice
+     */
+    public synchronized List<String> buscarUsuariosPorPrefixoComValores(String atributo, String prefixo, int inicio, int limite) {
+        List<String> pares = new ArrayList<>();
+        for (String login : indicePerfis.buscarPorPrefixo(atributo, prefixo, inicio, limite)) {
+            pares.add(usuarios.get(login).getProfile().getAttribute(atributo));
+            pares.add(login);
+        }
+        return pares;
+    }
+
+    /**
+     * Remove deste n as referncias a um usurio removido em outro n.
+     * @param login Login do usurio removido
+     * @return Nomes das comunidades deste n que pertenciam ao usurio e foram removidas
+     */
+    public synchronized List<String> removerReferencias(String login) {
+        List<String> comunidadesRemovidas = apagarReferencias(login);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.USUARIO_REMOVIDO, login, null, null);
+        return comunidadesRemovidas;
+    }
+
+    /**
+     * Retira dos usurios locais a participao em comunidades removidas em outro n.
+     */
+    public synchronized void esquecerComunidades(List<String> nomes) {
+        for (User usuario : usuarios.values()) {
+            for (String nome : nomes) {
+                if (usuario.removerComunidade(nome)) {
+                    marcarAlterados(usuario.getLogin(), null);
+                }
+            }
+        }
+        salvarDados();
+        for (String nome : nomes) {
+            eventos.publicar(DomainEvent.Tipo.COMUNIDADE_REMOVIDA, null, nome, null);
+        }
+    }
+
+    // Compensaes: cada uma desfaz, no lado local, um passo de uma operao entre parties
+    // cujo passo seguinte falhou em outro n (ver network.ClusterRouter). Desfazer algo que
+    // j no est l no  erro, ento o roteador pode repetir a compensao.
+
+    /**
+     * Desfaz {@link #registrarAmizade(String, String)}: a amizade volta a ser uma solicitao pendente.
+     */
+    public synchronized void desfazerAmizade(String login, String amigo) {
+        getUsuarioLocal(login).desfazerAmizade(amigo);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.AMIZADE_DESFEITA, login, amigo, null);
+    }
+
+    /**
+     * Desfaz {@link #registrarIdolo(String, String)}.
+     */
+    public synchronized void desfazerIdolo(String login, String idolo) {
+        getUsuarioLocal(login).removerIdolo(idolo);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.IDOLO_REMOVIDO, login, idolo, null);
+    }
+
+    /**
+     * Desfaz {@link #registrarPaquera(String, String)}.
+     */
+    public synchronized void desfazerPaquera(String login, String paquera) {
+        getUsuarioLocal(login).removerPaquera(paquera);
+        marcarAlterados(login, null);
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.PAQUERA_REMOVIDA, login, paquera, null);
+    }
+
+    /**
+     * Desfaz {@link #entregarRecado(String, String, String)}, retirando o recado mais recente
+     * com o mesmo remetente e contedo.
+     */
+    public synchronized void retirarRecado(String destinatario, String remetente, String conteudo) {
+        if (getUsuarioLocal(destinatario).retirarRecado(remetente, conteudo)) {
+            marcarAlterados(destinatario, null);
+            salvarDados();
+            eventos.publicar(DomainEvent.Tipo.RECADO_RETIRADO, remetente, destinatario, conteudo);
+        }
+    }
+
+    /**
+     * Desfaz {@link #criarComunidadeRemota(String, String, String)}.
+     */
+    public synchronized void desfazerComunidadeRemota(String nome) {
+        Community comunidade = comunidades.remove(nome);
+        if (comunidade != null) {
+            for (User membro : comunidade.getMembers()) {
+                if (membro.removerComunidade(nome) && !membro.isRemoto()) {
+                    marcarAlterados(membro.getLogin(), null);
+                }
+            }
+            marcarAlterados(null, nome);
+            salvarDados();
+            eventos.publicar(DomainEvent.Tipo.COMUNIDADE_REMOVIDA, null, nome, null);
+        }
+    }
+
+    /**
+     * Desfaz {@link #adicionarMembroRemoto(String, String)}.
+     */
+    public synchronized void removerMembroRemoto(String nome, String login) {
+        Community comunidade = comunidades.get(nome);
+        if (comunidade != null && comunidade.getMembers().removeIf(membro -> membro.getLogin().equals(login))) {
+            marcarAlterados(null, nome);
+            salvarDados();
+            eventos.publicar(DomainEvent.Tipo.MEMBRO_REMOVIDO, login, nome, null);
+        }
+    }
+
+    /**
+     * Desfaz {@link #entregarMensagem(List, String, String, long, String)} para os membros que
+     * ainda no leram a mensagem.
+     */
+    public synchronized void retirarMensagem(List<String> destinatarios, String comunidade, String remetente,
+                                             long data, String conteudo) {
+        Date quando = new Date(data);
+        for (String login : destinatarios) {
+            User membro = usuarios.get(login);
+            if (membro != null && membro.retirarMensagem(comunidade, remetente, quando, conteudo)) {
+                marcarAlterados(login, null);
+            }
+        }
+        salvarDados();
+        eventos.publicar(DomainEvent.Tipo.MENSAGEM_COMUNIDADE_RETIRADA, remetente, comunidade, conteudo);
+    }
+
+    private User getUsuarioLocal(String login) {
+        User usuario = usuarios.get(login);
+        if (usuario == null) {
+            throw new UserNotFoundException("Usurio no cadastrado.");
+        }
+        return usuario;
+    }
+
+    private User getUsuarioOuSombra(String login) {
+        User usuario = usuarios.get(login);
+        return usuario != null ? usuario : User.sombra(login);
+    }
+
+
+
+    //Replicao
+
+    /**
+     * @return Cpia das sesses ativas (idSessao -> login)
+     */
+    public synchronized Map<String, String> getSessoes() {
+        return new HashMap<>(sessoesAtivas);
+    }
+
+    /**
+     * Recria uma sesso aberta em outra instncia, mantendo o mesmo id.
+     * @throws RuntimeException Se o usurio no existir
+     */
+    public synchronized void restaurarSessao(String idSessao, String login) {
+        if (!usuarios.containsKey(login)) {
+            throw new JackutException("Usurio no cadastrado.");
+        }
+        sessoesAtivas.put(idSessao, login);
+    }
+
+    /**
+     * Descarta o estado em memria e recarrega o armazenamento, encerrando todas as sesses.
+     */
+    public synchronized void recarregarDados() {
+        carregarDados();
+    }
+
+    /**
+     * @return Estado atual no formato do arquivo de snapshot, qualquer que seja o armazenamento
+     */
+    public synchronized byte[] gerarSnapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            SnapshotStorage.serializar(usuarios, comunidades, bytes);
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao gerar snapshot.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Substitui o estado pelo snapshot recebido e o grava no armazenamento, encerrando todas as sesses.
+     * @param dados Estado no formato de {@link #gerarSnapshot()}
+     */
+    public synchronized void aplicarSnapshot(byte[] dados) {
+        try {
+            instalarDados(SnapshotStorage.desserializar(dados));
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Snapshot invlido.");
+        }
+        salvarDados();
+    }
 
     /**
      * Reseta completamente o sistema, limpando todos os dados.
      * Remove tanto as estruturas em memria quanto o arquivo de persistncia.
      */
-    public void zerarSistema() {
+    public synchronized void zerarSistema() {
+        encerrarAquecimento();
         usuarios.clear();
         sessoesAtivas.clear();
         comunidades.clear();
-        new File(Jackut.DATA_FILE).delete();
+        indicePerfis.limpar();
+        arquivoMensagens.limpar();
+        armazenamento.apagar();
+        reconstruirVersao = true;
+        publicarVersao();
+        limparAlteracoes();
+        eventos.publicar(DomainEvent.Tipo.SISTEMA_ZERADO, null, null, null);
     }
 }
\ No newline at end of file
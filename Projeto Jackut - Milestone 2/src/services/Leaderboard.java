@@ -0,0 +1,105 @@
+package services;
+
+import java.util.*;
+
+/**
+ * Ranking mantido de forma incremental: chaves (logins ou nomes de comunidade) ordenadas pela
+ * pontuao, da maior para a menor, com empate resolvido pela ordem alfabtica da chave.
+ *
+ * <p>Guarda a pontuao atual de cada chave em um mapa e as entradas em uma rvore ordenada,
+ * ento mudar uma pontuao custa O(log n) (sai a entrada antiga, entra a nova) e os
+ * {@code N} primeiros so lidos em O(N), sem percorrer usurios nem comunidades. Chaves com
+ * pontuao zero no ficam no ranking.</p>
+ *
+ * <p>Assim como o {@link ProfileIndex}, o ranking no  persistido nem thread-safe: o servio
+ * o atualiza com a sua trava e o reconstri na carga do sistema.</p>
+ */
+public class Leaderboard {
+
+    /**
+     * Entrada da rvore: chave e pontuao no momento em que foi inserida.
+     */
+    private static final class Entrada implements Comparable<Entrada> {
+        final String chave;
+        final long pontos;
+
+        Entrada(String chave, long pontos) {
+            this.chave = chave;
+            this.pontos = pontos;
+        }
+
+        @Override
+        public int compareTo(Entrada outra) {
+            int comparacao = Long.compare(outra.pontos, pontos);
+            return comparacao != 0 ? comparacao : chave.compareTo(outra.chave);
+        }
+    }
+
+    private final Map<String, Long> pontuacoes = new HashMap<>();
+    private final NavigableSet<Entrada> ordem = new TreeSet<>();
+
+    /**
+     * Define a pontuao de uma chave; zero (ou menos) a retira do ranking.
+     * @param chave Login ou nome de comunidade
+     * @param pontos Nova pontuao
+     */
+    public void definir(String chave, long pontos) {
+        Long anterior = pontuacoes.get(chave);
+        if (anterior != null) {
+            if (anterior == pontos) {
+                return;
+            }
+            ordem.remove(new Entrada(chave, anterior));
+        }
+        if (pontos > 0) {
+            pontuacoes.put(chave, pontos);
+            ordem.add(new Entrada(chave, pontos));
+        } else if (anterior != null) {
+            pontuacoes.remove(chave);
+        }
+    }
+
+    /**
+     * Retira uma chave do ranking.
+     * @param chave Login ou nome de comunidade
+     */
+    public void remover(String chave) {
+        definir(chave, 0);
+    }
+
+    /**
+     * @param chave Login ou nome de comunidade
+     * @return Pontuao atual (zero se a chave no estiver no ranking)
+     */
+    public long getPontuacao(String chave) {
+        return pontuacoes.getOrDefault(chave, 0L);
+    }
+
+    /**
+     * @param quantidade Nmero mximo de entradas
+     * @return Primeiras entradas (chave -> pontuao), da maior pontuao para a menor
+     */
+    public LinkedHashMap<String, Long> getPrimeiros(int quantidade) {
+        LinkedHashMap<String, Long> primeiros = new LinkedHashMap<>();
+        for (Iterator<Entrada> entradas = ordem.iterator(); primeiros.size() < quantidade && entradas.hasNext(); ) {
+            Entrada entrada = entradas.next();
+            primeiros.put(entrada.chave, entrada.pontos);
+        }
+        return primeiros;
+    }
+
+    /**
+     * @return Quantidade de chaves no ranking
+     */
+    public int tamanho() {
+        return pontuacoes.size();
+    }
+
+    /**
+     * Esvazia o ranking.
+     */
+    public void limpar() {
+        pontuacoes.clear();
+        ordem.clear();
+    }
+}
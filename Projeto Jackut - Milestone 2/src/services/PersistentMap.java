@@ -0,0 +1,315 @@
+package services;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Mapa imutvel persistente (trie de hash com mapa de bits, 32 filhos por nvel).
+ *
+ * <p>{@link #com(Object, Object)} e {@link #sem(Object)} devolvem um mapa novo copiando apenas
+ * o caminho at a chave, no mximo sete ns; o restante da rvore  compartilhado com o mapa
+ * anterior, que continua vlido. Chaves com o mesmo hash ficam juntas em um n de coliso.</p>
+ *
+ * @param <K> Tipo das chaves
+ * @param <V> Tipo dos valores
+ */
+final class PersistentMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASCARA = (1 << BITS) - 1;
+    private static final PersistentMap<?, ?> VAZIO = new PersistentMap<>(null, 0);
+
+    private final No raiz;
+    private final int tamanho;
+
+    private PersistentMap(No raiz, int tamanho) {
+        this.raiz = raiz;
+        this.tamanho = tamanho;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> vazio() {
+        return (PersistentMap<K, V>) VAZIO;
+    }
+
+    int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * @return Valor da chave, ou {@code null} se ela no estiver no mapa
+     */
+    @SuppressWarnings("unchecked")
+    V get(K chave) {
+        return raiz == null ? null : (V) raiz.get(chave, hash(chave), 0);
+    }
+
+    /**
+     * @return Mapa com a chave associada ao valor
+     */
+    PersistentMap<K, V> com(K chave, V valor) {
+        Entrada nova = new Entrada(hash(chave), chave, valor);
+        int[] adicionadas = new int[1];
+        No novaRaiz = (raiz == null ? Ramo.VAZIO : raiz).com(nova, 0, adicionadas);
+        return novaRaiz == raiz ? this : new PersistentMap<>(novaRaiz, tamanho + adicionadas[0]);
+    }
+
+    /**
+     * @return Mapa sem a chave
+     */
+    PersistentMap<K, V> sem(K chave) {
+        if (raiz == null) {
+            return this;
+        }
+        No novaRaiz = raiz.sem(chave, hash(chave), 0);
+        if (novaRaiz == raiz) {
+            return this;
+        }
+        return novaRaiz == null ? vazio() : new PersistentMap<>(novaRaiz, tamanho - 1);
+    }
+
+    /**
+     * Percorre todas as entradas, em uma ordem qualquer. O mapa  imutvel, ento a travessia
+     * v exatamente as entradas desta verso, mesmo com outras verses sendo criadas ao lado.
+     */
+    @SuppressWarnings("unchecked")
+    void paraCada(BiConsumer<? super K, ? super V> acao) {
+        if (raiz != null) {
+            raiz.paraCada((BiConsumer<Object, Object>) acao);
+        }
+    }
+
+    private static int hash(Object chave) {
+        int h = chave.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entrada {
+        final int hash;
+        final Object chave;
+        final Object valor;
+
+        Entrada(int hash, Object chave, Object valor) {
+            this.hash = hash;
+            this.chave = chave;
+            this.valor = valor;
+        }
+
+        boolean ehDaChave(Object outra, int outroHash) {
+            return hash == outroHash && chave.equals(outra);
+        }
+    }
+
+    private abstract static class No {
+
+        abstract Object get(Object chave, int hash, int deslocamento);
+
+        /**
+         * @param adicionadas Recebe 1 se a chave no existia
+         * @return O prprio n, se nada mudou
+         */
+        abstract No com(Entrada nova, int deslocamento, int[] adicionadas);
+
+        /**
+         * @return O prprio n, se a chave no existia, ou {@code null} se ele ficou vazio
+         */
+        abstract No sem(Object chave, int hash, int deslocamento);
+
+        abstract void paraCada(BiConsumer<Object, Object> acao);
+    }
+
+    /**
+     * N interno: cada bit ligado do mapa indica uma posio ocupada por uma entrada ou um n filho.
+     */
+    private static final class Ramo extends No {
+
+        static final Ramo VAZIO = new Ramo(0, new Object[0]);
+
+        final int mapa;
+        final Object[] itens;
+
+        Ramo(int mapa, Object[] itens) {
+            this.mapa = mapa;
+            this.itens = itens;
+        }
+
+        @Override
+        Object get(Object chave, int hash, int deslocamento) {
+            int bit = 1 << ((hash >>> deslocamento) & MASCARA);
+            if ((mapa & bit) == 0) {
+                return null;
+            }
+            Object item = itens[Integer.bitCount(mapa & (bit - 1))];
+            if (item instanceof Entrada) {
+                Entrada entrada = (Entrada) item;
+                return entrada.ehDaChave(chave, hash) ? entrada.valor : null;
+            }
+            return ((No) item).get(chave, hash, deslocamento + BITS);
+        }
+
+        @Override
+        No com(Entrada nova, int deslocamento, int[] adicionadas) {
+            int bit = 1 << ((nova.hash >>> deslocamento) & MASCARA);
+            int posicao = Integer.bitCount(mapa & (bit - 1));
+            if ((mapa & bit) == 0) {
+                Object[] copia = new Object[itens.length + 1];
+                System.arraycopy(itens, 0, copia, 0, posicao);
+                copia[posicao] = nova;
+                System.arraycopy(itens, posicao, copia, posicao + 1, itens.length - posicao);
+                adicionadas[0] = 1;
+                return new Ramo(mapa | bit, copia);
+            }
+
+            Object item = itens[posicao];
+            Object novoItem;
+            if (item instanceof Entrada) {
+                Entrada atual = (Entrada) item;
+                if (atual.ehDaChave(nova.chave, nova.hash)) {
+                    if (atual.valor == nova.valor) {
+                        return this;
+                    }
+                    novoItem = nova;
+                } else {
+                    novoItem = juntar(atual, nova, deslocamento + BITS);
+                    adicionadas[0] = 1;
+                }
+            } else {
+                No filho = (No) item;
+                No novoFilho = filho.com(nova, deslocamento + BITS, adicionadas);
+                if (novoFilho == filho) {
+                    return this;
+                }
+                novoItem = novoFilho;
+            }
+            Object[] copia = itens.clone();
+            copia[posicao] = novoItem;
+            return new Ramo(mapa, copia);
+        }
+
+        @Override
+        No sem(Object chave, int hash, int deslocamento) {
+            int bit = 1 << ((hash >>> deslocamento) & MASCARA);
+            if ((mapa & bit) == 0) {
+                return this;
+            }
+            int posicao = Integer.bitCount(mapa & (bit - 1));
+            Object item = itens[posicao];
+            if (item instanceof Entrada) {
+                return ((Entrada) item).ehDaChave(chave, hash) ? semPosicao(bit, posicao) : this;
+            }
+            No filho = (No) item;
+            No novoFilho = filho.sem(chave, hash, deslocamento + BITS);
+            if (novoFilho == filho) {
+                return this;
+            }
+            if (novoFilho == null) {
+                return semPosicao(bit, posicao);
+            }
+            Object[] copia = itens.clone();
+            copia[posicao] = novoFilho;
+            return new Ramo(mapa, copia);
+        }
+
+        @Override
+        void paraCada(BiConsumer<Object, Object> acao) {
+            for (Object item : itens) {
+                if (item instanceof Entrada) {
+                    acao.accept(((Entrada) item).chave, ((Entrada) item).valor);
+                } else {
+                    ((No) item).paraCada(acao);
+                }
+            }
+        }
+
+        private No semPosicao(int bit, int posicao) {
+            if (mapa == bit) {
+                return null;
+            }
+            Object[] copia = new Object[itens.length - 1];
+            System.arraycopy(itens, 0, copia, 0, posicao);
+            System.arraycopy(itens, posicao + 1, copia, posicao, copia.length - posicao);
+            return new Ramo(mapa & ~bit, copia);
+        }
+
+        /**
+         * Cria o n que guarda duas entradas de chaves diferentes que caram na mesma posio.
+         */
+        private static No juntar(Entrada a, Entrada b, int deslocamento) {
+            if (a.hash == b.hash) {
+                return new Colisao(a.hash, new Entrada[]{a, b});
+            }
+            int[] ignorado = new int[1];
+            return VAZIO.com(a, deslocamento, ignorado).com(b, deslocamento, ignorado);
+        }
+    }
+
+    /**
+     * Entradas cujas chaves tm exatamente o mesmo hash.
+     */
+    private static final class Colisao extends No {
+
+        final int hash;
+        final Entrada[] entradas;
+
+        Colisao(int hash, Entrada[] entradas) {
+            this.hash = hash;
+            this.entradas = entradas;
+        }
+
+        @Override
+        Object get(Object chave, int hash, int deslocamento) {
+            for (Entrada entrada : entradas) {
+                if (entrada.ehDaChave(chave, hash)) {
+                    return entrada.valor;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        No com(Entrada nova, int deslocamento, int[] adicionadas) {
+            if (nova.hash != hash) {
+                // Outra chave com o mesmo prefixo: a coliso desce um nvel dentro de um ramo
+                Ramo ramo = new Ramo(1 << ((hash >>> deslocamento) & MASCARA), new Object[]{this});
+                return ramo.com(nova, deslocamento, adicionadas);
+            }
+            for (int i = 0; i < entradas.length; i++) {
+                if (entradas[i].chave.equals(nova.chave)) {
+                    if (entradas[i].valor == nova.valor) {
+                        return this;
+                    }
+                    Entrada[] copia = entradas.clone();
+                    copia[i] = nova;
+                    return new Colisao(hash, copia);
+                }
+            }
+            Entrada[] copia = Arrays.copyOf(entradas, entradas.length + 1);
+            copia[entradas.length] = nova;
+            adicionadas[0] = 1;
+            return new Colisao(hash, copia);
+        }
+
+        @Override
+        No sem(Object chave, int hash, int deslocamento) {
+            for (int i = 0; i < entradas.length; i++) {
+                if (entradas[i].ehDaChave(chave, hash)) {
+                    if (entradas.length == 1) {
+                        return null;
+                    }
+                    Entrada[] copia = new Entrada[entradas.length - 1];
+                    System.arraycopy(entradas, 0, copia, 0, i);
+                    System.arraycopy(entradas, i + 1, copia, i, copia.length - i);
+                    return new Colisao(hash, copia);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        void paraCada(BiConsumer<Object, Object> acao) {
+            for (Entrada entrada : entradas) {
+                acao.accept(entrada.chave, entrada.valor);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package services;
+
+import entities.AttributeRegistry;
+import entities.User;
+import exceptions.JackutException;
+
+import java.util.*;
+
+/**
+ * ndice invertido dos atributos de perfil do Jackut.
+ * Permite encontrar os usurios que possuem um determinado valor de atributo
+ * (ex.: cidade = "Campina Grande") sem percorrer todos os usurios do sistema.
+ *
+ * <p>Para cada atributo  mantido um mapa ordenado valor -> logins, o que permite
+ * buscas por igualdade e por prefixo. Os logins de cada valor tambm ficam ordenados,
+ * garantindo paginao estvel.</p>
+ *
+ * <p>Custo da paginao: os conjuntos ordenados no do acesso por posio, ento uma pgina
+ * custa O(log n + inicio + limite) para um nico valor. Numa busca por prefixo, os valores
+ * inteiros antes de {@code inicio} so pulados pelo tamanho do conjunto, sem percorr-lo, e s o
+ * conjunto onde a pgina comea  percorrido at {@code inicio}. Pginas profundas de um valor
+ * muito comum custam, portanto, proporcionalmente ao deslocamento.</p>
+ *
+ * <p>O ndice no  persistido:  reconstrudo a partir dos perfis na carga do sistema.</p>
+ */
+public class ProfileIndex {
+
+    // atributo (minsculo) -> valor -> logins que possuem esse valor
+    private final Map<String, NavigableMap<String, NavigableSet<String>>> indice = new HashMap<>();
+
+    /**
+     * Reconstri o ndice a partir dos perfis de todos os usurios.
+     * @param usuarios Usurios do sistema
+     */
+    public void reconstruir(Collection<User> usuarios) {
+        indice.clear();
+        for (User usuario : usuarios) {
+            adicionarUsuario(usuario);
+        }
+    }
+
+    /**
+     * Indexa todos os atributos do perfil de um usurio.
+     * @param usuario Usurio a ser indexado
+     */
+    public void adicionarUsuario(User usuario) {
+        for (Map.Entry<String, String> atributo : usuario.getProfile().getAttributes().entrySet()) {
+            adicionar(atributo.getKey(), atributo.getValue(), usuario.getLogin());
+        }
+    }
+
+    /**
+     * Remove do ndice todos os atributos do perfil de um usurio.
+     * @param usuario Usurio a ser removido
+     */
+    public void removerUsuario(User usuario) {
+        for (Map.Entry<String, String> atributo : usuario.getProfile().getAttributes().entrySet()) {
+            remover(atributo.getKey(), atributo.getValue(), usuario.getLogin());
+        }
+    }
+
+    /**
+     * Atualiza o ndice quando um atributo de um usurio muda de valor.
+     * @param login Login do usurio
+     * @param atributo Nome do atributo
+     * @param valorAntigo Valor anterior (vazio se o atributo no existia)
+     * @param valorNovo Novo valor do atributo
+     */
+    public void atualizar(String login, String atributo, String valorAntigo, String valorNovo) {
+        if (valorAntigo != null && !valorAntigo.isEmpty()) {
+            remover(atributo, valorAntigo, login);
+        }
+        adicionar(atributo, valorNovo, login);
+    }
+
+    /**
+     * Busca os usurios cujo atributo  exatamente igual ao valor informado.
+     * @param atributo Nome do atributo
+     * @param valor Valor procurado
+     * @param inicio Posio do primeiro resultado (paginao); o custo cresce com ele
+     * @param limite Quantidade mxima de resultados
+     * @return Logins encontrados, em ordem alfabtica
+     */
+    public List<String> buscarPorValor(String atributo, String valor, int inicio, int limite) {
+        validarPaginacao(inicio, limite);
+        NavigableMap<String, NavigableSet<String>> valores = indice.get(AttributeRegistry.normalizar(atributo));
+        if (valores == null || valor == null) {
+            return new ArrayList<>();
+        }
+        NavigableSet<String> logins = valores.get(valor);
+        if (logins == null) {
+            return new ArrayList<>();
+        }
+        return paginar(Collections.singletonList(logins), inicio, limite);
+    }
+
+    /**
+     * Busca os usurios cujo atributo comea com o prefixo informado.
+     * Os resultados so ordenados por valor e, dentro de cada valor, por login.
+     * @param atributo Nome do atributo
+     * @param prefixo Prefixo procurado
+     * @param inicio Posio do primeiro resultado (paginao)
+     * @param limite Quantidade mxima de resultados
+     * @return Logins encontrados
+     */
+    public List<String> buscarPorPrefixo(String atributo, String prefixo, int inicio, int limite) {
+        validarPaginacao(inicio, limite);
+        NavigableMap<String, NavigableSet<String>> valores = indice.get(AttributeRegistry.normalizar(atributo));
+        if (valores == null || prefixo == null) {
+            return new ArrayList<>();
+        }
+        Collection<NavigableSet<String>> faixa = prefixo.isEmpty()
+                ? valores.values()
+                : valores.subMap(prefixo, true, prefixo + Character.MAX_VALUE, false).values();
+        return paginar(faixa, inicio, limite);
+    }
+
+    /**
+     * Limpa todo o ndice.
+     */
+    public void limpar() {
+        indice.clear();
+    }
+
+    private void adicionar(String atributo, String valor, String login) {
+        if (valor == null || valor.isEmpty()) {
+            return;
+        }
+        indice.computeIfAbsent(AttributeRegistry.normalizar(atributo), k -> new TreeMap<>())
+                .computeIfAbsent(valor, k -> new TreeSet<>())
+                .add(login);
+    }
+
+    private void remover(String atributo, String valor, String login) {
+        NavigableMap<String, NavigableSet<String>> valores = indice.get(AttributeRegistry.normalizar(atributo));
+        if (valores == null) {
+            return;
+        }
+        NavigableSet<String> logins = valores.get(valor);
+        if (logins != null) {
+            logins.remove(login);
+            if (logins.isEmpty()) {
+                valores.remove(valor);
+            }
+        }
+        if (valores.isEmpty()) {
+            indice.remove(AttributeRegistry.normalizar(atributo));
+        }
+    }
+
+    /**
+     * Valida a paginao antes de qualquer busca, para que o erro no dependa de haver resultados.
+     */
+    private static void validarPaginacao(int inicio, int limite) {
+        if (inicio < 0 || limite <= 0) {
+            throw new JackutException("Paginao invlida.");
+        }
+    }
+
+    /**
+     * Percorre os grupos de logins em ordem, pulando os primeiros resultados
+     * e parando assim que o limite for atingido. Grupos inteiros so pulados pelo tamanho;
+     * dentro do grupo em que a pgina comea, o deslocamento  percorrido elemento a elemento.
+     */
+    private List<String> paginar(Collection<NavigableSet<String>> grupos, int inicio, int limite) {
+        List<String> resultado = new ArrayList<>();
+        int pular = inicio;
+        for (NavigableSet<String> logins : grupos) {
+            if (pular >= logins.size()) {
+                pular -= logins.size();
+                continue;
+            }
+            for (String login : logins) {
+                if (pular > 0) {
+                    pular--;
+                    continue;
+                }
+                resultado.add(login);
+                if (resultado.size() == limite) {
+                    return resultado;
+                }
+            }
+        }
+        return resultado;
+    }
+}
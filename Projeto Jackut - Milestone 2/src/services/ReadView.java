@@ -0,0 +1,119 @@
+package services;
+
+import entities.Community;
+import entities.User;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Verso imutvel dos dados de consulta de relacionamentos: amigos, fs e comunidades de
+ * cada usurio e membros de cada comunidade.
+ *
+ * <p>O {@link JackutService} publica uma verso nova ao final de cada mutao, j com os dois
+ * lados das relaes atualizados, e as consultas leem a verso publicada sem travas. Uma
+ * verso nova compartilha com a anterior tudo o que no mudou.</p>
+ */
+final class ReadView {
+
+    static final ReadView VAZIA = new ReadView(0, PersistentMap.vazio(), PersistentMap.vazio());
+
+    /**
+     * Dados de consulta de um usurio, j formatados quando a consulta devolve texto.
+     */
+    static final class Usuario {
+        final Set<String> amigos;
+        final String fas;
+        final String comunidades;
+
+        Usuario(User usuario) {
+            this.amigos = Collections.unmodifiableSet(usuario.getAmigos());
+            this.fas = "{" + String.join(",", usuario.getFas()) + "}";
+            this.comunidades = "{" + String.join(",", usuario.getComunidadesParticipando()) + "}";
+        }
+    }
+
+    private final long numero;
+    private final PersistentMap<String, Usuario> usuarios;
+    // nome -> membros formatados, dono primeiro
+    private final PersistentMap<String, String> membros;
+
+    private ReadView(long numero, PersistentMap<String, Usuario> usuarios, PersistentMap<String, String> membros) {
+        this.numero = numero;
+        this.usuarios = usuarios;
+        this.membros = membros;
+    }
+
+    /**
+     * @return Nmero da verso, crescente a cada publicao
+     */
+    long getNumero() {
+        return numero;
+    }
+
+    /**
+     * @return Dados do usurio, ou {@code null} se ele no existir nesta verso
+     */
+    Usuario getUsuario(String login) {
+        return usuarios.get(login);
+    }
+
+    /**
+     * @return Quantidade de usurios nesta verso
+     */
+    int getQuantidadeUsuarios() {
+        return usuarios.tamanho();
+    }
+
+    /**
+     * Percorre os usurios desta verso com os respectivos amigos, em uma ordem qualquer.
+     */
+    void paraCadaUsuario(BiConsumer<String, Set<String>> acao) {
+        usuarios.paraCada((login, usuario) -> acao.accept(login, usuario.amigos));
+    }
+
+    /**
+     * @return Membros formatados da comunidade, ou {@code null} se ela no existir nesta verso
+     */
+    String getMembros(String comunidade) {
+        return membros.get(comunidade);
+    }
+
+    /**
+     * Monta uma verso a partir de todo o estado.
+     */
+    static ReadView construir(long numero, Map<String, User> usuarios, Map<String, Community> comunidades) {
+        return VAZIA.atualizar(numero, usuarios, usuarios.keySet(), comunidades, comunidades.keySet());
+    }
+
+    /**
+     * Cria a verso seguinte refazendo apenas os usurios e comunidades indicados; os que no
+     * existem mais no estado so retirados.
+     */
+    ReadView atualizar(long novoNumero, Map<String, User> estadoUsuarios, Collection<String> logins,
+                       Map<String, Community> estadoComunidades, Collection<String> nomes) {
+        PersistentMap<String, Usuario> novosUsuarios = usuarios;
+        for (String login : logins) {
+            User usuario = estadoUsuarios.get(login);
+            novosUsuarios = usuario == null ? novosUsuarios.sem(login) : novosUsuarios.com(login, new Usuario(usuario));
+        }
+        PersistentMap<String, String> novosMembros = membros;
+        for (String nome : nomes) {
+            Community comunidade = estadoComunidades.get(nome);
+            novosMembros = comunidade == null ? novosMembros.sem(nome) : novosMembros.com(nome, formatarMembros(comunidade));
+        }
+        return new ReadView(novoNumero, novosUsuarios, novosMembros);
+    }
+
+    private static String formatarMembros(Community comunidade) {
+        String dono = comunidade.getOwner().getLogin();
+        StringJoiner texto = new StringJoiner(",", "{", "}");
+        texto.add(dono);
+        for (User membro : comunidade.getMembers()) {
+            if (!membro.getLogin().equals(dono)) {
+                texto.add(membro.getLogin());
+            }
+        }
+        return texto.toString();
+    }
+}
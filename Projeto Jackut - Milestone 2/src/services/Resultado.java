@@ -0,0 +1,135 @@
+package services;
+
+import exceptions.*;
+
+/**
+ * Resultado de uma operao do servio que pode falhar por motivo esperado (usurio
+ * inexistente, caixa vazia, amizade repetida...), sem lanar exceo.
+ *
+ * <p>Falhas com mensagem fixa so instncias pr-alocadas, uma por {@link Status}, e sucessos
+ * sem valor tambm; assim uma falha esperada no aloca nada. Para quem prefere excees,
+ * {@link #obter()} devolve o valor ou lana a exceo pr-alocada do status, sem pilha.</p>
+ *
+ * @param <T> Tipo do valor em caso de sucesso
+ */
+public final class Resultado<T> {
+
+    /**
+     * Situao do resultado. Cada falha traz a mensagem exibida ao usurio e a exceo
+     * equivalente da API que lana.
+     */
+    public enum Status {
+        OK(null),
+        USUARIO_NAO_CADASTRADO(new UserNotFoundException("Usurio no cadastrado.")),
+        LOGIN_OU_SENHA_INVALIDOS(new JackutException("Login ou senha invlidos.")),
+        ATRIBUTO_NAO_PREENCHIDO(new AttributeNotFilledException("Atributo no preenchido.")),
+        AMIZADE_CONSIGO(new FriendshipException("Usurio no pode adicionar a si mesmo como amigo.")),
+        JA_AMIGO(new FriendshipException("Usurio j est adicionado como amigo.")),
+        CONVITE_PENDENTE(new FriendshipException(
+                "Usurio j est adicionado como amigo, esperando aceitao do convite.")),
+        RECADO_PARA_SI(new JackutException("Usurio no pode enviar recado para si mesmo.")),
+        SEM_RECADOS(new NoMessagesException("No h recados.")),
+        SEM_MENSAGENS(new NoMessagesException("No h mensagens.")),
+        /** A mensagem cita o nome do inimigo, ento cada falha traz a sua. */
+        INIMIGO(null);
+
+        private final RuntimeException excecao;
+
+        Status(RuntimeException excecao) {
+            this.excecao = excecao;
+        }
+
+        /**
+         * @return Exceo pr-alocada, sem pilha, deste status ({@code null} para OK e INIMIGO)
+         */
+        public RuntimeException getExcecao() {
+            return excecao;
+        }
+    }
+
+    private static final Resultado<?>[] FALHAS = new Resultado<?>[Status.values().length];
+    private static final Resultado<Void> VAZIO = new Resultado<>(Status.OK, null, null);
+    private static final Resultado<Boolean> VERDADEIRO = new Resultado<>(Status.OK, true, null);
+    private static final Resultado<Boolean> FALSO = new Resultado<>(Status.OK, false, null);
+
+    static {
+        for (Status status : Status.values()) {
+            FALHAS[status.ordinal()] = new Resultado<>(status, null, status.excecao);
+        }
+    }
+
+    private final Status status;
+    private final T valor;
+    private final RuntimeException erro;
+
+    private Resultado(Status status, T valor, RuntimeException erro) {
+        this.status = status;
+        this.valor = valor;
+        this.erro = erro;
+    }
+
+    public static Resultado<Void> ok() {
+        return VAZIO;
+    }
+
+    public static Resultado<Boolean> ok(boolean valor) {
+        return valor ? VERDADEIRO : FALSO;
+    }
+
+    public static <T> Resultado<T> ok(T valor) {
+        return new Resultado<>(Status.OK, valor, null);
+    }
+
+    /**
+     * @param status Status de falha com mensagem fixa
+     * @return Instncia pr-alocada do status
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Resultado<T> falha(Status status) {
+        if (status == Status.OK || status.excecao == null) {
+            throw new IllegalArgumentException("Status sem falha pr-alocada: " + status);
+        }
+        return (Resultado<T>) FALHAS[status.ordinal()];
+    }
+
+    /**
+     * @param nomeInimigo Nome de quem declarou o usurio como inimigo
+     */
+    public static <T> Resultado<T> inimigo(String nomeInimigo) {
+        return new Resultado<>(Status.INIMIGO, null,
+                new RelationshipException("Funo invlida: " + nomeInimigo + "  seu inimigo."));
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Valor do sucesso ({@code null} em falhas e em operaes sem valor)
+     */
+    public T getValor() {
+        return valor;
+    }
+
+    /**
+     * @return Mensagem da falha ({@code null} em sucessos)
+     */
+    public String getMensagem() {
+        return erro == null ? null : erro.getMessage();
+    }
+
+    /**
+     * @return Valor do sucesso
+     * @throws RuntimeException A exceo sem pilha equivalente ao status, se for falha
+     */
+    public T obter() {
+        if (erro != null) {
+            throw erro;
+        }
+        return valor;
+    }
+}
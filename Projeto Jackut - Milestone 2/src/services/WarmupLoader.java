@@ -0,0 +1,343 @@
+package services;
+
+import entities.Community;
+import entities.User;
+import storage.ShardedLoad;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Carga em segundo plano do incio progressivo do {@link JackutService}.
+ *
+ * <p>Uma thread percorre as parties de usurios em ordem e instala cada uma no servio. Os
+ * mapas devolvidos por {@link #getUsuarios()} e {@link #getComunidades()} substituem os do
+ * servio durante a carga: o acesso a um login cuja partio ainda no chegou carrega essa
+ * partio na hora, na frente das demais (ou s o usurio, se o armazenamento fizer busca por
+ * chave); percorrer os mapas ou acessar comunidades exige a
+ * carga completa, que  terminada na hora. Tudo isso acontece com a trava do servio, que  a
+ * mesma usada pela thread para instalar cada partio, ento o servio nunca v uma partio
+ * pela metade.</p>
+ *
+ * <p>Se uma leitura falhar, a carga para: a falha vai para o erro padro e para o
+ * {@link #getProgresso() progresso}, e todo acesso que ainda dependa da carga lana exceo
+ * com ela como causa, em vez de servir dados incompletos. Ao terminar, a carga solta o estado
+ * salvo e o que s servia a ela; os mapas carregados continuam com o servio.</p>
+ */
+final class WarmupLoader {
+
+    // Solta ao fim da carga
+    private ShardedLoad carga;
+    private final Object trava;
+    // Instala os usurios de uma partio; o segundo argumento indica se pode publicar a verso de consulta
+    private final BiConsumer<List<User>, Boolean> instalarParticao;
+    // Recebe as comunidades ao fim da carga; o segundo argumento indica se pode publicar
+    private final BiConsumer<Map<String, Community>, Boolean> concluir;
+
+    private final Map<String, User> usuariosCarregados = new HashMap<>();
+    private final Map<String, Community> comunidadesCarregadas = new HashMap<>();
+    // Logins lidos um a um (existentes ou no), que a instalao das parties no substitui
+    private final Set<String> buscados = new HashSet<>();
+    private final boolean[] carregadas;
+    private volatile int quantidadeCarregadas;
+    private volatile boolean completa;
+    private volatile boolean cancelada;
+    private volatile RuntimeException falha;
+    private final long inicio = System.nanoTime();
+    private volatile long duracao;
+
+    /**
+     * @param carga Estado salvo, por partes
+     * @param trava Trava do servio
+     * @param instalarParticao Chamado com a trava para cada partio carregada
+     * @param concluir Chamado com a trava quando tudo foi carregado, com as comunidades
+     */
+    WarmupLoader(ShardedLoad carga, Object trava, BiConsumer<List<User>, Boolean> instalarParticao,
+                 BiConsumer<Map<String, Community>, Boolean> concluir) {
+        this.carga = carga;
+        this.trava = trava;
+        this.instalarParticao = instalarParticao;
+        this.concluir = concluir;
+        this.carregadas = new boolean[carga.getParticoes()];
+    }
+
+    /**
+     * Inicia a thread de carga.
+     */
+    void iniciar() {
+        Thread thread = new Thread(this::carregar, "jackut-aquecimento");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Interrompe a carga; o que j foi instalado continua no servio.
+     */
+    void cancelar() {
+        synchronized (trava) {
+            cancelada = true;
+            if (!completa) {
+                carga.fechar();
+            }
+        }
+    }
+
+    /**
+     * Garante que a partio do login foi carregada. Deve ser chamado com a trava do servio.
+     */
+    void garantirUsuario(String login) {
+        if (completa) {
+            return;
+        }
+        verificarFalha();
+        try {
+            int particao = carga.particaoDe(login);
+            if (!carga.isBuscaPorChave()) {
+                garantirParticao(particao);
+            } else if (!carregadas[particao] && !buscados.contains(login)) {
+                User usuario = carga.carregarUsuario(login);
+                buscados.add(login);
+                if (usuario != null) {
+                    usuariosCarregados.put(login, usuario);
+                    instalarParticao.accept(List.of(usuario), false);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw registrarFalha(e);
+        }
+    }
+
+    /**
+     * Carrega na hora tudo o que falta. Deve ser chamado com a trava do servio.
+     */
+    void garantirTudo() {
+        if (completa) {
+            return;
+        }
+        verificarFalha();
+        try {
+            for (int particao = 0; particao < carregadas.length; particao++) {
+                garantirParticao(particao);
+            }
+            concluirCarga(false);
+        } catch (RuntimeException e) {
+            throw registrarFalha(e);
+        }
+    }
+
+    /**
+     * @return true quando todos os usurios e comunidades foram carregados
+     */
+    boolean isCompleta() {
+        return completa;
+    }
+
+    /**
+     * @return Mapa de usurios do servio durante a carga
+     */
+    Map<String, User> getUsuarios() {
+        return new MapaAquecido<>(usuariosCarregados, false);
+    }
+
+    /**
+     * @return Mapa de comunidades do servio durante a carga
+     */
+    Map<String, Community> getComunidades() {
+        return new MapaAquecido<>(comunidadesCarregadas, true);
+    }
+
+    /**
+     * @return Mapas completos, sem verificao, para o servio usar depois da carga
+     */
+    Map<String, User> getUsuariosCarregados() {
+        return usuariosCarregados;
+    }
+
+    Map<String, Community> getComunidadesCarregadas() {
+        return comunidadesCarregadas;
+    }
+
+    /**
+     * @return Situao da carga, para acompanhamento
+     */
+    String getProgresso() {
+        int total = carregadas.length;
+        int prontas = quantidadeCarregadas;
+        if (falha != null) {
+            return "falha: " + falha.getMessage();
+        }
+        if (completa) {
+            return "pronto (" + total + " partes em " + duracao / 1_000_000 + " ms)";
+        }
+        return "carregando " + prontas + "/" + total + " partes (" + (total == 0 ? 0 : prontas * 100 / total) + "%)";
+    }
+
+    private void carregar() {
+        ShardedLoad carga = this.carga;
+        try {
+            for (int proxima = 0; proxima < carregadas.length; proxima++) {
+                synchronized (trava) {
+                    if (completa || cancelada || falha != null) {
+                        return;
+                    }
+                    if (carregadas[proxima]) {
+                        continue; // j carregada a pedido
+                    }
+                }
+                // A decodificao no usa a trava: o servio segue atendendo enquanto isso
+                List<User> usuarios = carga.carregarParticao(proxima);
+                synchronized (trava) {
+                    if (completa || cancelada) {
+                        return;
+                    }
+                    if (!carregadas[proxima]) {
+                        instalar(proxima, usuarios, true);
+                    }
+                }
+            }
+            synchronized (trava) {
+                if (!cancelada && falha == null) {
+                    concluirCarga(true);
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (trava) {
+                // A carga terminada ou cancelada no meio da leitura fecha o que ela lia: no  falha
+                if (!completa && !cancelada) {
+                    registrarFalha(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registra a primeira falha de leitura, que encerra a carga.
+     * @return Exceo a lanar para quem dependia da carga
+     */
+    private RuntimeException registrarFalha(RuntimeException e) {
+        if (falha == null) {
+            falha = e;
+            System.err.println("Carga progressiva: " + e.getMessage() + "; os dados no carregados ficam indisponveis.");
+        }
+        return new RuntimeException("Erro ao carregar dados.", falha);
+    }
+
+    private void verificarFalha() {
+        if (falha != null) {
+            throw new RuntimeException("Erro ao carregar dados.", falha);
+        }
+    }
+
+    private void garantirParticao(int particao) {
+        if (!carregadas[particao]) {
+            instalar(particao, carga.carregarParticao(particao), false);
+        }
+    }
+
+    private void instalar(int particao, List<User> usuarios, boolean publicar) {
+        List<User> novos = new ArrayList<>(usuarios.size());
+        for (User usuario : usuarios) {
+            // Um usurio j buscado pode ter mudado ou sido removido desde ento
+            if (!buscados.contains(usuario.getLogin())) {
+                usuariosCarregados.put(usuario.getLogin(), usuario);
+                novos.add(usuario);
+            }
+        }
+        carregadas[particao] = true;
+        quantidadeCarregadas++;
+        instalarParticao.accept(novos, publicar);
+    }
+
+    private void concluirCarga(boolean publicar) {
+        if (completa) {
+            return;
+        }
+        comunidadesCarregadas.putAll(carga.carregarComunidades(usuariosCarregados));
+        carga.fechar();
+        carga = null;
+        buscados.clear();
+        duracao = System.nanoTime() - inicio;
+        completa = true;
+        concluir.accept(comunidadesCarregadas, publicar);
+    }
+
+    /**
+     * Mapa que, antes de cada acesso, garante que o que ele precisa j foi carregado: a
+     * partio da chave, ou tudo quando o mapa  percorrido (ou, nas comunidades, sempre).
+     */
+    private final class MapaAquecido<V> extends AbstractMap<String, V> {
+        private final Map<String, V> mapa;
+        private final boolean sempreCompleto;
+
+        MapaAquecido(Map<String, V> mapa, boolean sempreCompleto) {
+            this.mapa = mapa;
+            this.sempreCompleto = sempreCompleto;
+        }
+
+        private void garantir(Object chave) {
+            synchronized (trava) {
+                if (sempreCompleto || !(chave instanceof String)) {
+                    garantirTudo();
+                } else {
+                    garantirUsuario((String) chave);
+                }
+            }
+        }
+
+        private Map<String, V> completo() {
+            synchronized (trava) {
+                garantirTudo();
+            }
+            return mapa;
+        }
+
+        @Override
+        public V get(Object chave) {
+            garantir(chave);
+            return mapa.get(chave);
+        }
+
+        @Override
+        public boolean containsKey(Object chave) {
+            garantir(chave);
+            return mapa.containsKey(chave);
+        }
+
+        @Override
+        public V put(String chave, V valor) {
+            garantir(chave);
+            return mapa.put(chave, valor);
+        }
+
+        @Override
+        public V remove(Object chave) {
+            garantir(chave);
+            return mapa.remove(chave);
+        }
+
+        @Override
+        public int size() {
+            return completo().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return completo().isEmpty();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return completo().keySet();
+        }
+
+        @Override
+        public Collection<V> values() {
+            return completo().values();
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return completo().entrySet();
+        }
+    }
+}
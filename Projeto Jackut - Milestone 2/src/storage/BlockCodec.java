@@ -0,0 +1,116 @@
+package storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compresso de blocos independentes dos arquivos de dados. Cada bloco  comprimido e
+ * descomprimido sozinho, ento os blocos de um arquivo podem ser comprimidos em paralelo e
+ * qualquer um pode ser lido sem descomprimir os anteriores.
+ *
+ * <p>O compressor  escolhido pela propriedade de sistema {@value #PROPRIEDADE} (ver
+ * {@link #configurado()}). Os arquivos guardam o {@link #getId() identificador} do compressor
+ * usado, ento a leitura no depende da configurao atual. Outros compressores podem ser
+ * passados diretamente aos armazenamentos que aceitam um.</p>
+ */
+public interface BlockCodec {
+
+    /** Propriedade de sistema com o nome do compressor: nenhum (padro) ou deflate. */
+    String PROPRIEDADE = "jackut.compressao";
+
+    /** Blocos guardados como esto. */
+    BlockCodec NENHUM = new BlockCodec() {
+        @Override
+        public byte getId() {
+            return 0;
+        }
+
+        @Override
+        public String getNome() {
+            return "nenhum";
+        }
+
+        @Override
+        public byte[] comprimir(byte[] dados, int inicio, int tamanho) {
+            return Arrays.copyOfRange(dados, inicio, inicio + tamanho);
+        }
+
+        @Override
+        public byte[] descomprimir(byte[] dados, int inicio, int tamanho, int tamanhoOriginal) throws IOException {
+            if (tamanho != tamanhoOriginal) {
+                throw new IOException("Bloco invlido");
+            }
+            return Arrays.copyOfRange(dados, inicio, inicio + tamanho);
+        }
+    };
+
+    /**
+     * @return Identificador gravado nos arquivos (nico entre os compressores)
+     */
+    byte getId();
+
+    /**
+     * @return Nome usado na propriedade {@value #PROPRIEDADE}
+     */
+    String getNome();
+
+    /**
+     * @return Bloco {@code dados[inicio, inicio + tamanho)} comprimido
+     */
+    byte[] comprimir(byte[] dados, int inicio, int tamanho);
+
+    /**
+     * @param tamanhoOriginal Tamanho do bloco antes da compresso
+     * @return Bloco {@code dados[inicio, inicio + tamanho)} descomprimido
+     * @throws IOException Se o bloco estiver corrompido
+     */
+    byte[] descomprimir(byte[] dados, int inicio, int tamanho, int tamanhoOriginal) throws IOException;
+
+    /**
+     * Comprime vrios blocos em paralelo, no pool fork-join comum.
+     * @return Blocos comprimidos, na mesma ordem
+     */
+    default List<byte[]> comprimirTodos(List<byte[]> blocos) {
+        return blocos.parallelStream().map(bloco -> comprimir(bloco, 0, bloco.length)).collect(Collectors.toList());
+    }
+
+    /**
+     * @return Compressor indicado pela propriedade {@value #PROPRIEDADE}
+     * @throws RuntimeException Se o nome for desconhecido
+     */
+    static BlockCodec configurado() {
+        return criar(System.getProperty(PROPRIEDADE, "nenhum"));
+    }
+
+    /**
+     * @param nome nenhum ou deflate
+     * @throws RuntimeException Se o nome for desconhecido
+     */
+    static BlockCodec criar(String nome) {
+        switch (nome) {
+            case "nenhum":
+                return NENHUM;
+            case "deflate":
+                return new DeflateCodec();
+            default:
+                throw new RuntimeException("Compressor desconhecido: " + nome);
+        }
+    }
+
+    /**
+     * @param id Identificador gravado em um arquivo
+     * @throws IOException Se o identificador for desconhecido
+     */
+    static BlockCodec porId(byte id) throws IOException {
+        switch (id) {
+            case 0:
+                return NENHUM;
+            case DeflateCodec.ID:
+                return new DeflateCodec();
+            default:
+                throw new IOException("Compressor desconhecido no arquivo: " + id);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Filtro de Bloom sobre as chaves de uma {@link SSTable}: responde "com certeza no est" sem
+ * ler o arquivo, o que evita acessar o disco em buscas por chaves ausentes na tabela.
+ *
+ * <p>As {@code k} posies de cada chave vm de duas metades de um hash de 64 bits
+ * (h1 + i * h2). Com 10 bits por chave e 7 posies, a taxa de falsos positivos fica perto
+ * de 1%.</p>
+ */
+final class BloomFilter {
+
+    static final int BITS_POR_CHAVE = 10;
+    private static final int POSICOES = 7;
+
+    private final long[] bits;
+    private final int quantidadeBits;
+
+    /**
+     * @param chaves Quantidade esperada de chaves
+     */
+    BloomFilter(int chaves) {
+        this(new long[(Math.max(64, chaves * BITS_POR_CHAVE) + 63) / 64]);
+    }
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+        this.quantidadeBits = bits.length * 64;
+    }
+
+    void adicionar(String chave) {
+        long hash = hash(chave);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < POSICOES; i++) {
+            int posicao = Math.floorMod(h1 + i * h2, quantidadeBits);
+            bits[posicao >>> 6] |= 1L << posicao;
+        }
+    }
+
+    /**
+     * @return false se a chave com certeza no foi adicionada
+     */
+    boolean podeConter(String chave) {
+        long hash = hash(chave);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < POSICOES; i++) {
+            int posicao = Math.floorMod(h1 + i * h2, quantidadeBits);
+            if ((bits[posicao >>> 6] & (1L << posicao)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void escrever(DataOutput out) throws IOException {
+        out.writeInt(bits.length);
+        for (long palavra : bits) {
+            out.writeLong(palavra);
+        }
+    }
+
+    static BloomFilter ler(DataInput in) throws IOException {
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits);
+    }
+
+    // FNV-1a de 64 bits sobre os caracteres, seguido de uma mistura final para espalhar os bits altos
+    private static long hash(String chave) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < chave.length(); i++) {
+            hash ^= chave.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
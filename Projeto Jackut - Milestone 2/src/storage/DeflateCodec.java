@@ -0,0 +1,97 @@
+package storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressor de blocos com o Deflate do JDK ({@link Deflater}), no formato zlib, que inclui
+ * uma soma de verificao de cada bloco. Os dados gravados so dominados por textos repetidos
+ * (logins nos conjuntos de relacionamentos, nomes de comunidades nas mensagens), que o
+ * Deflate reduz bem mesmo nos nveis mais rpidos.
+ */
+public final class DeflateCodec implements BlockCodec {
+
+    static final byte ID = 1;
+
+    // O Deflate no reduz nada a menos de 1/1032 do original; um tamanho declarado acima
+    // disso s pode vir de um cabealho corrompido
+    private static final long EXPANSAO_MAXIMA = 1032;
+
+    private final int nivel;
+
+    /**
+     * Compressor no nvel mais rpido: a gravao acontece ao final de cada mutao, e o ganho
+     * de tamanho dos nveis mais altos  pequeno perto do tempo a mais.
+     */
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param nivel Nvel de compresso, de {@link Deflater#BEST_SPEED} a {@link Deflater#BEST_COMPRESSION}
+     */
+    public DeflateCodec(int nivel) {
+        this.nivel = nivel;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getNome() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] comprimir(byte[] dados, int inicio, int tamanho) {
+        Deflater deflater = new Deflater(nivel);
+        try {
+            deflater.setInput(dados, inicio, tamanho);
+            deflater.finish();
+            ByteArrayOutputStream saida = new ByteArrayOutputStream(Math.max(64, tamanho / 3));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                saida.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return saida.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] descomprimir(byte[] dados, int inicio, int tamanho, int tamanhoOriginal) throws IOException {
+        if (tamanhoOriginal < 0 || tamanhoOriginal > EXPANSAO_MAXIMA * tamanho + 64) {
+            throw new IOException("Bloco comprimido invlido");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(dados, inicio, tamanho);
+            byte[] resultado = new byte[tamanhoOriginal];
+            int lidos = 0;
+            while (lidos < tamanhoOriginal) {
+                int n = inflater.inflate(resultado, lidos, tamanhoOriginal - lidos);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                lidos += n;
+            }
+            if (lidos == tamanhoOriginal && !inflater.finished()) {
+                lidos += inflater.inflate(new byte[1]); // fim do fluxo (ou sobra, que invalida o bloco)
+            }
+            if (lidos != tamanhoOriginal || !inflater.finished()) {
+                throw new IOException("Bloco comprimido invlido");
+            }
+            return resultado;
+        } catch (DataFormatException e) {
+            throw new IOException("Bloco comprimido invlido", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
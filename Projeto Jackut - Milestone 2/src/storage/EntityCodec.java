@@ -0,0 +1,108 @@
+package storage;
+
+import entities.Community;
+import entities.User;
+
+import java.io.*;
+import java.util.Map;
+
+/**
+ * Codificao binria compacta das entidades, usada pelos armazenamentos por chave e pelas
+ * sees do snapshot.
+ * Usurios usam {@link User#escrever(DataOutput)}; comunidades guardam s os logins dos
+ * membros, ento um registro nunca carrega outro usurio.
+ */
+final class EntityCodec {
+
+    // Comunidades do formato 1 comeam direto pelo nome (writeUTF); a partir do 2 vm a marca, o
+    // nmero do formato e os textos gravados por User.escreverTexto. Como em User, a marca tambm
+    //  um tamanho vlido de writeUTF: um nome do formato 1 com exatamente 65535 bytes e comeando
+    // por U+0002 seria lido como marca.
+    private static final int MARCA_FORMATO = 0xFFFF;
+    private static final int FORMATO_COMUNIDADE = 2;
+
+    private EntityCodec() {
+    }
+
+    static byte[] codificarUsuario(User usuario) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        usuario.escrever(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    static User decodificarUsuario(byte[] dados) throws IOException {
+        return User.ler(new DataInputStream(new ByteArrayInputStream(dados)));
+    }
+
+    static byte[] codificarComunidade(Community comunidade) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        escreverComunidade(new DataOutputStream(bytes), comunidade);
+        return bytes.toByteArray();
+    }
+
+    static Community decodificarComunidade(byte[] dados, Map<String, User> usuarios) throws IOException {
+        return lerComunidade(new DataInputStream(new ByteArrayInputStream(dados)), usuarios);
+    }
+
+    /**
+     * Grava nome, descrio, dono e membros, estes pelo login e indicando quem mora em outro n.
+     */
+    static void escreverComunidade(DataOutput out, Community comunidade) throws IOException {
+        out.writeShort(MARCA_FORMATO);
+        out.writeByte(FORMATO_COMUNIDADE);
+        User.escreverTexto(out, comunidade.getName());
+        User.escreverTexto(out, comunidade.getDescription());
+        User.escreverTexto(out, comunidade.getOwner().getLogin());
+        out.writeBoolean(comunidade.getOwner().isRemoto());
+        out.writeInt(comunidade.getMembers().size());
+        for (User membro : comunidade.getMembers()) {
+            User.escreverTexto(out, membro.getLogin());
+            out.writeBoolean(membro.isRemoto());
+        }
+    }
+
+    /**
+     * L uma comunidade gravada por {@link #escreverComunidade}, inclusive no formato 1, com os
+     * textos em {@code writeUTF}. S consulta {@code usuarios}, ento vrias threads podem ler
+     * comunidades sobre o mesmo mapa.
+     * @return Comunidade ligada aos usurios carregados, ou {@code null} se o dono no existir mais
+     */
+    static Community lerComunidade(DataInput in, Map<String, User> usuarios) throws IOException {
+        int inicio = in.readUnsignedShort();
+        int formato = 1;
+        String nome;
+        if (inicio == MARCA_FORMATO) {
+            formato = in.readUnsignedByte();
+            if (formato > FORMATO_COMUNIDADE) {
+                throw new IOException("Formato de comunidade desconhecido: " + formato);
+            }
+            nome = lerTexto(in, formato);
+        } else {
+            nome = User.lerUTF(in, inicio);
+        }
+        String descricao = lerTexto(in, formato);
+        User dono = lerMembro(in, formato, usuarios);
+        int membros = in.readInt();
+        Community comunidade = dono == null ? null : new Community(nome, descricao, dono);
+        for (int i = 0; i < membros; i++) {
+            User membro = lerMembro(in, formato, usuarios);
+            if (comunidade != null && membro != null && !membro.getLogin().equals(dono.getLogin())) {
+                comunidade.addMember(membro);
+            }
+        }
+        return comunidade;
+    }
+
+    /**
+     * @return Usurio carregado, sombra se for de outro n, ou {@code null} se no existir mais
+     */
+    private static User lerMembro(DataInput in, int formato, Map<String, User> usuarios) throws IOException {
+        String login = lerTexto(in, formato);
+        boolean remoto = in.readBoolean();
+        return remoto ? User.sombra(login) : usuarios.get(login);
+    }
+
+    private static String lerTexto(DataInput in, int formato) throws IOException {
+        return formato >= 2 ? User.lerTexto(in) : in.readUTF();
+    }
+}
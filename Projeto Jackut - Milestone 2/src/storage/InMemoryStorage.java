@@ -0,0 +1,28 @@
+package storage;
+
+import entities.Community;
+import entities.User;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Armazenamento que no grava nada: o estado vive s na memria do servio e se perde ao
+ * encerrar o processo. Serve para medir o servio sem o custo de E/S e para testes.
+ */
+public class InMemoryStorage implements StorageBackend {
+
+    @Override
+    public Map<String, Object> carregar() {
+        return null;
+    }
+
+    @Override
+    public void salvar(Map<String, User> usuarios, Map<String, Community> comunidades,
+                       Set<String> usuariosAlterados, Set<String> comunidadesAlteradas) {
+    }
+
+    @Override
+    public void apagar() {
+    }
+}
@@ -0,0 +1,456 @@
+package storage;
+
+import entities.Community;
+import entities.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Armazenamento estruturado em log: cada gravao anexa ao arquivo apenas os usurios e
+ * comunidades que mudaram, em vez de reescrever tudo.
+ *
+ * <p>O arquivo  uma sequncia de lotes, um por gravao, cada um com tamanho e CRC32:</p>
+ * <pre>
+ * lote:     int tamanho | long crc | registro...
+ * registro: byte tipo | chave (int tamanho | bytes UTF-8) | int tamanho | bytes
+ * </pre>
+ * <p>Registros sem o bit {@code CHAVE_TEXTO} no tipo, gravados antes, trazem a chave em
+ * {@code writeUTF} e continuam sendo lidos.</p>
+ * <p>O ltimo registro de cada chave vale; usurios so gravados com a serializao do Java
+ * e comunidades com os logins dos membros, ento um registro nunca carrega outro usurio.
+ * Na carga, um lote incompleto ou com CRC errado no fim do arquivo (gravao interrompida)
+ *  descartado. Cada lote anexado  forado ao disco antes de {@link #salvar} retornar.
+ * Quando os registros do arquivo somam mais que o dobro dos vigentes (os dois medidos sem
+ * compresso, para que a razo no dependa do compressor), ele  compactado:
+ * reescrito com um registro por chave num arquivo temporrio, forado ao disco e movido
+ * atomicamente sobre o log.</p>
+ *
+ * <p>O log tambm serve de diferena sobre um estado carregado de outro lugar
+ * ({@link #aplicarSobre}), como o {@link SnapshotStorage} faz com as gravaes do incio progressivo.</p>
+ *
+ * <p>Com um {@link BlockCodec} que comprime, cada lote  dividido em blocos de cerca de
+ * {@value #TAMANHO_BLOCO} bytes (sem partir registros), comprimidos em paralelo e gravados
+ * como registros de bloco ({@code byte compressor | int tamanho original | bytes}), que a
+ * carga descomprime e aplica no lugar. Lotes pequenos ficam sem compresso. Logs gravados
+ * sem compresso continuam sendo lidos, e os dois tipos de lote podem se misturar.</p>
+ */
+public class LogStorage implements StorageBackend {
+
+    private static final byte USUARIO = 1;
+    private static final byte COMUNIDADE = 2;
+    private static final byte USUARIO_REMOVIDO = 3;
+    private static final byte COMUNIDADE_REMOVIDA = 4;
+    private static final byte BLOCO = 5;
+    // Bit do tipo que indica a chave gravada por User.escreverTexto, sem o limite de 64 KB de writeUTF
+    private static final byte CHAVE_TEXTO = 0x10;
+
+    private static final int TAMANHO_BLOCO = 64 * 1024;
+    // Lotes menores que isto no so comprimidos
+    private static final int TAMANHO_MINIMO_COMPRESSAO = 512;
+
+    // Abaixo deste tamanho o arquivo nunca  compactado
+    private static final long TAMANHO_MINIMO_COMPACTACAO = 1 << 20;
+
+    private final File arquivo;
+    private final BlockCodec compressor;
+    private FileOutputStream arquivoSaida;
+    private DataOutputStream saida;
+    private long tamanhoArquivo;
+    // Tamanho do registro vigente de cada chave ("u:" + login ou "c:" + nome)
+    private final Map<String, Integer> tamanhosVigentes = new HashMap<>();
+    private long bytesVigentes;
+    // Soma dos registros do arquivo antes da compresso, vigentes ou no
+    private long bytesRegistros;
+
+    /**
+     * @param arquivo Arquivo do log, comprimido pelo compressor configurado ({@link BlockCodec#configurado()})
+     */
+    public LogStorage(File arquivo) {
+        this(arquivo, BlockCodec.configurado());
+    }
+
+    /**
+     * @param arquivo Arquivo do log
+     * @param compressor Compressor dos lotes gravados (a leitura usa o gravado em cada bloco)
+     */
+    public LogStorage(File arquivo, BlockCodec compressor) {
+        this.arquivo = arquivo;
+        this.compressor = compressor;
+    }
+
+    @Override
+    public synchronized Map<String, Object> carregar() {
+        Map<String, User> usuarios = new HashMap<>();
+        Map<String, Community> comunidades = new HashMap<>();
+        if (!aplicarSobre(usuarios, comunidades)) {
+            return null;
+        }
+        Map<String, Object> dados = new HashMap<>();
+        dados.put("usuarios", usuarios);
+        dados.put("comunidades", comunidades);
+        return dados;
+    }
+
+    /**
+     * L o log e aplica os registros vigentes sobre um estado j carregado: os usurios e
+     * comunidades do log substituem os do estado, e os removidos no log saem dele. As demais
+     * comunidades so religadas aos usurios substitudos.
+     * @return false se o log no existir (o estado fica como estava)
+     */
+    synchronized boolean aplicarSobre(Map<String, User> usuarios, Map<String, Community> comunidades) {
+        fechar();
+        tamanhosVigentes.clear();
+        bytesVigentes = 0;
+        bytesRegistros = 0;
+        tamanhoArquivo = 0;
+        if (!arquivo.exists()) {
+            return false;
+        }
+
+        // Chave -> registro vigente, ou null se a chave foi removida
+        Map<String, byte[]> registrosUsuarios = new HashMap<>();
+        Map<String, byte[]> registrosComunidades = new HashMap<>();
+        long valido = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)))) {
+            long comprimento = arquivo.length();
+            while (true) {
+                byte[] lote = lerLote(in, comprimento - valido);
+                if (lote == null) {
+                    break;
+                }
+                bytesRegistros += aplicarLote(lote, registrosUsuarios, registrosComunidades);
+                valido += 12 + lote.length;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao ler o log de dados", e);
+        }
+        if (valido < arquivo.length()) {
+            truncar(valido);
+        }
+        tamanhoArquivo = valido;
+
+        try {
+            for (Map.Entry<String, byte[]> registro : registrosUsuarios.entrySet()) {
+                if (registro.getValue() == null) {
+                    usuarios.remove(registro.getKey());
+                    continue;
+                }
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(registro.getValue()))) {
+                    usuarios.put(registro.getKey(), (User) in.readObject());
+                }
+            }
+            if (!registrosUsuarios.isEmpty()) {
+                Iterator<Map.Entry<String, Community>> existentes = comunidades.entrySet().iterator();
+                while (existentes.hasNext()) {
+                    Map.Entry<String, Community> existente = existentes.next();
+                    if (!registrosComunidades.containsKey(existente.getKey())) {
+                        Community religada = EntityCodec.decodificarComunidade(
+                                EntityCodec.codificarComunidade(existente.getValue()), usuarios);
+                        if (religada == null) {
+                            existentes.remove();
+                        } else {
+                            existente.setValue(religada);
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, byte[]> registro : registrosComunidades.entrySet()) {
+                Community comunidade = registro.getValue() == null
+                        ? null : EntityCodec.decodificarComunidade(registro.getValue(), usuarios);
+                if (comunidade != null) {
+                    comunidades.put(registro.getKey(), comunidade);
+                } else {
+                    comunidades.remove(registro.getKey());
+                }
+            }
+            return true;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Falha ao ler o log de dados", e);
+        }
+    }
+
+    /**
+     * @return true se o log no tiver nenhum lote gravado
+     */
+    synchronized boolean isVazio() {
+        return arquivo.length() == 0;
+    }
+
+    @Override
+    public synchronized void salvar(Map<String, User> usuarios, Map<String, Community> comunidades,
+                                    Set<String> usuariosAlterados, Set<String> comunidadesAlteradas) {
+        try {
+            if (usuariosAlterados == null || comunidadesAlteradas == null) {
+                compactar(usuarios, comunidades);
+                return;
+            }
+            if (usuariosAlterados.isEmpty() && comunidadesAlteradas.isEmpty()) {
+                return;
+            }
+
+            ByteArrayOutputStream lote = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(lote);
+            for (String login : usuariosAlterados) {
+                User usuario = usuarios.get(login);
+                atualizarVigente("u:" + login, usuario == null ? null
+                        : escreverRegistro(out, USUARIO, login, serializarUsuario(usuario)));
+                if (usuario == null) {
+                    escreverRegistro(out, USUARIO_REMOVIDO, login, new byte[0]);
+                }
+            }
+            for (String nome : comunidadesAlteradas) {
+                Community comunidade = comunidades.get(nome);
+                atualizarVigente("c:" + nome, comunidade == null ? null
+                        : escreverRegistro(out, COMUNIDADE, nome, EntityCodec.codificarComunidade(comunidade)));
+                if (comunidade == null) {
+                    escreverRegistro(out, COMUNIDADE_REMOVIDA, nome, new byte[0]);
+                }
+            }
+            anexarLote(lote.toByteArray());
+
+            if (tamanhoArquivo > TAMANHO_MINIMO_COMPACTACAO && bytesRegistros > 2 * bytesVigentes) {
+                compactar(usuarios, comunidades);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao salvar dados", e);
+        }
+    }
+
+    @Override
+    public synchronized void apagar() {
+        fechar();
+        arquivo.delete();
+        tamanhosVigentes.clear();
+        bytesVigentes = 0;
+        bytesRegistros = 0;
+        tamanhoArquivo = 0;
+    }
+
+    /**
+     * @return Tamanho atual do arquivo do log, em bytes
+     */
+    public synchronized long getTamanhoArquivo() {
+        return tamanhoArquivo;
+    }
+
+    /**
+     * Reescreve o log com um nico lote contendo o estado atual e troca o arquivo de uma vez.
+     */
+    private void compactar(Map<String, User> usuarios, Map<String, Community> comunidades) throws IOException {
+        tamanhosVigentes.clear();
+        bytesVigentes = 0;
+        ByteArrayOutputStream lote = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(lote);
+        for (User usuario : usuarios.values()) {
+            atualizarVigente("u:" + usuario.getLogin(),
+                    escreverRegistro(out, USUARIO, usuario.getLogin(), serializarUsuario(usuario)));
+        }
+        for (Community comunidade : comunidades.values()) {
+            atualizarVigente("c:" + comunidade.getName(),
+                    escreverRegistro(out, COMUNIDADE, comunidade.getName(), EntityCodec.codificarComunidade(comunidade)));
+        }
+
+        fechar();
+        File temporario = new File(arquivo.getPath() + ".tmp");
+        try (FileOutputStream destino = new FileOutputStream(temporario)) {
+            DataOutputStream novo = new DataOutputStream(new BufferedOutputStream(destino));
+            escreverLote(novo, comprimir(lote.toByteArray()));
+            novo.flush();
+            destino.getFD().sync();
+        }
+        Files.move(temporario.toPath(), arquivo.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        tamanhoArquivo = arquivo.length();
+        bytesRegistros = bytesVigentes;
+    }
+
+    private void anexarLote(byte[] conteudo) throws IOException {
+        byte[] lote = comprimir(conteudo);
+        if (saida == null) {
+            arquivoSaida = new FileOutputStream(arquivo, true);
+            saida = new DataOutputStream(new BufferedOutputStream(arquivoSaida));
+        }
+        escreverLote(saida, lote);
+        saida.flush();
+        arquivoSaida.getFD().sync();
+        tamanhoArquivo += 12 + lote.length;
+        bytesRegistros += conteudo.length;
+    }
+
+    /**
+     * @return Lote com os registros agrupados em blocos comprimidos, ou o prprio lote se no
+     * houver compresso ou ele for pequeno
+     */
+    private byte[] comprimir(byte[] lote) throws IOException {
+        if (compressor == BlockCodec.NENHUM || lote.length < TAMANHO_MINIMO_COMPRESSAO) {
+            return lote;
+        }
+        List<byte[]> blocos = dividirEmBlocos(lote);
+        List<byte[]> comprimidos = compressor.comprimirTodos(blocos);
+        ByteArrayOutputStream resultado = new ByteArrayOutputStream(lote.length / 2);
+        DataOutputStream out = new DataOutputStream(resultado);
+        for (int i = 0; i < blocos.size(); i++) {
+            byte[] comprimido = comprimidos.get(i);
+            out.writeByte(BLOCO);
+            out.writeUTF("");
+            out.writeInt(5 + comprimido.length);
+            out.writeByte(compressor.getId());
+            out.writeInt(blocos.get(i).length);
+            out.write(comprimido);
+        }
+        return resultado.toByteArray();
+    }
+
+    // Blocos de registros inteiros, cada um com pelo menos TAMANHO_BLOCO bytes (exceto o ltimo)
+    private static List<byte[]> dividirEmBlocos(byte[] lote) {
+        ByteBuffer registros = ByteBuffer.wrap(lote);
+        List<byte[]> blocos = new ArrayList<>();
+        int inicio = 0;
+        int posicao = 0;
+        while (posicao < lote.length) {
+            int tamanhoChave = registros.getInt(posicao + 1);
+            posicao += 1 + 4 + tamanhoChave + 4 + registros.getInt(posicao + 5 + tamanhoChave);
+            if (posicao - inicio >= TAMANHO_BLOCO || posicao >= lote.length) {
+                blocos.add(Arrays.copyOfRange(lote, inicio, posicao));
+                inicio = posicao;
+            }
+        }
+        return blocos;
+    }
+
+    private static void escreverLote(DataOutputStream out, byte[] lote) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(lote);
+        out.writeInt(lote.length);
+        out.writeLong(crc.getValue());
+        out.write(lote);
+    }
+
+    /**
+     * @param restante Bytes do arquivo a partir do incio do lote; um tamanho maior que isso
+     *                 indica cabealho corrompido
+     * @return Contedo do prximo lote, ou {@code null} no fim do arquivo ou em lote incompleto ou corrompido
+     */
+    private static byte[] lerLote(DataInputStream in, long restante) throws IOException {
+        try {
+            int tamanho = in.readInt();
+            long crcEsperado = in.readLong();
+            if (tamanho < 0 || tamanho > restante - 12) {
+                return null;
+            }
+            byte[] lote = new byte[tamanho];
+            in.readFully(lote);
+            CRC32 crc = new CRC32();
+            crc.update(lote);
+            return crc.getValue() == crcEsperado ? lote : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Tamanho dos registros aplicados, sem compresso
+     */
+    private long aplicarLote(byte[] lote, Map<String, byte[]> usuarios, Map<String, byte[]> comunidades)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(lote));
+        long aplicados = 0;
+        while (in.available() > 0) {
+            int antes = in.available();
+            byte tipo = in.readByte();
+            String chave = (tipo & CHAVE_TEXTO) != 0 ? User.lerTexto(in) : in.readUTF();
+            int tamanho = in.readInt();
+            if (tamanho < 0 || tamanho > in.available()) {
+                throw new IOException("Registro truncado no log de dados");
+            }
+            byte[] dados = new byte[tamanho];
+            in.readFully(dados);
+            switch (tipo & ~CHAVE_TEXTO) {
+                case USUARIO:
+                    usuarios.put(chave, dados);
+                    atualizarVigente("u:" + chave, dados.length);
+                    break;
+                case COMUNIDADE:
+                    comunidades.put(chave, dados);
+                    atualizarVigente("c:" + chave, dados.length);
+                    break;
+                case USUARIO_REMOVIDO:
+                    usuarios.put(chave, null);
+                    atualizarVigente("u:" + chave, null);
+                    break;
+                case COMUNIDADE_REMOVIDA:
+                    comunidades.put(chave, null);
+                    atualizarVigente("c:" + chave, null);
+                    break;
+                case BLOCO:
+                    if (dados.length < 5) {
+                        throw new IOException("Bloco invlido no log de dados");
+                    }
+                    ByteBuffer cabecalho = ByteBuffer.wrap(dados);
+                    BlockCodec codec = BlockCodec.porId(cabecalho.get());
+                    aplicados += aplicarLote(codec.descomprimir(dados, 5, dados.length - 5, cabecalho.getInt()),
+                            usuarios, comunidades);
+                    continue;
+                default:
+                    throw new IOException("Registro desconhecido no log de dados: " + tipo);
+            }
+            aplicados += antes - in.available();
+        }
+        return aplicados;
+    }
+
+    /**
+     * @return Tamanho do registro gravado
+     */
+    private static int escreverRegistro(DataOutputStream out, byte tipo, String chave, byte[] dados)
+            throws IOException {
+        int antes = out.size();
+        out.writeByte(tipo | CHAVE_TEXTO);
+        User.escreverTexto(out, chave);
+        out.writeInt(dados.length);
+        out.write(dados);
+        return out.size() - antes;
+    }
+
+    private void atualizarVigente(String chave, Integer tamanho) {
+        Integer anterior = tamanho == null ? tamanhosVigentes.remove(chave) : tamanhosVigentes.put(chave, tamanho);
+        bytesVigentes += (tamanho == null ? 0 : tamanho) - (anterior == null ? 0 : anterior);
+    }
+
+    private static byte[] serializarUsuario(User usuario) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(usuario);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void truncar(long tamanho) {
+        try (RandomAccessFile acesso = new RandomAccessFile(arquivo, "rw")) {
+            acesso.setLength(tamanho);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao recuperar o log de dados", e);
+        }
+    }
+
+    /**
+     * Fecha o arquivo do log; a prxima gravao o reabre.
+     */
+    @Override
+    public synchronized void fechar() {
+        if (saida != null) {
+            try {
+                saida.close();
+            } catch (IOException ignorada) {
+                // o prximo acesso reabre o arquivo
+            }
+            saida = null;
+            arquivoSaida = null;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package storage;
+
+import entities.Community;
+import entities.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Armazenamento sobre o {@link LsmTree}: cada usurio e cada comunidade  uma chave prpria
+ * ("u:" + login e "c:" + nome), gravada com a codificao compacta do {@link EntityCodec}.
+ *
+ * <p>Cada gravao envia ao motor apenas o que mudou, em um nico lote; o motor cuida de
+ * transformar as escritas em tabelas ordenadas e de compact-las em segundo plano. Alm da
+ * carga completa, {@link #buscarUsuario(String)} l um nico usurio sem carregar os demais, e
+ * a carga por partes ({@link #carregarEmPartes()}) usa essa busca para atender um login antes
+ * que o intervalo dele seja carregado.</p>
+ *
+ * <p>{@link #fechar()} libera os arquivos do motor; o prximo acesso os abre de novo.</p>
+ *
+ * <p>O motor no tira os dados do heap: o {@code JackutService} continua mantendo todos os
+ * usurios e comunidades nos seus mapas, e {@code usuarios.get}/{@code comunidades.get}
+ * continuam sendo buscas nesses mapas. As comunidades guardam referncias aos membros e os
+ * ndices, rankings e a verso publicada de relacionamentos cobrem todos os usurios, ento
+ * o conjunto de dados ainda precisa caber na memria. O ganho est na gravao (s as chaves
+ * alteradas) e na carga (por intervalos, com busca por chave durante o aquecimento).</p>
+ */
+public class LsmStorage implements StorageBackend {
+
+    private static final String USUARIO = "u:";
+    private static final String COMUNIDADE = "c:";
+    // Parties da carga por partes: intervalos contguos de logins, que numa rvore ordenada
+    // so lidos sem percorrer o resto
+    private static final int PARTICOES = 32;
+    // Maior chave possvel de usurio (':' + 1 = ';'), fim do ltimo intervalo
+    private static final String FIM_USUARIOS = "u;";
+
+    private final File diretorio;
+    private LsmTree arvore;
+
+    /**
+     * @param diretorio Diretrio dos arquivos do motor
+     */
+    public LsmStorage(File diretorio) {
+        this.diretorio = diretorio;
+        this.arvore = LsmTree.abrir(diretorio);
+    }
+
+    @Override
+    public Map<String, Object> carregar() {
+        LsmTree arvore = getArvore();
+        Map<String, User> usuarios = new HashMap<>();
+        Map<String, Community> comunidades = new HashMap<>();
+        try {
+            arvore.varrer(USUARIO, (chave, dados) -> usuarios.put(chave.substring(USUARIO.length()), decodificar(dados)));
+            arvore.varrer(COMUNIDADE, (chave, dados) -> {
+                Community comunidade = decodificar(dados, usuarios);
+                if (comunidade != null) {
+                    comunidades.put(chave.substring(COMUNIDADE.length()), comunidade);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Falha ao carregar dados", e);
+        }
+        if (usuarios.isEmpty() && comunidades.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> dados = new HashMap<>();
+        dados.put("usuarios", usuarios);
+        dados.put("comunidades", comunidades);
+        return dados;
+    }
+
+    /**
+     * Carga por partes com busca por chave: um login pedido antes do seu intervalo  lido
+     * sozinho da rvore, e os intervalos so lidos em segundo plano.
+     */
+    @Override
+    public ShardedLoad carregarEmPartes() {
+        return getArvore().isVazia() ? null : new CargaPorChave();
+    }
+
+    /**
+     * Grava os usurios e comunidades alterados. Sem a lista de alterados, compara o estado
+     * inteiro com o gravado e envia s as chaves que mudaram ou deixaram de existir.
+     */
+    @Override
+    public void salvar(Map<String, User> usuarios, Map<String, Community> comunidades,
+                       Set<String> usuariosAlterados, Set<String> comunidadesAlteradas) {
+        LsmTree arvore = getArvore();
+        Map<String, byte[]> lote = new HashMap<>();
+        try {
+            boolean comparar = usuariosAlterados == null || comunidadesAlteradas == null;
+            if (comparar) {
+                usuariosAlterados = usuarios.keySet();
+                comunidadesAlteradas = comunidades.keySet();
+            }
+            for (String login : usuariosAlterados) {
+                User usuario = usuarios.get(login);
+                lote.put(USUARIO + login, usuario == null ? null : EntityCodec.codificarUsuario(usuario));
+            }
+            for (String nome : comunidadesAlteradas) {
+                Community comunidade = comunidades.get(nome);
+                lote.put(COMUNIDADE + nome, comunidade == null ? null : EntityCodec.codificarComunidade(comunidade));
+            }
+            if (comparar) {
+                arvore.varrer("", (chave, dados) -> {
+                    if (!lote.containsKey(chave)) {
+                        lote.put(chave, null);
+                    } else if (Arrays.equals(lote.get(chave), dados)) {
+                        lote.remove(chave);
+                    }
+                });
+            }
+            arvore.aplicar(lote);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao salvar dados", e);
+        }
+    }
+
+    @Override
+    public void apagar() {
+        getArvore().limpar();
+    }
+
+    @Override
+    public synchronized void fechar() {
+        if (arvore != null) {
+            arvore.fechar();
+            arvore = null;
+        }
+    }
+
+    /**
+     * L um nico usurio, sem carregar os demais.
+     * @param login Login do usurio
+     * @return Usurio salvo, ou {@code null} se no existir
+     */
+    public User buscarUsuario(String login) {
+        byte[] dados = getArvore().get(USUARIO + login);
+        return dados == null ? null : decodificar(dados);
+    }
+
+    /**
+     * @return Motor usado por este armazenamento, aberto de novo se tiver sido fechado
+     */
+    public synchronized LsmTree getArvore() {
+        if (arvore == null) {
+            arvore = LsmTree.abrir(diretorio);
+        }
+        return arvore;
+    }
+
+    private static User decodificar(byte[] dados) {
+        try {
+            return EntityCodec.decodificarUsuario(dados);
+        } catch (IOException e) {
+            throw new RuntimeException("Registro de usurio invlido", e);
+        }
+    }
+
+    private static Community decodificar(byte[] dados, Map<String, User> usuarios) {
+        try {
+            return EntityCodec.decodificarComunidade(dados, usuarios);
+        } catch (IOException e) {
+            throw new RuntimeException("Registro de comunidade invlido", e);
+        }
+    }
+
+    /**
+     * Carga por partes sobre a rvore: a partio {@code p}  o intervalo de logins entre dois
+     * limites consecutivos. Os limites so quantis da amostra de chaves da rvore
+     * ({@link LsmTree#amostrarChaves}), ento as parties ficam com quantidades parecidas de
+     * dados qualquer que seja a distribuio dos logins, e cada uma  lida por intervalo.
+     */
+    private final class CargaPorChave implements ShardedLoad {
+
+        // limites[i]  o primeiro login da partio i + 1
+        private final String[] limites = new String[PARTICOES - 1];
+
+        CargaPorChave() {
+            List<String> amostra = getArvore().amostrarChaves(USUARIO, FIM_USUARIOS);
+            for (int i = 0; i < limites.length; i++) {
+                limites[i] = amostra.isEmpty() ? ""
+                        : amostra.get((int) ((long) (i + 1) * amostra.size() / PARTICOES))
+                                .substring(USUARIO.length());
+            }
+        }
+
+        @Override
+        public int getParticoes() {
+            return PARTICOES;
+        }
+
+        @Override
+        public int particaoDe(String login) {
+            // Quantidade de limites menores ou iguais ao login
+            int inicio = 0;
+            int fim = limites.length;
+            while (inicio < fim) {
+                int meio = (inicio + fim) >>> 1;
+                if (limites[meio].compareTo(login) <= 0) {
+                    inicio = meio + 1;
+                } else {
+                    fim = meio;
+                }
+            }
+            return inicio;
+        }
+
+        @Override
+        public List<User> carregarParticao(int particao) {
+            String inicio = particao == 0 ? USUARIO : USUARIO + limites[particao - 1];
+            String fim = particao == PARTICOES - 1 ? FIM_USUARIOS : USUARIO + limites[particao];
+            List<User> usuarios = new ArrayList<>();
+            getArvore().varrer(inicio, fim, (chave, dados) -> usuarios.add(decodificar(dados)));
+            return usuarios;
+        }
+
+        @Override
+        public boolean isBuscaPorChave() {
+            return true;
+        }
+
+        @Override
+        public User carregarUsuario(String login) {
+            return buscarUsuario(login);
+        }
+
+        @Override
+        public Map<String, Community> carregarComunidades(Map<String, User> usuarios) {
+            Map<String, Community> comunidades = new HashMap<>();
+            getArvore().varrer(COMUNIDADE, (chave, dados) -> {
+                Community comunidade = decodificar(dados, usuarios);
+                if (comunidade != null) {
+                    comunidades.put(chave.substring(COMUNIDADE.length()), comunidade);
+                }
+            });
+            return comunidades;
+        }
+    }
+}
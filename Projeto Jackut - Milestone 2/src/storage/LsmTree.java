@@ -0,0 +1,796 @@
+package storage;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Motor chave-valor embutido em rvore LSM (log-structured merge), usado pelo {@link LsmStorage}.
+ *
+ * <p>Escritas vo para o log de escrita antecipada (WAL) e para a memtable, um mapa ordenado em
+ * memria. Quando a memtable passa do limite, ela  congelada e uma thread de manuteno a grava
+ * como uma {@link SSTable} imutvel; enquanto isso, novas escritas seguem para uma memtable nova.
+ * Quando h {@value #LIMITE_TABELAS} tabelas, a mesma thread as mescla em uma s, descartando
+ * valores substitudos e chaves apagadas.</p>
+ *
+ * <p>Uma busca consulta a memtable, a memtable congelada e as tabelas da mais nova para a mais
+ * antiga, parando no primeiro resultado. Leituras no usam trava: cada uma fixa a
+ * {@link Estado verso} corrente, que mantm abertas as tabelas que ela enxerga at ser liberada.
+ * O arquivo {@value #MANIFESTO} lista as tabelas vigentes; na abertura, os WALs restantes
+ * (escritas ainda no gravadas em tabela) so reaplicados. Cada lote do WAL  forado ao disco
+ * antes de {@link #aplicar} retornar.</p>
+ *
+ * <p>Cada diretrio  aberto por uma nica rvore por processo (ver {@link #abrir(File)}), que
+ * conta quantas vezes foi aberta; o ltimo {@link #fechar()} a fecha de fato.</p>
+ */
+public final class LsmTree {
+
+    private static final String MANIFESTO = "MANIFEST";
+    // Cabealho dos WALs com chaves em SSTable.escreverChave; os sem cabealho (chaves em writeUTF)
+    // comeam direto pelo tamanho do primeiro lote, que nunca  negativo
+    private static final int FORMATO_WAL = -2;
+    private static final int LIMITE_TABELAS = 4;
+    private static final int LIMITE_MEMTABLE = 4 << 20;
+    // Custo aproximado de cada entrada da memtable alm de chave e valor
+    private static final int CUSTO_ENTRADA = 64;
+
+    // rvores abertas neste processo, por diretrio; acesso sincronizado no prprio mapa
+    private static final Map<File, LsmTree> abertas = new HashMap<>();
+
+    /**
+     * Viso imutvel da rvore: memtable corrente, memtable congelada (ou {@code null}) e
+     * tabelas da mais nova para a mais antiga. Conta as leituras em andamento; quando deixa de ser
+     * a corrente e a ltima leitura termina, libera as tabelas.
+     */
+    private static final class Estado {
+        final ConcurrentSkipListMap<String, byte[]> memtable;
+        final NavigableMap<String, byte[]> congelada;
+        final List<SSTable> tabelas;
+        private final AtomicInteger referencias = new AtomicInteger(1);
+
+        Estado(ConcurrentSkipListMap<String, byte[]> memtable, NavigableMap<String, byte[]> congelada,
+               List<SSTable> tabelas) {
+            this.memtable = memtable;
+            this.congelada = congelada;
+            this.tabelas = List.copyOf(tabelas);
+            for (SSTable tabela : this.tabelas) {
+                tabela.reter();
+            }
+        }
+
+        boolean tentarReter() {
+            while (true) {
+                int atual = referencias.get();
+                if (atual == 0) {
+                    return false;
+                }
+                if (referencias.compareAndSet(atual, atual + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void liberar() {
+            if (referencias.decrementAndGet() == 0) {
+                for (SSTable tabela : tabelas) {
+                    tabela.liberar();
+                }
+            }
+        }
+    }
+
+    private final File diretorio;
+    private final int limiteMemtable;
+    private final ExecutorService manutencao;
+    // Aberturas ainda no fechadas; protegido pela trava de abertas
+    private int aberturas;
+
+    private volatile Estado estado;
+    private int tamanhoMemtable;
+    private long proximoNumero;
+    private FileOutputStream arquivoSaidaWal;
+    private DataOutputStream wal;
+    private File arquivoWal;
+    private File walCongelado;
+    // Incrementada por limpar(): resultados de manuteno de uma gerao anterior so descartados
+    private long geracao;
+    private volatile Throwable falha;
+
+    private LsmTree(File diretorio, int limiteMemtable) {
+        this.diretorio = diretorio;
+        this.limiteMemtable = limiteMemtable;
+        this.manutencao = Executors.newSingleThreadExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "jackut-lsm-" + diretorio.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        diretorio.mkdirs();
+        try {
+            recuperar();
+        } catch (IOException e) {
+            manutencao.shutdown();
+            throw new RuntimeException("Falha ao abrir o armazenamento em " + diretorio, e);
+        }
+    }
+
+    /**
+     * Abre a rvore do diretrio, ou devolve a que j est aberta neste processo. Cada chamada
+     * deve ter um {@link #fechar()} correspondente.
+     * @param diretorio Diretrio dos arquivos da rvore (criado se no existir)
+     * @return rvore aberta
+     * @throws RuntimeException Se os arquivos no puderem ser lidos
+     */
+    public static LsmTree abrir(File diretorio) {
+        return abrir(diretorio, LIMITE_MEMTABLE);
+    }
+
+    /**
+     * @param diretorio Diretrio dos arquivos da rvore
+     * @param limiteMemtable Tamanho aproximado, em bytes, a partir do qual a memtable  gravada em tabela
+     * @return rvore aberta (o limite s vale se ela ainda no estava aberta)
+     */
+    public static LsmTree abrir(File diretorio, int limiteMemtable) {
+        synchronized (abertas) {
+            LsmTree arvore = abertas.computeIfAbsent(diretorio.getAbsoluteFile().toPath().normalize().toFile(),
+                    d -> new LsmTree(d, limiteMemtable));
+            arvore.aberturas++;
+            return arvore;
+        }
+    }
+
+    /**
+     * @param chave Chave procurada
+     * @return Valor da chave, ou {@code null} se no existir
+     */
+    public byte[] get(String chave) {
+        Estado atual = reter();
+        try {
+            byte[] valor = atual.memtable.get(chave);
+            if (valor == null && atual.congelada != null) {
+                valor = atual.congelada.get(chave);
+            }
+            for (int i = 0; valor == null && i < atual.tabelas.size(); i++) {
+                valor = atual.tabelas.get(i).buscar(chave);
+            }
+            return valor == SSTable.APAGADO ? null : valor;
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao ler o armazenamento em " + diretorio, e);
+        } finally {
+            atual.liberar();
+        }
+    }
+
+    /**
+     * Percorre, em ordem de chave, os registros vigentes cujas chaves comeam com o prefixo.
+     * @param prefixo Prefixo das chaves ("" para todas)
+     * @param consumidor Recebe cada chave e valor
+     */
+    public void varrer(String prefixo, BiConsumer<String, byte[]> consumidor) {
+        percorrer(prefixo, chave -> !chave.startsWith(prefixo), (chave, valor) -> {
+            consumidor.accept(chave, valor);
+            return true;
+        });
+    }
+
+    /**
+     * Percorre, em ordem de chave, os registros vigentes com chave em {@code [inicio, fim)}.
+     * @param consumidor Recebe cada chave e valor
+     */
+    public void varrer(String inicio, String fim, BiConsumer<String, byte[]> consumidor) {
+        percorrer(inicio, chave -> chave.compareTo(fim) >= 0, (chave, valor) -> {
+            consumidor.accept(chave, valor);
+            return true;
+        });
+    }
+
+    /**
+     * Amostra da distribuio das chaves em {@code [inicio, fim)}, sem ler registros: a primeira
+     * chave de cada bloco das tabelas e as chaves ainda em memria.
+     * @return Chaves amostradas, em ordem
+     */
+    public List<String> amostrarChaves(String inicio, String fim) {
+        Estado atual = reter();
+        try {
+            List<String> amostra = new ArrayList<>(atual.memtable.subMap(inicio, fim).keySet());
+            if (atual.congelada != null) {
+                amostra.addAll(atual.congelada.subMap(inicio, true, fim, false).keySet());
+            }
+            for (SSTable tabela : atual.tabelas) {
+                tabela.amostrar(inicio, fim, amostra);
+            }
+            Collections.sort(amostra);
+            return amostra;
+        } finally {
+            atual.liberar();
+        }
+    }
+
+    /**
+     * @return true se no houver nenhuma chave vigente
+     */
+    public boolean isVazia() {
+        return percorrer("", chave -> false, (chave, valor) -> false);
+    }
+
+    /**
+     * Percorre os registros vigentes a partir de {@code inicio} at a primeira chave que
+     * satisfaz {@code fim}, ou at o consumidor devolver false.
+     * @return true se percorreu tudo, false se o consumidor interrompeu
+     */
+    private boolean percorrer(String inicio, Predicate<String> fim, BiPredicate<String, byte[]> consumidor) {
+        Estado atual = reter();
+        try {
+            Iterator<Map.Entry<String, byte[]>> registros = mesclar(atual, inicio);
+            while (registros.hasNext()) {
+                Map.Entry<String, byte[]> registro = registros.next();
+                if (fim.test(registro.getKey())) {
+                    break;
+                }
+                if (registro.getValue() != SSTable.APAGADO && !consumidor.test(registro.getKey(), registro.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException("Falha ao ler o armazenamento em " + diretorio, e.getCause());
+        } finally {
+            atual.liberar();
+        }
+    }
+
+    /**
+     * Grava um lote de alteraes de uma vez: o lote inteiro vai em um nico registro do WAL.
+     * @param alteracoes Chave -> novo valor, ou {@code null} para apagar a chave
+     * @throws RuntimeException Se a gravao falhar
+     */
+    public synchronized void aplicar(Map<String, byte[]> alteracoes) {
+        if (alteracoes.isEmpty()) {
+            return;
+        }
+        verificarFalha();
+        if (wal == null) {
+            throw new RuntimeException("Armazenamento em " + diretorio + " fechado");
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream lote = new DataOutputStream(bytes);
+            for (Map.Entry<String, byte[]> alteracao : alteracoes.entrySet()) {
+                SSTable.escreverChave(lote, alteracao.getKey());
+                byte[] valor = alteracao.getValue();
+                lote.writeInt(valor == null ? -1 : valor.length);
+                if (valor != null) {
+                    lote.write(valor);
+                }
+            }
+            escreverLote(wal, bytes.toByteArray());
+            wal.flush();
+            arquivoSaidaWal.getFD().sync();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao gravar o WAL em " + diretorio, e);
+        }
+
+        ConcurrentSkipListMap<String, byte[]> memtable = estado.memtable;
+        for (Map.Entry<String, byte[]> alteracao : alteracoes.entrySet()) {
+            byte[] valor = alteracao.getValue() == null ? SSTable.APAGADO : alteracao.getValue();
+            memtable.put(alteracao.getKey(), valor);
+            tamanhoMemtable += alteracao.getKey().length() * 2 + valor.length + CUSTO_ENTRADA;
+        }
+        if (tamanhoMemtable >= limiteMemtable) {
+            congelarMemtable();
+        }
+    }
+
+    /**
+     * Grava ou substitui uma chave.
+     */
+    public void put(String chave, byte[] valor) {
+        aplicar(Collections.singletonMap(chave, valor));
+    }
+
+    /**
+     * Apaga uma chave.
+     */
+    public void delete(String chave) {
+        aplicar(Collections.singletonMap(chave, null));
+    }
+
+    /**
+     * Grava a memtable em tabela e mescla todas as tabelas em uma, aguardando o trmino.
+     */
+    public void compactar() {
+        synchronized (this) {
+            verificarFalha();
+            if (!estado.memtable.isEmpty()) {
+                congelarMemtable();
+            }
+        }
+        aguardar(manutencao.submit(() -> manter(true)));
+    }
+
+    /**
+     * Apaga todas as chaves e os arquivos da rvore.
+     */
+    public synchronized void limpar() {
+        aguardarCongelada();
+        geracao++;
+        try {
+            fecharWal();
+            for (SSTable tabela : estado.tabelas) {
+                tabela.marcarObsoleta();
+            }
+            publicar(new Estado(new ConcurrentSkipListMap<>(), null, List.of()));
+            File[] arquivos = diretorio.listFiles((d, nome) -> nome.endsWith(".wal"));
+            if (arquivos != null) {
+                for (File arquivo : arquivos) {
+                    arquivo.delete();
+                }
+            }
+            walCongelado = null;
+            escreverManifesto(List.of());
+            abrirWal();
+            falha = null;
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao apagar o armazenamento em " + diretorio, e);
+        }
+    }
+
+    /**
+     * Desfaz uma abertura. Na ltima, fecha a rvore: espera a manuteno em andamento e fecha
+     * os arquivos. As escritas ainda na memtable continuam no WAL e so reaplicadas na prxima
+     * abertura.
+     */
+    public void fechar() {
+        synchronized (abertas) {
+            if (abertas.get(diretorio) != this || --aberturas > 0) {
+                return;
+            }
+            abertas.remove(diretorio);
+        }
+        manutencao.shutdown();
+        boolean interrompida = false;
+        try {
+            // Uma nova abertura do diretrio disputaria os arquivos com a manuteno em andamento
+            manutencao.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            interrompida = true;
+        }
+        synchronized (this) {
+            try {
+                fecharWal();
+            } catch (IOException ignorada) {
+                // o WAL  reaplicado at o ltimo lote completo
+            }
+            estado.liberar();
+        }
+        if (interrompida) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Quantidade de tabelas em disco
+     */
+    public int getQuantidadeTabelas() {
+        return estado.tabelas.size();
+    }
+
+    /**
+     * L o manifesto, abre as tabelas, apaga arquivos que no fazem parte dele (restos de uma
+     * gravao interrompida) e reaplica os WALs, gravando o que eles continham em uma tabela.
+     */
+    private void recuperar() throws IOException {
+        List<String> nomes = new ArrayList<>();
+        File manifesto = new File(diretorio, MANIFESTO);
+        if (manifesto.exists()) {
+            try (BufferedReader in = new BufferedReader(new FileReader(manifesto))) {
+                for (String linha = in.readLine(); linha != null; linha = in.readLine()) {
+                    if (!linha.isBlank()) {
+                        nomes.add(linha.trim());
+                    }
+                }
+            }
+        }
+        List<SSTable> tabelas = new ArrayList<>();
+        for (String nome : nomes) {
+            tabelas.add(SSTable.abrir(new File(diretorio, nome)));
+            proximoNumero = Math.max(proximoNumero, numero(nome) + 1);
+        }
+
+        List<File> wals = new ArrayList<>();
+        File[] arquivos = diretorio.listFiles();
+        for (File arquivo : arquivos == null ? new File[0] : arquivos) {
+            String nome = arquivo.getName();
+            if (nome.endsWith(".wal")) {
+                wals.add(arquivo);
+                proximoNumero = Math.max(proximoNumero, numero(nome) + 1);
+            } else if (nome.endsWith(".tmp") || nome.endsWith(".sst") && !nomes.contains(nome)) {
+                arquivo.delete();
+            }
+        }
+        wals.sort(Comparator.comparingLong(arquivo -> numero(arquivo.getName())));
+
+        ConcurrentSkipListMap<String, byte[]> recuperada = new ConcurrentSkipListMap<>();
+        for (File arquivo : wals) {
+            reaplicarWal(arquivo, recuperada);
+        }
+        if (!recuperada.isEmpty()) {
+            SSTable tabela = SSTable.escrever(novoArquivo(".sst"), recuperada.entrySet().iterator(), recuperada.size());
+            tabelas.add(0, tabela);
+            escreverManifesto(tabelas);
+        }
+        for (File arquivo : wals) {
+            arquivo.delete();
+        }
+        estado = new Estado(new ConcurrentSkipListMap<>(), null, tabelas);
+        abrirWal();
+    }
+
+    private void reaplicarWal(File arquivo, Map<String, byte[]> memtable) throws IOException {
+        long restante = arquivo.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)))) {
+            boolean chavesUtf = true;
+            if (restante >= 4) {
+                in.mark(4);
+                if (in.readInt() == FORMATO_WAL) {
+                    chavesUtf = false;
+                    restante -= 4;
+                } else {
+                    in.reset();
+                }
+            }
+            byte[] lote;
+            // Um lote incompleto ou corrompido s pode ser o ltimo (gravao interrompida)
+            while ((lote = lerLote(in, restante)) != null) {
+                restante -= 12 + lote.length;
+                DataInputStream registros = new DataInputStream(new ByteArrayInputStream(lote));
+                while (registros.available() > 0) {
+                    String chave = chavesUtf ? registros.readUTF() : SSTable.lerChaveTexto(registros);
+                    int tamanho = registros.readInt();
+                    byte[] valor = SSTable.APAGADO;
+                    if (tamanho > registros.available()) {
+                        throw new IOException("Registro truncado no WAL " + arquivo);
+                    }
+                    if (tamanho >= 0) {
+                        valor = new byte[tamanho];
+                        registros.readFully(valor);
+                    }
+                    memtable.put(chave, valor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Troca a memtable por uma nova (com WAL novo) e agenda a gravao da antiga em tabela.
+     * Se a gravao anterior ainda no terminou, espera por ela, limitando a memria usada.
+     */
+    private void congelarMemtable() {
+        aguardarCongelada();
+        verificarFalha();
+        try {
+            fecharWal();
+            walCongelado = arquivoWal;
+            abrirWal();
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao gravar o WAL em " + diretorio, e);
+        }
+        Estado atual = estado;
+        publicar(new Estado(new ConcurrentSkipListMap<>(), atual.memtable, atual.tabelas));
+        tamanhoMemtable = 0;
+        manutencao.execute(() -> manter(false));
+    }
+
+    /**
+     * Tarefa da thread de manuteno: grava a memtable congelada e, se houver tabelas demais
+     * (ou se {@code forcar}), mescla todas em uma.
+     */
+    private void manter(boolean forcar) {
+        try {
+            gravarCongelada();
+            if (forcar ? estado.tabelas.size() > 1 : estado.tabelas.size() >= LIMITE_TABELAS) {
+                mesclarTabelas();
+            }
+        } catch (Throwable e) {
+            falha = e;
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private void gravarCongelada() throws IOException {
+        long geracaoInicial;
+        NavigableMap<String, byte[]> congelada;
+        File arquivo;
+        synchronized (this) {
+            congelada = estado.congelada;
+            if (congelada == null) {
+                return;
+            }
+            geracaoInicial = geracao;
+            arquivo = novoArquivo(".sst");
+        }
+        SSTable tabela = SSTable.escrever(arquivo, congelada.entrySet().iterator(), congelada.size());
+        synchronized (this) {
+            if (geracao != geracaoInicial) {
+                descartar(tabela);
+                return;
+            }
+            List<SSTable> tabelas = new ArrayList<>(estado.tabelas);
+            tabelas.add(0, tabela);
+            escreverManifesto(tabelas);
+            publicar(new Estado(estado.memtable, null, tabelas));
+            walCongelado.delete();
+            walCongelado = null;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Mescla todas as tabelas em uma. Como a tabela resultante  a mais antiga, chaves apagadas
+     * no precisam mais ser lembradas e so descartadas.
+     */
+    private void mesclarTabelas() throws IOException {
+        long geracaoInicial;
+        List<SSTable> entrada;
+        File arquivo;
+        long registros = 0;
+        synchronized (this) {
+            geracaoInicial = geracao;
+            entrada = estado.tabelas;
+            arquivo = novoArquivo(".sst");
+            for (SSTable tabela : entrada) {
+                tabela.reter(); // mantm as tabelas abertas mesmo se limpar() as substituir
+                registros += tabela.getRegistros();
+            }
+        }
+        SSTable mesclada;
+        try {
+            Iterator<Map.Entry<String, byte[]>> vigentes = filtrarApagados(
+                    new Mescla(entrada.stream().map(tabela -> tabela.iterador("")).toList()));
+            mesclada = SSTable.escrever(arquivo, vigentes, (int) Math.min(registros, Integer.MAX_VALUE));
+        } finally {
+            for (SSTable tabela : entrada) {
+                tabela.liberar();
+            }
+        }
+        synchronized (this) {
+            if (geracao != geracaoInicial) {
+                descartar(mesclada);
+                return;
+            }
+            List<SSTable> tabelas = new ArrayList<>(estado.tabelas);
+            tabelas.removeAll(entrada);
+            tabelas.add(mesclada);
+            escreverManifesto(tabelas);
+            for (SSTable tabela : entrada) {
+                tabela.marcarObsoleta();
+            }
+            publicar(new Estado(estado.memtable, estado.congelada, tabelas));
+        }
+    }
+
+    private static Iterator<Map.Entry<String, byte[]>> filtrarApagados(Iterator<Map.Entry<String, byte[]>> registros) {
+        return new Iterator<>() {
+            private Map.Entry<String, byte[]> proximo = avancar();
+
+            @Override
+            public boolean hasNext() {
+                return proximo != null;
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                Map.Entry<String, byte[]> registro = proximo;
+                proximo = avancar();
+                return registro;
+            }
+
+            private Map.Entry<String, byte[]> avancar() {
+                while (registros.hasNext()) {
+                    Map.Entry<String, byte[]> registro = registros.next();
+                    if (registro.getValue() != SSTable.APAGADO) {
+                        return registro;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @return Registros de todas as fontes do estado a partir de {@code inicio}, o mais novo de cada chave
+     */
+    private static Iterator<Map.Entry<String, byte[]>> mesclar(Estado estado, String inicio) {
+        List<Iterator<Map.Entry<String, byte[]>>> fontes = new ArrayList<>();
+        fontes.add(estado.memtable.tailMap(inicio).entrySet().iterator());
+        if (estado.congelada != null) {
+            fontes.add(estado.congelada.tailMap(inicio, true).entrySet().iterator());
+        }
+        for (SSTable tabela : estado.tabelas) {
+            fontes.add(tabela.iterador(inicio));
+        }
+        return new Mescla(fontes);
+    }
+
+    /**
+     * Mescla fontes ordenadas por chave; quando vrias tm a mesma chave, vale a de menor
+     * ndice (a mais nova).
+     */
+    private static final class Mescla implements Iterator<Map.Entry<String, byte[]>> {
+
+        private final List<Iterator<Map.Entry<String, byte[]>>> fontes;
+        // Cabea de cada fonte: [ndice da fonte, registro]
+        private final PriorityQueue<Object[]> cabecas = new PriorityQueue<>((a, b) -> {
+            @SuppressWarnings("unchecked")
+            int comparacao = ((Map.Entry<String, byte[]>) a[1]).getKey()
+                    .compareTo(((Map.Entry<String, byte[]>) b[1]).getKey());
+            return comparacao != 0 ? comparacao : Integer.compare((int) a[0], (int) b[0]);
+        });
+
+        Mescla(List<Iterator<Map.Entry<String, byte[]>>> fontes) {
+            this.fontes = fontes;
+            for (int i = 0; i < fontes.size(); i++) {
+                avancar(i);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cabecas.isEmpty();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<String, byte[]> next() {
+            Object[] cabeca = cabecas.poll();
+            if (cabeca == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, byte[]> registro = (Map.Entry<String, byte[]>) cabeca[1];
+            avancar((int) cabeca[0]);
+            // Descarta as verses mais antigas da mesma chave
+            while (!cabecas.isEmpty()
+                    && ((Map.Entry<String, byte[]>) cabecas.peek()[1]).getKey().equals(registro.getKey())) {
+                avancar((int) cabecas.poll()[0]);
+            }
+            return registro;
+        }
+
+        private void avancar(int fonte) {
+            if (fontes.get(fonte).hasNext()) {
+                cabecas.add(new Object[]{fonte, fontes.get(fonte).next()});
+            }
+        }
+    }
+
+    private Estado reter() {
+        while (true) {
+            Estado atual = estado;
+            if (atual.tentarReter()) {
+                return atual;
+            }
+        }
+    }
+
+    // Chamado com a trava: publica a nova verso e solta a referncia da anterior
+    private void publicar(Estado novo) {
+        Estado anterior = estado;
+        estado = novo;
+        anterior.liberar();
+    }
+
+    private void descartar(SSTable tabela) {
+        tabela.reter();
+        tabela.marcarObsoleta();
+        tabela.liberar();
+    }
+
+    private void aguardarCongelada() {
+        boolean interrompida = false;
+        while (estado.congelada != null && falha == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrompida = true;
+            }
+        }
+        if (interrompida) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void aguardar(Future<?> tarefa) {
+        try {
+            tarefa.get();
+        } catch (Exception e) {
+            throw new RuntimeException("Falha na manuteno do armazenamento em " + diretorio, e);
+        }
+        verificarFalha();
+    }
+
+    private void verificarFalha() {
+        if (falha != null) {
+            throw new RuntimeException("Falha na manuteno do armazenamento em " + diretorio, falha);
+        }
+    }
+
+    private void escreverManifesto(List<SSTable> tabelas) throws IOException {
+        File temporario = new File(diretorio, MANIFESTO + ".tmp");
+        try (FileOutputStream arquivo = new FileOutputStream(temporario);
+             Writer out = new OutputStreamWriter(arquivo)) {
+            for (SSTable tabela : tabelas) {
+                out.write(tabela.getArquivo().getName() + "\n");
+            }
+            out.flush();
+            arquivo.getFD().sync();
+        }
+        Files.move(temporario.toPath(), new File(diretorio, MANIFESTO).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void abrirWal() throws IOException {
+        arquivoWal = novoArquivo(".wal");
+        arquivoSaidaWal = new FileOutputStream(arquivoWal, true);
+        wal = new DataOutputStream(new BufferedOutputStream(arquivoSaidaWal));
+        wal.writeInt(FORMATO_WAL);
+    }
+
+    private void fecharWal() throws IOException {
+        if (wal != null) {
+            DataOutputStream anterior = wal;
+            wal = null;
+            arquivoSaidaWal = null;
+            anterior.close();
+        }
+    }
+
+    private File novoArquivo(String extensao) {
+        return new File(diretorio, String.format("%06d%s", proximoNumero++, extensao));
+    }
+
+    private static long numero(String nome) {
+        return Long.parseLong(nome.substring(0, nome.indexOf('.')));
+    }
+
+    private static void escreverLote(DataOutputStream out, byte[] lote) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(lote);
+        out.writeInt(lote.length);
+        out.writeLong(crc.getValue());
+        out.write(lote);
+    }
+
+    /**
+     * @param restante Bytes do arquivo a partir do incio do lote; um tamanho maior que isso
+     *                 indica cabealho corrompido
+     * @return Contedo do prximo lote, ou {@code null} no fim do arquivo ou em lote incompleto ou corrompido
+     */
+    private static byte[] lerLote(DataInputStream in, long restante) throws IOException {
+        try {
+            int tamanho = in.readInt();
+            long crcEsperado = in.readLong();
+            if (tamanho < 0 || tamanho > restante - 12) {
+                return null;
+            }
+            byte[] lote = new byte[tamanho];
+            in.readFully(lote);
+            CRC32 crc = new CRC32();
+            crc.update(lote);
+            return crc.getValue() == crcEsperado ? lote : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
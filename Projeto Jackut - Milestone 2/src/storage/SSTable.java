@@ -0,0 +1,375 @@
+package storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tabela ordenada e imutvel do {@link LsmTree}, gravada uma nica vez em disco.
+ *
+ * <p>Formato do arquivo:</p>
+ * <pre>
+ * bloco...:  registro... (cerca de 4 KB por bloco, em ordem de chave)
+ * registro:  chave | int tamanho (-1 = chave apagada) | bytes
+ * ndice:    int blocos | (primeira chave | long posio | int tamanho)...
+ * chave:     int tamanho | bytes UTF-8
+ * filtro:    {@link BloomFilter}
+ * rodap:    long posio do ndice | long posio do filtro | long registros | long marca
+ * </pre>
+ *
+ * <p>Tabelas com a marca antiga ({@code "JACKUTLS"}) guardam as chaves em {@code writeUTF},
+ * limitadas a 64 KB, e continuam sendo lidas.</p>
+ *
+ * <p>Ao abrir, s o ndice e o filtro so lidos para a memria. Uma busca consulta o filtro,
+ * localiza o bloco por busca binria no ndice e l apenas aquele bloco, com leitura
+ * posicional no canal, que pode ser feita por vrias threads ao mesmo tempo.</p>
+ *
+ * <p>A tabela conta quantas verses do {@link LsmTree} a referenciam; o arquivo s  fechado
+ * (e apagado, se a tabela foi substituda por uma compactao) quando a ltima  liberada.</p>
+ */
+final class SSTable {
+
+    /** Valor devolvido para chaves apagadas; comparado por identidade. */
+    static final byte[] APAGADO = new byte[0];
+
+    private static final int TAMANHO_BLOCO = 4096;
+    private static final int TAMANHO_RODAPE = 32;
+    private static final long MARCA = 0x4a41434b55544c32L; // "JACKUTL2"
+    private static final long MARCA_CHAVES_UTF = 0x4a41434b55544c53L; // "JACKUTLS"
+
+    private final File arquivo;
+    private final FileChannel canal;
+    private final String[] primeirasChaves;
+    private final long[] posicoes;
+    private final int[] tamanhos;
+    private final BloomFilter filtro;
+    private final long registros;
+    // Tabela da marca antiga, com as chaves em writeUTF
+    private final boolean chavesUtf;
+
+    private final AtomicInteger referencias = new AtomicInteger();
+    private volatile boolean obsoleta;
+
+    private SSTable(File arquivo) throws IOException {
+        this.arquivo = arquivo;
+        this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+        try {
+            long tamanho = canal.size();
+            if (tamanho < TAMANHO_RODAPE) {
+                throw new IOException("Tabela incompleta: " + arquivo);
+            }
+            DataInputStream rodape = new DataInputStream(new ByteArrayInputStream(
+                    ler(tamanho - TAMANHO_RODAPE, TAMANHO_RODAPE)));
+            long posicaoIndice = rodape.readLong();
+            long posicaoFiltro = rodape.readLong();
+            registros = rodape.readLong();
+            long marca = rodape.readLong();
+            if (marca != MARCA && marca != MARCA_CHAVES_UTF) {
+                throw new IOException("Tabela invlida: " + arquivo);
+            }
+            chavesUtf = marca == MARCA_CHAVES_UTF;
+
+            DataInputStream indice = new DataInputStream(new ByteArrayInputStream(
+                    ler(posicaoIndice, (int) (posicaoFiltro - posicaoIndice))));
+            int blocos = indice.readInt();
+            primeirasChaves = new String[blocos];
+            posicoes = new long[blocos];
+            tamanhos = new int[blocos];
+            for (int i = 0; i < blocos; i++) {
+                primeirasChaves[i] = lerChave(indice);
+                posicoes[i] = indice.readLong();
+                tamanhos[i] = indice.readInt();
+            }
+            filtro = BloomFilter.ler(new DataInputStream(new ByteArrayInputStream(
+                    ler(posicaoFiltro, (int) (tamanho - TAMANHO_RODAPE - posicaoFiltro)))));
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param arquivo Arquivo gravado por {@link #escrever}
+     * @return Tabela aberta, com ndice e filtro em memria
+     */
+    static SSTable abrir(File arquivo) throws IOException {
+        return new SSTable(arquivo);
+    }
+
+    /**
+     * Grava uma tabela com os registros informados, em ordem crescente de chave, e a abre.
+     * A gravao vai para um arquivo temporrio renomeado ao final, ento uma tabela
+     * interrompida nunca aparece com o nome definitivo.
+     * @param arquivo Arquivo de destino
+     * @param registros Registros ordenados por chave; {@link #APAGADO} marca chave apagada
+     * @param quantidadeEstimada Quantidade esperada de registros (dimensiona o filtro)
+     */
+    static SSTable escrever(File arquivo, Iterator<Map.Entry<String, byte[]>> registros, int quantidadeEstimada)
+            throws IOException {
+        File temporario = new File(arquivo.getPath() + ".tmp");
+        BloomFilter filtro = new BloomFilter(quantidadeEstimada);
+        List<String> primeirasChaves = new ArrayList<>();
+        List<long[]> blocos = new ArrayList<>();
+        long quantidade = 0;
+        // Posio no arquivo contada aqui: DataOutputStream.size()  int e satura em 2 GiB
+        long posicao = 0;
+
+        try (FileOutputStream arquivoSaida = new FileOutputStream(temporario);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(arquivoSaida, 1 << 16))) {
+            ByteArrayOutputStream bloco = new ByteArrayOutputStream(TAMANHO_BLOCO * 2);
+            DataOutputStream saidaBloco = new DataOutputStream(bloco);
+            String primeira = null;
+            while (registros.hasNext()) {
+                Map.Entry<String, byte[]> registro = registros.next();
+                if (primeira == null) {
+                    primeira = registro.getKey();
+                }
+                escreverChave(saidaBloco, registro.getKey());
+                byte[] valor = registro.getValue();
+                if (valor == APAGADO) {
+                    saidaBloco.writeInt(-1);
+                } else {
+                    saidaBloco.writeInt(valor.length);
+                    saidaBloco.write(valor);
+                }
+                filtro.adicionar(registro.getKey());
+                quantidade++;
+                if (bloco.size() >= TAMANHO_BLOCO) {
+                    blocos.add(new long[]{posicao, bloco.size()});
+                    primeirasChaves.add(primeira);
+                    bloco.writeTo(out);
+                    posicao += bloco.size();
+                    bloco.reset();
+                    primeira = null;
+                }
+            }
+            if (bloco.size() > 0) {
+                blocos.add(new long[]{posicao, bloco.size()});
+                primeirasChaves.add(primeira);
+                bloco.writeTo(out);
+                posicao += bloco.size();
+            }
+
+            long posicaoIndice = posicao;
+            ByteArrayOutputStream indice = new ByteArrayOutputStream();
+            DataOutputStream saidaIndice = new DataOutputStream(indice);
+            saidaIndice.writeInt(blocos.size());
+            for (int i = 0; i < blocos.size(); i++) {
+                escreverChave(saidaIndice, primeirasChaves.get(i));
+                saidaIndice.writeLong(blocos.get(i)[0]);
+                saidaIndice.writeInt((int) blocos.get(i)[1]);
+            }
+            indice.writeTo(out);
+            long posicaoFiltro = posicaoIndice + indice.size();
+            filtro.escrever(out);
+            out.writeLong(posicaoIndice);
+            out.writeLong(posicaoFiltro);
+            out.writeLong(quantidade);
+            out.writeLong(MARCA);
+            out.flush();
+            arquivoSaida.getFD().sync();
+        }
+        if (!temporario.renameTo(arquivo)) {
+            temporario.delete();
+            throw new IOException("No foi possvel criar " + arquivo);
+        }
+        return abrir(arquivo);
+    }
+
+    /**
+     * @return Valor da chave, {@link #APAGADO} se ela foi apagada, ou {@code null} se a
+     * tabela no tem a chave
+     */
+    byte[] buscar(String chave) throws IOException {
+        if (!filtro.podeConter(chave)) {
+            return null;
+        }
+        int bloco = blocoDe(chave);
+        if (bloco < 0) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(ler(posicoes[bloco], tamanhos[bloco])));
+        while (in.available() > 0) {
+            String atual = lerChave(in);
+            int tamanho = in.readInt();
+            int comparacao = atual.compareTo(chave);
+            if (comparacao == 0) {
+                return lerValor(in, tamanho);
+            }
+            if (comparacao > 0) {
+                return null;
+            }
+            in.skipBytes(Math.max(tamanho, 0));
+        }
+        return null;
+    }
+
+    /**
+     * @param inicio Primeira chave desejada (inclusive)
+     * @return Registros a partir de {@code inicio}, em ordem, lidos bloco a bloco
+     */
+    Iterator<Map.Entry<String, byte[]>> iterador(String inicio) {
+        return new Iterator<>() {
+            private int bloco = Math.max(blocoDe(inicio), 0);
+            private DataInputStream atual;
+            private Map.Entry<String, byte[]> proximo = avancar();
+
+            @Override
+            public boolean hasNext() {
+                return proximo != null;
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if (proximo == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, byte[]> registro = proximo;
+                proximo = avancar();
+                return registro;
+            }
+
+            private Map.Entry<String, byte[]> avancar() {
+                try {
+                    while (true) {
+                        if (atual == null || atual.available() == 0) {
+                            if (bloco >= posicoes.length) {
+                                return null;
+                            }
+                            atual = new DataInputStream(new ByteArrayInputStream(ler(posicoes[bloco], tamanhos[bloco])));
+                            bloco++;
+                        }
+                        String chave = lerChave(atual);
+                        byte[] valor = lerValor(atual, atual.readInt());
+                        if (chave.compareTo(inicio) >= 0) {
+                            return new AbstractMap.SimpleImmutableEntry<>(chave, valor);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Quantidade de registros gravados, incluindo chaves apagadas
+     */
+    long getRegistros() {
+        return registros;
+    }
+
+    File getArquivo() {
+        return arquivo;
+    }
+
+    /**
+     * Registra mais uma verso que usa a tabela.
+     */
+    void reter() {
+        referencias.incrementAndGet();
+    }
+
+    /**
+     * Libera uma referncia; na ltima, fecha o arquivo e o apaga se a tabela estiver obsoleta.
+     */
+    void liberar() {
+        if (referencias.decrementAndGet() == 0) {
+            try {
+                canal.close();
+            } catch (IOException ignorada) {
+                // a tabela no  mais usada
+            }
+            if (obsoleta) {
+                arquivo.delete();
+            }
+        }
+    }
+
+    /**
+     * Acrescenta ao destino a primeira chave de cada bloco dentro de {@code [inicio, fim)}.
+     * Os blocos tm tamanho parecido, ento essas chaves so uma amostra da distribuio das
+     * chaves da tabela, tirada s do ndice.
+     */
+    void amostrar(String inicio, String fim, Collection<String> destino) {
+        for (String chave : primeirasChaves) {
+            if (chave.compareTo(inicio) >= 0 && chave.compareTo(fim) < 0) {
+                destino.add(chave);
+            }
+        }
+    }
+
+    /**
+     * Marca a tabela para ser apagada quando no houver mais verses que a usem.
+     */
+    void marcarObsoleta() {
+        obsoleta = true;
+    }
+
+    // ltimo bloco cuja primeira chave  menor ou igual  chave, ou -1 se a chave vem antes de todos
+    private int blocoDe(String chave) {
+        int inicio = 0;
+        int fim = primeirasChaves.length - 1;
+        int encontrado = -1;
+        while (inicio <= fim) {
+            int meio = (inicio + fim) >>> 1;
+            if (primeirasChaves[meio].compareTo(chave) <= 0) {
+                encontrado = meio;
+                inicio = meio + 1;
+            } else {
+                fim = meio - 1;
+            }
+        }
+        return encontrado;
+    }
+
+    /**
+     * Grava uma chave como tamanho em int seguido dos bytes UTF-8, sem o limite de 64 KB de
+     * {@code writeUTF}; usado tambm pelo WAL do {@link LsmTree}.
+     */
+    static void escreverChave(DataOutput out, String chave) throws IOException {
+        byte[] bytes = chave.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * L uma chave gravada por {@link #escreverChave}.
+     */
+    static String lerChaveTexto(DataInput in) throws IOException {
+        int tamanho = in.readInt();
+        if (tamanho < 0) {
+            throw new IOException("Tamanho de chave invlido: " + tamanho);
+        }
+        byte[] bytes = new byte[tamanho];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String lerChave(DataInput in) throws IOException {
+        return chavesUtf ? in.readUTF() : lerChaveTexto(in);
+    }
+
+    private static byte[] lerValor(DataInputStream in, int tamanho) throws IOException {
+        if (tamanho < 0) {
+            return APAGADO;
+        }
+        byte[] valor = new byte[tamanho];
+        in.readFully(valor);
+        return valor;
+    }
+
+    private byte[] ler(long posicao, int tamanho) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicao + buffer.position()) < 0) {
+                throw new EOFException("Fim inesperado de " + arquivo);
+            }
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,69 @@
+package storage;
+
+import entities.Community;
+import entities.User;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estado salvo dividido em parties de usurios que podem ser carregadas separadamente e em
+ * qualquer ordem, usado no incio progressivo do servio. A partio de um usurio depende s
+ * do login ({@link #particaoDe(String)}), ento quem precisa de um usurio ainda no carregado
+ * sabe qual partio carregar primeiro. As comunidades so carregadas por ltimo, quando
+ * todos os usurios j existem.
+ *
+ * <p>Os mtodos podem ser chamados por vrias threads ao mesmo tempo; cada chamada devolve
+ * objetos novos.</p>
+ */
+public interface ShardedLoad {
+
+    /**
+     * @return Quantidade de parties de usurios
+     */
+    int getParticoes();
+
+    /**
+     * @param login Login de um usurio
+     * @return Partio onde o usurio estaria, se existir
+     */
+    int particaoDe(String login);
+
+    /**
+     * @param particao Nmero da partio
+     * @return Usurios da partio, com as filas de mensagens
+     * @throws RuntimeException Se os dados estiverem corrompidos
+     */
+    List<User> carregarParticao(int particao);
+
+    /**
+     * @return true se o armazenamento l um usurio sozinho ({@link #carregarUsuario(String)})
+     */
+    default boolean isBuscaPorChave() {
+        return false;
+    }
+
+    /**
+     * L um nico usurio, sem carregar a partio dele. S  chamado se {@link #isBuscaPorChave()}.
+     * @param login Login do usurio
+     * @return Usurio salvo, com as filas de mensagens, ou {@code null} se no existir
+     * @throws RuntimeException Se os dados estiverem corrompidos
+     */
+    default User carregarUsuario(String login) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param usuarios Todos os usurios carregados (login -> User), s lidos
+     * @return Comunidades ligadas aos usurios, sem as que perderam o dono
+     * @throws RuntimeException Se os dados estiverem corrompidos
+     */
+    Map<String, Community> carregarComunidades(Map<String, User> usuarios);
+
+    /**
+     * Libera os recursos da carga (arquivos abertos). Chamado quando a carga termina ou 
+     * abandonada; depois disso nenhum outro mtodo  chamado.
+     */
+    default void fechar() {
+    }
+}
@@ -0,0 +1,672 @@
+package storage;
+
+import entities.Community;
+import entities.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Armazenamento em um nico arquivo ({@code jackut_data.ser}), reescrito por inteiro a cada gravao.
+ *
+ * <p>O arquivo  dividido em sees independentes, localizadas por uma tabela no incio, para
+ * que a carga decodifique as sees em paralelo:</p>
+ * <pre>
+ * cabealho: long marca | int verso | int sees | byte compressor
+ * tabela:    (byte tipo | long posio | int tamanho | int tamanho original | int registros) por seo
+ * sees:    usurios ({@link User#escreverDados}), mensagens ({@link User#escreverTexto login} |
+ *            {@link User#escreverMensagens}) e comunidades (logins dos membros)
+ * </pre>
+ * <p>Os usurios so distribudos pelo hash do login em parties de cerca de
+ * {@value #REGISTROS_POR_SECAO} usurios, cada uma com uma seo de usurios e uma de mensagens,
+ * o que tambm permite carreg-las separadamente ({@link #carregarEmPartes()}). As comunidades
+ * ficam em sees de at {@value #REGISTROS_POR_SECAO}. Arquivos das verses 1 (sees sem
+ * particionamento), 2 (sem compresso nem os campos do compressor) e 3 (login das mensagens
+ * em {@code writeUTF}) e do formato original (um mapa serializado pelo Java) continuam sendo
+ * lidos.</p>
+ * <p>Cada seo  comprimida sozinha pelo {@link BlockCodec} configurado, na mesma tarefa
+ * paralela que a codifica, e pode ser descomprimida sem as demais: a carga por partes s
+ * descomprime as sees de cada partio quando ela  pedida.</p>
+ * <p>O arquivo nunca  lido inteiro para a memria: a tabela e cada seo so lidas na sua
+ * posio por um {@link FileChannel}, na tarefa que as decodifica. A gravao escreve um
+ * arquivo temporrio, o fora ao disco e o move sobre o anterior, ento uma carga por partes em andamento
+ * continua lendo o arquivo que abriu.</p>
+ * <p>Enquanto uma carga por partes no termina, o servio no pode reescrever o arquivo: as
+ * gravaes parciais ({@link #salvarParcial}) vo para um {@link LogStorage} ao lado dele
+ * ({@code jackut_data.ser.delta}), aplicado sobre o snapshot na carga e apagado pela prxima
+ * gravao completa. Com a diferena pendente, a carga  sempre completa.</p>
+ */
+public class SnapshotStorage implements StorageBackend {
+
+    private static final long MARCA = 0x4a41434b55545353L; // "JACKUTSS"
+    private static final int VERSAO = 4;
+    private static final byte USUARIOS = 1;
+    private static final byte MENSAGENS = 2;
+    private static final byte COMUNIDADES = 3;
+    private static final int REGISTROS_POR_SECAO = 2048;
+    private static final int TAMANHO_CABECALHO = 17;
+    private static final int TAMANHO_ENTRADA_TABELA = 21;
+
+    private final File arquivo;
+    private final BlockCodec compressor;
+    private final LogStorage diferenca;
+
+    /**
+     * @param arquivo Arquivo de dados, comprimido pelo compressor configurado ({@link BlockCodec#configurado()})
+     */
+    public SnapshotStorage(File arquivo) {
+        this(arquivo, BlockCodec.configurado());
+    }
+
+    /**
+     * @param arquivo Arquivo de dados
+     * @param compressor Compressor das sees gravadas (a leitura usa o gravado no arquivo)
+     */
+    public SnapshotStorage(File arquivo, BlockCodec compressor) {
+        this.arquivo = arquivo;
+        this.compressor = compressor;
+        this.diferenca = new LogStorage(new File(arquivo.getPath() + ".delta"), compressor);
+    }
+
+    /**
+     * L o snapshot e aplica sobre ele a diferena gravada durante uma carga por partes, se houver.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> carregar() {
+        Map<String, Object> dados = lerArquivo();
+        if (diferenca.isVazio()) {
+            return dados;
+        }
+        if (dados == null) {
+            dados = new HashMap<>();
+            dados.put("usuarios", new HashMap<String, User>());
+            dados.put("comunidades", new HashMap<String, Community>());
+        }
+        diferenca.aplicarSobre((Map<String, User>) dados.get("usuarios"),
+                (Map<String, Community>) dados.get("comunidades"));
+        return dados;
+    }
+
+    private Map<String, Object> lerArquivo() {
+        if (!arquivo.exists()) return null;
+
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            Fonte fonte = new FonteArquivo(canal);
+            Tabela tabela = Tabela.ler(fonte);
+            if (tabela != null) {
+                return lerSecoes(fonte, tabela);
+            }
+            return lerObjeto(new BufferedInputStream(Channels.newInputStream(canal.position(0))));
+        } catch (Exception e) {
+            // Cria backup do arquivo corrompido
+            arquivo.renameTo(new File(arquivo.getPath() + ".backup_" + System.currentTimeMillis()));
+            return null;
+        }
+    }
+
+    /**
+     * Reescreve o arquivo inteiro num temporrio, fora-o ao disco e o move sobre o anterior;
+     * as listas de alterados so ignoradas.
+     */
+    @Override
+    public void salvar(Map<String, User> usuarios, Map<String, Community> comunidades,
+                       Set<String> usuariosAlterados, Set<String> comunidadesAlteradas) {
+        File temporario = new File(arquivo.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temporario)) {
+                serializar(usuarios, comunidades, compressor, out);
+                out.getFD().sync();
+            }
+            Files.move(temporario.toPath(), arquivo.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Falha ao salvar dados", e);
+        }
+        diferenca.apagar();
+    }
+
+    /**
+     * Anexa os alterados  diferena, sem tocar no snapshot nem percorrer os demais.
+     */
+    @Override
+    public void salvarParcial(Map<String, User> usuarios, Map<String, Community> comunidades,
+                              Set<String> usuariosAlterados, Set<String> comunidadesAlteradas) {
+        diferenca.salvar(usuarios, comunidades, usuariosAlterados, comunidadesAlteradas);
+    }
+
+    @Override
+    public void apagar() {
+        arquivo.delete();
+        diferenca.apagar();
+    }
+
+    @Override
+    public void fechar() {
+        diferenca.fechar();
+    }
+
+    /**
+     * Abre o arquivo para o incio progressivo. S arquivos gravados a partir da verso 2 do
+     * formato, com usurios particionados pelo login, podem ser carregados por partes. O
+     * arquivo fica aberto at {@link ShardedLoad#fechar()}.
+     */
+    @Override
+    public ShardedLoad carregarEmPartes() {
+        if (!arquivo.exists() || !diferenca.isVazio()) return null;
+
+        FileChannel canal = null;
+        try {
+            canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+            Tabela tabela = Tabela.ler(new FonteArquivo(canal));
+            if (tabela != null && tabela.versao >= 2) {
+                return new Particionado(canal, tabela);
+            }
+        } catch (IOException e) {
+            // carregar() trata o arquivo corrompido
+        }
+        fecharCanal(canal);
+        return null;
+    }
+
+    /**
+     * Grava o estado no formato em sees, com o compressor configurado ({@link BlockCodec#configurado()}).
+     */
+    public static void serializar(Map<String, User> usuarios, Map<String, Community> comunidades,
+                                  OutputStream destino) throws IOException {
+        serializar(usuarios, comunidades, BlockCodec.configurado(), destino);
+    }
+
+    /**
+     * Grava o estado no formato em sees. Antes, retira das comunidades os membros locais
+     * que no existem mais. Os usurios so distribudos em parties pelo hash do login, com
+     * uma seo de usurios e uma de mensagens por partio; as sees so codificadas e
+     * comprimidas em paralelo.
+     */
+    public static void serializar(Map<String, User> usuarios, Map<String, Community> comunidades,
+                                  BlockCodec compressor, OutputStream destino) throws IOException {
+        // Remove usurios inexistentes das comunidades (sombras de outros ns so mantidas)
+        for (Community comunidade : comunidades.values()) {
+            comunidade.getMembers().removeIf(m -> !m.isRemoto() && !usuarios.containsKey(m.getLogin()));
+
+            // Verifica se o dono ainda existe
+            if (!comunidade.getOwner().isRemoto() && !usuarios.containsKey(comunidade.getOwner().getLogin())) {
+                comunidade.getMembers().clear(); // Limpa membros se dono no existir
+            }
+        }
+
+        int particoes = Math.max(1, (usuarios.size() + REGISTROS_POR_SECAO - 1) / REGISTROS_POR_SECAO);
+        List<List<User>> porParticao = new ArrayList<>();
+        for (int p = 0; p < particoes; p++) {
+            porParticao.add(new ArrayList<>());
+        }
+        for (User usuario : usuarios.values()) {
+            porParticao.get(particao(usuario.getLogin(), particoes)).add(usuario);
+        }
+
+        // Uma seo de usurios e uma de mensagens por partio, mesmo vazias, e as comunidades em blocos
+        List<Byte> tipos = new ArrayList<>();
+        List<List<?>> registros = new ArrayList<>();
+        for (List<User> particao : porParticao) {
+            tipos.add(USUARIOS);
+            registros.add(particao);
+        }
+        for (List<User> particao : porParticao) {
+            List<User> comMensagens = new ArrayList<>();
+            for (User usuario : particao) {
+                if (usuario.getQuantidadeRecados() > 0 || usuario.getQuantidadeMensagens() > 0
+                        || usuario.getQuantidadeMensagensLidas() > 0) {
+                    comMensagens.add(usuario);
+                }
+            }
+            tipos.add(MENSAGENS);
+            registros.add(comMensagens);
+        }
+        List<Community> listaComunidades = new ArrayList<>(comunidades.values());
+        for (int inicio = 0; inicio < listaComunidades.size(); inicio += REGISTROS_POR_SECAO) {
+            tipos.add(COMUNIDADES);
+            registros.add(listaComunidades.subList(inicio, Math.min(listaComunidades.size(), inicio + REGISTROS_POR_SECAO)));
+        }
+
+        int[] tamanhosOriginais = new int[tipos.size()];
+        byte[][] conteudos = new byte[tipos.size()][];
+        try {
+            IntStream.range(0, tipos.size()).parallel().forEach(i -> {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                try {
+                    for (Object registro : registros.get(i)) {
+                        if (tipos.get(i) == USUARIOS) {
+                            ((User) registro).escreverDados(out);
+                        } else if (tipos.get(i) == MENSAGENS) {
+                            User.escreverTexto(out, ((User) registro).getLogin());
+                            ((User) registro).escreverMensagens(out);
+                        } else {
+                            EntityCodec.escreverComunidade(out, (Community) registro);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                tamanhosOriginais[i] = bytes.size();
+                conteudos[i] = compressor == BlockCodec.NENHUM
+                        ? bytes.toByteArray() : compressor.comprimir(bytes.toByteArray(), 0, bytes.size());
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(destino, 1 << 16));
+        out.writeLong(MARCA);
+        out.writeInt(VERSAO);
+        out.writeInt(tipos.size());
+        out.writeByte(compressor.getId());
+        long posicao = TAMANHO_CABECALHO + (long) TAMANHO_ENTRADA_TABELA * tipos.size();
+        for (int i = 0; i < tipos.size(); i++) {
+            out.writeByte(tipos.get(i));
+            out.writeLong(posicao);
+            out.writeInt(conteudos[i].length);
+            out.writeInt(tamanhosOriginais[i]);
+            out.writeInt(registros.get(i).size());
+            posicao += conteudos[i].length;
+        }
+        for (byte[] conteudo : conteudos) {
+            out.write(conteudo);
+        }
+        out.flush();
+    }
+
+    /**
+     * L o estado gravado por {@link #serializar} (ou no formato antigo, um nico objeto
+     * serializado) e reconstri as referncias entre usurios e comunidades. As sees so
+     * decodificadas direto do array, sem cpia.
+     * @return Mapa com "usuarios" e "comunidades"
+     */
+    public static Map<String, Object> desserializar(byte[] dados) throws IOException, ClassNotFoundException {
+        Fonte fonte = new FonteArray(dados);
+        Tabela tabela = Tabela.ler(fonte);
+        if (tabela != null) {
+            return lerSecoes(fonte, tabela);
+        }
+        return lerObjeto(new ByteArrayInputStream(dados));
+    }
+
+    /**
+     * Decodifica as sees em duas etapas paralelas (no pool fork-join comum): primeiro os
+     * usurios; depois, com o mapa de usurios completo e s lido, as mensagens (cada seo
+     * altera usurios distintos) e as comunidades. Por fim, monta o mapa de comunidades,
+     * descartando as que perderam o dono.
+     */
+    private static Map<String, Object> lerSecoes(Fonte fonte, Tabela tabela) throws IOException {
+        try {
+            List<List<User>> lidos = tabela.usuarios.parallelStream()
+                    .map(secao -> lerUsuarios(fonte, secao))
+                    .collect(Collectors.toList());
+            int total = 0;
+            for (List<User> secao : lidos) {
+                total += secao.size();
+            }
+            Map<String, User> usuarios = new HashMap<>(Math.max(16, total * 4 / 3 + 1));
+            for (List<User> secao : lidos) {
+                for (User usuario : secao) {
+                    usuarios.put(usuario.getLogin(), usuario);
+                }
+            }
+
+            List<Secao> demais = new ArrayList<>(tabela.mensagens);
+            demais.addAll(tabela.comunidades);
+            List<List<Community>> comunidadesLidas = demais.parallelStream().map(secao -> {
+                if (secao.tipo == MENSAGENS) {
+                    lerMensagens(fonte, secao, tabela.versao, usuarios);
+                    return List.<Community>of();
+                }
+                return lerComunidades(fonte, secao, usuarios);
+            }).collect(Collectors.toList());
+
+            Map<String, Community> comunidades = new HashMap<>();
+            for (List<Community> secao : comunidadesLidas) {
+                for (Community comunidade : secao) {
+                    comunidades.put(comunidade.getName(), comunidade);
+                }
+            }
+
+            Map<String, Object> resultado = new HashMap<>();
+            resultado.put("usuarios", usuarios);
+            resultado.put("comunidades", comunidades);
+            return resultado;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<User> lerUsuarios(Fonte fonte, Secao secao) {
+        List<User> usuarios = new ArrayList<>(secao.registros);
+        try {
+            DataInputStream in = secao.abrir(fonte);
+            for (int r = 0; r < secao.registros; r++) {
+                usuarios.add(User.lerDados(in));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return usuarios;
+    }
+
+    /**
+     * Acrescenta as filas de mensagens da seo aos usurios; as de usurios ausentes so descartadas.
+     */
+    private static void lerMensagens(Fonte fonte, Secao secao, int versao, Map<String, User> usuarios) {
+        try {
+            DataInputStream in = secao.abrir(fonte);
+            for (int r = 0; r < secao.registros; r++) {
+                String login = versao >= 4 ? User.lerTexto(in) : in.readUTF();
+                User usuario = usuarios.get(login);
+                (usuario != null ? usuario : new User(login, "", login)).lerMensagens(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Comunidades da seo cujo dono ainda existe
+     */
+    private static List<Community> lerComunidades(Fonte fonte, Secao secao, Map<String, User> usuarios) {
+        List<Community> comunidades = new ArrayList<>(secao.registros);
+        try {
+            DataInputStream in = secao.abrir(fonte);
+            for (int r = 0; r < secao.registros; r++) {
+                Community comunidade = EntityCodec.lerComunidade(in, usuarios);
+                if (comunidade != null) {
+                    comunidades.add(comunidade);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return comunidades;
+    }
+
+    /**
+     * L o formato antigo: um mapa serializado com "usuarios" e "comunidades".
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> lerObjeto(InputStream origem) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(origem);
+        Map<String, Object> dados = (Map<String, Object>) ois.readObject();
+
+        // Verifica integridade dos dados carregados
+        Map<String, User> usuarios = (Map<String, User>) dados.get("usuarios");
+        Map<String, Community> comunidades = (Map<String, Community>) dados.get("comunidades");
+
+        // Reconstroi referncias entre usurios e comunidades; comunidades sem dono so invlidas
+        comunidades.values().removeIf(comunidade -> {
+            User dono = comunidade.getOwner().isRemoto()
+                    ? comunidade.getOwner() : usuarios.get(comunidade.getOwner().getLogin());
+            if (dono == null) {
+                return true;
+            }
+            comunidade.getMembers().removeIf(m -> !m.isRemoto() && !usuarios.containsKey(m.getLogin()));
+            comunidade.getMembers().add(dono); // Garante que o dono est na lista
+            return false;
+        });
+
+        return dados;
+    }
+
+    private static int particao(String login, int particoes) {
+        return Math.floorMod(login.hashCode(), particoes);
+    }
+
+    private static void fecharCanal(FileChannel canal) {
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException ignorada) {
+                // s leitura: no h o que perder
+            }
+        }
+    }
+
+    /**
+     * Bytes de um snapshot, lidos por posio. Pode ser usada por vrias threads ao mesmo tempo.
+     */
+    private interface Fonte {
+        /**
+         * @return Tamanho total, em bytes
+         */
+        long tamanho() throws IOException;
+
+        /**
+         * @return Buffer com array acessvel contendo {@code [posicao, posicao + tamanho)}
+         * @throws EOFException Se o intervalo passar do fim
+         */
+        ByteBuffer ler(long posicao, int tamanho) throws IOException;
+    }
+
+    /**
+     * Snapshot j em memria: os buffers so vises do prprio array.
+     */
+    private static final class FonteArray implements Fonte {
+        private final byte[] dados;
+
+        FonteArray(byte[] dados) {
+            this.dados = dados;
+        }
+
+        @Override
+        public long tamanho() {
+            return dados.length;
+        }
+
+        @Override
+        public ByteBuffer ler(long posicao, int tamanho) throws IOException {
+            if (posicao < 0 || tamanho < 0 || posicao + tamanho > dados.length) {
+                throw new EOFException();
+            }
+            return ByteBuffer.wrap(dados, (int) posicao, tamanho).slice();
+        }
+    }
+
+    /**
+     * Snapshot em arquivo: cada leitura traz s o intervalo pedido, com leituras posicionais
+     * que no dependem da posio do canal.
+     */
+    private static final class FonteArquivo implements Fonte {
+        private final FileChannel canal;
+
+        FonteArquivo(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        @Override
+        public long tamanho() throws IOException {
+            return canal.size();
+        }
+
+        @Override
+        public ByteBuffer ler(long posicao, int tamanho) throws IOException {
+            if (posicao < 0 || tamanho < 0 || posicao + tamanho > canal.size()) {
+                throw new EOFException();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+            while (buffer.hasRemaining()) {
+                if (canal.read(buffer, posicao + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Seo do arquivo: tipo, posio e tamanho em bytes (gravado e original), quantidade de
+     * registros e compressor.
+     */
+    private static final class Secao {
+        final byte tipo;
+        final long posicao;
+        final int tamanho;
+        final int tamanhoOriginal;
+        final int registros;
+        final BlockCodec compressor;
+
+        Secao(byte tipo, long posicao, int tamanho, int tamanhoOriginal, int registros, BlockCodec compressor) {
+            this.tipo = tipo;
+            this.posicao = posicao;
+            this.tamanho = tamanho;
+            this.tamanhoOriginal = tamanhoOriginal;
+            this.registros = registros;
+            this.compressor = compressor;
+        }
+
+        /**
+         * @return Contedo da seo, descomprimido se preciso
+         */
+        DataInputStream abrir(Fonte fonte) throws IOException {
+            ByteBuffer conteudo = fonte.ler(posicao, tamanho);
+            int inicio = conteudo.arrayOffset() + conteudo.position();
+            if (compressor == BlockCodec.NENHUM) {
+                return new DataInputStream(new ByteArrayInputStream(conteudo.array(), inicio, tamanho));
+            }
+            return new DataInputStream(new ByteArrayInputStream(
+                    compressor.descomprimir(conteudo.array(), inicio, tamanho, tamanhoOriginal)));
+        }
+    }
+
+    /**
+     * Tabela de sees do arquivo, agrupadas por tipo e na ordem do arquivo.
+     */
+    private static final class Tabela {
+        int versao;
+        final List<Secao> usuarios = new ArrayList<>();
+        final List<Secao> mensagens = new ArrayList<>();
+        final List<Secao> comunidades = new ArrayList<>();
+
+        /**
+         * @return Tabela do arquivo, ou {@code null} se ele no estiver no formato em sees
+         * @throws IOException Se o arquivo estiver no formato em sees mas a tabela for invlida
+         */
+        static Tabela ler(Fonte fonte) throws IOException {
+            long comprimento = fonte.tamanho();
+            if (comprimento < Long.BYTES || fonte.ler(0, Long.BYTES).getLong() != MARCA) {
+                return null;
+            }
+            ByteBuffer cabecalho = fonte.ler(Long.BYTES, 2 * Integer.BYTES);
+            Tabela tabela = new Tabela();
+            tabela.versao = cabecalho.getInt();
+            if (tabela.versao < 1 || tabela.versao > VERSAO) {
+                throw new IOException("Verso de snapshot desconhecida: " + tabela.versao);
+            }
+            int quantidade = cabecalho.getInt();
+            BlockCodec compressor = tabela.versao >= 3
+                    ? BlockCodec.porId(fonte.ler(TAMANHO_CABECALHO - 1, 1).get()) : BlockCodec.NENHUM;
+            // Verses anteriores  3 no tm o byte do compressor nem o tamanho original
+            long inicioTabela = tabela.versao >= 3 ? TAMANHO_CABECALHO : TAMANHO_CABECALHO - 1;
+            int tamanhoEntrada = tabela.versao >= 3 ? TAMANHO_ENTRADA_TABELA : TAMANHO_ENTRADA_TABELA - 4;
+            if (quantidade < 0 || inicioTabela + (long) quantidade * tamanhoEntrada > comprimento) {
+                throw new IOException("Tabela de sees invlida");
+            }
+            ByteBuffer in = fonte.ler(inicioTabela, quantidade * tamanhoEntrada);
+            for (int i = 0; i < quantidade; i++) {
+                byte tipo = in.get();
+                long posicao = in.getLong();
+                int tamanho = in.getInt();
+                int tamanhoOriginal = tabela.versao >= 3 ? in.getInt() : tamanho;
+                int registros = in.getInt();
+                if (posicao < 0 || tamanho < 0 || tamanhoOriginal < 0 || registros < 0
+                        || posicao + tamanho > comprimento) {
+                    throw new IOException("Tabela de sees invlida");
+                }
+                Secao secao = new Secao(tipo, posicao, tamanho, tamanhoOriginal, registros, compressor);
+                switch (tipo) {
+                    case USUARIOS:
+                        tabela.usuarios.add(secao);
+                        break;
+                    case MENSAGENS:
+                        tabela.mensagens.add(secao);
+                        break;
+                    case COMUNIDADES:
+                        tabela.comunidades.add(secao);
+                        break;
+                    default:
+                        throw new IOException("Seo desconhecida: " + tipo);
+                }
+            }
+            if (tabela.versao >= 2 && tabela.usuarios.size() != tabela.mensagens.size()) {
+                throw new IOException("Tabela de sees invlida");
+            }
+            return tabela;
+        }
+    }
+
+    /**
+     * Carga por partes de um arquivo a partir da verso 2: a partio {@code p}  a seo de usurios
+     * {@code p} mais a seo de mensagens {@code p}.
+     */
+    private static final class Particionado implements ShardedLoad {
+        private final FileChannel canal;
+        private final Fonte fonte;
+        private final Tabela tabela;
+
+        Particionado(FileChannel canal, Tabela tabela) {
+            this.canal = canal;
+            this.fonte = new FonteArquivo(canal);
+            this.tabela = tabela;
+        }
+
+        @Override
+        public int getParticoes() {
+            return tabela.usuarios.size();
+        }
+
+        @Override
+        public int particaoDe(String login) {
+            return particao(login, getParticoes());
+        }
+
+        @Override
+        public List<User> carregarParticao(int particao) {
+            try {
+                List<User> usuarios = lerUsuarios(fonte, tabela.usuarios.get(particao));
+                Map<String, User> porLogin = new HashMap<>();
+                for (User usuario : usuarios) {
+                    porLogin.put(usuario.getLogin(), usuario);
+                }
+                lerMensagens(fonte, tabela.mensagens.get(particao), tabela.versao, porLogin);
+                return usuarios;
+            } catch (UncheckedIOException e) {
+                throw new RuntimeException("Falha ao carregar a partio " + particao, e.getCause());
+            }
+        }
+
+        @Override
+        public Map<String, Community> carregarComunidades(Map<String, User> usuarios) {
+            try {
+                Map<String, Community> comunidades = new HashMap<>();
+                for (List<Community> secao : tabela.comunidades.parallelStream()
+                        .map(secao -> lerComunidades(fonte, secao, usuarios)).collect(Collectors.toList())) {
+                    for (Community comunidade : secao) {
+                        comunidades.put(comunidade.getName(), comunidade);
+                    }
+                }
+                return comunidades;
+            } catch (UncheckedIOException e) {
+                throw new RuntimeException("Falha ao carregar as comunidades", e.getCause());
+            }
+        }
+
+        @Override
+        public void fechar() {
+            fecharCanal(canal);
+        }
+    }
+}
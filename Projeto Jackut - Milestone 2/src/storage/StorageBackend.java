@@ -0,0 +1,112 @@
+package storage;
+
+import entities.Community;
+import entities.Jackut;
+import entities.User;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Armazenamento persistente dos usurios e comunidades do {@code JackutService}.
+ *
+ * <p>O servio chama {@link #salvar} ao final de cada mutao, sempre com a sua trava, informando
+ * quais usurios e comunidades mudaram desde a chamada anterior. Cada implementao decide o
+ * que gravar: tudo, s o que mudou ou nada. O armazenamento  escolhido pela propriedade de
+ * sistema {@value #PROPRIEDADE} (ver {@link #configurado()}).</p>
+ */
+public interface StorageBackend {
+
+    /** Propriedade de sistema com o nome do armazenamento: memoria, snapshot (padro), log ou lsm. */
+    String PROPRIEDADE = "jackut.storage";
+
+    /**
+     * Carrega o estado salvo.
+     * @return Mapa com "usuarios" ({@code Map<String, User>}) e "comunidades"
+     * ({@code Map<String, Community>}), ou {@code null} se no houver nada salvo
+     */
+    Map<String, Object> carregar();
+
+    /**
+     * Persiste o estado atual.
+     * @param usuarios Todos os usurios (login -> User)
+     * @param comunidades Todas as comunidades (nome -> Community)
+     * @param usuariosAlterados Logins alterados desde a ltima chamada, incluindo removidos;
+     *                          {@code null} quando qualquer usurio pode ter mudado
+     * @param comunidadesAlteradas Idem, para nomes de comunidades
+     * @throws RuntimeException Se a gravao falhar
+     */
+    void salvar(Map<String, User> usuarios, Map<String, Community> comunidades,
+                Set<String> usuariosAlterados, Set<String> comunidadesAlteradas);
+
+    /**
+     * Persiste s os usurios e comunidades indicados, sem percorrer os demais. Usado durante a
+     * carga por partes, quando os mapas ainda no tm tudo; uma chamada a {@link #salvar} com
+     * {@code null} nas listas vem depois, quando a carga termina. O padro  {@link #salvar}
+     * com as listas, que serve aos armazenamentos que gravam s o que mudou.
+     * @throws RuntimeException Se a gravao falhar
+     */
+    default void salvarParcial(Map<String, User> usuarios, Map<String, Community> comunidades,
+                               Set<String> usuariosAlterados, Set<String> comunidadesAlteradas) {
+        salvar(usuarios, comunidades, usuariosAlterados, comunidadesAlteradas);
+    }
+
+    /**
+     * Apaga todo o estado salvo.
+     */
+    void apagar();
+
+    /**
+     * Abre o estado salvo para ser carregado por partes (incio progressivo).
+     * @return Estado dividido em parties, ou {@code null} se no houver nada salvo ou se o
+     * armazenamento s puder carregar tudo de uma vez (padro)
+     */
+    default ShardedLoad carregarEmPartes() {
+        return null;
+    }
+
+    /**
+     * Libera os arquivos abertos pelo armazenamento. Um uso posterior os abre de novo.
+     */
+    default void fechar() {
+    }
+
+    /**
+     * @return Armazenamento indicado pela propriedade {@value #PROPRIEDADE}, com os arquivos
+     * no diretrio de trabalho
+     * @throws RuntimeException Se o nome for desconhecido
+     */
+    static StorageBackend configurado() {
+        return configurado(new File("."));
+    }
+
+    /**
+     * @param diretorio Diretrio dos arquivos de dados
+     * @return Armazenamento indicado pela propriedade {@value #PROPRIEDADE}
+     * @throws RuntimeException Se o nome for desconhecido
+     */
+    static StorageBackend configurado(File diretorio) {
+        return criar(System.getProperty(PROPRIEDADE, "snapshot"), diretorio);
+    }
+
+    /**
+     * @param nome memoria, snapshot, log ou lsm
+     * @param diretorio Diretrio dos arquivos de dados
+     * @throws RuntimeException Se o nome for desconhecido
+     */
+    static StorageBackend criar(String nome, File diretorio) {
+        switch (nome) {
+            case "memoria":
+                return new InMemoryStorage();
+            case "snapshot":
+                return new SnapshotStorage(new File(diretorio, Jackut.DATA_FILE));
+            case "log":
+                return new LogStorage(new File(diretorio, Jackut.LOG_FILE));
+            case "lsm":
+                return new LsmStorage(new File(diretorio, Jackut.LSM_DIR));
+            default:
+                throw new RuntimeException("Armazenamento desconhecido: " + nome);
+        }
+    }
+}
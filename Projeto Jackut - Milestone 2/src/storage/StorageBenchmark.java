@@ -0,0 +1,77 @@
+package storage;
+
+import services.JackutService;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Compara os armazenamentos isoladamente: para cada um, um servio novo cria usurios e
+ * depois executa escritas pequenas (recados e perfis), cada uma persistida ao final como no
+ * uso normal. Mede escritas por segundo, o tempo de recarga e o tamanho em disco.
+ *
+ * <p>Uso: {@code StorageBenchmark [usuarios] [escritas] [armazenamento...]}. Por padro, 2000
+ * usurios, 20000 escritas e os quatro armazenamentos. Cada um roda em um diretrio temporrio.</p>
+ */
+public class StorageBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int escritas = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        String[] nomes = args.length > 2
+                ? java.util.Arrays.copyOfRange(args, 2, args.length)
+                : new String[]{"memoria", "snapshot", "log", "lsm"};
+
+        for (String nome : nomes) {
+            File diretorio = Files.createTempDirectory("jackut-" + nome).toFile();
+            medir(nome, diretorio, usuarios, escritas);
+        }
+    }
+
+    private static void medir(String nome, File diretorio, int usuarios, int escritas) {
+        JackutService servico = new JackutService(StorageBackend.criar(nome, diretorio), diretorio);
+        servico.zerarSistema();
+
+        long inicio = System.nanoTime();
+        String[] sessoes = new String[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            servico.criarUsuario("bench" + i, "senha", "Usuario " + i);
+            sessoes[i] = servico.abrirSessao("bench" + i, "senha");
+        }
+        long criacao = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < escritas; i++) {
+            int usuario = i % usuarios;
+            if (i % 2 == 0) {
+                servico.enviarRecado(sessoes[usuario], "bench" + ((usuario + 1) % usuarios), "recado " + i);
+            } else {
+                servico.editarPerfil(sessoes[usuario], "cidade", "Cidade " + i);
+            }
+        }
+        long escrita = System.nanoTime() - inicio;
+        // Libera os arquivos, para que a recarga leia do disco em vez de reusar o motor aberto
+        servico.encerrarSistema();
+
+        inicio = System.nanoTime();
+        JackutService recarregado = new JackutService(StorageBackend.criar(nome, diretorio), diretorio);
+        long recarga = System.nanoTime() - inicio;
+        recarregado.encerrarSistema();
+
+        System.out.println(String.format(Locale.ROOT,
+                "%-9s criacao %8.0f usuarios/s | escritas %8.0f ops/s | recarga %7.1f ms | disco %,d bytes",
+                nome, usuarios / (criacao / 1e9), escritas / (escrita / 1e9), recarga / 1e6, tamanho(diretorio)));
+    }
+
+    private static long tamanho(File diretorio) {
+        long total = 0;
+        File[] arquivos = diretorio.listFiles();
+        if (arquivos != null) {
+            for (File arquivo : arquivos) {
+                total += arquivo.isDirectory() ? tamanho(arquivo) : arquivo.length();
+            }
+        }
+        return total;
+    }
+}